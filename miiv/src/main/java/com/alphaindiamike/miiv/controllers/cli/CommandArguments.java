@@ -0,0 +1,131 @@
+package com.alphaindiamike.miiv.controllers.cli;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Splits the raw command line into the command name, positional arguments and options.
+ * Options are written as "--name value"; names listed as flags take no value.
+ */
+public record CommandArguments(
+		String command,
+		List<String> positionals,
+		Map<String, String> options
+		) {
+
+    /**
+     * Parses the arguments handed to a {@link CommandHandler}.
+     *
+     * @param args  The raw arguments, with the command name as the first element.
+     * @param flags Option names which do not expect a value.
+     * @return The parsed arguments.
+     * @throws IllegalArgumentException if an option expecting a value is the last token.
+     */
+    public static CommandArguments parse(String[] args, Set<String> flags) {
+        List<String> positionals = new ArrayList<>();
+        Map<String, String> options = new HashMap<>();
+        String command = args.length > 0 ? args[0] : "";
+
+        for (int i = 1; i < args.length; i++) {
+            String token = args[i];
+            if (!token.startsWith("--")) {
+                positionals.add(token);
+                continue;
+            }
+            String name = token.substring(2);
+            if (flags.contains(name)) {
+                options.put(name, "true");
+            } else if (i + 1 < args.length) {
+                options.put(name, args[++i]);
+            } else {
+                throw new IllegalArgumentException("Missing value for option --" + name);
+            }
+        }
+        return new CommandArguments(command, Collections.unmodifiableList(positionals),
+                Collections.unmodifiableMap(options));
+    }
+
+    public boolean hasOption(String name) {
+        return options.containsKey(name);
+    }
+
+    public String option(String name) {
+        return options.get(name);
+    }
+
+    /**
+     * Reads a strictly positive integer option.
+     *
+     * @param name         The option name, without the leading dashes.
+     * @param defaultValue The value used when the option is absent.
+     * @return The option value.
+     * @throws IllegalArgumentException if the value is not a positive integer.
+     */
+    public int positiveIntOption(String name, int defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below together with the non-positive case
+        }
+        throw new IllegalArgumentException("Option --" + name + " expects a positive integer, got: " + value);
+    }
+
+    /**
+     * Reads an integer option that may be 0, e.g. a limit where 0 means unlimited.
+     *
+     * @param name         The option name, without the leading dashes.
+     * @param defaultValue The value used when the option is absent.
+     * @return The option value.
+     * @throws IllegalArgumentException if the value is not a non-negative integer.
+     */
+    public long nonNegativeLongOption(String name, long defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long parsed = Long.parseLong(value);
+            if (parsed >= 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below together with the negative case
+        }
+        throw new IllegalArgumentException("Option --" + name + " expects 0 or a positive integer, got: " + value);
+    }
+
+    /**
+     * Reads an option holding a fraction strictly between 0 and 1, e.g. a probability.
+     *
+     * @param name         The option name, without the leading dashes.
+     * @param defaultValue The value used when the option is absent.
+     * @return The option value.
+     * @throws IllegalArgumentException if the value is not a number between 0 and 1.
+     */
+    public double fractionOption(String name, double defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            double parsed = Double.parseDouble(value);
+            if (parsed > 0 && parsed < 1) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below together with the out of range case
+        }
+        throw new IllegalArgumentException("Option --" + name + " expects a number between 0 and 1, got: " + value);
+    }
+}
@@ -1,12 +1,43 @@
 package com.alphaindiamike.miiv.controllers.cli;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.alphaindiamike.miiv.services.GlobalSettingsService;
+import com.alphaindiamike.miiv.services.IngestService;
+import com.alphaindiamike.miiv.services.ingest.IngestOperation;
+
 @Component
-public class CopyCommandHandler implements CommandHandler{
+public class CopyCommandHandler extends IngestCommandHandler{
+
+    @Autowired
+    public CopyCommandHandler(GlobalSettingsService settingsService, IngestService ingestService) {
+        super(settingsService, ingestService);
+    }
+
+    @Override
+    protected IngestOperation operation() {
+        return IngestOperation.COPY;
+    }
+
+    @Override
+    protected IngestOperation operation(CommandArguments arguments) {
+        return arguments.hasOption("link") ? IngestOperation.LINK : IngestOperation.COPY;
+    }
+
+    @Override
+    protected Set<String> flags() {
+        return Set.of("link");
+    }
+
     @Override
-    public CommandResponse handle(String[] args) {
-    	System.out.println("Not implemented :(");
-		return null;
+    protected String usage() {
+        return "Usage: miiv copy <source> [--workers N] [--walkers N] [--hashers N] [--dedup] [--link] [--chunk-versions]"
+                + " [--date-versions] [--io platform|virtual] [--io-permits N] [--limit-mb N] [--limit-files N]"
+                + " [--schedule walk|physical]"
+                + " | miiv copy --plan <file> [--link] [options]"
+                + " | miiv copy --resume [--link]";
     }
 
     @Override
@@ -0,0 +1,113 @@
+package com.alphaindiamike.miiv.controllers.cli;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.alphaindiamike.miiv.services.DupesService;
+import com.alphaindiamike.miiv.services.GlobalSettingsService;
+import com.alphaindiamike.miiv.services.IngestService;
+import com.alphaindiamike.miiv.services.dupes.DupesReport;
+
+/**
+ * Reports the duplicate files of the workspace, or with --similar the images which look alike.
+ * With --out, duplicate groups are streamed to a JSON lines or CSV file instead of the console.
+ * Workspace files are only read.
+ */
+@Component
+public class DupesCommandHandler implements CommandHandler{
+    private static final Logger logger = LoggerFactory.getLogger(DupesCommandHandler.class);
+    private static final String USAGE = "Usage: miiv dupes [--similar [--distance N] | --out <file>] [--hashers N]";
+    private static final String SIMILAR_FLAG = "similar";
+    private static final String OUT_OPTION = "out";
+    private static final int MAX_DISTANCE = 64;
+
+    private final GlobalSettingsService settingsService;
+    private final IngestService ingestService;
+    private final DupesService dupesService;
+
+    @Autowired
+    public DupesCommandHandler(GlobalSettingsService settingsService, IngestService ingestService,
+            DupesService dupesService) {
+        this.settingsService = settingsService;
+        this.ingestService = ingestService;
+        this.dupesService = dupesService;
+    }
+
+    @Override
+    public CommandResponse handle(String[] args) {
+        String workspaceSetting = settingsService.getSetting("workspace_dir");
+        if (workspaceSetting == null) {
+            String message = "Workspace not initialized. Use miiv init {workspace_dir} to initialize the workspace location.";
+            System.out.println(message);
+            return new CommandResponse("", message, false);
+        }
+
+        CommandArguments arguments;
+        int threads;
+        long distance;
+        try {
+            arguments = CommandArguments.parse(args, Set.of(SIMILAR_FLAG));
+            threads = arguments.positiveIntOption("hashers", ingestService.defaultOptions().getHashThreads());
+            distance = arguments.nonNegativeLongOption("distance", DupesService.DEFAULT_SIMILARITY_DISTANCE);
+            if (distance > MAX_DISTANCE) {
+                throw new IllegalArgumentException("Option --distance expects at most " + MAX_DISTANCE + ", got: " + distance);
+            }
+        } catch (IllegalArgumentException e) {
+            String message = e.getMessage() + ". " + USAGE;
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+        boolean similar = arguments.hasOption(SIMILAR_FLAG);
+        if (!arguments.positionals().isEmpty() || (!similar && arguments.hasOption("distance"))
+                || (similar && arguments.hasOption(OUT_OPTION))) {
+            String message = "Incorrect command. " + USAGE;
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+
+        try {
+            Path workspace = Paths.get(workspaceSetting).toAbsolutePath().normalize();
+            if (!Files.isDirectory(workspace)) {
+                String message = "The workspace " + workspace + " does not exist. Use miiv init or miiv set.";
+                logger.error(message);
+                return new CommandResponse("", message, false);
+            }
+            Path output = null;
+            if (arguments.hasOption(OUT_OPTION)) {
+                output = Paths.get(arguments.option(OUT_OPTION)).toAbsolutePath().normalize();
+                if (output.getParent() == null || !Files.isDirectory(output.getParent())) {
+                    String message = "The folder of the output file does not exist: " + output;
+                    logger.error(message);
+                    return new CommandResponse("", message, false);
+                }
+            }
+            DupesReport report = similar
+                    ? dupesService.similarImages(workspace, (int) distance, threads)
+                    : dupesService.duplicateFiles(workspace, threads, output);
+            String message = report.summary();
+            System.out.println(message);
+            return new CommandResponse(message, "", report.failed() == 0);
+        } catch (InvalidPathException e) {
+            String message = "The workspace or output path is invalid: " + e.getMessage();
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        } catch (IOException e) {
+            String message = "The duplicate files could not be reported: " + e.getMessage();
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+    }
+
+    @Override
+    public boolean supports(String command) {
+        return "dupes".equals(command.toLowerCase());
+    }
+}
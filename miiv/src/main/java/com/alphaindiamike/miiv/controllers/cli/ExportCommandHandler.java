@@ -0,0 +1,91 @@
+package com.alphaindiamike.miiv.controllers.cli;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.alphaindiamike.miiv.services.ExportService;
+import com.alphaindiamike.miiv.services.GlobalSettingsService;
+import com.alphaindiamike.miiv.services.chunks.ExportSummary;
+
+/**
+ * Exports a workspace file or folder, rebuilding files kept in the chunk store.
+ * Relative paths are taken relative to the workspace.
+ */
+@Component
+public class ExportCommandHandler implements CommandHandler{
+    private static final Logger logger = LoggerFactory.getLogger(ExportCommandHandler.class);
+    private static final String USAGE = "Usage: miiv export <workspace file or folder> <destination>";
+
+    private final GlobalSettingsService settingsService;
+    private final ExportService exportService;
+
+    @Autowired
+    public ExportCommandHandler(GlobalSettingsService settingsService, ExportService exportService) {
+        this.settingsService = settingsService;
+        this.exportService = exportService;
+    }
+
+    @Override
+    public CommandResponse handle(String[] args) {
+        String workspaceSetting = settingsService.getSetting("workspace_dir");
+        if (workspaceSetting == null) {
+            String message = "Workspace not initialized. Use miiv init {workspace_dir} to initialize the workspace location.";
+            System.out.println(message);
+            return new CommandResponse("", message, false);
+        }
+
+        CommandArguments arguments;
+        try {
+            arguments = CommandArguments.parse(args, Set.of());
+        } catch (IllegalArgumentException e) {
+            String message = e.getMessage() + ". " + USAGE;
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+        if (arguments.positionals().size() != 2) {
+            String message = "Incorrect command. " + USAGE;
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+
+        try {
+            Path workspace = Paths.get(workspaceSetting).toAbsolutePath().normalize();
+            Path from = workspace.resolve(arguments.positionals().get(0)).normalize();
+            Path destination = Paths.get(arguments.positionals().get(1)).toAbsolutePath().normalize();
+            if (!Files.exists(from)) {
+                String message = "Nothing to export at " + from;
+                logger.error(message);
+                return new CommandResponse("", message, false);
+            }
+            ExportSummary summary = exportService.export(workspace, from, destination);
+            String message = summary.summary();
+            System.out.println(message);
+            return new CommandResponse(message, "", summary.failed() == 0);
+        } catch (InvalidPathException e) {
+            String message = "The provided path is invalid: " + e.getMessage();
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        } catch (IllegalArgumentException e) {
+            String message = e.getMessage() + ". " + USAGE;
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        } catch (IOException e) {
+            String message = "The export failed: " + e.getMessage();
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+    }
+
+    @Override
+    public boolean supports(String command) {
+        return "export".equals(command.toLowerCase());
+    }
+}
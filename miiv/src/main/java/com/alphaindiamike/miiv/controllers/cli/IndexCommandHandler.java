@@ -0,0 +1,93 @@
+package com.alphaindiamike.miiv.controllers.cli;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.alphaindiamike.miiv.privatelib.exceptions.JournalException;
+import com.alphaindiamike.miiv.services.GlobalSettingsService;
+import com.alphaindiamike.miiv.services.IngestService;
+import com.alphaindiamike.miiv.services.ingest.ContentIndexSummary;
+
+/**
+ * Indexes the content of the workspace, so --dedup runs skip files already placed in it.
+ * --fpp also stores the false positive rate of the content filter as the new default.
+ */
+@Component
+public class IndexCommandHandler implements CommandHandler{
+    private static final Logger logger = LoggerFactory.getLogger(IndexCommandHandler.class);
+    private static final String USAGE = "Usage: miiv index [--fpp P] [--hashers N]";
+
+    private final GlobalSettingsService settingsService;
+    private final IngestService ingestService;
+
+    @Autowired
+    public IndexCommandHandler(GlobalSettingsService settingsService, IngestService ingestService) {
+        this.settingsService = settingsService;
+        this.ingestService = ingestService;
+    }
+
+    @Override
+    public CommandResponse handle(String[] args) {
+        String workspaceSetting = settingsService.getSetting("workspace_dir");
+        if (workspaceSetting == null) {
+            String message = "Workspace not initialized. Use miiv init {workspace_dir} to initialize the workspace location.";
+            System.out.println(message);
+            return new CommandResponse("", message, false);
+        }
+
+        CommandArguments arguments;
+        int threads;
+        double falsePositiveRate;
+        try {
+            arguments = CommandArguments.parse(args, Set.of());
+            threads = arguments.positiveIntOption("hashers", ingestService.defaultOptions().getHashThreads());
+            falsePositiveRate = arguments.fractionOption("fpp", ingestService.contentFilterFalsePositiveRate());
+        } catch (IllegalArgumentException e) {
+            String message = e.getMessage() + ". " + USAGE;
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+        if (!arguments.positionals().isEmpty()) {
+            String message = "Incorrect command. " + USAGE;
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+
+        try {
+            Path workspace = Paths.get(workspaceSetting).toAbsolutePath().normalize();
+            if (!Files.isDirectory(workspace)) {
+                String message = "The workspace " + workspace + " does not exist. Use miiv init or miiv set.";
+                logger.error(message);
+                return new CommandResponse("", message, false);
+            }
+            if (arguments.hasOption("fpp")) {
+                ingestService.saveContentFilterFalsePositiveRate(falsePositiveRate);
+            }
+            ContentIndexSummary summary = ingestService.indexWorkspace(workspace, threads);
+            String message = summary.summary();
+            System.out.println(message);
+            return new CommandResponse(message, "", summary.failed() == 0);
+        } catch (InvalidPathException e) {
+            String message = "The workspace path is invalid: " + e.getMessage();
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        } catch (IOException | JournalException e) {
+            String message = "The workspace could not be indexed: " + e.getMessage();
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+    }
+
+    @Override
+    public boolean supports(String command) {
+        return "index".equals(command.toLowerCase());
+    }
+}
@@ -0,0 +1,189 @@
+package com.alphaindiamike.miiv.controllers.cli;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alphaindiamike.miiv.privatelib.exceptions.JournalException;
+import com.alphaindiamike.miiv.services.GlobalSettingsService;
+import com.alphaindiamike.miiv.services.IngestService;
+import com.alphaindiamike.miiv.services.ingest.IngestOperation;
+import com.alphaindiamike.miiv.services.ingest.IngestOptions;
+import com.alphaindiamike.miiv.services.ingest.IngestReport;
+import com.alphaindiamike.miiv.services.ingest.IoExecutorMode;
+import com.alphaindiamike.miiv.services.ingest.RateLimits;
+import com.alphaindiamike.miiv.services.ingest.ScheduleMode;
+
+/**
+ * Shared argument handling of the copy and move commands.
+ */
+public abstract class IngestCommandHandler implements CommandHandler{
+    private static final Logger logger = LoggerFactory.getLogger(IngestCommandHandler.class);
+    private static final String RESUME_FLAG = "resume";
+    private static final String DEDUP_FLAG = "dedup";
+    private static final String CHUNK_VERSIONS_FLAG = "chunk-versions";
+    private static final String DATE_VERSIONS_FLAG = "date-versions";
+    private static final String PLAN_OPTION = "plan";
+    private static final long MEGABYTE = 1024L * 1024;
+
+    protected final GlobalSettingsService settingsService;
+    protected final IngestService ingestService;
+
+    protected IngestCommandHandler(GlobalSettingsService settingsService, IngestService ingestService) {
+        this.settingsService = settingsService;
+        this.ingestService = ingestService;
+    }
+
+    protected abstract IngestOperation operation();
+
+    /**
+     * Option names which do not take a value, in addition to --resume, --dedup, --chunk-versions and --date-versions.
+     */
+    protected Set<String> flags() {
+        return Set.of();
+    }
+
+    /**
+     * Picks the operation of this run; copy --link turns into a link operation.
+     */
+    protected IngestOperation operation(CommandArguments arguments) {
+        return operation();
+    }
+
+    /**
+     * Applies the options specific to the command.
+     */
+    protected void configure(CommandArguments arguments, IngestOptions options) {
+    }
+
+    protected abstract String usage();
+
+    private Set<String> allFlags() {
+        Set<String> flags = new HashSet<>(flags());
+        flags.add(RESUME_FLAG);
+        flags.add(DEDUP_FLAG);
+        flags.add(CHUNK_VERSIONS_FLAG);
+        flags.add(DATE_VERSIONS_FLAG);
+        return flags;
+    }
+
+    @Override
+    public CommandResponse handle(String[] args) {
+        String workspaceSetting = settingsService.getSetting("workspace_dir");
+        if (workspaceSetting == null) {
+            String message = "Workspace not initialized. Use miiv init {workspace_dir} to initialize the workspace location.";
+            System.out.println(message);
+            return new CommandResponse("", message, false);
+        }
+
+        CommandArguments arguments;
+        IngestOptions options = ingestService.defaultOptions();
+        try {
+            arguments = CommandArguments.parse(args, allFlags());
+            options.setWorkers(arguments.positiveIntOption("workers", options.getWorkers()));
+            options.setWalkThreads(arguments.positiveIntOption("walkers", options.getWalkThreads()));
+            options.setHashThreads(arguments.positiveIntOption("hashers", options.getHashThreads()));
+            options.setDeduplicate(arguments.hasOption(DEDUP_FLAG));
+            if (arguments.hasOption(CHUNK_VERSIONS_FLAG)) {
+                options.setChunkVersions(true);
+            }
+            if (arguments.hasOption(DATE_VERSIONS_FLAG)) {
+                options.setDateVersions(true);
+            }
+            if (arguments.hasOption("io")) {
+                options.setIoMode(IoExecutorMode.parse(arguments.option("io")));
+            }
+            options.setIoPermits(arguments.positiveIntOption("io-permits", options.getIoPermits()));
+            if (arguments.hasOption("schedule")) {
+                options.setScheduleMode(ScheduleMode.parse(arguments.option("schedule")));
+            }
+            RateLimits limits = options.getRateLimits();
+            options.setRateLimits(new RateLimits(
+                    arguments.nonNegativeLongOption("limit-mb", limits.bytesPerSecond() / MEGABYTE) * MEGABYTE,
+                    arguments.nonNegativeLongOption("limit-files", limits.filesPerSecond())));
+            configure(arguments, options);
+        } catch (IllegalArgumentException e) {
+            String message = e.getMessage() + ". " + usage();
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+        boolean resume = arguments.hasOption(RESUME_FLAG);
+        boolean planned = arguments.hasOption(PLAN_OPTION);
+        if (arguments.positionals().size() != (resume || planned ? 0 : 1) || (resume && planned)) {
+            String message = "Incorrect command. " + usage();
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+
+        try {
+            Path workspace = Paths.get(workspaceSetting).toAbsolutePath().normalize();
+            if (resume) {
+                return resume(arguments, workspace, options);
+            }
+            if (planned) {
+                return executePlan(arguments, workspace, options);
+            }
+            Path source = Paths.get(arguments.positionals().get(0)).toAbsolutePath().normalize();
+            if (!Files.isDirectory(source)) {
+                String message = "The provided source is not an existing directory. Please provide a valid directory path.";
+                logger.error(message);
+                return new CommandResponse("", message, false);
+            }
+            if (source.startsWith(workspace)) {
+                String message = "The provided source lies inside the workspace. Please provide a folder outside of " + workspace;
+                logger.error(message);
+                return new CommandResponse("", message, false);
+            }
+
+            return respond(ingestService.ingest(operation(arguments), source, workspace, options));
+        } catch (InvalidPathException e) {
+            logger.error("The provided path is invalid: {}", e.getMessage());
+        } catch (IOException | JournalException e) {
+            String message = "The operation could not be started: " + e.getMessage();
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+        return new CommandResponse("", "Missing or invalid path!", false);
+    }
+
+    private CommandResponse executePlan(CommandArguments arguments, Path workspace, IngestOptions options)
+            throws IOException {
+        Path planFile = Paths.get(arguments.option(PLAN_OPTION)).toAbsolutePath().normalize();
+        if (!Files.isRegularFile(planFile)) {
+            String message = "The provided plan is not an existing file. Create one with miiv plan <source>.";
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+        try {
+            return respond(ingestService.executePlan(operation(arguments), planFile, workspace, options));
+        } catch (IllegalArgumentException e) {
+            String message = e.getMessage() + ". Plan the source again against " + workspace;
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+    }
+
+    private CommandResponse resume(CommandArguments arguments, Path workspace, IngestOptions options) throws IOException {
+        IngestOperation operation = operation(arguments);
+        Optional<IngestReport> report = ingestService.resume(operation, workspace, options);
+        if (report.isEmpty()) {
+            String message = "Nothing to resume: no interrupted " + operation.name().toLowerCase() + " run in " + workspace;
+            System.out.println(message);
+            return new CommandResponse("", message, false);
+        }
+        return respond(report.get());
+    }
+
+    private CommandResponse respond(IngestReport report) {
+        String message = report.summary() + System.lineSeparator() + report.stageSummary();
+        System.out.println(message);
+        return new CommandResponse(message, "", report.failed() == 0);
+    }
+}
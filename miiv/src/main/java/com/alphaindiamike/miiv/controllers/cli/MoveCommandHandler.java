@@ -1,12 +1,49 @@
 package com.alphaindiamike.miiv.controllers.cli;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.alphaindiamike.miiv.services.GlobalSettingsService;
+import com.alphaindiamike.miiv.services.IngestService;
+import com.alphaindiamike.miiv.services.ingest.IngestOperation;
+import com.alphaindiamike.miiv.services.ingest.IngestOptions;
+
 @Component
-public class MoveCommandHandler implements CommandHandler{
+public class MoveCommandHandler extends IngestCommandHandler{
+    private static final String DELETE_DUPLICATES_FLAG = "delete-duplicates";
+
+    @Autowired
+    public MoveCommandHandler(GlobalSettingsService settingsService, IngestService ingestService) {
+        super(settingsService, ingestService);
+    }
+
+    @Override
+    protected IngestOperation operation() {
+        return IngestOperation.MOVE;
+    }
+
+    @Override
+    protected Set<String> flags() {
+        return Set.of(DELETE_DUPLICATES_FLAG);
+    }
+
+    /**
+     * --delete-duplicates implies --dedup.
+     */
+    @Override
+    protected void configure(CommandArguments arguments, IngestOptions options) {
+        if (arguments.hasOption(DELETE_DUPLICATES_FLAG)) {
+            options.setDeduplicate(true);
+            options.setDeleteDuplicates(true);
+        }
+    }
+
     @Override
-    public CommandResponse handle(String[] args) {
-    	System.out.println("Not implemented :(");
-		return null;
+    protected String usage() {
+        return "Usage: miiv move <source> [--workers N] [--walkers N] [--hashers N] [--dedup] [--delete-duplicates] [--chunk-versions]"
+                + " [--date-versions] [--io platform|virtual] [--io-permits N] [--limit-mb N] [--limit-files N]"
+                + " [--schedule walk|physical] | miiv move --plan <file> [options] | miiv move --resume";
     }
 
     @Override
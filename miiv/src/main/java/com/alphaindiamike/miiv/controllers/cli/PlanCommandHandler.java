@@ -0,0 +1,104 @@
+package com.alphaindiamike.miiv.controllers.cli;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.alphaindiamike.miiv.privatelib.functions.DatabaseFunctionsLib;
+import com.alphaindiamike.miiv.services.GlobalSettingsService;
+import com.alphaindiamike.miiv.services.IngestService;
+import com.alphaindiamike.miiv.services.ingest.IngestOptions;
+import com.alphaindiamike.miiv.services.ingest.PlanSummary;
+
+/**
+ * Previews the placement of a source in the workspace and writes it to a plan file,
+ * which miiv copy --plan executes later. The workspace is not touched.
+ */
+@Component
+public class PlanCommandHandler implements CommandHandler{
+    private static final Logger logger = LoggerFactory.getLogger(PlanCommandHandler.class);
+    private static final String USAGE = "Usage: miiv plan <source> [--out <file>] [--walkers N]";
+    private static final String PLANS_DIRECTORY = "plans";
+    private static final DateTimeFormatter PLAN_NAME = DateTimeFormatter.ofPattern("'plan-'yyyyMMdd-HHmmss'.plan.gz'");
+
+    private final GlobalSettingsService settingsService;
+    private final IngestService ingestService;
+
+    @Autowired
+    public PlanCommandHandler(GlobalSettingsService settingsService, IngestService ingestService) {
+        this.settingsService = settingsService;
+        this.ingestService = ingestService;
+    }
+
+    @Override
+    public CommandResponse handle(String[] args) {
+        String workspaceSetting = settingsService.getSetting("workspace_dir");
+        if (workspaceSetting == null) {
+            String message = "Workspace not initialized. Use miiv init {workspace_dir} to initialize the workspace location.";
+            System.out.println(message);
+            return new CommandResponse("", message, false);
+        }
+
+        CommandArguments arguments;
+        IngestOptions options = ingestService.defaultOptions();
+        try {
+            arguments = CommandArguments.parse(args, Set.of());
+            options.setWalkThreads(arguments.positiveIntOption("walkers", options.getWalkThreads()));
+        } catch (IllegalArgumentException e) {
+            String message = e.getMessage() + ". " + USAGE;
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+        if (arguments.positionals().size() != 1) {
+            String message = "Incorrect command. " + USAGE;
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+
+        try {
+            Path workspace = Paths.get(workspaceSetting).toAbsolutePath().normalize();
+            Path source = Paths.get(arguments.positionals().get(0)).toAbsolutePath().normalize();
+            if (!Files.isDirectory(source)) {
+                String message = "The provided source is not an existing directory. Please provide a valid directory path.";
+                logger.error(message);
+                return new CommandResponse("", message, false);
+            }
+            if (source.startsWith(workspace)) {
+                String message = "The provided source lies inside the workspace. Please provide a folder outside of " + workspace;
+                logger.error(message);
+                return new CommandResponse("", message, false);
+            }
+            Path planFile = arguments.hasOption("out")
+                    ? Paths.get(arguments.option("out")).toAbsolutePath().normalize()
+                    : DatabaseFunctionsLib.workspaceMetadataDirectory(workspace).resolve(PLANS_DIRECTORY)
+                            .resolve(LocalDateTime.now().format(PLAN_NAME));
+
+            PlanSummary summary = ingestService.plan(source, workspace, planFile, options);
+            String message = summary.summary();
+            System.out.println(message);
+            return new CommandResponse(message, "", summary.failed() == 0);
+        } catch (InvalidPathException e) {
+            String message = "The provided path is invalid: " + e.getMessage();
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        } catch (IOException e) {
+            String message = "The plan could not be written: " + e.getMessage();
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+    }
+
+    @Override
+    public boolean supports(String command) {
+        return "plan".equals(command.toLowerCase());
+    }
+}
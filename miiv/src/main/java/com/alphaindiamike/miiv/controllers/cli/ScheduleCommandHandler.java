@@ -0,0 +1,86 @@
+package com.alphaindiamike.miiv.controllers.cli;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.alphaindiamike.miiv.services.IngestService;
+import com.alphaindiamike.miiv.services.ingest.ScheduleMode;
+
+/**
+ * Shows or stores the read schedule of the device holding a source directory.
+ * Copy and move runs from that device use it unless --schedule is given.
+ */
+@Component
+public class ScheduleCommandHandler implements CommandHandler{
+    private static final Logger logger = LoggerFactory.getLogger(ScheduleCommandHandler.class);
+    private static final String USAGE = "Usage: miiv schedule <source> [walk|physical|default]";
+
+    private final IngestService ingestService;
+
+    @Autowired
+    public ScheduleCommandHandler(IngestService ingestService) {
+        this.ingestService = ingestService;
+    }
+
+    @Override
+    public CommandResponse handle(String[] args) {
+        CommandArguments arguments;
+        try {
+            arguments = CommandArguments.parse(args, Set.of());
+        } catch (IllegalArgumentException e) {
+            String message = e.getMessage() + ". " + USAGE;
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+        int count = arguments.positionals().size();
+        if (count < 1 || count > 2 || !arguments.options().isEmpty()) {
+            String message = "Incorrect command. " + USAGE;
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+
+        try {
+            Path source = Paths.get(arguments.positionals().get(0)).toAbsolutePath().normalize();
+            if (!Files.isDirectory(source)) {
+                String message = "The provided source is not an existing directory. Please provide a valid directory path.";
+                logger.error(message);
+                return new CommandResponse("", message, false);
+            }
+            if (count == 2) {
+                String requested = arguments.positionals().get(1);
+                ScheduleMode mode = "default".equalsIgnoreCase(requested) ? null : ScheduleMode.parse(requested);
+                String device = ingestService.setDeviceScheduleMode(source, mode);
+                logger.info("Schedule of device {} set to {}", device, requested);
+            }
+            String message = "Files on the device of " + source + " are read in "
+                    + ingestService.scheduleModeFor(source).name().toLowerCase() + " order.";
+            System.out.println(message);
+            return new CommandResponse(message, "", true);
+        } catch (InvalidPathException e) {
+            String message = "The provided path is invalid: " + e.getMessage();
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        } catch (IllegalArgumentException e) {
+            String message = e.getMessage() + ". " + USAGE;
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        } catch (IOException e) {
+            String message = "The device of the source could not be determined: " + e.getMessage();
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+    }
+
+    @Override
+    public boolean supports(String command) {
+        return "schedule".equals(command.toLowerCase());
+    }
+}
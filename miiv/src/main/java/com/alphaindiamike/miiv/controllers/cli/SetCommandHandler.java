@@ -9,7 +9,6 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import com.alphaindiamike.miiv.model.filesystem.RepositoryScheme;
 import com.alphaindiamike.miiv.privatelib.functions.FileSystemFunctionsLib;
 import com.alphaindiamike.miiv.services.ConfigurationLoaderService;
 import com.alphaindiamike.miiv.services.GlobalSettingsService;
@@ -22,13 +21,13 @@ public class SetCommandHandler implements CommandHandler{
     // Assuming GlobalSettingsService and ProgramStateService follow the singleton pattern
     private final GlobalSettingsService settingsService;
     private final ProgramStateService programState;
-    private final RepositoryScheme repositoryScheme;
+    private final ConfigurationLoaderService configurationLoader;
     
     @Autowired
     public SetCommandHandler(GlobalSettingsService settingsService,
     		ConfigurationLoaderService configurationLoader,
     		ProgramStateService programState) {
-		this.repositoryScheme = configurationLoader.getRepositoryScheme();
+		this.configurationLoader = configurationLoader;
     	this.settingsService = settingsService;
     	this.programState = programState;
     }
@@ -80,7 +79,7 @@ public class SetCommandHandler implements CommandHandler{
 
                 // Valid path: Proceed with initialization logic
                 settingsService.setSetting("workspace_dir", path.toString());
-                FileSystemFunctionsLib.createDirectoryStructure(repositoryScheme, path.toString());
+                FileSystemFunctionsLib.createDirectoryStructure(configurationLoader.getRepositoryScheme(), path.toString());
                 programState.triggerStateTransition(new WorkspaceReadyState(path.toString()), new String[]{path.toString()});
                 String message = "Workspace succesfully changed to: " + settingsService.getSetting("workspace_dir");
                 System.out.println(message);
@@ -0,0 +1,92 @@
+package com.alphaindiamike.miiv.controllers.cli;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.alphaindiamike.miiv.privatelib.exceptions.JournalException;
+import com.alphaindiamike.miiv.services.GlobalSettingsService;
+import com.alphaindiamike.miiv.services.IngestService;
+import com.alphaindiamike.miiv.services.ingest.RateLimits;
+
+/**
+ * Changes the I/O budget of the copy or move running in the workspace, and optionally the defaults
+ * of future runs. Limits not given on the command line fall back to the stored defaults.
+ */
+@Component
+public class ThrottleCommandHandler implements CommandHandler{
+    private static final Logger logger = LoggerFactory.getLogger(ThrottleCommandHandler.class);
+    private static final String USAGE = "Usage: miiv throttle [--limit-mb N] [--limit-files N] [--default]";
+    private static final String DEFAULT_FLAG = "default";
+    private static final long MEGABYTE = 1024L * 1024;
+
+    private final GlobalSettingsService settingsService;
+    private final IngestService ingestService;
+
+    @Autowired
+    public ThrottleCommandHandler(GlobalSettingsService settingsService, IngestService ingestService) {
+        this.settingsService = settingsService;
+        this.ingestService = ingestService;
+    }
+
+    @Override
+    public CommandResponse handle(String[] args) {
+        String workspaceSetting = settingsService.getSetting("workspace_dir");
+        if (workspaceSetting == null) {
+            String message = "Workspace not initialized. Use miiv init {workspace_dir} to initialize the workspace location.";
+            System.out.println(message);
+            return new CommandResponse("", message, false);
+        }
+
+        RateLimits defaults = ingestService.defaultRateLimits();
+        long megabytes;
+        long files;
+        CommandArguments arguments;
+        try {
+            arguments = CommandArguments.parse(args, Set.of(DEFAULT_FLAG));
+            megabytes = arguments.nonNegativeLongOption("limit-mb", defaults.bytesPerSecond() / MEGABYTE);
+            files = arguments.nonNegativeLongOption("limit-files", defaults.filesPerSecond());
+        } catch (IllegalArgumentException e) {
+            String message = e.getMessage() + ". " + USAGE;
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+        if (!arguments.positionals().isEmpty()) {
+            String message = "Incorrect command. " + USAGE;
+            logger.error(message);
+            return new CommandResponse("", message, false);
+        }
+
+        RateLimits limits = RateLimits.ofMegabytes(megabytes, files);
+        StringBuilder message = new StringBuilder();
+        if (arguments.hasOption(DEFAULT_FLAG)) {
+            ingestService.saveDefaultRateLimits(megabytes, files);
+            message.append("Default rate limits set to ").append(limits.describe()).append(". ");
+        }
+        try {
+            Path workspace = Paths.get(workspaceSetting).toAbsolutePath().normalize();
+            int runs = ingestService.adjustRateLimits(workspace, limits);
+            if (runs == 0) {
+                message.append("No copy or move is running in ").append(workspace).append('.');
+            } else {
+                message.append("Rate limits of ").append(runs).append(" unfinished run(s) set to ")
+                        .append(limits.describe()).append('.');
+            }
+        } catch (JournalException e) {
+            String error = "The rate limits could not be changed: " + e.getMessage();
+            logger.error(error);
+            return new CommandResponse("", error, false);
+        }
+        System.out.println(message);
+        return new CommandResponse(message.toString(), "", true);
+    }
+
+    @Override
+    public boolean supports(String command) {
+        return "throttle".equals(command.toLowerCase());
+    }
+}
@@ -0,0 +1,476 @@
+package com.alphaindiamike.miiv.model.filesystem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import com.alphaindiamike.miiv.privatelib.functions.Murmur3Hash128;
+
+/**
+ * Memory-mapped index of the file catalog in .miiv/catalog.index, next to catalog.db: finds the
+ * catalog id of a path, and the ids of the files with a content hash, without a database query.
+ * <p>
+ * The file is an open-addressing hash table with linear probing over fixed-width slots of four
+ * little-endian longs: a 128-bit key, for a path the MurmurHash3 of its UTF-8 bytes and for a
+ * content the first 16 bytes of its SHA-256; for a path the first half of the key of its content;
+ * and the kind of the entry with the id. A 64-byte header holds the table size, the slots in use
+ * and the catalog sequence the table reflects.
+ * <p>
+ * Opening the index maps the file, nothing is read into the heap, and the pages are shared with
+ * every other process mapping it. Slots are filled before their kind is published, with release and
+ * acquire ordering, so readers never see half an entry. Entries are not deleted in place but
+ * marked, so a slot never changes its key while a reader looks at it. Above
+ * {@value #MAX_LOAD_PERCENT}% use the table is copied into a new file of twice the size which
+ * replaces the old one; the old header is flagged, and mappings of it, also in other processes,
+ * move to the new file on their next lookup.
+ * <p>
+ * Writers are serialized by the caller; {@link SqliteFileEntityDAO} updates the index inside its
+ * write transaction.
+ */
+public final class CatalogIndex implements AutoCloseable {
+    public static final String INDEX_FILE = "catalog.index";
+    public static final long NO_ID = -1;
+    /** The sequence of an index whose update did not complete. */
+    public static final long NO_SEQUENCE = -1;
+    private static final long MAGIC = 0x4d4949565f494458L; // MIIV_IDX
+    private static final long VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 32;
+    // 2^24 slots, 512 MB, per mapping
+    private static final int SEGMENT_BITS = 24;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+    private static final long MIN_SLOTS = 1L << 12;
+    private static final int MAX_LOAD_PERCENT = 70;
+
+    private static final int MAGIC_AT = 0;
+    private static final int VERSION_AT = 8;
+    private static final int SLOTS_AT = 16;
+    private static final int USED_AT = 24;
+    private static final int SEQUENCE_AT = 32;
+    private static final int REPLACED_AT = 40;
+
+    private static final int KEY_HIGH = 0;
+    private static final int KEY_LOW = 8;
+    private static final int CONTENT_HIGH = 16;
+    private static final int ENTRY = 24;
+    private static final long PATH = 1L << 62;
+    private static final long CONTENT = 2L << 62;
+    private static final long DELETED = 3L << 62;
+    private static final long KIND_MASK = 3L << 62;
+    private static final long ID_MASK = ~KIND_MASK;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final ThreadLocal<Murmur3Hash128> pathHash = ThreadLocal.withInitial(Murmur3Hash128::new);
+
+    private final Path file;
+    private volatile Mapping mapping;
+    private boolean written;
+
+    /**
+     * A catalog file to index; the hash is its SHA-256, or null if it is unknown.
+     */
+    public record Entry(
+    		long id,
+    		String path,
+    		byte[] hash
+    		) {
+    }
+
+    /**
+     * One mapping of the file: the header and the slots, in segments of 2^{@value #SEGMENT_BITS}.
+     */
+    private record Mapping(
+    		FileChannel channel,
+    		MappedByteBuffer header,
+    		MappedByteBuffer[] segments,
+    		long slots
+    		) {
+
+        long get(long slot, int word) {
+            return (long) LONGS.get(segments[(int) (slot >>> SEGMENT_BITS)], offset(slot, word));
+        }
+
+        long getAcquire(long slot, int word) {
+            return (long) LONGS.getAcquire(segments[(int) (slot >>> SEGMENT_BITS)], offset(slot, word));
+        }
+
+        void set(long slot, int word, long value) {
+            LONGS.set(segments[(int) (slot >>> SEGMENT_BITS)], offset(slot, word), value);
+        }
+
+        void setRelease(long slot, int word, long value) {
+            LONGS.setRelease(segments[(int) (slot >>> SEGMENT_BITS)], offset(slot, word), value);
+        }
+
+        long header(int at) {
+            return (long) LONGS.getAcquire(header, at);
+        }
+
+        void header(int at, long value) {
+            LONGS.setRelease(header, at, value);
+        }
+
+        private static int offset(long slot, int word) {
+            return (int) ((slot & SEGMENT_MASK) * SLOT_BYTES) + word;
+        }
+    }
+
+    private CatalogIndex(Path file, Mapping mapping) {
+        this.file = file;
+        this.mapping = mapping;
+    }
+
+    /**
+     * Maps the index file.
+     *
+     * @return The index, or null if the file is missing or not an index of this version; build it with
+     *         {@link #build}.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public static CatalogIndex open(Path file) throws IOException {
+        Mapping mapping = map(file);
+        return mapping == null ? null : new CatalogIndex(file, mapping);
+    }
+
+    private static Mapping map(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < HEADER_BYTES) {
+                channel.close();
+                return null;
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            long slots = (long) LONGS.get(header, SLOTS_AT);
+            if ((long) LONGS.get(header, MAGIC_AT) != MAGIC || (long) LONGS.get(header, VERSION_AT) != VERSION
+                    || slots < MIN_SLOTS || Long.bitCount(slots) != 1
+                    || channel.size() != HEADER_BYTES + slots * SLOT_BYTES) {
+                channel.close();
+                return null;
+            }
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((slots + SEGMENT_MASK) >>> SEGMENT_BITS)];
+            for (int i = 0; i < segments.length; i++) {
+                long first = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + first * SLOT_BYTES,
+                        Math.min(slots - first, 1L << SEGMENT_BITS) * SLOT_BYTES);
+            }
+            return new Mapping(channel, header, segments, slots);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes a new index of the entries to a temporary file and moves it over the index file. The old
+     * file, if any, is flagged as replaced.
+     *
+     * @param file     The index file.
+     * @param files    The number of entries, to size the table.
+     * @param entries  The entries; read once.
+     * @param sequence The catalog sequence the entries reflect.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void build(Path file, long files, Iterable<Entry> entries, long sequence) throws IOException {
+        Path temporary = temporaryOf(file);
+        try {
+            Mapping built = create(temporary, files);
+            try {
+                for (Entry entry : entries) {
+                    put(built, entry);
+                }
+                publish(built, temporary, file, sequence);
+            } finally {
+                built.channel().close();
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static Path temporaryOf(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    /**
+     * Creates an empty table sized for the files, a path and a content slot each, below the maximum load.
+     */
+    private static Mapping create(Path temporary, long files) throws IOException {
+        long slots = MIN_SLOTS;
+        while (slots * MAX_LOAD_PERCENT / 100 < 2 * files + MIN_SLOTS / 2) {
+            slots <<= 1;
+        }
+        Files.createDirectories(temporary.toAbsolutePath().getParent());
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(MAGIC_AT, MAGIC).putLong(VERSION_AT, VERSION).putLong(SLOTS_AT, slots)
+                    .putLong(SEQUENCE_AT, NO_SEQUENCE);
+            channel.write(header, 0);
+            // Sparse: the slots read as zeros, which marks them empty
+            channel.write(ByteBuffer.allocate(1), HEADER_BYTES + slots * SLOT_BYTES - 1);
+        }
+        return map(temporary);
+    }
+
+    /**
+     * Forces the new table to disk, moves it over the index file and flags the old file as replaced.
+     */
+    private static void publish(Mapping built, Path temporary, Path file, long sequence) throws IOException {
+        built.header(SEQUENCE_AT, sequence);
+        for (MappedByteBuffer segment : built.segments()) {
+            segment.force();
+        }
+        built.header().force();
+        Mapping old = map(file);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (old != null) {
+            old.header(REPLACED_AT, 1);
+            old.channel().close();
+        }
+    }
+
+    /**
+     * The current mapping; a mapping of a replaced file is swapped for one of the new file.
+     */
+    private Mapping current() {
+        Mapping current = mapping;
+        if (current.header(REPLACED_AT) == 0) {
+            return current;
+        }
+        synchronized (this) {
+            if (mapping == current) {
+                try {
+                    Mapping replacement = map(file);
+                    if (replacement == null) {
+                        throw new IllegalStateException("The catalog index " + file + " was removed");
+                    }
+                    mapping = replacement;
+                    current.channel().close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to map the catalog index " + file + " again", e);
+                }
+            }
+            return mapping;
+        }
+    }
+
+    /**
+     * The catalog sequence the index reflects, {@link #NO_SEQUENCE} if an update did not complete.
+     */
+    public long sequence() {
+        return current().header(SEQUENCE_AT);
+    }
+
+    /**
+     * @return The catalog id of the path, or {@link #NO_ID}.
+     */
+    public long idOf(String path) {
+        Mapping table = current();
+        long[] key = pathKey(path);
+        long mask = table.slots() - 1;
+        for (long slot = home(key[0], mask); ; slot = (slot + 1) & mask) {
+            long entry = table.getAcquire(slot, ENTRY);
+            if (entry == 0) {
+                return NO_ID;
+            }
+            if ((entry & KIND_MASK) == PATH && table.get(slot, KEY_HIGH) == key[0] && table.get(slot, KEY_LOW) == key[1]) {
+                return entry & ID_MASK;
+            }
+        }
+    }
+
+    /**
+     * @return The catalog ids of the files with the SHA-256, in no particular order.
+     */
+    public long[] idsOf(byte[] hash) {
+        Mapping table = current();
+        long[] key = contentKey(hash);
+        long mask = table.slots() - 1;
+        long[] ids = new long[0];
+        for (long slot = home(key[0], mask); ; slot = (slot + 1) & mask) {
+            long entry = table.getAcquire(slot, ENTRY);
+            if (entry == 0) {
+                return ids;
+            }
+            if ((entry & KIND_MASK) == CONTENT && table.get(slot, KEY_HIGH) == key[0] && table.get(slot, KEY_LOW) == key[1]) {
+                ids = Arrays.copyOf(ids, ids.length + 1);
+                ids[ids.length - 1] = entry & ID_MASK;
+            }
+        }
+    }
+
+    /**
+     * Adds or updates the entries and records the catalog sequence they bring the index to. The
+     * sequence reads {@link #NO_SEQUENCE} while the update is in progress, so an index left behind
+     * by a failed update is recognized as stale. Grows the table first if needed.
+     *
+     * @throws IOException if the table cannot be grown.
+     */
+    public synchronized void putAll(List<Entry> entries, long sequence) throws IOException {
+        Mapping table = current();
+        if ((table.header(USED_AT) + 2L * entries.size()) * 100 > table.slots() * MAX_LOAD_PERCENT) {
+            grow(table, entries.size());
+            table = current();
+        }
+        written = true;
+        table.header(SEQUENCE_AT, NO_SEQUENCE);
+        for (Entry entry : entries) {
+            put(table, entry);
+        }
+        table.header(SEQUENCE_AT, sequence);
+    }
+
+    /**
+     * Marks the index stale, after an update of the catalog failed part way.
+     */
+    public synchronized void invalidate() {
+        written = true;
+        current().header(SEQUENCE_AT, NO_SEQUENCE);
+    }
+
+    private static void put(Mapping table, Entry entry) {
+        long[] key = pathKey(entry.path());
+        long[] content = entry.hash() == null ? null : contentKey(entry.hash());
+        long mask = table.slots() - 1;
+        long slot = home(key[0], mask);
+        for (long found; (found = table.get(slot, ENTRY)) != 0; slot = (slot + 1) & mask) {
+            if ((found & KIND_MASK) == PATH && table.get(slot, KEY_HIGH) == key[0] && table.get(slot, KEY_LOW) == key[1]) {
+                long id = found & ID_MASK;
+                long contentHigh = table.get(slot, CONTENT_HIGH);
+                if (id == entry.id() && content != null && contentHigh == content[0]) {
+                    return;
+                }
+                if (contentHigh != 0) {
+                    deleteContent(table, contentHigh, id);
+                }
+                table.set(slot, CONTENT_HIGH, content == null ? 0 : content[0]);
+                table.setRelease(slot, ENTRY, PATH | entry.id());
+                if (content != null) {
+                    insert(table, content, 0, CONTENT | entry.id());
+                }
+                return;
+            }
+        }
+        insert(table, key, content == null ? 0 : content[0], PATH | entry.id());
+        if (content != null) {
+            insert(table, content, 0, CONTENT | entry.id());
+        }
+    }
+
+    private static void insert(Mapping table, long[] key, long contentHigh, long entry) {
+        long mask = table.slots() - 1;
+        long slot = home(key[0], mask);
+        while (table.get(slot, ENTRY) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table.set(slot, KEY_HIGH, key[0]);
+        table.set(slot, KEY_LOW, key[1]);
+        table.set(slot, CONTENT_HIGH, contentHigh);
+        table.setRelease(slot, ENTRY, entry);
+        table.header(USED_AT, table.header(USED_AT) + 1);
+    }
+
+    private static void deleteContent(Mapping table, long contentHigh, long id) {
+        long mask = table.slots() - 1;
+        for (long slot = home(contentHigh, mask), found; (found = table.get(slot, ENTRY)) != 0; slot = (slot + 1) & mask) {
+            if (found == (CONTENT | id) && table.get(slot, KEY_HIGH) == contentHigh) {
+                table.setRelease(slot, ENTRY, DELETED);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copies the live slots into a new table of twice the size they and the entries being added
+     * need, dropping deleted slots, and replaces the file with it.
+     */
+    private void grow(Mapping table, int adding) throws IOException {
+        long live = 0;
+        for (long slot = 0; slot < table.slots(); slot++) {
+            if ((table.get(slot, ENTRY) & KIND_MASK) == PATH) {
+                live++;
+            }
+        }
+        Path temporary = temporaryOf(file);
+        try {
+            // Room for as many files again, so a growing catalog is not copied at every few batches
+            Mapping grown = create(temporary, 2 * (live + adding));
+            try {
+                for (long slot = 0; slot < table.slots(); slot++) {
+                    long entry = table.get(slot, ENTRY);
+                    if (entry != 0 && (entry & KIND_MASK) != DELETED) {
+                        insert(grown, new long[]{table.get(slot, KEY_HIGH), table.get(slot, KEY_LOW)},
+                                table.get(slot, CONTENT_HIGH), entry);
+                    }
+                }
+                publish(grown, temporary, file, table.header(SEQUENCE_AT));
+            } finally {
+                grown.channel().close();
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * The first slot to probe for a key. The key is mixed first, so keys which are not well spread,
+     * such as hashes differing in few bits, do not fill runs of neighbouring slots.
+     */
+    private static long home(long keyHigh, long mask) {
+        long h = keyHigh;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h & mask;
+    }
+
+    private static long[] pathKey(String path) {
+        Murmur3Hash128 murmur = pathHash.get();
+        murmur.reset();
+        murmur.update(ByteBuffer.wrap(path.getBytes(StandardCharsets.UTF_8)));
+        ByteBuffer digest = ByteBuffer.wrap(murmur.digest()).order(ByteOrder.LITTLE_ENDIAN);
+        return new long[]{digest.getLong(0), digest.getLong(8)};
+    }
+
+    private static long[] contentKey(byte[] hash) {
+        ByteBuffer digest = ByteBuffer.wrap(hash).order(ByteOrder.LITTLE_ENDIAN);
+        return new long[]{digest.getLong(0), digest.getLong(8)};
+    }
+
+    /**
+     * Forces what this instance wrote to disk and unmaps the file.
+     *
+     * @throws IOException if the file cannot be forced or closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        Mapping current = mapping;
+        try {
+            if (written) {
+                for (MappedByteBuffer segment : current.segments()) {
+                    segment.force();
+                }
+                current.header().force();
+            }
+        } finally {
+            current.channel().close();
+        }
+    }
+}
@@ -1,5 +1,117 @@
 package com.alphaindiamike.miiv.model.filesystem;
 
+import java.time.LocalDate;
+
+/**
+ * A file of the workspace as recorded in the catalog. The path, relative to the workspace with "/"
+ * separators, identifies the file; the catalog also numbers it, 0 until it is saved. The node is the path of the scheme folder holding the file. The hash is the
+ * SHA-256 of the content, null if it was not computed, the content type the file type it was routed
+ * by, and the document date the one its name was dated with, null for undated files.
+ */
 public class FileEntity {
+    private long id;
+    private String path;
+    private String node;
+    private long size;
+    private long modified;
+    private byte[] hash;
+    private String contentType;
+    private LocalDate documentDate;
+    private long cataloged;
+
+    // Constructors
+    public FileEntity() {
+    }
+
+    public FileEntity(String path, String node, long size, long modified, byte[] hash, String contentType,
+            LocalDate documentDate, long cataloged) {
+        this.path = path;
+        this.node = node;
+        this.size = size;
+        this.modified = modified;
+        this.hash = hash;
+        this.contentType = contentType;
+        this.documentDate = documentDate;
+        this.cataloged = cataloged;
+    }
+
+    // Getters
+    public long getId() {
+        return id;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * The modification time of the file in milliseconds since the epoch.
+     */
+    public long getModified() {
+        return modified;
+    }
+
+    public byte[] getHash() {
+        return hash;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public LocalDate getDocumentDate() {
+        return documentDate;
+    }
+
+    /**
+     * When the file was recorded, in milliseconds since the epoch.
+     */
+    public long getCataloged() {
+        return cataloged;
+    }
+
+    // Setters
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public void setNode(String node) {
+        this.node = node;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public void setModified(long modified) {
+        this.modified = modified;
+    }
+
+    public void setHash(byte[] hash) {
+        this.hash = hash;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public void setDocumentDate(LocalDate documentDate) {
+        this.documentDate = documentDate;
+    }
 
+    public void setCataloged(long cataloged) {
+        this.cataloged = cataloged;
+    }
 }
@@ -1,6 +1,51 @@
 package com.alphaindiamike.miiv.model.filesystem;
 
-public interface FileEntityDAO {
+import java.util.Collection;
+import java.util.List;
+
+import com.alphaindiamike.miiv.privatelib.exceptions.CatalogException;
+
+/**
+ * The catalog of workspace files. Saving a path already in the catalog replaces its entry and keeps its id.
+ * Implementations may buffer saves; they are visible to the finders of the same DAO at once and
+ * written at the latest on {@link #close()}. Failures surface as {@link CatalogException}.
+ */
+public interface FileEntityDAO extends AutoCloseable {
 	void save(FileEntity fileEntity);
+
+	/**
+	 * Saves many files at once, in one transaction.
+	 */
+	void saveAll(Collection<FileEntity> fileEntities);
+
+	/**
+	 * @param id The workspace-relative path.
+	 * @return The file, or null if it is not in the catalog.
+	 */
     FileEntity findById(String id);
+
+    /**
+     * @return The files with the content of the SHA-256 digest, ordered by path.
+     */
+    List<FileEntity> findByHash(byte[] hash);
+
+    /**
+     * @return The files directly in the scheme folder, ordered by path.
+     */
+    List<FileEntity> findByNode(String node);
+
+    /**
+     * @return The catalog id of the workspace-relative path, or -1 if it is not in the catalog.
+     */
+    long idOf(String path);
+
+    /**
+     * @return The catalog ids of the files with the content of the SHA-256 digest, in no particular order.
+     */
+    long[] idsOf(byte[] hash);
+
+    long count();
+
+    @Override
+    void close();
 }
@@ -59,6 +59,10 @@ public class RepositoryScheme {
         return template;
     }
 
+    public List<String> getType() {
+        return type;
+    }
+
     // Setters
     public void setName(String name) {
         this.name = name;
@@ -87,6 +91,10 @@ public class RepositoryScheme {
     public void setTemplate(Template template) {
         this.template = template;
     }
+
+    public void setType(List<String> type) {
+        this.type = type;
+    }
     
     public ContentRoutine getContent() {
         return content;
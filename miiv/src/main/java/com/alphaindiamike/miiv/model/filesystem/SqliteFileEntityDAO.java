@@ -0,0 +1,495 @@
+package com.alphaindiamike.miiv.model.filesystem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alphaindiamike.miiv.privatelib.exceptions.CatalogException;
+import com.alphaindiamike.miiv.privatelib.functions.DatabaseFunctionsLib;
+
+/**
+ * The file catalog of a workspace in .miiv/catalog.db, a database of its own so its write-ahead log
+ * does not change how the other workspace tables are journaled.
+ * <p>
+ * The database runs in WAL mode with synchronous=NORMAL: a commit appends to the log without waiting
+ * for the disk, and readers in other processes are not blocked by a writing ingest. Saves are
+ * buffered and written in one transaction per {@value #MAX_PENDING} files, each statement inserting
+ * up to {@value #ROWS_PER_STATEMENT} rows, so a million files take a few hundred commits instead of
+ * a million. Statements are prepared once per connection and kept, inserts per row count.
+ * <p>
+ * Paths and hashes are looked up in the memory-mapped {@link CatalogIndex} first: a path or hash not
+ * in the catalog is answered without a query, and {@link #idsOf} never queries. An id found for a
+ * path is checked against the row before it is returned. Lookups only write the buffered saves first
+ * when one of them has the path or hash looked up. The index is updated within the write
+ * transaction, together with a sequence number kept in the user_version of the database; an index
+ * whose sequence differs from the catalog's is rebuilt from the catalog, and an index touched by a
+ * write that rolled back is no longer used. Without a usable index, lookups query the catalog.
+ */
+public class SqliteFileEntityDAO implements FileEntityDAO {
+    private static final Logger logger = LoggerFactory.getLogger(SqliteFileEntityDAO.class);
+    public static final String CATALOG_DATABASE_FILE = "catalog.db";
+    private static final String COLUMNS = "path, node, size, modified, hash, content_type, document_date, cataloged";
+    private static final int COLUMN_COUNT = 8;
+    // 8 columns by 256 rows stay well below the 32766 parameters SQLite accepts
+    private static final int ROWS_PER_STATEMENT = 256;
+    private static final int MAX_PENDING = 8192;
+
+    private final Connection connection;
+    private final Path indexFile;
+    private final Map<Integer, PreparedStatement> inserts = new HashMap<>();
+    private final PreparedStatement selectById;
+    private final PreparedStatement selectByPath;
+    private final PreparedStatement selectByHash;
+    private final PreparedStatement selectByNode;
+    private final PreparedStatement selectIdByPath;
+    private final PreparedStatement selectPathById;
+    private final PreparedStatement selectIdsByHash;
+    private final PreparedStatement selectCount;
+    // Keyed by path, so a path saved twice before a flush is written once, with its last entry
+    private final Map<String, FileEntity> pending = new LinkedHashMap<>();
+    // Hashes of the pending files, so lookups of other hashes need not write them first
+    private final Set<ByteBuffer> pendingHashes = new HashSet<>();
+    private CatalogIndex index;
+
+    private SqliteFileEntityDAO(Connection connection, Path indexFile) throws SQLException {
+        this.connection = connection;
+        this.indexFile = indexFile;
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode = WAL");
+            statement.execute("PRAGMA synchronous = NORMAL");
+            statement.execute("CREATE TABLE IF NOT EXISTS file_catalog (id INTEGER PRIMARY KEY, path TEXT NOT NULL UNIQUE, "
+                    + "node TEXT NOT NULL, size INTEGER NOT NULL, modified INTEGER NOT NULL, hash BLOB, content_type TEXT, "
+                    + "document_date TEXT, cataloged INTEGER NOT NULL)");
+            statement.execute("CREATE INDEX IF NOT EXISTS file_catalog_hash ON file_catalog (hash)");
+            statement.execute("CREATE INDEX IF NOT EXISTS file_catalog_node ON file_catalog (node)");
+        }
+        String select = "SELECT id, " + COLUMNS + " FROM file_catalog ";
+        selectById = connection.prepareStatement(select + "WHERE id = ?");
+        selectByPath = connection.prepareStatement(select + "WHERE path = ?");
+        selectByHash = connection.prepareStatement(select + "WHERE hash = ? ORDER BY path");
+        selectByNode = connection.prepareStatement(select + "WHERE node = ? ORDER BY path");
+        selectIdByPath = connection.prepareStatement("SELECT id FROM file_catalog WHERE path = ?");
+        selectPathById = connection.prepareStatement("SELECT path FROM file_catalog WHERE id = ?");
+        selectIdsByHash = connection.prepareStatement("SELECT id FROM file_catalog WHERE hash = ?");
+        selectCount = connection.prepareStatement("SELECT COUNT(*) FROM file_catalog");
+    }
+
+    /**
+     * Opens the catalog of a workspace and maps its index, creating both if needed.
+     *
+     * @throws SQLException if the database cannot be opened.
+     */
+    public static SqliteFileEntityDAO open(Path workspace) throws SQLException {
+        Path metadata = DatabaseFunctionsLib.workspaceMetadataDirectory(workspace);
+        Connection connection = DatabaseFunctionsLib.openDatabase(metadata.resolve(CATALOG_DATABASE_FILE));
+        SqliteFileEntityDAO catalog;
+        try {
+            catalog = new SqliteFileEntityDAO(connection, metadata.resolve(CatalogIndex.INDEX_FILE));
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        catalog.openIndex();
+        return catalog;
+    }
+
+    /**
+     * Maps the index, rebuilding it if it is missing or does not reflect the catalog.
+     */
+    private void openIndex() {
+        try {
+            index = CatalogIndex.open(indexFile);
+            if (index == null || index.sequence() != currentSequence()) {
+                logger.debug("Rebuilding the catalog index {}", indexFile);
+                connection.setAutoCommit(false);
+                try {
+                    rebuildIndex(nextSequence());
+                    connection.commit();
+                } catch (SQLException | IOException | RuntimeException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            }
+        } catch (SQLException | IOException | RuntimeException e) {
+            dropIndex("open", e);
+        }
+    }
+
+    private void rebuildIndex(long sequence) throws SQLException, IOException {
+        long files;
+        try (ResultSet rs = selectCount.executeQuery()) {
+            files = rs.next() ? rs.getLong(1) : 0;
+        }
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT id, path, hash FROM file_catalog")) {
+            CatalogIndex.build(indexFile, files, () -> new IndexEntries(rs), sequence);
+        }
+        if (index == null) {
+            index = CatalogIndex.open(indexFile);
+        }
+    }
+
+    /**
+     * The rows of a query of id, path and hash as index entries.
+     */
+    private static final class IndexEntries implements Iterator<CatalogIndex.Entry> {
+        private final ResultSet rs;
+        private Boolean hasNext;
+
+        IndexEntries(ResultSet rs) {
+            this.rs = rs;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (hasNext == null) {
+                try {
+                    hasNext = rs.next();
+                } catch (SQLException e) {
+                    throw new CatalogException("Failed to read the file catalog due to " + e.getMessage(), e);
+                }
+            }
+            return hasNext;
+        }
+
+        @Override
+        public CatalogIndex.Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            hasNext = null;
+            try {
+                return new CatalogIndex.Entry(rs.getLong(1), rs.getString(2), rs.getBytes(3));
+            } catch (SQLException e) {
+                throw new CatalogException("Failed to read the file catalog due to " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private long currentSequence() throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Advances the sequence within the current transaction.
+     */
+    private long nextSequence() throws SQLException {
+        long sequence = currentSequence() + 1;
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA user_version = " + sequence);
+        }
+        return sequence;
+    }
+
+    /**
+     * The index is an optimization: after an error it is unmapped and the catalog queried instead.
+     * Its file is rebuilt when the catalog is opened next.
+     */
+    private void dropIndex(String action, Exception e) {
+        logger.warn("Failed to {} the catalog index, querying the catalog instead: {}", action, e.getMessage());
+        unmapIndex();
+    }
+
+    /**
+     * Marks the index stale and stops using it.
+     */
+    private void unmapIndex() {
+        if (index != null) {
+            try {
+                index.invalidate();
+                index.close();
+            } catch (IOException | RuntimeException closing) {
+                logger.debug("Failed to close the catalog index: {}", closing.getMessage());
+            }
+            index = null;
+        }
+    }
+
+    @Override
+    public synchronized void save(FileEntity fileEntity) {
+        buffer(fileEntity);
+        if (pending.size() >= MAX_PENDING) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void saveAll(Collection<FileEntity> fileEntities) {
+        for (FileEntity fileEntity : fileEntities) {
+            buffer(fileEntity);
+        }
+        flush();
+    }
+
+    private void buffer(FileEntity fileEntity) {
+        pending.put(fileEntity.getPath(), fileEntity);
+        if (fileEntity.getHash() != null) {
+            pendingHashes.add(ByteBuffer.wrap(fileEntity.getHash()));
+        }
+    }
+
+    /**
+     * Writes the buffered saves if one of them has the path.
+     */
+    private void flushPath(String path) {
+        if (pending.containsKey(path)) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the buffered saves if one of them may have the hash.
+     */
+    private void flushHash(byte[] hash) {
+        if (hash != null && pendingHashes.contains(ByteBuffer.wrap(hash))) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized FileEntity findById(String id) {
+        flushPath(id);
+        if (index != null) {
+            long found = index.idOf(id);
+            if (found == CatalogIndex.NO_ID) {
+                return null;
+            }
+            List<FileEntity> files = query(selectById, found);
+            if (!files.isEmpty() && files.get(0).getPath().equals(id)) {
+                return files.get(0);
+            }
+        }
+        List<FileEntity> files = query(selectByPath, id);
+        return files.isEmpty() ? null : files.get(0);
+    }
+
+    @Override
+    public synchronized List<FileEntity> findByHash(byte[] hash) {
+        flushHash(hash);
+        if (index != null && index.idsOf(hash).length == 0) {
+            return new ArrayList<>();
+        }
+        return query(selectByHash, hash);
+    }
+
+    @Override
+    public synchronized List<FileEntity> findByNode(String node) {
+        flush();
+        return query(selectByNode, node);
+    }
+
+    @Override
+    public synchronized long idOf(String path) {
+        flushPath(path);
+        if (index != null) {
+            long found = index.idOf(path);
+            if (found == CatalogIndex.NO_ID) {
+                return found;
+            }
+            List<String> paths = queryPaths(found);
+            if (paths.size() == 1 && paths.get(0).equals(path)) {
+                return found;
+            }
+        }
+        long[] ids = queryIds(selectIdByPath, path);
+        return ids.length == 0 ? CatalogIndex.NO_ID : ids[0];
+    }
+
+    @Override
+    public synchronized long[] idsOf(byte[] hash) {
+        flushHash(hash);
+        return index != null ? index.idsOf(hash) : queryIds(selectIdsByHash, hash);
+    }
+
+    @Override
+    public synchronized long count() {
+        flush();
+        try (ResultSet rs = selectCount.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException e) {
+            throw new CatalogException("Failed to count the file catalog due to " + e.getMessage(), e);
+        }
+    }
+
+    private List<FileEntity> query(PreparedStatement select, Object key) {
+        List<FileEntity> found = new ArrayList<>();
+        try {
+            select.setObject(1, key);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    String documentDate = rs.getString("document_date");
+                    FileEntity file = new FileEntity(rs.getString("path"), rs.getString("node"), rs.getLong("size"),
+                            rs.getLong("modified"), rs.getBytes("hash"), rs.getString("content_type"),
+                            documentDate == null ? null : LocalDate.parse(documentDate), rs.getLong("cataloged"));
+                    file.setId(rs.getLong("id"));
+                    found.add(file);
+                }
+            }
+        } catch (SQLException e) {
+            throw new CatalogException("Failed to read the file catalog due to " + e.getMessage(), e);
+        }
+        return found;
+    }
+
+    private List<String> queryPaths(long id) {
+        List<String> paths = new ArrayList<>(1);
+        try {
+            selectPathById.setLong(1, id);
+            try (ResultSet rs = selectPathById.executeQuery()) {
+                while (rs.next()) {
+                    paths.add(rs.getString(1));
+                }
+            }
+        } catch (SQLException e) {
+            throw new CatalogException("Failed to read the file catalog due to " + e.getMessage(), e);
+        }
+        return paths;
+    }
+
+    private long[] queryIds(PreparedStatement select, Object key) {
+        List<Long> ids = new ArrayList<>();
+        try {
+            select.setObject(1, key);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+        } catch (SQLException e) {
+            throw new CatalogException("Failed to read the file catalog due to " + e.getMessage(), e);
+        }
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Writes the pending files in one transaction, in statements of up to {@value #ROWS_PER_STATEMENT}
+     * rows, and brings the index up to date within it. Saved files get their ids. The files stay
+     * pending until the transaction commits, so a failed write is retried by the next flush.
+     */
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<String, FileEntity> rows = new LinkedHashMap<>(pending);
+        List<FileEntity> files = new ArrayList<>(rows.values());
+        List<CatalogIndex.Entry> entries = new ArrayList<>(files.size());
+        try {
+            connection.setAutoCommit(false);
+            try {
+                for (int from = 0; from < files.size(); from += ROWS_PER_STATEMENT) {
+                    List<FileEntity> batch = files.subList(from, Math.min(files.size(), from + ROWS_PER_STATEMENT));
+                    PreparedStatement insert = insertFor(batch.size());
+                    int parameter = 1;
+                    for (FileEntity file : batch) {
+                        insert.setString(parameter++, file.getPath());
+                        insert.setString(parameter++, file.getNode());
+                        insert.setLong(parameter++, file.getSize());
+                        insert.setLong(parameter++, file.getModified());
+                        insert.setBytes(parameter++, file.getHash());
+                        insert.setString(parameter++, file.getContentType());
+                        insert.setString(parameter++, file.getDocumentDate() == null ? null : file.getDocumentDate().toString());
+                        insert.setLong(parameter++, file.getCataloged());
+                    }
+                    try (ResultSet saved = insert.executeQuery()) {
+                        while (saved.next()) {
+                            FileEntity file = rows.get(saved.getString(2));
+                            file.setId(saved.getLong(1));
+                            entries.add(new CatalogIndex.Entry(file.getId(), file.getPath(), file.getHash()));
+                        }
+                    }
+                }
+                updateIndex(entries, nextSequence());
+                connection.commit();
+                pending.clear();
+                pendingHashes.clear();
+            } catch (SQLException e) {
+                // The index may hold entries of the rolled back rows; the next open rebuilds it
+                unmapIndex();
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new CatalogException("Failed to write " + files.size() + " files to the file catalog due to "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Adds the saved files to the index, or rebuilds it if another connection changed the catalog since.
+     */
+    private void updateIndex(List<CatalogIndex.Entry> entries, long sequence) {
+        if (index == null) {
+            return;
+        }
+        try {
+            if (index.sequence() == sequence - 1) {
+                index.putAll(entries, sequence);
+            } else {
+                rebuildIndex(sequence);
+            }
+        } catch (SQLException | IOException | RuntimeException e) {
+            dropIndex("update", e);
+        }
+    }
+
+    private PreparedStatement insertFor(int rows) throws SQLException {
+        PreparedStatement insert = inserts.get(rows);
+        if (insert == null) {
+            String row = "(" + String.join(", ", Collections.nCopies(COLUMN_COUNT, "?")) + ")";
+            insert = connection.prepareStatement("INSERT INTO file_catalog (" + COLUMNS + ") VALUES "
+                    + String.join(", ", Collections.nCopies(rows, row)) + " ON CONFLICT(path) DO UPDATE SET "
+                    + "node = excluded.node, size = excluded.size, modified = excluded.modified, hash = excluded.hash, "
+                    + "content_type = excluded.content_type, document_date = excluded.document_date, "
+                    + "cataloged = excluded.cataloged RETURNING id, path");
+            inserts.put(rows, insert);
+        }
+        return insert;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            flush();
+        } finally {
+            if (index != null) {
+                try {
+                    index.close();
+                } catch (IOException e) {
+                    logger.warn("Failed to close the catalog index: {}", e.getMessage());
+                }
+            }
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.warn("Failed to close the file catalog: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.alphaindiamike.miiv.privatelib.exceptions;
+
+public class CatalogException extends RuntimeException {
+    public CatalogException(String message) {
+        super(message);
+    }
+
+    public CatalogException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,11 @@
+package com.alphaindiamike.miiv.privatelib.exceptions;
+
+public class SchemeException extends RuntimeException {
+    public SchemeException(String message) {
+        super(message);
+    }
+
+    public SchemeException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,139 @@
+package com.alphaindiamike.miiv.privatelib.functions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * Content hashing of files with a fast non-cryptographic hash, to tell files apart, or SHA-256, to
+ * verify that they are equal. Files from {@link #MAP_THRESHOLD} on are memory-mapped window by
+ * window, so cached data is hashed straight from the page cache; smaller files are read through the
+ * thread's direct buffer. Hash state and buffers are kept per thread: hashing a small file
+ * allocates nothing but the returned digest.
+ */
+public class ContentHashFunctionsLib {
+    public static final long MAP_THRESHOLD = 4L * 1024 * 1024;
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Supported hashes.
+     */
+    public enum Algorithm {
+        /** MurmurHash3 x64 128-bit, for candidate matching. */
+        FAST_128,
+        /** SHA-256, for verification. */
+        SHA_256
+    }
+
+    /**
+     * Per thread hash state and read buffer.
+     */
+    private static final class HashState {
+        private final Murmur3Hash128 murmur = new Murmur3Hash128();
+        private final MessageDigest sha = FileTransferFunctionsLib.newVerificationDigest();
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final ByteBuffer sizeBuffer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static final ThreadLocal<HashState> state = ThreadLocal.withInitial(HashState::new);
+
+    private ContentHashFunctionsLib() {
+    }
+
+    /**
+     * Hashes the whole content of a file.
+     *
+     * @param file      The file.
+     * @param algorithm The hash to compute.
+     * @return The digest, 16 bytes for FAST_128 and 32 bytes for SHA_256.
+     * @throws IOException if the file cannot be read.
+     */
+    public static byte[] hashFile(Path file, Algorithm algorithm) throws IOException {
+        HashState hash = begin(algorithm);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            hashRange(in, 0, in.size(), algorithm, hash);
+        }
+        return finish(algorithm, hash);
+    }
+
+    /**
+     * Hashes the first and the last block of a file, and its size. Files of up to two blocks are
+     * hashed whole.
+     *
+     * @param file      The file.
+     * @param blockSize The bytes read at each end.
+     * @param algorithm The hash to compute.
+     * @return The digest.
+     * @throws IOException if the file cannot be read.
+     */
+    public static byte[] hashHeadAndTail(Path file, int blockSize, Algorithm algorithm) throws IOException {
+        HashState hash = begin(algorithm);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size <= 2L * blockSize) {
+                hashRange(in, 0, size, algorithm, hash);
+            } else {
+                hashRange(in, 0, blockSize, algorithm, hash);
+                hashRange(in, size - blockSize, blockSize, algorithm, hash);
+            }
+            hash.sizeBuffer.clear();
+            hash.sizeBuffer.putLong(0, size);
+            update(algorithm, hash, hash.sizeBuffer);
+        }
+        return finish(algorithm, hash);
+    }
+
+    private static HashState begin(Algorithm algorithm) {
+        HashState hash = state.get();
+        hash.murmur.reset();
+        hash.sha.reset();
+        return hash;
+    }
+
+    private static byte[] finish(Algorithm algorithm, HashState hash) {
+        return algorithm == Algorithm.FAST_128 ? hash.murmur.digest() : hash.sha.digest();
+    }
+
+    private static void update(Algorithm algorithm, HashState hash, ByteBuffer bytes) {
+        if (algorithm == Algorithm.FAST_128) {
+            hash.murmur.update(bytes);
+        } else {
+            hash.sha.update(bytes);
+        }
+    }
+
+    /**
+     * Hashes a range of the file, mapping it window by window when it is large.
+     */
+    private static void hashRange(FileChannel in, long position, long length, Algorithm algorithm, HashState hash)
+            throws IOException {
+        long end = position + length;
+        if (length >= MAP_THRESHOLD) {
+            while (position < end) {
+                long window = Math.min(MAP_WINDOW, end - position);
+                MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, position, window);
+                update(algorithm, hash, mapped);
+                position += window;
+            }
+            return;
+        }
+        ByteBuffer buffer = hash.buffer;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = in.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+            buffer.flip();
+            update(algorithm, hash, buffer);
+        }
+    }
+}
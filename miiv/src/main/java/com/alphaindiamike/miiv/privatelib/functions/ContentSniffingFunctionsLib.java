@@ -0,0 +1,298 @@
+package com.alphaindiamike.miiv.privatelib.functions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Detects the type of a file from its first bytes ("magic bytes"), for files whose extension is
+ * missing or does not match their content. The signatures are compiled into a byte trie, with
+ * wildcard edges for the bytes a format leaves free, and the longest signature matching the head of
+ * the file wins. Only the first {@link #SNIFF_LENGTH} bytes are read, one page, through buffers kept
+ * per thread.
+ * <p>
+ * Types are named like the file types of the scheme: "jpg", "tiff", "doc" for OLE2 compound files,
+ * "7zip" and so on. Zip archives are told apart from Office Open XML, OpenDocument and EPUB files by
+ * the names of the entries starting in the first page; the signatures alone only need 16 bytes.
+ */
+public class ContentSniffingFunctionsLib {
+    public static final int SNIFF_LENGTH = 4096;
+    private static final int ANY = -1;
+
+    /**
+     * A node of the signature trie: one edge per byte value, one for any byte, and the type of the
+     * signature ending here.
+     */
+    private static final class Node {
+        private final Node[] next = new Node[256];
+        private Node any;
+        private String type;
+    }
+
+    private static final Node SIGNATURES = new Node();
+
+    /**
+     * Per type, the extensions a file of that type may legitimately have; a file whose extension is
+     * listed for the sniffed type keeps routing by its extension.
+     */
+    private static final Map<String, Set<String>> EXTENSIONS = new HashMap<>();
+    private static final Set<String> SIGNED_EXTENSIONS = new HashSet<>();
+
+    static {
+        signature("jpg", "ff d8 ff");
+        signature("png", "89 50 4e 47 0d 0a 1a 0a");
+        signature("gif", "'GIF87a'");
+        signature("gif", "'GIF89a'");
+        signature("bmp", "'BM' ?? ?? ?? ?? 00 00 00 00");
+        signature("tiff", "49 49 2a 00");
+        signature("tiff", "4d 4d 00 2a");
+        signature("webp", "'RIFF' ?? ?? ?? ?? 'WEBP'");
+        signature("pdf", "'%PDF-'");
+        signature("zip", "'PK' 03 04");
+        signature("zip", "'PK' 05 06");
+        signature("zip", "'PK' 07 08");
+        signature("rar", "'Rar!' 1a 07");
+        signature("7zip", "'7z' bc af 27 1c");
+        signature("gz", "1f 8b 08");
+        signature("doc", "d0 cf 11 e0 a1 b1 1a e1");
+        signature("rtf", "'{\\rtf'");
+        signature("avi", "'RIFF' ?? ?? ?? ?? 'AVI '");
+        signature("wav", "'RIFF' ?? ?? ?? ?? 'WAVE'");
+        signature("mp4", "?? ?? ?? ?? 'ftyp'");
+        signature("mov", "?? ?? ?? ?? 'ftypqt  '");
+        signature("heic", "?? ?? ?? ?? 'ftypheic'");
+        signature("heic", "?? ?? ?? ?? 'ftypheix'");
+        signature("heic", "?? ?? ?? ?? 'ftypmif1'");
+        signature("mkv", "1a 45 df a3");
+        signature("mp3", "'ID3'");
+        signature("flac", "'fLaC'");
+        signature("ogg", "'OggS'");
+
+        extensions("jpg", "jpg", "jpeg", "jpe", "jfif");
+        extensions("png", "png", "apng");
+        extensions("gif", "gif");
+        extensions("bmp", "bmp", "dib");
+        extensions("tiff", "tiff", "tif", "dng", "nef", "cr2", "arw", "orf", "pef", "srw");
+        extensions("webp", "webp");
+        extensions("pdf", "pdf", "ai");
+        extensions("zip", "zip", "jar", "war", "ear", "apk", "ipa", "kmz", "cbz", "xpi", "whl", "nupkg", "vsix",
+                "docx", "docm", "dotx", "xlsx", "xlsm", "xltx", "pptx", "pptm", "potx", "odt", "ods", "odp", "epub");
+        extensions("docx", "docx", "docm", "dotx", "dotm", "zip");
+        extensions("xlsx", "xlsx", "xlsm", "xltx", "xltm", "zip");
+        extensions("pptx", "pptx", "pptm", "potx", "ppsx", "zip");
+        extensions("odt", "odt", "ott", "zip");
+        extensions("ods", "ods", "ots", "zip");
+        extensions("odp", "odp", "otp", "zip");
+        extensions("epub", "epub", "zip");
+        extensions("rar", "rar", "cbr");
+        extensions("7zip", "7z", "7zip");
+        extensions("gz", "gz", "gzip", "tgz", "svgz");
+        extensions("doc", "doc", "dot", "xls", "xlt", "ppt", "pps", "pot", "msg", "msi", "vsd", "pub", "mpp");
+        extensions("rtf", "rtf", "doc");
+        extensions("avi", "avi");
+        extensions("wav", "wav");
+        extensions("mp4", "mp4", "m4v", "m4a", "m4b", "mov", "qt", "3gp", "3g2", "f4v", "heic", "heif", "avif");
+        extensions("mov", "mov", "qt", "mp4");
+        extensions("heic", "heic", "heif", "hif", "avif");
+        extensions("mkv", "mkv", "mka", "mk3d", "webm");
+        extensions("mp3", "mp3");
+        extensions("flac", "flac");
+        extensions("ogg", "ogg", "oga", "ogv", "opus", "spx");
+    }
+
+    private static final Map<String, String> OOXML_FOLDERS = Map.of("word/", "docx", "xl/", "xlsx", "ppt/", "pptx");
+    private static final Map<String, String> MIMETYPES = Map.of(
+            "application/vnd.oasis.opendocument.text", "odt",
+            "application/vnd.oasis.opendocument.spreadsheet", "ods",
+            "application/vnd.oasis.opendocument.presentation", "odp",
+            "application/epub+zip", "epub");
+
+    private static final ThreadLocal<ByteBuffer> buffer = ThreadLocal.withInitial(
+            () -> ByteBuffer.allocateDirect(SNIFF_LENGTH));
+    private static final ThreadLocal<byte[]> head = ThreadLocal.withInitial(() -> new byte[SNIFF_LENGTH]);
+
+    private ContentSniffingFunctionsLib() {
+    }
+
+    /**
+     * Adds a signature to the trie. Bytes are written as hex pairs, ?? for any byte, or as
+     * 'quoted ASCII'.
+     */
+    private static void signature(String type, String pattern) {
+        Node node = SIGNATURES;
+        for (int value : parsePattern(pattern)) {
+            if (value == ANY) {
+                if (node.any == null) {
+                    node.any = new Node();
+                }
+                node = node.any;
+            } else {
+                if (node.next[value] == null) {
+                    node.next[value] = new Node();
+                }
+                node = node.next[value];
+            }
+        }
+        node.type = type;
+    }
+
+    private static int[] parsePattern(String pattern) {
+        int[] bytes = new int[pattern.length()];
+        int length = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == ' ') {
+                continue;
+            }
+            if (c == '\'') {
+                int end = pattern.indexOf('\'', i + 1);
+                for (byte b : pattern.substring(i + 1, end).getBytes(StandardCharsets.US_ASCII)) {
+                    bytes[length++] = b & 0xff;
+                }
+                i = end;
+            } else {
+                String pair = pattern.substring(i, i + 2);
+                bytes[length++] = pair.equals("??") ? ANY : Integer.parseInt(pair, 16);
+                i++;
+            }
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    private static void extensions(String type, String... extensions) {
+        EXTENSIONS.put(type, Set.of(extensions));
+        SIGNED_EXTENSIONS.addAll(Set.of(extensions));
+    }
+
+    /**
+     * Sniffs the type of a file.
+     *
+     * @return The type, or null if the file matches no signature.
+     * @throws IOException if the file cannot be read.
+     */
+    public static String sniff(Path file) throws IOException {
+        ByteBuffer bytes = buffer.get();
+        bytes.clear();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (bytes.hasRemaining() && in.read(bytes) >= 0) {
+                // read until the buffer is full or the file ends
+            }
+        }
+        bytes.flip();
+        byte[] data = head.get();
+        int length = bytes.remaining();
+        bytes.get(data, 0, length);
+        return sniff(data, length);
+    }
+
+    /**
+     * Sniffs the type of content from its first bytes.
+     *
+     * @param data   The first bytes of the content.
+     * @param length The number of bytes of data to use.
+     * @return The type, or null if the bytes match no signature.
+     */
+    public static String sniff(byte[] data, int length) {
+        String type = longestMatch(SIGNATURES, data, 0, length, null);
+        return "zip".equals(type) ? zipFlavour(data, length) : type;
+    }
+
+    private static String longestMatch(Node node, byte[] data, int position, int length, String found) {
+        if (node.type != null) {
+            found = node.type;
+        }
+        if (position == length) {
+            return found;
+        }
+        Node exact = node.next[data[position] & 0xff];
+        if (exact != null) {
+            String deeper = longestMatch(exact, data, position + 1, length, null);
+            if (deeper != null) {
+                return deeper;
+            }
+        }
+        if (node.any != null) {
+            String deeper = longestMatch(node.any, data, position + 1, length, null);
+            if (deeper != null) {
+                return deeper;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Office Open XML files are zip archives with a word/, xl/ or ppt/ folder; OpenDocument and EPUB
+     * files start with a stored "mimetype" entry naming their type. The local headers are followed
+     * from entry to entry as far as the head reaches, up to one whose size is only known after its data.
+     */
+    private static String zipFlavour(byte[] data, int length) {
+        int position = 0;
+        while (position + 30 <= length && data[position] == 'P' && data[position + 1] == 'K'
+                && data[position + 2] == 3 && data[position + 3] == 4) {
+            int flags = littleEndian(data, position + 6, 2);
+            long compressed = littleEndian(data, position + 18, 4) & 0xffffffffL;
+            int nameLength = littleEndian(data, position + 26, 2);
+            int extraLength = littleEndian(data, position + 28, 2);
+            int nameStart = position + 30;
+            if (nameStart + nameLength > length) {
+                break;
+            }
+            String name = new String(data, nameStart, nameLength, StandardCharsets.ISO_8859_1);
+            if (name.equals("mimetype")) {
+                int dataStart = nameStart + nameLength + extraLength;
+                if (dataStart > length) {
+                    break;
+                }
+                String mimetype = new String(data, dataStart, (int) Math.max(0, Math.min(compressed, length - dataStart)),
+                        StandardCharsets.ISO_8859_1);
+                String type = MIMETYPES.get(mimetype.trim());
+                if (type != null) {
+                    return type;
+                }
+            }
+            for (Map.Entry<String, String> folder : OOXML_FOLDERS.entrySet()) {
+                if (name.startsWith(folder.getKey())) {
+                    return folder.getValue();
+                }
+            }
+            if ((flags & 0x08) != 0) {
+                break;
+            }
+            position = (int) Math.min(Integer.MAX_VALUE, nameStart + nameLength + extraLength + compressed);
+        }
+        return "zip";
+    }
+
+    private static int littleEndian(byte[] data, int offset, int bytes) {
+        int value = 0;
+        for (int i = bytes - 1; i >= 0; i--) {
+            value = (value << 8) | (data[offset + i] & 0xff);
+        }
+        return value;
+    }
+
+    /**
+     * Tells whether a file with the extension may have content of the sniffed type.
+     *
+     * @param type      A type returned by {@link #sniff}.
+     * @param extension A lower case extension without the dot.
+     */
+    public static boolean matchesExtension(String type, String extension) {
+        return EXTENSIONS.getOrDefault(type, Set.of(type)).contains(extension);
+    }
+
+    /**
+     * Tells whether content of the extension's type has a signature, so a wrong extension can be detected.
+     */
+    public static boolean hasSignature(String extension) {
+        return SIGNED_EXTENSIONS.contains(extension);
+    }
+}
@@ -0,0 +1,68 @@
+package com.alphaindiamike.miiv.privatelib.functions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class DatabaseFunctionsLib {
+    public static final String WORKSPACE_METADATA_DIRECTORY = ".miiv";
+    public static final String WORKSPACE_DATABASE_FILE = "workspace.db";
+    public static final String GLOBAL_METADATA_DIRECTORY = ".miiv_global";
+    private static final int BUSY_TIMEOUT_MILLIS = 10_000;
+
+    /**
+     * Returns the hidden metadata directory of a workspace.
+     *
+     * @param workspace The workspace directory.
+     * @return The .miiv directory inside the workspace.
+     */
+    public static Path workspaceMetadataDirectory(Path workspace) {
+        return workspace.resolve(WORKSPACE_METADATA_DIRECTORY);
+    }
+
+    /**
+     * Opens the per-workspace SQLite database, creating the .miiv directory if needed.
+     *
+     * @param workspace The workspace directory.
+     * @return A new connection; the caller closes it.
+     * @throws SQLException if the directory or the database cannot be created.
+     */
+    public static Connection openWorkspaceDatabase(Path workspace) throws SQLException {
+        return openDatabase(workspaceMetadataDirectory(workspace).resolve(WORKSPACE_DATABASE_FILE));
+    }
+
+    /**
+     * Returns a database file of the global store, next to the global settings.
+     *
+     * @param fileName The database file name.
+     * @return The file inside the .miiv_global directory.
+     */
+    public static Path globalDatabaseFile(String fileName) {
+        return Path.of(GLOBAL_METADATA_DIRECTORY, fileName);
+    }
+
+    /**
+     * Opens a SQLite database file, creating its parent directory if needed.
+     * Connections wait for locks held by other connections instead of failing immediately.
+     *
+     * @param databaseFile The database file.
+     * @return A new connection; the caller closes it.
+     * @throws SQLException if the directory or the database cannot be created.
+     */
+    public static Connection openDatabase(Path databaseFile) throws SQLException {
+        try {
+            Files.createDirectories(databaseFile.getParent());
+        } catch (IOException e) {
+            throw new SQLException("Failed to create directory: " + databaseFile.getParent(), e);
+        }
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MILLIS);
+        }
+        return connection;
+    }
+}
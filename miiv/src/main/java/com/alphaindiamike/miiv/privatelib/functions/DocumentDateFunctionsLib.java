@@ -0,0 +1,300 @@
+package com.alphaindiamike.miiv.privatelib.functions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+
+/**
+ * Reads the date a document was made from its metadata: the EXIF DateTimeOriginal of JPEG and TIFF
+ * files (then DateTimeDigitized, then the DateTime of the first image) and the /CreationDate of PDF
+ * files. Only the structures leading to the date are read, through positioned reads of a few bytes
+ * each: the JPEG segment headers up to the EXIF segment, the TIFF header, the two directories and the
+ * date string. Whole segments and images are never loaded. PDF files are searched for /CreationDate
+ * in their last and first {@link #PDF_WINDOW} bytes, where the trailer and, in linearized files, the
+ * document information are found.
+ * <p>
+ * Dates are returned as written, without a time zone; EXIF dates have none.
+ */
+public class DocumentDateFunctionsLib {
+    public static final int PDF_WINDOW = 64 * 1024;
+    private static final int MAX_JPEG_SEGMENTS = 64;
+    private static final int MAX_IFD_ENTRIES = 1024;
+    private static final int TAG_DATE_TIME = 0x0132;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private static final int TAG_DATE_TIME_DIGITIZED = 0x9004;
+    private static final int TYPE_ASCII = 2;
+    private static final byte[] CREATION_DATE = "/CreationDate".getBytes(StandardCharsets.US_ASCII);
+
+    private static final ThreadLocal<ByteBuffer> buffer = ThreadLocal.withInitial(() -> ByteBuffer.allocate(PDF_WINDOW));
+
+    private DocumentDateFunctionsLib() {
+    }
+
+    /**
+     * Reads the document date of a file.
+     *
+     * @return The date, or null if the file is no JPEG, TIFF or PDF file or its metadata holds no date.
+     * @throws IOException if the file cannot be read.
+     */
+    public static LocalDateTime documentDate(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = read(channel, 0, 8, ByteOrder.BIG_ENDIAN);
+            if (head.remaining() < 4) {
+                return null;
+            }
+            int b0 = head.get(0) & 0xff;
+            int b1 = head.get(1) & 0xff;
+            if (b0 == 0xff && b1 == 0xd8) {
+                return jpegDate(channel);
+            }
+            if ((b0 == 'I' && b1 == 'I') || (b0 == 'M' && b1 == 'M')) {
+                return exifDate(channel, 0);
+            }
+            if (b0 == '%' && b1 == 'P' && head.get(2) == 'D' && head.get(3) == 'F') {
+                return pdfDate(channel);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Follows the segment headers of a JPEG file to its APP1 "Exif" segment, before the image data.
+     */
+    private static LocalDateTime jpegDate(FileChannel channel) throws IOException {
+        long position = 2;
+        for (int segment = 0; segment < MAX_JPEG_SEGMENTS; segment++) {
+            ByteBuffer header = read(channel, position, 10, ByteOrder.BIG_ENDIAN);
+            if (header.remaining() < 4 || (header.get(0) & 0xff) != 0xff) {
+                return null;
+            }
+            int marker = header.get(1) & 0xff;
+            if (marker == 0xff) {
+                // fill byte
+                position++;
+                continue;
+            }
+            if (marker == 0xda || marker == 0xd9) {
+                // start of scan or end of image: no EXIF segment
+                return null;
+            }
+            int length = header.getShort(2) & 0xffff;
+            if (length < 2) {
+                return null;
+            }
+            if (marker == 0xe1 && header.remaining() >= 10 && header.get(4) == 'E' && header.get(5) == 'x'
+                    && header.get(6) == 'i' && header.get(7) == 'f' && header.get(8) == 0 && header.get(9) == 0) {
+                return exifDate(channel, position + 10);
+            }
+            position += 2 + length;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the date from the TIFF structure at base: the first directory, and the EXIF directory it
+     * points to. Offsets in the structure are relative to base.
+     */
+    private static LocalDateTime exifDate(FileChannel channel, long base) throws IOException {
+        ByteBuffer header = read(channel, base, 8, ByteOrder.BIG_ENDIAN);
+        if (header.remaining() < 8) {
+            return null;
+        }
+        ByteOrder order;
+        if (header.get(0) == 'I' && header.get(1) == 'I') {
+            order = ByteOrder.LITTLE_ENDIAN;
+        } else if (header.get(0) == 'M' && header.get(1) == 'M') {
+            order = ByteOrder.BIG_ENDIAN;
+        } else {
+            return null;
+        }
+        header.order(order);
+        if (header.getShort(2) != 42) {
+            return null;
+        }
+        long[] found = new long[3];
+        readDirectory(channel, base, header.getInt(4) & 0xffffffffL, order, found);
+        if (found[2] > 0) {
+            readDirectory(channel, base, found[2], order, found);
+        }
+        for (int tag = 0; tag < 2; tag++) {
+            if (found[tag] > 0) {
+                LocalDateTime date = parseExifDate(read(channel, base + found[tag], 19, order));
+                if (date != null) {
+                    return date;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records the offsets of the date strings of a directory: found[0] the original or digitized date,
+     * the original one first, found[1] the DateTime, found[2] the EXIF directory.
+     */
+    private static void readDirectory(FileChannel channel, long base, long offset, ByteOrder order, long[] found)
+            throws IOException {
+        ByteBuffer count = read(channel, base + offset, 2, order);
+        if (count.remaining() < 2) {
+            return;
+        }
+        int entries = Math.min(count.getShort(0) & 0xffff, MAX_IFD_ENTRIES);
+        ByteBuffer directory = read(channel, base + offset + 2, entries * 12, order);
+        boolean original = false;
+        for (int entry = 0; entry + 12 <= directory.remaining(); entry += 12) {
+            int tag = directory.getShort(entry) & 0xffff;
+            int type = directory.getShort(entry + 2) & 0xffff;
+            long value = directory.getInt(entry + 8) & 0xffffffffL;
+            if (tag == TAG_EXIF_IFD) {
+                found[2] = value;
+            } else if (type == TYPE_ASCII && (tag == TAG_DATE_TIME_ORIGINAL
+                    || (tag == TAG_DATE_TIME_DIGITIZED && !original))) {
+                found[0] = value;
+                original = tag == TAG_DATE_TIME_ORIGINAL;
+            } else if (type == TYPE_ASCII && tag == TAG_DATE_TIME) {
+                found[1] = value;
+            }
+        }
+    }
+
+    /**
+     * Parses "YYYY:MM:DD HH:MM:SS"; blank or zeroed dates, which cameras write when unset, give null.
+     */
+    private static LocalDateTime parseExifDate(ByteBuffer text) {
+        if (text.remaining() < 19) {
+            return null;
+        }
+        int[] fields = new int[6];
+        for (int field = 0; field < 6; field++) {
+            int start = field == 0 ? 0 : 2 + 3 * field;
+            int digits = field == 0 ? 4 : 2;
+            fields[field] = digits(text, start, digits);
+            if (fields[field] < 0) {
+                return null;
+            }
+        }
+        return dateOf(fields);
+    }
+
+    /**
+     * Finds the last /CreationDate in the tail of the file, the one of the latest update, else the
+     * first one in its head.
+     */
+    private static LocalDateTime pdfDate(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long tailStart = Math.max(0, size - PDF_WINDOW);
+        ByteBuffer tail = read(channel, tailStart, PDF_WINDOW, ByteOrder.BIG_ENDIAN);
+        LocalDateTime date = pdfDate(tail, true);
+        if (date == null && tailStart > 0) {
+            date = pdfDate(read(channel, 0, (int) Math.min(PDF_WINDOW, tailStart), ByteOrder.BIG_ENDIAN), false);
+        }
+        return date;
+    }
+
+    private static LocalDateTime pdfDate(ByteBuffer window, boolean last) {
+        int length = window.remaining();
+        for (int at = last ? length - CREATION_DATE.length : 0; at >= 0 && at + CREATION_DATE.length <= length;
+                at += last ? -1 : 1) {
+            if (!startsWith(window, at, CREATION_DATE)) {
+                continue;
+            }
+            LocalDateTime date = parsePdfDate(window, at + CREATION_DATE.length);
+            if (date != null) {
+                return date;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses the literal string after the key, "(D:YYYYMMDDHHmmSS...)" where every field after the
+     * year is optional and the time zone is ignored.
+     */
+    private static LocalDateTime parsePdfDate(ByteBuffer window, int position) {
+        while (position < window.remaining() && Character.isWhitespace(window.get(position))) {
+            position++;
+        }
+        if (position >= window.remaining() || window.get(position) != '(') {
+            return null;
+        }
+        position++;
+        if (position + 2 <= window.remaining() && window.get(position) == 'D' && window.get(position + 1) == ':') {
+            position += 2;
+        }
+        int[] fields = {-1, 1, 1, 0, 0, 0};
+        fields[0] = digits(window, position, 4);
+        if (fields[0] < 0) {
+            return null;
+        }
+        position += 4;
+        for (int field = 1; field < 6; field++, position += 2) {
+            int value = digits(window, position, 2);
+            if (value < 0) {
+                break;
+            }
+            fields[field] = value;
+        }
+        return dateOf(fields);
+    }
+
+    private static LocalDateTime dateOf(int[] fields) {
+        if (fields[0] == 0) {
+            return null;
+        }
+        try {
+            return LocalDateTime.of(fields[0], fields[1], fields[2], fields[3], fields[4], fields[5]);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The decimal number of the given digits at the position, or -1 if one of them is no digit.
+     */
+    private static int digits(ByteBuffer text, int position, int count) {
+        if (position + count > text.remaining()) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = position; i < position + count; i++) {
+            byte b = text.get(i);
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            value = value * 10 + b - '0';
+        }
+        return value;
+    }
+
+    private static boolean startsWith(ByteBuffer window, int position, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (window.get(position + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads up to length bytes at the position into the buffer of the thread, positioned at 0 and
+     * limited to the bytes read. The content stays valid until the next read on the thread.
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int length, ByteOrder order) throws IOException {
+        ByteBuffer bytes = buffer.get();
+        bytes.clear().limit(Math.min(length, bytes.capacity()));
+        while (bytes.hasRemaining()) {
+            int read = channel.read(bytes, position + bytes.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        bytes.flip();
+        return bytes.order(order);
+    }
+}
@@ -5,55 +5,272 @@ import org.slf4j.LoggerFactory;
 
 import com.alphaindiamike.miiv.model.filesystem.RepositoryScheme;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FileSystemFunctionsLib {
 	private static final Logger logger = LoggerFactory.getLogger(FileSystemFunctionsLib.class);
+	public static final String MATERIALIZATION_MANIFEST = "materialized.manifest";
+	/** Folder creation waits on the storage, not the processor. */
+	private static final int MATERIALIZE_THREADS = 16;
 
     /**
      * Creates the directory structure based on the RepositoryScheme and the specified root path.
-     * Enhancements include advanced logging and path validation.
-     * 
+     * <p>
+     * The folders created are recorded in a manifest in the workspace's .miiv directory, together
+     * with a hash of the scheme's folder paths. While the scheme is unchanged, a call reads the
+     * manifest and touches nothing else, so no folder is checked on disk. After a change, only the
+     * folders missing from the manifest are created, without checking the recorded ones; independent
+     * subtrees are created in parallel, which matters on storage where every request has a latency.
+     * Folders the scheme no longer lists are left in place. A folder deleted by hand while the scheme
+     * is unchanged is created again by the run that first writes into it.
+     *
      * @param repositoryScheme The repository scheme representing the directory structure.
      * @param rootPath The root path where the directory structure should be created.
+     * @return The number of folders created.
      */
-    public static void createDirectoryStructure(RepositoryScheme repositoryScheme, String rootPath) {
+    public static int createDirectoryStructure(RepositoryScheme repositoryScheme, String rootPath) {
         // Validate the root path before proceeding.
         Path root = Paths.get(rootPath);
         if (!Files.exists(root) || !Files.isDirectory(root)) {
             logger.error("The provided root path is invalid or does not exist: {}", rootPath);
-            return;
+            return 0;
+        }
+        if (repositoryScheme.getChildren() == null) {
+            return 0;
+        }
+
+        List<String> folders = new ArrayList<>();
+        collectFolders(repositoryScheme.getChildren(), "", folders);
+        String schemeHash = HexFormat.of().formatHex(sha256(String.join("\n", folders)));
+        Path manifest = DatabaseFunctionsLib.workspaceMetadataDirectory(root).resolve(MATERIALIZATION_MANIFEST);
+        Set<String> recorded = new HashSet<>();
+        String recordedHash = readManifest(manifest, recorded);
+        if (schemeHash.equals(recordedHash)) {
+            logger.debug("Scheme unchanged since the workspace was materialized, {} folders.", folders.size());
+            return 0;
         }
 
         // The root directory is treated as the target directory.
-        if (repositoryScheme.getChildren() != null) {
-            repositoryScheme.getChildren().forEach(child -> createDirectoryRecursive(child, root));
+        Set<String> failed = ConcurrentHashMap.newKeySet();
+        AtomicInteger created = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(MATERIALIZE_THREADS);
+        try {
+            pool.invoke(new MaterializeTask(repositoryScheme.getChildren(), root, "", recorded, failed, created));
+        } finally {
+            pool.shutdown();
+        }
+
+        List<String> materialized = new ArrayList<>(folders.size());
+        for (String folder : folders) {
+            if (!failed.contains(folder)) {
+                materialized.add(folder);
+            }
         }
+        // A partial materialization is recorded without the scheme hash, so the next call retries the failed folders
+        writeManifest(manifest, failed.isEmpty() ? schemeHash : "", materialized);
+        logger.debug("Materialized the scheme: {} folders created, {} failed, {} recorded before.",
+                created.get(), failed.size(), recorded.size());
+        return created.get();
     }
 
-    private static void createDirectoryRecursive(RepositoryScheme directory, Path parentPath) {
-        if (directory == null) return;
+    /**
+     * The folder paths of the scheme, depth first, relative to the root with / separators.
+     */
+    private static void collectFolders(List<RepositoryScheme> nodes, String parent, List<String> folders) {
+        for (RepositoryScheme node : nodes) {
+            if (node == null) {
+                continue;
+            }
+            String folder = parent + node.getName();
+            folders.add(folder);
+            if (node.getChildren() != null) {
+                collectFolders(node.getChildren(), folder + "/", folders);
+            }
+        }
+    }
 
-        Path currentPath = parentPath.resolve(directory.getName());
-        try {
-            if (!Files.exists(currentPath)) {
-                Files.createDirectories(currentPath);
+    /**
+     * Creates the folders of a list of sibling nodes that the manifest does not record, and their
+     * subtrees, each sibling in its own task.
+     */
+    private static final class MaterializeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<RepositoryScheme> nodes;
+        private final Path parentPath;
+        private final String parent;
+        private final Set<String> recorded;
+        private final Set<String> failed;
+        private final AtomicInteger created;
+
+        MaterializeTask(List<RepositoryScheme> nodes, Path parentPath, String parent, Set<String> recorded,
+                Set<String> failed, AtomicInteger created) {
+            this.nodes = nodes;
+            this.parentPath = parentPath;
+            this.parent = parent;
+            this.recorded = recorded;
+            this.failed = failed;
+            this.created = created;
+        }
+
+        @Override
+        protected void compute() {
+            List<MaterializeTask> subtrees = new ArrayList<>();
+            for (RepositoryScheme node : nodes) {
+                if (node == null) {
+                    continue;
+                }
+                String folder = parent + node.getName();
+                Path currentPath = parentPath.resolve(node.getName());
+                if (!recorded.contains(folder) && !createDirectory(currentPath)) {
+                    failAll(node, folder);
+                    continue;
+                }
+                if (node.getChildren() != null && !node.getChildren().isEmpty()) {
+                    subtrees.add(new MaterializeTask(node.getChildren(), currentPath, folder + "/", recorded, failed, created));
+                }
+            }
+            invokeAll(subtrees);
+        }
+
+        private boolean createDirectory(Path currentPath) {
+            try {
+                try {
+                    Files.createDirectory(currentPath);
+                } catch (NoSuchFileException e) {
+                    // A recorded parent was removed since
+                    Files.createDirectories(currentPath);
+                }
+                created.incrementAndGet();
                 logger.debug("Created directory: {}", currentPath);
+                return true;
+            } catch (FileAlreadyExistsException e) {
+                if (Files.isDirectory(currentPath)) {
+                    return true;
+                }
+                logger.error("Failed to create directory: {}, a file has that name", currentPath);
+                return false;
+            } catch (IOException e) {
+                logger.error("Failed to create directory: {} due to {}", currentPath, e.getMessage());
+                return false;
             }
+        }
+
+        private void failAll(RepositoryScheme node, String folder) {
+            failed.add(folder);
+            if (node.getChildren() != null) {
+                List<String> below = new ArrayList<>();
+                collectFolders(node.getChildren(), folder + "/", below);
+                failed.addAll(below);
+            }
+        }
+    }
+
+    /**
+     * Reads the manifest into the set of recorded folders.
+     *
+     * @return The scheme hash it was written for, empty after a partial materialization, or null if there is none.
+     */
+    private static String readManifest(Path manifest, Set<String> recorded) {
+        try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            String hash = reader.readLine();
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                recorded.add(line);
+            }
+            return hash;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            logger.warn("Failed to read the materialization manifest {}, checking every folder: {}", manifest, e.getMessage());
+            recorded.clear();
+            return null;
+        }
+    }
 
-            // Recursively create subdirectories
-            List<RepositoryScheme> subdirectories = directory.getChildren();
-            if (subdirectories != null) {
-                for (RepositoryScheme subdirectory : subdirectories) {
-                    createDirectoryRecursive(subdirectory, currentPath);
+    private static void writeManifest(Path manifest, String schemeHash, List<String> folders) {
+        try {
+            Files.createDirectories(manifest.getParent());
+            Path temporary = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                writer.write(schemeHash);
+                writer.newLine();
+                for (String folder : folders) {
+                    writer.write(folder);
+                    writer.newLine();
                 }
             }
+            Files.move(temporary, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Failed to write the materialization manifest {}: {}", manifest, e.getMessage());
+        }
+    }
+
+    private static byte[] sha256(String text) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Removes every directory below the root that is empty once its own subdirectories were
+     * removed. The root itself is kept, as are directories holding any entry.
+     *
+     * @param root The directory to prune.
+     * @return The number of directories removed.
+     */
+    public static int removeEmptyDirectories(Path root) {
+        int[] removed = {0};
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    logger.warn("Failed to visit {} due to {}", file, e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path directory, IOException e) {
+                    if (directory.equals(root)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    try {
+                        Files.delete(directory);
+                        removed[0]++;
+                    } catch (DirectoryNotEmptyException notEmpty) {
+                        logger.debug("Keeping {}, it is not empty.", directory);
+                    } catch (IOException deleteFailed) {
+                        logger.warn("Failed to remove empty directory: {} due to {}", directory, deleteFailed.getMessage());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
         } catch (IOException e) {
-            logger.error("Failed to create directory: {} due to {}", currentPath, e.getMessage());
+            logger.error("Failed to prune directories below {} due to {}", root, e.getMessage());
         }
+        return removed[0];
     }
 }
@@ -0,0 +1,266 @@
+package com.alphaindiamike.miiv.privatelib.functions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class FileTransferFunctionsLib {
+	private static final Logger logger = LoggerFactory.getLogger(FileTransferFunctionsLib.class);
+
+    public static final long DEFAULT_CHUNK_SIZE = 64L * 1024 * 1024;
+    public static final long DEFAULT_LARGE_FILE_THRESHOLD = 256L * 1024 * 1024;
+    public static final String VERIFICATION_ALGORITHM = "SHA-256";
+    private static final int STREAM_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Bandwidth budget consulted by the copy loops before each chunk.
+     */
+    public interface TransferThrottle {
+        /** No limit; transfers keep their natural chunk size. */
+        TransferThrottle NONE = new TransferThrottle() {
+            @Override
+            public long chunkSize() {
+                return Long.MAX_VALUE;
+            }
+
+            @Override
+            public void acquire(long bytes) {
+            }
+        };
+
+        /**
+         * Largest number of bytes moved between two calls to {@link #acquire(long)}.
+         */
+        long chunkSize();
+
+        /**
+         * Waits until the bytes may be transferred.
+         *
+         * @throws InterruptedIOException if interrupted while waiting.
+         */
+        void acquire(long bytes) throws InterruptedIOException;
+    }
+
+    // One direct buffer per worker thread for the streaming paths, reused across files
+    private static final ThreadLocal<ByteBuffer> streamBuffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(STREAM_BUFFER_SIZE));
+
+    /**
+     * Copies a file with FileChannel.transferTo, letting the kernel move the bytes
+     * (sendfile / copy_file_range on Linux) instead of copying them through heap arrays.
+     * Files above the threshold are transferred in chunks of chunkSize, so a single call never
+     * covers more than one chunk and an interrupted worker stops between chunks.
+     * The target must not exist; a partially written target is removed on failure.
+     *
+     * @param source             The source file.
+     * @param target             The target file, created by this call.
+     * @param largeFileThreshold Size above which the file is transferred in chunks.
+     * @param chunkSize          Number of bytes per transfer call for large files.
+     * @return The number of bytes copied.
+     * @throws IOException if the copy fails or the source shrinks while being copied.
+     */
+    public static long transferFile(Path source, Path target, long largeFileThreshold, long chunkSize) throws IOException {
+        return transferFile(source, target, largeFileThreshold, chunkSize, TransferThrottle.NONE);
+    }
+
+    /**
+     * Copies a file like {@link #transferFile(Path, Path, long, long)}, taking every chunk from the
+     * throttle's budget first. Throttled transfers use chunks no larger than the throttle's chunk
+     * size, whatever the file size, so the budget is spent evenly instead of in file-sized bursts.
+     *
+     * @param throttle The bandwidth budget, {@link TransferThrottle#NONE} for none.
+     */
+    public static long transferFile(Path source, Path target, long largeFileThreshold, long chunkSize,
+            TransferThrottle throttle) throws IOException {
+        FileTime lastModified = Files.getLastModifiedTime(source);
+        long transferred = 0;
+        boolean created = false;
+        boolean completed = false;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            created = true;
+            long size = in.size();
+            long step = Math.min(size > largeFileThreshold ? chunkSize : size, throttle.chunkSize());
+            while (transferred < size) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Transfer of " + source + " interrupted after " + transferred + " bytes");
+                }
+                long request = Math.min(step, size - transferred);
+                throttle.acquire(request);
+                long count = in.transferTo(transferred, request, out);
+                if (count <= 0) {
+                    throw new IOException("Source shrank while being copied: " + source);
+                }
+                transferred += count;
+            }
+            completed = true;
+        } finally {
+            if (created && !completed) {
+                deletePartialTarget(target);
+            }
+        }
+        Files.setLastModifiedTime(target, lastModified);
+        return transferred;
+    }
+
+    /**
+     * Renames the file without ever replacing an existing target: the file is hard-linked under the
+     * target name, which fails atomically when the name is taken, and then unlinked from its old name.
+     * This costs the same for any file size, but only works when source and target live on the same
+     * file store. Where the file system has no hard links, the file is renamed once the name is found
+     * free.
+     *
+     * @param source The source file.
+     * @param target The target file.
+     * @throws FileAlreadyExistsException if the target exists; the source is left in place.
+     * @throws AtomicMoveNotSupportedException if the target is on another file store.
+     * @throws IOException if the rename fails for another reason.
+     */
+    public static void renameFile(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            if (!Files.getFileStore(source).equals(Files.getFileStore(target.getParent()))) {
+                throw new AtomicMoveNotSupportedException(source.toString(), target.toString(), "different file store");
+            }
+            // Without REPLACE_EXISTING the move refuses an existing target
+            Files.move(source, target);
+            return;
+        }
+        Files.delete(source);
+    }
+
+    /**
+     * Moves a file to another file store: copy, verify, rename into place, delete.
+     * The source checksum is computed while the bytes stream to the staging file, so the source
+     * is read exactly once. The staging file is flushed to the device and its checksum compared
+     * before it is renamed to the target and the source deleted; on a mismatch, or when the target
+     * exists, the staging file is removed and the source left in place.
+     *
+     * @param source  The source file.
+     * @param target  The target file.
+     * @param staging A file on the target's file store receiving the bytes, created by this call.
+     * @return The number of bytes moved.
+     * @throws FileAlreadyExistsException if the target exists.
+     * @throws IOException if the copy, the verification or the deletion of the source fails.
+     */
+    public static long moveAcrossFileStores(Path source, Path target, Path staging) throws IOException {
+        return moveAcrossFileStores(source, target, staging, TransferThrottle.NONE);
+    }
+
+    /**
+     * Moves a file like {@link #moveAcrossFileStores(Path, Path, Path)}, taking every buffer read
+     * from the throttle's budget before it is written.
+     *
+     * @param throttle The bandwidth budget, {@link TransferThrottle#NONE} for none.
+     */
+    public static long moveAcrossFileStores(Path source, Path target, Path staging, TransferThrottle throttle)
+            throws IOException {
+        MessageDigest digest = newVerificationDigest();
+        FileTime lastModified = Files.getLastModifiedTime(source);
+        long transferred = 0;
+        boolean created = false;
+        boolean completed = false;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(staging, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            created = true;
+            ByteBuffer buffer = streamBuffer.get();
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), throttle.chunkSize()));
+            while (in.read(buffer) >= 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Move of " + source + " interrupted after " + transferred + " bytes");
+                }
+                buffer.flip();
+                throttle.acquire(buffer.remaining());
+                digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    transferred += out.write(buffer);
+                }
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), throttle.chunkSize()));
+            }
+            out.force(true);
+            completed = true;
+        } finally {
+            if (created && !completed) {
+                deletePartialTarget(staging);
+            }
+        }
+        Files.setLastModifiedTime(staging, lastModified);
+
+        byte[] expected = digest.digest();
+        byte[] actual = digestFile(staging, digest);
+        if (!MessageDigest.isEqual(expected, actual)) {
+            deletePartialTarget(staging);
+            throw new IOException("Checksum mismatch after copying " + source + " to " + target + ", source kept.");
+        }
+        try {
+            renameFile(staging, target);
+        } catch (IOException e) {
+            deletePartialTarget(staging);
+            throw e;
+        }
+        Files.delete(source);
+        return transferred;
+    }
+
+    /**
+     * Computes the digest of a file through the thread's direct buffer.
+     * The digest is reset before use.
+     *
+     * @param file   The file to read.
+     * @param digest The digest to feed.
+     * @return The digest value.
+     * @throws IOException if the file cannot be read.
+     */
+    public static byte[] digestFile(Path file, MessageDigest digest) throws IOException {
+        digest.reset();
+        ByteBuffer buffer = streamBuffer.get();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer.clear();
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Creates a digest of the verification algorithm.
+     *
+     * @return A new, unshared digest.
+     */
+    public static MessageDigest newVerificationDigest() {
+        try {
+            return MessageDigest.getInstance(VERIFICATION_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(VERIFICATION_ALGORITHM + " is not available on this JVM", e);
+        }
+    }
+
+    private static void deletePartialTarget(Path target) {
+        try {
+            Files.deleteIfExists(target);
+        } catch (IOException e) {
+            logger.error("Failed to remove partially written file: {} due to {}", target, e.getMessage());
+        }
+    }
+}
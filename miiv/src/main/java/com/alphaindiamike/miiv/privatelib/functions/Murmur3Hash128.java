@@ -0,0 +1,139 @@
+package com.alphaindiamike.miiv.privatelib.functions;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming MurmurHash3 x64 128-bit (seed 0). A fast, well distributed, non-cryptographic hash:
+ * good for telling files apart, not for proving that two files are equal, which is what SHA-256 is
+ * kept for. Instances are reusable with {@link #reset()} and allocate nothing while hashing, except
+ * the digest returned by {@link #digest()}. Not thread-safe.
+ */
+public final class Murmur3Hash128 {
+    public static final int DIGEST_LENGTH = 16;
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private long h1;
+    private long h2;
+    private long length;
+    // Bytes of an incomplete 16 byte block, carried to the next update
+    private final ByteBuffer carry = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+
+    public Murmur3Hash128() {
+        reset();
+    }
+
+    public void reset() {
+        h1 = 0;
+        h2 = 0;
+        length = 0;
+        carry.clear();
+    }
+
+    /**
+     * Hashes the remaining bytes of the buffer, consuming them. The byte order of the buffer is set to little endian.
+     */
+    public void update(ByteBuffer buffer) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        length += buffer.remaining();
+        if (carry.position() > 0) {
+            while (carry.hasRemaining() && buffer.hasRemaining()) {
+                carry.put(buffer.get());
+            }
+            if (carry.hasRemaining()) {
+                return;
+            }
+            mixBlock(carry.getLong(0), carry.getLong(8));
+            carry.clear();
+        }
+        while (buffer.remaining() >= 16) {
+            mixBlock(buffer.getLong(), buffer.getLong());
+        }
+        while (buffer.hasRemaining()) {
+            carry.put(buffer.get());
+        }
+    }
+
+    /**
+     * Hashes the bytes of a long, little endian.
+     */
+    public void update(long value) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            carry.put((byte) (value >>> (8 * i)));
+            if (!carry.hasRemaining()) {
+                mixBlock(carry.getLong(0), carry.getLong(8));
+                carry.clear();
+            }
+        }
+        length += Long.BYTES;
+    }
+
+    /**
+     * Finishes the hash and resets the instance.
+     *
+     * @return The 16 byte hash, h1 then h2, little endian, as the reference implementation writes it.
+     */
+    public byte[] digest() {
+        long k1 = 0;
+        long k2 = 0;
+        int tail = carry.position();
+        for (int i = tail - 1; i >= 8; i--) {
+            k2 = (k2 << 8) | (carry.get(i) & 0xffL);
+        }
+        for (int i = Math.min(tail, 8) - 1; i >= 0; i--) {
+            k1 = (k1 << 8) | (carry.get(i) & 0xffL);
+        }
+        if (tail > 8) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            h2 ^= k2;
+        }
+        if (tail > 0) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+        }
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        byte[] digest = ByteBuffer.allocate(DIGEST_LENGTH).order(ByteOrder.LITTLE_ENDIAN)
+                .putLong(h1).putLong(h2).array();
+        reset();
+        return digest;
+    }
+
+    private void mixBlock(long k1, long k2) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        h1 ^= k1;
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        h2 ^= k2;
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
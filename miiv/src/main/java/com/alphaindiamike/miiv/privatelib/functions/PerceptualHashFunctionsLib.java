@@ -0,0 +1,193 @@
+package com.alphaindiamike.miiv.privatelib.functions;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Perceptual hashes of images, which stay close when an image is re-encoded, resized or slightly
+ * recolored, unlike content hashes. Both hashes are 64 bits and compared by Hamming distance:
+ * <ul>
+ * <li>dHash compares the brightness of horizontally adjacent pixels of a 9x8 thumbnail;</li>
+ * <li>pHash keeps the signs of the lowest 8x8 frequencies of the DCT of a 32x32 thumbnail,
+ * relative to their median.</li>
+ * </ul>
+ * Images are decoded with javax.imageio; large images are subsampled while decoding, so a
+ * thumbnail never needs the full resolution in memory.
+ */
+public class PerceptualHashFunctionsLib {
+    /** The file types javax.imageio decodes without plugins. */
+    public static final Set<String> IMAGE_TYPES = Set.of("jpg", "jpeg", "png", "tiff", "tif", "bmp", "gif");
+    private static final int DCT_SIZE = 32;
+    private static final int HASH_SIZE = 8;
+    // Images are decoded at no less than this size before thumbnails are computed
+    private static final int DECODE_SIZE = 4 * DCT_SIZE;
+    private static final double[][] DCT_COEFFICIENTS = dctCoefficients();
+
+    private PerceptualHashFunctionsLib() {
+    }
+
+    /**
+     * The perceptual hashes of an image.
+     */
+    public record ImageHashes(long dHash, long pHash) {
+    }
+
+    /**
+     * Decodes an image and computes its hashes.
+     *
+     * @param file The image file.
+     * @return The hashes, or null if no installed reader decodes the file.
+     * @throws IOException if the file cannot be read or is not a valid image.
+     */
+    public static ImageHashes hashImage(Path file) throws IOException {
+        BufferedImage image = readSubsampled(file, DECODE_SIZE);
+        if (image == null) {
+            return null;
+        }
+        return new ImageHashes(dHash(image), pHash(image));
+    }
+
+    /**
+     * The number of bits in which two hashes differ.
+     */
+    public static int distance(long first, long second) {
+        return Long.bitCount(first ^ second);
+    }
+
+    public static boolean isImage(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && IMAGE_TYPES.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Difference hash: bit set where a pixel of a 9x8 grayscale thumbnail is brighter than its right neighbor.
+     */
+    public static long dHash(BufferedImage image) {
+        double[] gray = grayscale(image, HASH_SIZE + 1, HASH_SIZE);
+        long hash = 0;
+        for (int y = 0; y < HASH_SIZE; y++) {
+            for (int x = 0; x < HASH_SIZE; x++) {
+                int offset = y * (HASH_SIZE + 1) + x;
+                hash = (hash << 1) | (gray[offset] > gray[offset + 1] ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * DCT hash: bit set where one of the lowest 8x8 frequencies of a 32x32 grayscale thumbnail is above their median.
+     */
+    public static long pHash(BufferedImage image) {
+        double[] gray = grayscale(image, DCT_SIZE, DCT_SIZE);
+        // Separable 2D DCT-II, restricted to the frequencies kept
+        double[] rows = new double[HASH_SIZE * DCT_SIZE];
+        for (int y = 0; y < DCT_SIZE; y++) {
+            for (int u = 0; u < HASH_SIZE; u++) {
+                double sum = 0;
+                for (int x = 0; x < DCT_SIZE; x++) {
+                    sum += DCT_COEFFICIENTS[u][x] * gray[y * DCT_SIZE + x];
+                }
+                rows[u * DCT_SIZE + y] = sum;
+            }
+        }
+        double[] frequencies = new double[HASH_SIZE * HASH_SIZE];
+        for (int v = 0; v < HASH_SIZE; v++) {
+            for (int u = 0; u < HASH_SIZE; u++) {
+                double sum = 0;
+                for (int y = 0; y < DCT_SIZE; y++) {
+                    sum += DCT_COEFFICIENTS[v][y] * rows[u * DCT_SIZE + y];
+                }
+                frequencies[v * HASH_SIZE + u] = sum;
+            }
+        }
+        // The DC term only carries the average brightness and is left out of the median
+        double[] sorted = Arrays.copyOfRange(frequencies, 1, frequencies.length);
+        Arrays.sort(sorted);
+        double median = sorted[sorted.length / 2];
+        long hash = 0;
+        for (double frequency : frequencies) {
+            hash = (hash << 1) | (frequency > median ? 1 : 0);
+        }
+        return hash;
+    }
+
+    /**
+     * Reads an image, skipping rows and columns while decoding so that it is still at least
+     * minSize pixels on its shorter side.
+     */
+    private static BufferedImage readSubsampled(Path file, int minSize) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int shorter = Math.min(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, shorter / minSize);
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return reader.read(0, param);
+            } catch (RuntimeException e) {
+                // Readers report some corrupt files with unchecked exceptions
+                throw new IOException("Cannot decode image: " + e.getMessage(), e);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scales the image to width x height by averaging the luminance of the pixels each target pixel covers.
+     */
+    private static double[] grayscale(BufferedImage image, int width, int height) {
+        int sourceWidth = image.getWidth();
+        int sourceHeight = image.getHeight();
+        double[] sums = new double[width * height];
+        int[] counts = new int[width * height];
+        int[] row = new int[sourceWidth];
+        for (int y = 0; y < sourceHeight; y++) {
+            image.getRGB(0, y, sourceWidth, 1, row, 0, sourceWidth);
+            int targetRow = (int) ((long) y * height / sourceHeight) * width;
+            for (int x = 0; x < sourceWidth; x++) {
+                int rgb = row[x];
+                double luminance = 0.299 * ((rgb >> 16) & 0xff) + 0.587 * ((rgb >> 8) & 0xff) + 0.114 * (rgb & 0xff);
+                int target = targetRow + (int) ((long) x * width / sourceWidth);
+                sums[target] += luminance;
+                counts[target]++;
+            }
+        }
+        for (int i = 0; i < sums.length; i++) {
+            // Images smaller than the thumbnail leave pixels uncovered
+            sums[i] = counts[i] == 0 ? (i > 0 ? sums[i - 1] : 0) : sums[i] / counts[i];
+        }
+        return sums;
+    }
+
+    private static double[][] dctCoefficients() {
+        double[][] coefficients = new double[HASH_SIZE][DCT_SIZE];
+        for (int u = 0; u < HASH_SIZE; u++) {
+            for (int x = 0; x < DCT_SIZE; x++) {
+                coefficients[u][x] = Math.cos((2 * x + 1) * u * Math.PI / (2.0 * DCT_SIZE));
+            }
+        }
+        return coefficients;
+    }
+}
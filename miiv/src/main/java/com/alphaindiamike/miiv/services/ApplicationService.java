@@ -10,13 +10,13 @@ import com.alphaindiamike.miiv.model.filesystem.RepositoryScheme;
 @Service
 public class ApplicationService {
     private final MiivControllerAccessInterface controller;
-    private final RepositoryScheme repositoryScheme;
+    private final ConfigurationLoaderService configurationLoader;
 
     @Autowired
     public ApplicationService(@Qualifier("commandLineController") MiivControllerAccessInterface controller,
     		ConfigurationLoaderService configurationLoader) {
         this.controller = controller;
-        this.repositoryScheme = configurationLoader.getRepositoryScheme();
+        this.configurationLoader = configurationLoader;
     }
 
 	public void performAction(String[] args) {
@@ -24,7 +24,7 @@ public class ApplicationService {
 	}
 	
 	public RepositoryScheme getRepositoryScheme() {
-		return repositoryScheme;
+		return configurationLoader.getRepositoryScheme();
 	}
 	
 	public String getErrorResponse() {
@@ -1,36 +1,221 @@
 package com.alphaindiamike.miiv.services;
 
 import java.io.IOException;
-import java.io.File;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import com.alphaindiamike.miiv.model.filesystem.RepositoryScheme;
+import com.alphaindiamike.miiv.privatelib.exceptions.SchemeException;
+import com.alphaindiamike.miiv.privatelib.functions.DatabaseFunctionsLib;
+import com.alphaindiamike.miiv.services.ingest.RoutingTable;
+import com.alphaindiamike.miiv.services.scheme.SchemeCodec;
+import com.alphaindiamike.miiv.services.scheme.SchemeValidator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
+/**
+ * Loads the repository scheme, structure.json in the working directory unless the miiv.scheme
+ * system property names another file, and compiles it into the {@link RoutingTable}.
+ * <p>
+ * A scheme that is parsed and validated is also written in binary form to .miiv_global, keyed by the
+ * SHA-256 of the JSON, see {@link SchemeCodec}; while the JSON is unchanged, later starts read that
+ * form instead of data binding the JSON again. A scheme that cannot be read, parsed or validated
+ * fails the start with a {@link SchemeException}.
+ * <p>
+ * A long-running process calls {@link #startWatching()} to pick up edits of the JSON: the changed
+ * scheme is loaded, validated and compiled aside and swapped in atomically, so callers see the old
+ * or the new scheme and table, never a mix. An edit that does not validate keeps the previous scheme.
+ * Callers fetch the table once per operation, so a run routes all of its files with the same table.
+ */
 @Service
 public class ConfigurationLoaderService {
 	private static final Logger logger = LoggerFactory.getLogger(ConfigurationLoaderService.class);
-	private RepositoryScheme repositoryScheme;
+	public static final String SCHEME_FILE = "structure.json";
+	public static final String SCHEME_FILE_PROPERTY = "miiv.scheme";
+	public static final String SCHEME_CACHE_FILE = "scheme.bin";
+
+	/**
+	 * A scheme together with its routing table and the hash of the JSON it came from.
+	 */
+	private record LoadedScheme(
+			RepositoryScheme scheme,
+			RoutingTable routingTable,
+			byte[] hash,
+			boolean fromCache
+			) {
+	}
+
+	private final Path schemeFile;
+	private final Path cacheFile;
+	private final AtomicReference<LoadedScheme> loaded = new AtomicReference<>();
+	private WatchService watchService;
+	private Thread watcher;
 
     public ConfigurationLoaderService() {
-        // Adjust the path as necessary
-        String configFilePath = "structure.json";
-        ObjectMapper mapper = new ObjectMapper();
+        this(Paths.get(System.getProperty(SCHEME_FILE_PROPERTY, SCHEME_FILE)),
+                DatabaseFunctionsLib.globalDatabaseFile(SCHEME_CACHE_FILE));
+    }
+
+    /**
+     * Loads the scheme from the given file, caching its binary form in the given cache file.
+     *
+     * @throws SchemeException if the scheme cannot be read, parsed or validated.
+     */
+    public ConfigurationLoaderService(Path schemeFile, Path cacheFile) {
+        this.schemeFile = schemeFile;
+        this.cacheFile = cacheFile;
+        LoadedScheme scheme = load(readScheme());
+        loaded.set(scheme);
+        logger.debug("Configuration loaded {}, {} scheme folders, {} ambiguous file types.",
+                scheme.fromCache() ? "from its compiled form" : "from " + schemeFile,
+                scheme.routingTable().folders().size(), scheme.routingTable().ambiguousFileTypes().size());
+    }
+
+    private byte[] readScheme() {
         try {
-            repositoryScheme = mapper.readValue(new File(configFilePath), RepositoryScheme.class);
-            logger.debug("Configuration loaded successfully.");
+            return Files.readAllBytes(schemeFile);
         } catch (IOException e) {
-            e.printStackTrace();
-            logger.error("Failed to load configuration.", e);
+            throw new SchemeException("Failed to read the repository scheme " + schemeFile.toAbsolutePath()
+                    + " due to " + e.getMessage(), e);
         }
     }
 
+    private LoadedScheme load(byte[] json) {
+        byte[] hash = sha256(json);
+        RepositoryScheme scheme = null;
+        try {
+            scheme = SchemeCodec.read(cacheFile, hash);
+        } catch (IOException e) {
+            logger.warn("Failed to read the compiled scheme {}, parsing {}: {}", cacheFile, schemeFile, e.getMessage());
+        }
+        boolean fromCache = scheme != null;
+        if (!fromCache) {
+            try {
+                scheme = new ObjectMapper().readValue(json, RepositoryScheme.class);
+            } catch (IOException e) {
+                throw new SchemeException("Failed to parse the repository scheme " + schemeFile.toAbsolutePath()
+                        + " due to " + e.getMessage(), e);
+            }
+            SchemeValidator.validate(scheme);
+            try {
+                SchemeCodec.write(scheme, hash, cacheFile);
+            } catch (IOException e) {
+                logger.warn("Failed to cache the compiled scheme in {}: {}", cacheFile, e.getMessage());
+            }
+        }
+        return new LoadedScheme(scheme, RoutingTable.compile(scheme), hash, fromCache);
+    }
+
+    private static byte[] sha256(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Loads the scheme again if its JSON changed, swapping in the new scheme and table at once.
+     *
+     * @return True if a changed scheme was swapped in; false if it is unchanged or failed to load,
+     *         in which case the previous one stays in use.
+     */
+    public boolean reload() {
+        try {
+            byte[] json = readScheme();
+            if (Arrays.equals(sha256(json), loaded.get().hash())) {
+                return false;
+            }
+            LoadedScheme scheme = load(json);
+            loaded.set(scheme);
+            logger.info("Reloaded the repository scheme, {} scheme folders.", scheme.routingTable().folders().size());
+            return true;
+        } catch (SchemeException e) {
+            logger.error("Keeping the previous repository scheme: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Watches the directory of the scheme file and reloads the scheme when the file is written or replaced.
+     *
+     * @throws IOException if the directory cannot be watched.
+     */
+    public synchronized void startWatching() throws IOException {
+        if (watcher != null) {
+            return;
+        }
+        Path directory = schemeFile.toAbsolutePath().getParent();
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watcher = new Thread(this::watch, "miiv-scheme-watch");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch() {
+        Path name = schemeFile.getFileName();
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context());
+                }
+                key.reset();
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            logger.debug("Stopped watching {}", schemeFile);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stopWatching() {
+        if (watcher == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close the scheme watch: {}", e.getMessage());
+        }
+        watcher.interrupt();
+        watcher = null;
+    }
+
     public RepositoryScheme getRepositoryScheme() {
-        return repositoryScheme;
+        return loaded.get().scheme();
+    }
+
+    /**
+     * The scheme compiled for routing. Fetch it once per operation; it is replaced, not changed, on reload.
+     */
+    public RoutingTable getRoutingTable() {
+        return loaded.get().routingTable();
+    }
+
+    /**
+     * Tells whether the scheme in use was read from its compiled form rather than parsed from JSON.
+     */
+    public boolean isLoadedFromCache() {
+        return loaded.get().fromCache();
     }
 }
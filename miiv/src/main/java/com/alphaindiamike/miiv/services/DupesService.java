@@ -0,0 +1,129 @@
+package com.alphaindiamike.miiv.services;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.alphaindiamike.miiv.privatelib.functions.DatabaseFunctionsLib;
+import com.alphaindiamike.miiv.privatelib.functions.PerceptualHashFunctionsLib;
+import com.alphaindiamike.miiv.services.dupes.CollectingDuplicateSink;
+import com.alphaindiamike.miiv.services.dupes.DuplicateGroup;
+import com.alphaindiamike.miiv.services.dupes.DuplicateSink;
+import com.alphaindiamike.miiv.services.dupes.DupesReport;
+import com.alphaindiamike.miiv.services.dupes.ImageHashCache;
+import com.alphaindiamike.miiv.services.dupes.SimilarImageFinder;
+import com.alphaindiamike.miiv.services.dupes.StreamingDuplicateFinder;
+import com.alphaindiamike.miiv.services.ingest.ContentHasher;
+import com.alphaindiamike.miiv.services.ingest.HashCache;
+import com.alphaindiamike.miiv.services.ingest.SchemeRouter;
+
+/**
+ * Reports duplicate files and similar images in the workspace. Workspace files are only read.
+ */
+@Service
+public class DupesService {
+    private static final Logger logger = LoggerFactory.getLogger(DupesService.class);
+    public static final int DEFAULT_SIMILARITY_DISTANCE = 8;
+    private static final int SORT_BUFFER = 100_000;
+
+    private final ConfigurationLoaderService configurationLoader;
+
+    @Autowired
+    public DupesService(ConfigurationLoaderService configurationLoader) {
+        this.configurationLoader = configurationLoader;
+    }
+
+    /**
+     * Groups the images in the scheme folders preferring image types whose perceptual hashes lie
+     * within the distance. Hashes are cached in the workspace database.
+     *
+     * @param workspace   The workspace directory.
+     * @param maxDistance The largest Hamming distance, of 64 bits, at which two images match.
+     * @param threads     The threads decoding images.
+     * @return The report with the groups.
+     */
+    public DupesReport similarImages(Path workspace, int maxDistance, int threads) {
+        long start = System.nanoTime();
+        List<Path> folders = new SchemeRouter(configurationLoader.getRoutingTable(), workspace)
+                .foldersAccepting(PerceptualHashFunctionsLib.IMAGE_TYPES);
+        ImageHashCache cache = openImageHashCache(workspace);
+        try {
+            SimilarImageFinder finder = new SimilarImageFinder(cache, threads);
+            List<DuplicateGroup> groups = finder.find(folders, maxDistance);
+            DupesReport report = new DupesReport(true, finder.scanned(), finder.decoded(), finder.failed(), groups,
+                    Duration.ofNanos(System.nanoTime() - start));
+            logger.info("Compared {} images of {}, {} decoded, {} groups", report.scanned(), workspace,
+                    report.read(), groups.size());
+            return report;
+        } finally {
+            if (cache != null) {
+                cache.close();
+            }
+        }
+    }
+
+    /**
+     * Groups the workspace files with equal content. Files are compared by size first and only read
+     * when they share their size with another file; digests are cached like those of a --dedup run.
+     * The files are grouped by external sorts spilling to the workspace metadata directory, so memory
+     * use is bounded however many files the workspace holds. With an output file, groups are written
+     * to it as they are found, as JSON lines or, for a .csv file, as CSV, and the report only counts them.
+     *
+     * @param workspace The workspace directory.
+     * @param threads   The threads hashing files.
+     * @param output    The file to write the groups to, or null to list them in the report.
+     * @return The report, listing the groups each starting with the first file by path without an output file.
+     * @throws IOException if the workspace cannot be walked or the output file cannot be written.
+     */
+    public DupesReport duplicateFiles(Path workspace, int threads, Path output) throws IOException {
+        long start = System.nanoTime();
+        Path metadata = DatabaseFunctionsLib.workspaceMetadataDirectory(workspace);
+        Set<Path> excluded = output == null ? Set.of(metadata) : Set.of(metadata, output);
+        HashCache cache = openHashCache(workspace);
+        CollectingDuplicateSink collected = output == null ? new CollectingDuplicateSink() : null;
+        try (ContentHasher hasher = new ContentHasher(threads);
+                DuplicateSink sink = output == null ? collected : DuplicateSink.toFile(output)) {
+            StreamingDuplicateFinder finder = new StreamingDuplicateFinder(cache, hasher, SORT_BUFFER, metadata);
+            finder.find(workspace, excluded, sink);
+            DupesReport report = new DupesReport(false, finder.scanned(), finder.read(), finder.failed(),
+                    finder.groups(), finder.groupedFiles(), output == null ? collected.groups() : List.of(), output,
+                    Duration.ofNanos(System.nanoTime() - start));
+            logger.info("Compared {} files of {}, {} hashed, {} groups, {} sort runs spilled", report.scanned(),
+                    workspace, report.read(), report.groupCount(), finder.spills());
+            return report;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while hashing files", e);
+        } finally {
+            if (cache != null) {
+                cache.close();
+            }
+        }
+    }
+
+    private static ImageHashCache openImageHashCache(Path workspace) {
+        try {
+            return ImageHashCache.open(workspace);
+        } catch (SQLException e) {
+            logger.warn("Image hash cache unavailable, decoding every image: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static HashCache openHashCache(Path workspace) {
+        try {
+            return HashCache.open(workspace);
+        } catch (SQLException e) {
+            logger.warn("Hash cache unavailable, hashing every candidate: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.alphaindiamike.miiv.services;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.SQLException;
+import java.time.Duration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.alphaindiamike.miiv.privatelib.functions.DatabaseFunctionsLib;
+import com.alphaindiamike.miiv.services.chunks.ChunkStore;
+import com.alphaindiamike.miiv.services.chunks.ExportSummary;
+
+/**
+ * Copies workspace files out of the workspace, rebuilding the files kept in the chunk store from
+ * their stubs. The workspace is only read.
+ */
+@Service
+public class ExportService {
+    private static final Logger logger = LoggerFactory.getLogger(ExportService.class);
+
+    /**
+     * Exports a workspace file or folder. The folder structure below it is kept; stubs are replaced
+     * by the files they stand for. Files existing at the destination are not overwritten.
+     *
+     * @param workspace   The workspace directory.
+     * @param from        A file or folder inside the workspace.
+     * @param destination The folder to export to, outside the workspace; created if needed.
+     * @return The counts of the export.
+     * @throws IllegalArgumentException if from lies outside the workspace or the destination inside it.
+     * @throws IOException if the workspace cannot be walked or the destination cannot be created.
+     */
+    public ExportSummary export(Path workspace, Path from, Path destination) throws IOException {
+        Path metadata = DatabaseFunctionsLib.workspaceMetadataDirectory(workspace);
+        if (!from.startsWith(workspace) || from.startsWith(metadata)) {
+            throw new IllegalArgumentException("Only workspace files can be exported, not " + from);
+        }
+        if (destination.startsWith(workspace)) {
+            throw new IllegalArgumentException("The destination lies inside the workspace: " + destination);
+        }
+        long start = System.nanoTime();
+        Files.createDirectories(destination);
+        Exporter exporter = new Exporter(workspace, Files.isDirectory(from) ? from : from.getParent(), destination,
+                metadata);
+        try {
+            Files.walkFileTree(from, exporter);
+        } finally {
+            if (exporter.store != null) {
+                exporter.store.close();
+            }
+        }
+        ExportSummary summary = new ExportSummary(destination, exporter.files, exporter.rebuilt, exporter.bytes,
+                exporter.failed, Duration.ofNanos(System.nanoTime() - start));
+        logger.info("Exported {} files of {} to {}, {} rebuilt from chunks, {} failed", summary.files(), from,
+                destination, summary.rebuilt(), summary.failed());
+        return summary;
+    }
+
+    private static final class Exporter extends SimpleFileVisitor<Path> {
+        private final Path workspace;
+        private final Path base;
+        private final Path destination;
+        private final Path metadata;
+        private ChunkStore store;
+        private long files;
+        private long rebuilt;
+        private long bytes;
+        private long failed;
+
+        Exporter(Path workspace, Path base, Path destination, Path metadata) {
+            this.workspace = workspace;
+            this.base = base;
+            this.destination = destination;
+            this.metadata = metadata;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+            if (directory.equals(metadata)) {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            Files.createDirectories(destination.resolve(base.relativize(directory).toString()));
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+            if (!attributes.isRegularFile()) {
+                return FileVisitResult.CONTINUE;
+            }
+            Path target = destination.resolve(base.relativize(file).toString());
+            try {
+                if (ChunkStore.isStub(file)) {
+                    target = target.resolveSibling(ChunkStore.storedName(file));
+                    bytes += chunkStore().export(file, target);
+                    rebuilt++;
+                } else {
+                    Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+                    bytes += attributes.size();
+                }
+                files++;
+            } catch (IOException e) {
+                logger.error("Failed to export {} to {} due to {}", file, target, e.toString());
+                failed++;
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+            logger.error("Failed to read {} due to {}", file, e.getMessage());
+            failed++;
+            return FileVisitResult.CONTINUE;
+        }
+
+        private ChunkStore chunkStore() throws IOException {
+            if (store == null) {
+                try {
+                    store = ChunkStore.open(workspace);
+                } catch (SQLException e) {
+                    throw new IOException("Failed to open the chunk store: " + e.getMessage(), e);
+                }
+            }
+            return store;
+        }
+    }
+}
@@ -1,11 +1,32 @@
 package com.alphaindiamike.miiv.services;
 
+import java.nio.file.Path;
+import java.sql.SQLException;
+
 import org.springframework.stereotype.Service;
 
 import com.alphaindiamike.miiv.model.filesystem.FileEntityDAO;
+import com.alphaindiamike.miiv.model.filesystem.SqliteFileEntityDAO;
+import com.alphaindiamike.miiv.privatelib.exceptions.CatalogException;
 
+/**
+ * Access to the file catalog of a workspace, filled by ingest runs as they place files.
+ */
 @Service
 public class FMService {
-	private final FileEntityDAO fileEntityDAO = null;
 
+    /**
+     * Opens the file catalog of the workspace.
+     *
+     * @param workspace The workspace directory.
+     * @return The catalog; the caller closes it.
+     * @throws CatalogException if the catalog database cannot be opened.
+     */
+    public FileEntityDAO openCatalog(Path workspace) {
+        try {
+            return SqliteFileEntityDAO.open(workspace);
+        } catch (SQLException e) {
+            throw new CatalogException("Failed to open the file catalog of " + workspace + " due to " + e.getMessage(), e);
+        }
+    }
 }
@@ -0,0 +1,482 @@
+package com.alphaindiamike.miiv.services;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.alphaindiamike.miiv.privatelib.exceptions.JournalException;
+import com.alphaindiamike.miiv.services.ingest.ContentIndexSummary;
+import com.alphaindiamike.miiv.services.ingest.FileTypeDetector;
+import com.alphaindiamike.miiv.services.ingest.HashCache;
+import com.alphaindiamike.miiv.services.ingest.IngestEngine;
+import com.alphaindiamike.miiv.services.ingest.IoExecutorMode;
+import com.alphaindiamike.miiv.services.ingest.IngestOperation;
+import com.alphaindiamike.miiv.services.ingest.IngestOptions;
+import com.alphaindiamike.miiv.services.ingest.IngestReport;
+import com.alphaindiamike.miiv.services.ingest.OperationJournal;
+import com.alphaindiamike.miiv.services.ingest.OperationJournal.JournalRun;
+import com.alphaindiamike.miiv.services.ingest.PlacementPlan;
+import com.alphaindiamike.miiv.services.ingest.PlacementPlanner;
+import com.alphaindiamike.miiv.services.ingest.PlanEntry;
+import com.alphaindiamike.miiv.services.ingest.PlanSummary;
+import com.alphaindiamike.miiv.services.ingest.RateLimitStore;
+import com.alphaindiamike.miiv.services.ingest.RateLimits;
+import com.alphaindiamike.miiv.services.ingest.ScheduleMode;
+import com.alphaindiamike.miiv.services.ingest.SchemeRouter;
+import com.alphaindiamike.miiv.services.ingest.WorkspaceContentIndex;
+import com.alphaindiamike.miiv.services.ingest.WorkspaceContentScanner;
+import com.alphaindiamike.miiv.services.workflow.ProgramBusyState;
+import com.alphaindiamike.miiv.services.workflow.WorkspaceReadyState;
+
+/**
+ * Entry point for bringing source files into the workspace.
+ */
+@Service
+public class IngestService {
+    private static final Logger logger = LoggerFactory.getLogger(IngestService.class);
+    public static final String WORKERS_SETTING = "copy_workers";
+    public static final String CHUNK_SIZE_SETTING = "transfer_chunk_mb";
+    public static final String LARGE_FILE_THRESHOLD_SETTING = "large_file_threshold_mb";
+    public static final String WALK_THREADS_SETTING = "pipeline_walk_threads";
+    public static final String CLASSIFY_THREADS_SETTING = "pipeline_classify_threads";
+    public static final String HASH_THREADS_SETTING = "pipeline_hash_threads";
+    public static final String QUEUE_CAPACITY_SETTING = "pipeline_queue_capacity";
+    public static final String IO_EXECUTOR_SETTING = "io_executor";
+    public static final String IO_PERMITS_SETTING = "io_permits";
+    public static final String RATE_LIMIT_MB_SETTING = "rate_limit_mb_per_second";
+    public static final String RATE_LIMIT_FILES_SETTING = "rate_limit_files_per_second";
+    public static final String SCHEDULE_SETTING = "schedule_mode";
+    public static final String SMALL_FILE_THRESHOLD_SETTING = "small_file_threshold_kb";
+    public static final String CONTENT_FILTER_FPP_SETTING = "content_filter_fpp";
+    public static final String CHUNK_VERSIONS_SETTING = "chunk_versions";
+    public static final String DATE_VERSIONS_SETTING = "date_versions";
+    private static final long MEGABYTE = 1024L * 1024;
+
+    private final GlobalSettingsService settingsService;
+    private final ProgramStateService programState;
+    private final ConfigurationLoaderService configurationLoader;
+
+    @Autowired
+    public IngestService(GlobalSettingsService settingsService, ProgramStateService programState,
+            ConfigurationLoaderService configurationLoader) {
+        this.settingsService = settingsService;
+        this.programState = programState;
+        this.configurationLoader = configurationLoader;
+    }
+
+    /**
+     * Brings all files below the source into the scheme folders of the workspace.
+     * COPY duplicates the bytes, LINK hard-links files on the workspace file store and copies the rest,
+     * MOVE renames files on the workspace file store and copies, verifies and deletes the rest.
+     *
+     * @param operation What to do with each source file.
+     * @param source    The source directory.
+     * @param workspace The workspace directory.
+     * @param options   The run options, see {@link #defaultOptions()}.
+     * @return The report of the run.
+     * @throws IOException if the staging area of the run cannot be prepared.
+     * @throws JournalException if the run cannot be journaled.
+     */
+    public IngestReport ingest(IngestOperation operation, Path source, Path workspace, IngestOptions options)
+            throws IOException {
+        resolveScheduleMode(options, source);
+        logger.info("{} of {} into {} with {} workers ({} I/O, {} schedule)", operation, source, workspace,
+                options.getWorkers(), options.getIoMode().name().toLowerCase(),
+                options.getScheduleMode().name().toLowerCase());
+        enterBusyState(operation, source, workspace);
+        try {
+            OperationJournal journal = openJournal(() -> OperationJournal.start(workspace, operation, source));
+            try {
+                SchemeRouter router = new SchemeRouter(configurationLoader.getRoutingTable(), workspace);
+                return new IngestEngine(router, workspace, operation, options, journal).run(source);
+            } finally {
+                journal.release();
+            }
+        } finally {
+            leaveBusyState(workspace);
+        }
+    }
+
+    /**
+     * Continues the most recent interrupted run of the operation in the workspace.
+     * Completed files are not touched again and directories already listed are not walked again.
+     *
+     * @param operation The operation of the interrupted run.
+     * @param workspace The workspace directory.
+     * @param options   The run options, see {@link #defaultOptions()}.
+     * @return The report of the resumed part, or empty if no run of the operation is unfinished.
+     * @throws IOException if the staging area of the run cannot be prepared.
+     * @throws JournalException if the journal cannot be read.
+     */
+    public Optional<IngestReport> resume(IngestOperation operation, Path workspace, IngestOptions options)
+            throws IOException {
+        Optional<JournalRun> run = openJournal(() -> OperationJournal.findUnfinishedRun(workspace, operation));
+        if (run.isEmpty()) {
+            return Optional.empty();
+        }
+        logger.info("Resuming {} run {} of {} into {}", operation, run.get().id(), run.get().source(), workspace);
+        resolveScheduleMode(options, run.get().source());
+        enterBusyState(operation, run.get().source(), workspace);
+        try {
+            OperationJournal journal = openJournal(() -> OperationJournal.reopen(workspace, run.get()));
+            try {
+                SchemeRouter router = new SchemeRouter(configurationLoader.getRoutingTable(), workspace);
+                return Optional.of(new IngestEngine(router, workspace, operation, options, journal)
+                        .resume(run.get().source()));
+            } finally {
+                journal.release();
+            }
+        } finally {
+            leaveBusyState(workspace);
+        }
+    }
+
+    /**
+     * Computes the placement of every file below the source and writes it to a plan file, without
+     * touching the workspace. Only metadata is read, and the first bytes of files whose type is
+     * sniffed; sniffed types are cached with the content digests.
+     *
+     * @param source    The source directory.
+     * @param workspace The workspace directory.
+     * @param planFile  The plan file to write.
+     * @param options   The run options; only the walk threads are used.
+     * @return The counts of the plan.
+     * @throws IOException if the plan file cannot be written.
+     */
+    public PlanSummary plan(Path source, Path workspace, Path planFile, IngestOptions options) throws IOException {
+        long start = System.nanoTime();
+        List<PlanEntry> entries;
+        PlacementPlanner planner;
+        HashCache cache = openHashCache(workspace);
+        try {
+            planner = new PlacementPlanner(new SchemeRouter(configurationLoader.getRoutingTable(), workspace),
+                    new FileTypeDetector(cache), workspace, options.getWalkThreads());
+            entries = planner.plan(source);
+        } finally {
+            if (cache != null) {
+                cache.close();
+            }
+        }
+        PlacementPlan.write(planFile, source, workspace, entries);
+        PlanSummary summary = PlanSummary.of(planFile, entries, planner.failures(),
+                Duration.ofNanos(System.nanoTime() - start));
+        logger.info("Planned {} files of {} into {}", summary.files(), source, planFile);
+        return summary;
+    }
+
+    /**
+     * Executes a plan written by {@link #plan}, skipping classification. The plan must have been made
+     * against the workspace.
+     *
+     * @param operation What to do with each planned file.
+     * @param planFile  The plan file.
+     * @param workspace The workspace directory.
+     * @param options   The run options, see {@link #defaultOptions()}.
+     * @return The report of the run.
+     * @throws IOException if the plan cannot be read or the staging area of the run cannot be prepared.
+     * @throws IllegalArgumentException if the plan was made against another workspace.
+     * @throws JournalException if the run cannot be journaled.
+     */
+    public IngestReport executePlan(IngestOperation operation, Path planFile, Path workspace, IngestOptions options)
+            throws IOException {
+        try (PlacementPlan.Reader plan = PlacementPlan.open(planFile)) {
+            if (!plan.getWorkspace().equals(workspace)) {
+                throw new IllegalArgumentException("The plan was made for the workspace " + plan.getWorkspace());
+            }
+            Path source = plan.getSource();
+            resolveScheduleMode(options, source);
+            logger.info("{} of {} into {} as planned in {}", operation, source, workspace, planFile);
+            enterBusyState(operation, source, workspace);
+            try {
+                OperationJournal journal = openJournal(() -> OperationJournal.start(workspace, operation, source));
+                try {
+                    SchemeRouter router = new SchemeRouter(configurationLoader.getRoutingTable(), workspace);
+                    return new IngestEngine(router, workspace, operation, options, journal).runPlan(plan);
+                } finally {
+                    journal.release();
+                }
+            } finally {
+                leaveBusyState(workspace);
+            }
+        }
+    }
+
+    private void resolveScheduleMode(IngestOptions options, Path source) {
+        if (options.getScheduleMode() == null) {
+            options.setScheduleMode(scheduleModeFor(source));
+        }
+    }
+
+    /**
+     * The schedule used for a source: the schedule_mode.&lt;device&gt; setting of its device, else the
+     * schedule_mode setting, else {@link ScheduleMode#WALK}.
+     *
+     * @param source A path on the source device.
+     */
+    public ScheduleMode scheduleModeFor(Path source) {
+        String device = deviceOf(source);
+        String configured = device == null ? null : settingsService.getSetting(deviceScheduleKey(device));
+        if (configured == null) {
+            configured = settingsService.getSetting(SCHEDULE_SETTING);
+        }
+        if (configured != null) {
+            try {
+                return ScheduleMode.parse(configured);
+            } catch (IllegalArgumentException e) {
+                logger.warn("Ignoring invalid schedule setting for {}: {}", source, configured);
+            }
+        }
+        return ScheduleMode.WALK;
+    }
+
+    /**
+     * Stores the schedule of the device holding the source, or removes it when mode is null.
+     *
+     * @return The device name.
+     * @throws IOException if the device of the source cannot be determined.
+     */
+    public String setDeviceScheduleMode(Path source, ScheduleMode mode) throws IOException {
+        String device = Files.getFileStore(source).name();
+        if (mode == null) {
+            settingsService.deleteSetting(deviceScheduleKey(device));
+        } else {
+            settingsService.setSetting(deviceScheduleKey(device), mode.name().toLowerCase());
+        }
+        return device;
+    }
+
+    private static String deviceOf(Path source) {
+        try {
+            return Files.getFileStore(source).name();
+        } catch (IOException e) {
+            logger.debug("Cannot determine the device of {}: {}", source, e.getMessage());
+            return null;
+        }
+    }
+
+    private static String deviceScheduleKey(String device) {
+        return SCHEDULE_SETTING + "." + device;
+    }
+
+    /**
+     * Marks the program busy for the duration of the run; a second run is refused by the busy state.
+     */
+    private void enterBusyState(IngestOperation operation, Path source, Path workspace) {
+        programState.triggerStateTransition(
+                new ProgramBusyState(workspace.toString(), source.toString(), operation.name()),
+                new String[]{workspace.toString()});
+    }
+
+    private void leaveBusyState(Path workspace) {
+        programState.triggerStateTransition(new WorkspaceReadyState(workspace.toString()),
+                new String[]{workspace.toString()});
+    }
+
+    /**
+     * Opens the digest cache, which also keeps sniffed file types; without it every file is sniffed.
+     */
+    private static HashCache openHashCache(Path workspace) {
+        try {
+            return HashCache.open(workspace);
+        } catch (SQLException e) {
+            logger.warn("Hash cache unavailable, sniffing every file: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private interface JournalAccess<T> {
+        T open() throws SQLException;
+    }
+
+    private static <T> T openJournal(JournalAccess<T> access) {
+        try {
+            return access.open();
+        } catch (SQLException e) {
+            logger.error("Failed to access the workspace journal: {}", e.getMessage());
+            throw new JournalException("Failed to access the workspace journal", e);
+        }
+    }
+
+    /**
+     * Builds the options used when the command does not override them, from the global settings:
+     * copy_workers (write stage threads, default: one per processor), transfer_chunk_mb,
+     * large_file_threshold_mb, the pipeline_* thread budgets and queue capacity, io_executor
+     * (platform or virtual), io_permits, the rate_limit_* budgets, small_file_threshold_kb,
+     * content_filter_fpp, chunk_versions (true to use the chunk store) and date_versions (true to
+     * name versions after their document date).
+     * The schedule is left open and resolved per source device when the run starts.
+     */
+    public IngestOptions defaultOptions() {
+        IngestOptions options = new IngestOptions();
+        int workers = intSetting(WORKERS_SETTING);
+        if (workers > 0) {
+            options.setWorkers(workers);
+        }
+        long chunkMegabytes = positiveSetting(CHUNK_SIZE_SETTING);
+        if (chunkMegabytes > 0) {
+            options.setChunkSize(chunkMegabytes * MEGABYTE);
+        }
+        long thresholdMegabytes = positiveSetting(LARGE_FILE_THRESHOLD_SETTING);
+        if (thresholdMegabytes > 0) {
+            options.setLargeFileThreshold(thresholdMegabytes * MEGABYTE);
+        }
+        int walkThreads = intSetting(WALK_THREADS_SETTING);
+        if (walkThreads > 0) {
+            options.setWalkThreads(walkThreads);
+        }
+        int classifyThreads = intSetting(CLASSIFY_THREADS_SETTING);
+        if (classifyThreads > 0) {
+            options.setClassifyThreads(classifyThreads);
+        }
+        int hashThreads = intSetting(HASH_THREADS_SETTING);
+        if (hashThreads > 0) {
+            options.setHashThreads(hashThreads);
+        }
+        int queueCapacity = intSetting(QUEUE_CAPACITY_SETTING);
+        if (queueCapacity > 0) {
+            options.setQueueCapacity(queueCapacity);
+        }
+        String ioExecutor = settingsService.getSetting(IO_EXECUTOR_SETTING);
+        if (ioExecutor != null) {
+            try {
+                options.setIoMode(IoExecutorMode.parse(ioExecutor));
+            } catch (IllegalArgumentException e) {
+                logger.warn("Ignoring invalid {} setting: {}", IO_EXECUTOR_SETTING, ioExecutor);
+            }
+        }
+        int ioPermits = intSetting(IO_PERMITS_SETTING);
+        if (ioPermits > 0) {
+            options.setIoPermits(ioPermits);
+        }
+        options.setRateLimits(defaultRateLimits());
+        long smallFileKilobytes = positiveSetting(SMALL_FILE_THRESHOLD_SETTING);
+        if (smallFileKilobytes > 0) {
+            options.setSmallFileThreshold(smallFileKilobytes * 1024);
+        }
+        options.setContentFilterFalsePositiveRate(contentFilterFalsePositiveRate());
+        options.setChunkVersions(Boolean.parseBoolean(settingsService.getSetting(CHUNK_VERSIONS_SETTING)));
+        options.setDateVersions(Boolean.parseBoolean(settingsService.getSetting(DATE_VERSIONS_SETTING)));
+        return options;
+    }
+
+    /**
+     * The false positive rate the workspace content filter is sized for: content_filter_fpp, else
+     * {@link WorkspaceContentIndex#DEFAULT_FALSE_POSITIVE_RATE}.
+     */
+    public double contentFilterFalsePositiveRate() {
+        String configured = settingsService.getSetting(CONTENT_FILTER_FPP_SETTING);
+        if (configured != null) {
+            try {
+                double value = Double.parseDouble(configured);
+                if (value > 0 && value < 1) {
+                    return value;
+                }
+            } catch (NumberFormatException e) {
+                // Reported below together with the out of range case
+            }
+            logger.warn("Ignoring invalid {} setting: {}", CONTENT_FILTER_FPP_SETTING, configured);
+        }
+        return WorkspaceContentIndex.DEFAULT_FALSE_POSITIVE_RATE;
+    }
+
+    /**
+     * Stores the false positive rate of the workspace content filter. The filter is resized the
+     * next time it is opened.
+     */
+    public void saveContentFilterFalsePositiveRate(double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must lie between 0 and 1, got: " + falsePositiveRate);
+        }
+        settingsService.setSetting(CONTENT_FILTER_FPP_SETTING, Double.toString(falsePositiveRate));
+    }
+
+    /**
+     * Brings the index of the workspace content up to date, so --dedup runs skip files whose
+     * content is already in the workspace. Only new and changed files are read.
+     *
+     * @param workspace The workspace directory.
+     * @param threads   The threads hashing new and changed files.
+     * @return The counts of the scan.
+     * @throws IOException if the workspace cannot be walked.
+     * @throws JournalException if the workspace database cannot be written.
+     */
+    public ContentIndexSummary indexWorkspace(Path workspace, int threads) throws IOException {
+        try (WorkspaceContentIndex index = WorkspaceContentIndex.open(workspace, contentFilterFalsePositiveRate())) {
+            ContentIndexSummary summary = new WorkspaceContentScanner(index, threads).scan(workspace);
+            logger.info("Indexed {} files of {}, {} hashed, {} removed", summary.files(), workspace, summary.hashed(),
+                    summary.removed());
+            return summary;
+        } catch (SQLException e) {
+            logger.error("Failed to access the workspace content index: {}", e.getMessage());
+            throw new JournalException("Failed to access the workspace content index", e);
+        }
+    }
+
+    /**
+     * The rate limits of runs that do not set their own: rate_limit_mb_per_second and
+     * rate_limit_files_per_second, unlimited when absent.
+     */
+    public RateLimits defaultRateLimits() {
+        return RateLimits.ofMegabytes(positiveSetting(RATE_LIMIT_MB_SETTING), positiveSetting(RATE_LIMIT_FILES_SETTING));
+    }
+
+    /**
+     * Stores the rate limits used by future runs. A limit of 0 removes the setting.
+     */
+    public void saveDefaultRateLimits(long megabytesPerSecond, long filesPerSecond) {
+        saveLimit(RATE_LIMIT_MB_SETTING, megabytesPerSecond);
+        saveLimit(RATE_LIMIT_FILES_SETTING, filesPerSecond);
+    }
+
+    private void saveLimit(String key, long value) {
+        if (value == 0) {
+            settingsService.deleteSetting(key);
+        } else {
+            settingsService.setSetting(key, Long.toString(value));
+        }
+    }
+
+    /**
+     * Changes the rate limits of the run in progress in the workspace, and of interrupted runs
+     * when they are resumed. A running engine picks the change up within a second.
+     *
+     * @return The number of unfinished runs updated.
+     * @throws JournalException if the workspace database cannot be written.
+     */
+    public int adjustRateLimits(Path workspace, RateLimits limits) {
+        return openJournal(() -> RateLimitStore.adjustUnfinishedRuns(workspace, limits));
+    }
+
+    private int intSetting(String key) {
+        return (int) Math.min(positiveSetting(key), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads a positive numeric setting, returning 0 when it is absent or invalid.
+     */
+    private long positiveSetting(String key) {
+        String configured = settingsService.getSetting(key);
+        if (configured == null) {
+            return 0;
+        }
+        try {
+            long value = Long.parseLong(configured);
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below together with the non-positive case
+        }
+        logger.warn("Ignoring invalid {} setting: {}", key, configured);
+        return 0;
+    }
+}
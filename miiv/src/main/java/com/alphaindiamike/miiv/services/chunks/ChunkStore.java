@@ -0,0 +1,466 @@
+package com.alphaindiamike.miiv.services.chunks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alphaindiamike.miiv.privatelib.functions.DatabaseFunctionsLib;
+import com.alphaindiamike.miiv.privatelib.functions.FileTransferFunctionsLib;
+import com.alphaindiamike.miiv.privatelib.functions.FileTransferFunctionsLib.TransferThrottle;
+
+/**
+ * Content-defined chunk store of a workspace. Files are split by the {@link ContentDefinedChunker}
+ * and only chunks not stored before are appended to the pack files in .miiv/chunks, so the versions
+ * of a document share the bytes they have in common. The workspace keeps a small stub in place of
+ * each stored file, named after it with {@link #STUB_EXTENSION}, holding the SHA-256 and size of
+ * the content; the list of chunks of every stored content lives in the workspace database.
+ * Chunks are addressed by SHA-256. Pack bytes are forced to disk before the rows pointing at them
+ * are committed, so an interrupted store leaves at most unreferenced bytes behind.
+ */
+public class ChunkStore implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkStore.class);
+    public static final String STUB_EXTENSION = ".miivchunks";
+    public static final String CHUNK_DIRECTORY = "chunks";
+    private static final String STUB_HEADER = "miiv chunked file 1";
+    private static final long PACK_LIMIT = 1L << 30;
+    private static final int DIGEST_LENGTH = 32;
+
+    /**
+     * The content of a stored file, as written to its stub.
+     *
+     * @param newChunks The chunks which were not stored before.
+     * @param newBytes  The bytes appended to the packs for them.
+     */
+    public record StoredFile(
+    		byte[] digest,
+    		long size,
+    		int chunks,
+    		int newChunks,
+    		long newBytes
+    		) {
+    }
+
+    private record Location(int pack, long offset, int length) {
+    }
+
+    /**
+     * The content a stub stands for.
+     */
+    public record Stub(byte[] digest, long size) {
+    }
+
+    private final Connection connection;
+    private final Path directory;
+    private final ContentDefinedChunker chunker;
+    private final PreparedStatement selectChunk;
+    private final PreparedStatement insertChunk;
+    private final PreparedStatement selectFile;
+    private final PreparedStatement insertFile;
+    private final Map<ByteBuffer, Location> unsaved = new LinkedHashMap<>();
+    private final Map<Integer, FileChannel> readers = new ConcurrentHashMap<>();
+    private FileChannel pack;
+    private int packNumber;
+    private long packSize;
+
+    private ChunkStore(Connection connection, Path directory, ContentDefinedChunker chunker) throws SQLException {
+        this.connection = connection;
+        this.directory = directory;
+        this.chunker = chunker;
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS chunk_store_chunks (digest BLOB PRIMARY KEY, "
+                    + "pack INTEGER NOT NULL, offset INTEGER NOT NULL, length INTEGER NOT NULL)");
+            statement.execute("CREATE TABLE IF NOT EXISTS chunk_store_files (digest BLOB PRIMARY KEY, "
+                    + "size INTEGER NOT NULL, recipe BLOB NOT NULL)");
+        }
+        selectChunk = connection.prepareStatement("SELECT pack, offset, length FROM chunk_store_chunks WHERE digest = ?");
+        insertChunk = connection.prepareStatement("INSERT OR IGNORE INTO chunk_store_chunks "
+                + "(digest, pack, offset, length) VALUES (?, ?, ?, ?)");
+        selectFile = connection.prepareStatement("SELECT size, recipe FROM chunk_store_files WHERE digest = ?");
+        insertFile = connection.prepareStatement("INSERT OR IGNORE INTO chunk_store_files (digest, size, recipe) "
+                + "VALUES (?, ?, ?)");
+    }
+
+    /**
+     * Opens the chunk store of a workspace, creating it if needed.
+     *
+     * @throws SQLException if the workspace database cannot be opened.
+     * @throws IOException if the pack directory cannot be created.
+     */
+    public static ChunkStore open(Path workspace) throws SQLException, IOException {
+        return open(workspace, ContentDefinedChunker.DEFAULT);
+    }
+
+    public static ChunkStore open(Path workspace, ContentDefinedChunker chunker) throws SQLException, IOException {
+        Path directory = DatabaseFunctionsLib.workspaceMetadataDirectory(workspace).resolve(CHUNK_DIRECTORY);
+        Files.createDirectories(directory);
+        Connection connection = DatabaseFunctionsLib.openWorkspaceDatabase(workspace);
+        try {
+            return new ChunkStore(connection, directory, chunker);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    public static boolean isStub(Path file) {
+        return file.getFileName().toString().endsWith(STUB_EXTENSION);
+    }
+
+    /**
+     * The name of the stored file, e.g. "CV.pdf" for "CV.pdf.miivchunks".
+     */
+    public static String storedName(Path stub) {
+        String name = stub.getFileName().toString();
+        return name.substring(0, name.length() - STUB_EXTENSION.length());
+    }
+
+    /**
+     * Stores the content of the file and writes its stub, which must not exist yet.
+     *
+     * @param source   The file to store.
+     * @param stub     The stub to create.
+     * @param throttle Budget taken for the bytes appended to the packs.
+     * @return The stored content.
+     * @throws java.nio.file.FileAlreadyExistsException if the stub exists.
+     * @throws IOException if the file cannot be read or the store cannot be written.
+     */
+    public StoredFile store(Path source, Path stub, TransferThrottle throttle) throws IOException {
+        MessageDigest content = FileTransferFunctionsLib.newVerificationDigest();
+        MessageDigest chunkDigest = FileTransferFunctionsLib.newVerificationDigest();
+        ByteArrayOutputStream recipe = new ByteArrayOutputStream();
+        int[] counts = new int[2];
+        long[] newBytes = new long[1];
+        long size;
+        try (InputStream in = Files.newInputStream(source)) {
+            size = chunker.split(in, (buffer, offset, length) -> {
+                content.update(buffer, offset, length);
+                chunkDigest.update(buffer, offset, length);
+                byte[] digest = chunkDigest.digest();
+                if (appendIfAbsent(digest, buffer, offset, length)) {
+                    throttle.acquire(length);
+                    counts[1]++;
+                    newBytes[0] += length;
+                }
+                counts[0]++;
+                recipe.write(digest);
+            });
+        }
+        byte[] digest = content.digest();
+        commit(digest, size, recipe.toByteArray());
+        Files.writeString(stub, stubText(digest, size), StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        return new StoredFile(digest, size, counts[0], counts[1], newBytes[0]);
+    }
+
+    /**
+     * Opens the content of a stub for reading; chunks are read from the packs as the stream advances.
+     *
+     * @throws IOException if the stub cannot be read or names content missing from the store.
+     */
+    public InputStream read(Path stub) throws IOException {
+        byte[] recipe;
+        try {
+            recipe = recipeOf(readStub(stub).digest());
+        } catch (SQLException e) {
+            throw new IOException("Failed to read the chunk store: " + e.getMessage(), e);
+        }
+        if (recipe == null) {
+            throw new IOException("Content of " + stub + " is missing from the chunk store");
+        }
+        return new ChunkedInputStream(recipe);
+    }
+
+    /**
+     * Writes the content of a stub to a new file and checks it against the digest in the stub.
+     *
+     * @return The number of bytes written.
+     * @throws java.nio.file.FileAlreadyExistsException if the target exists.
+     * @throws IOException if the content cannot be read or does not match its digest.
+     */
+    public long export(Path stub, Path target) throws IOException {
+        byte[] expected = readStub(stub).digest();
+        MessageDigest digest = FileTransferFunctionsLib.newVerificationDigest();
+        long written = 0;
+        try (InputStream in = read(stub);
+                OutputStream out = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[ContentDefinedChunker.DEFAULT_MAX_SIZE];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                written += read;
+            }
+        }
+        if (!MessageDigest.isEqual(expected, digest.digest())) {
+            Files.deleteIfExists(target);
+            throw new IOException("Content of " + stub + " does not match its digest");
+        }
+        return written;
+    }
+
+    /**
+     * Checks that the stub names stored content with the given digest, reading every chunk back.
+     *
+     * @throws IOException if the content cannot be read or differs.
+     */
+    public void verify(Path stub, byte[] expected) throws IOException {
+        MessageDigest digest = FileTransferFunctionsLib.newVerificationDigest();
+        try (InputStream in = read(stub)) {
+            byte[] buffer = new byte[ContentDefinedChunker.DEFAULT_MAX_SIZE];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        if (!MessageDigest.isEqual(expected, digest.digest())) {
+            throw new IOException("Stored content of " + stub + " does not match the source");
+        }
+    }
+
+    private synchronized boolean appendIfAbsent(byte[] digest, byte[] buffer, int offset, int length)
+            throws IOException {
+        ByteBuffer key = ByteBuffer.wrap(digest);
+        if (unsaved.containsKey(key) || locate(digest) != null) {
+            return false;
+        }
+        if (pack == null || packSize >= PACK_LIMIT) {
+            openNextPack();
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(buffer, offset, length);
+        long position = packSize;
+        while (bytes.hasRemaining()) {
+            position += pack.write(bytes, position);
+        }
+        unsaved.put(key, new Location(packNumber, packSize, length));
+        packSize = position;
+        return true;
+    }
+
+    private void openNextPack() throws IOException {
+        if (pack != null) {
+            pack.force(false);
+            pack.close();
+        }
+        if (packNumber == 0) {
+            try (var packs = Files.list(directory)) {
+                packNumber = packs.map(path -> path.getFileName().toString())
+                        .filter(name -> name.startsWith("pack-") && name.endsWith(".dat"))
+                        .mapToInt(name -> Integer.parseInt(name.substring(5, name.length() - 4)))
+                        .max().orElse(0);
+            }
+            if (packNumber == 0) {
+                packNumber = 1;
+            }
+        } else {
+            packNumber++;
+        }
+        pack = FileChannel.open(packFile(packNumber), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        packSize = pack.size();
+        if (packSize >= PACK_LIMIT) {
+            openNextPack();
+        }
+    }
+
+    private Path packFile(int number) {
+        return directory.resolve(String.format("pack-%06d.dat", number));
+    }
+
+    /**
+     * Makes the appended chunks durable and records them with the recipe of the file.
+     */
+    private synchronized void commit(byte[] digest, long size, byte[] recipe) throws IOException {
+        if (pack != null) {
+            pack.force(false);
+        }
+        try {
+            connection.setAutoCommit(false);
+            try {
+                for (Map.Entry<ByteBuffer, Location> chunk : unsaved.entrySet()) {
+                    insertChunk.setBytes(1, chunk.getKey().array());
+                    insertChunk.setInt(2, chunk.getValue().pack());
+                    insertChunk.setLong(3, chunk.getValue().offset());
+                    insertChunk.setInt(4, chunk.getValue().length());
+                    insertChunk.addBatch();
+                }
+                insertChunk.executeBatch();
+                insertFile.setBytes(1, digest);
+                insertFile.setLong(2, size);
+                insertFile.setBytes(3, recipe);
+                insertFile.executeUpdate();
+                connection.commit();
+                unsaved.clear();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to write the chunk store: " + e.getMessage(), e);
+        }
+    }
+
+    private synchronized Location locate(byte[] digest) throws IOException {
+        Location location = unsaved.get(ByteBuffer.wrap(digest));
+        if (location != null) {
+            return location;
+        }
+        try {
+            selectChunk.setBytes(1, digest);
+            try (ResultSet rs = selectChunk.executeQuery()) {
+                return rs.next() ? new Location(rs.getInt(1), rs.getLong(2), rs.getInt(3)) : null;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to read the chunk store: " + e.getMessage(), e);
+        }
+    }
+
+    private synchronized byte[] recipeOf(byte[] digest) throws SQLException {
+        selectFile.setBytes(1, digest);
+        try (ResultSet rs = selectFile.executeQuery()) {
+            return rs.next() ? rs.getBytes(2) : null;
+        }
+    }
+
+    private byte[] readChunk(byte[] digest) throws IOException {
+        Location location = locate(digest);
+        if (location == null) {
+            throw new IOException("Chunk " + HexFormat.of().formatHex(digest) + " is missing from the chunk store");
+        }
+        FileChannel reader = readers.get(location.pack());
+        if (reader == null) {
+            reader = FileChannel.open(packFile(location.pack()), StandardOpenOption.READ);
+            FileChannel raced = readers.putIfAbsent(location.pack(), reader);
+            if (raced != null) {
+                reader.close();
+                reader = raced;
+            }
+        }
+        ByteBuffer chunk = ByteBuffer.allocate(location.length());
+        long position = location.offset();
+        while (chunk.hasRemaining()) {
+            int read = reader.read(chunk, position);
+            if (read < 0) {
+                throw new IOException("Chunk pack " + location.pack() + " is truncated");
+            }
+            position += read;
+        }
+        return chunk.array();
+    }
+
+    private static String stubText(byte[] digest, long size) {
+        return STUB_HEADER + "\nsha256 " + HexFormat.of().formatHex(digest) + "\nsize " + size + "\n";
+    }
+
+    /**
+     * Reads the digest and size of the content a stub stands for.
+     *
+     * @throws IOException if the file cannot be read or is not a stub.
+     */
+    public static Stub readStub(Path stub) throws IOException {
+        List<String> lines = Files.readAllLines(stub, StandardCharsets.UTF_8);
+        if (lines.size() < 3 || !lines.get(0).equals(STUB_HEADER) || !lines.get(1).startsWith("sha256 ")
+                || !lines.get(2).startsWith("size ")) {
+            throw new IOException("Not a chunk store stub: " + stub);
+        }
+        try {
+            byte[] digest = HexFormat.of().parseHex(lines.get(1).substring(7));
+            long size = Long.parseLong(lines.get(2).substring(5));
+            return new Stub(digest, size);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt chunk store stub: " + stub, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (pack != null) {
+                pack.force(false);
+                pack.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to close chunk pack {}: {}", packNumber, e.getMessage());
+        }
+        for (FileChannel reader : readers.values()) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close a chunk pack reader: {}", e.getMessage());
+            }
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.warn("Failed to close the chunk store: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the chunks of a recipe in order.
+     */
+    private final class ChunkedInputStream extends InputStream {
+        private final byte[] recipe;
+        private int next;
+        private byte[] chunk = new byte[0];
+        private int position;
+
+        ChunkedInputStream(byte[] recipe) {
+            this.recipe = recipe;
+        }
+
+        private boolean fill() throws IOException {
+            while (position == chunk.length) {
+                if (next >= recipe.length) {
+                    return false;
+                }
+                byte[] digest = new byte[DIGEST_LENGTH];
+                System.arraycopy(recipe, next, digest, 0, DIGEST_LENGTH);
+                next += DIGEST_LENGTH;
+                chunk = readChunk(digest);
+                position = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? chunk[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(length, chunk.length - position);
+            System.arraycopy(chunk, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+    }
+}
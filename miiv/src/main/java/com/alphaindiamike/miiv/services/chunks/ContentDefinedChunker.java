@@ -0,0 +1,128 @@
+package com.alphaindiamike.miiv.services.chunks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.SplittableRandom;
+
+/**
+ * Splits a stream into chunks whose boundaries depend on the content only, so an edit shifts the
+ * boundaries of the chunks around it and leaves the others in place. A Gear rolling hash over the
+ * last 64 bytes picks the boundaries (FastCDC): no cut before the minimum size, a stricter mask
+ * before the average size and a looser one after it, which keeps sizes close to the average, and a
+ * forced cut at the maximum size.
+ */
+public class ContentDefinedChunker {
+    public static final int DEFAULT_MIN_SIZE = 2 * 1024;
+    public static final int DEFAULT_AVERAGE_SIZE = 8 * 1024;
+    public static final int DEFAULT_MAX_SIZE = 64 * 1024;
+    public static final ContentDefinedChunker DEFAULT =
+            new ContentDefinedChunker(DEFAULT_MIN_SIZE, DEFAULT_AVERAGE_SIZE, DEFAULT_MAX_SIZE);
+
+    // Fixed seed: boundaries must not change between runs, or stored chunks would never match again
+    private static final long[] GEAR = new SplittableRandom(0x6d6969765f636463L).longs(256).toArray();
+
+    /**
+     * Receives the chunks of a stream in order. The array is reused once the call returns.
+     */
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        void accept(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    private final int minSize;
+    private final int averageSize;
+    private final int maxSize;
+    private final long strictMask;
+    private final long looseMask;
+
+    /**
+     * @param minSize     The smallest chunk, except for the last one of a stream.
+     * @param averageSize The targeted average, a power of two.
+     * @param maxSize     The largest chunk.
+     */
+    public ContentDefinedChunker(int minSize, int averageSize, int maxSize) {
+        if (Integer.bitCount(averageSize) != 1 || minSize < 64 || minSize >= averageSize || averageSize >= maxSize) {
+            throw new IllegalArgumentException("Expected 64 <= min < average < max with a power of two average, got: "
+                    + minSize + "/" + averageSize + "/" + maxSize);
+        }
+        this.minSize = minSize;
+        this.averageSize = averageSize;
+        this.maxSize = maxSize;
+        int bits = Integer.numberOfTrailingZeros(averageSize);
+        // The high bits of the hash depend on the last 64 bytes, the low ones only on the last few
+        this.strictMask = -1L << (Long.SIZE - bits - 2);
+        this.looseMask = -1L << (Long.SIZE - bits + 2);
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * The length of the chunk starting at the offset.
+     *
+     * @param data   The buffer.
+     * @param offset The start of the chunk.
+     * @param length The bytes available from the offset; all of the remaining stream when less than the maximum.
+     */
+    public int cut(byte[] data, int offset, int length) {
+        if (length <= minSize) {
+            return length;
+        }
+        int end = Math.min(length, maxSize);
+        int normal = Math.min(end, averageSize);
+        long hash = 0;
+        int i = minSize;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xff];
+            if ((hash & strictMask) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i++) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xff];
+            if ((hash & looseMask) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Reads the stream to its end and hands its chunks to the consumer.
+     *
+     * @return The number of bytes read.
+     * @throws IOException if the stream cannot be read or the consumer fails.
+     */
+    public long split(InputStream in, ChunkConsumer consumer) throws IOException {
+        byte[] buffer = new byte[4 * maxSize];
+        int start = 0;
+        int end = 0;
+        long total = 0;
+        boolean eof = false;
+        while (true) {
+            if (!eof && end - start < maxSize) {
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                }
+                while (end < buffer.length) {
+                    int read = in.read(buffer, end, buffer.length - end);
+                    if (read < 0) {
+                        eof = true;
+                        break;
+                    }
+                    end += read;
+                }
+            }
+            if (start == end) {
+                return total;
+            }
+            int length = cut(buffer, start, end - start);
+            consumer.accept(buffer, start, length);
+            start += length;
+            total += length;
+        }
+    }
+}
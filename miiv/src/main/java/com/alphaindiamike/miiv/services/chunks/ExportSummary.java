@@ -0,0 +1,23 @@
+package com.alphaindiamike.miiv.services.chunks;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Outcome of miiv export. Rebuilt files were stored as chunks and reassembled from the chunk store;
+ * the others were copied as they are.
+ */
+public record ExportSummary(
+		Path destination,
+		long files,
+		long rebuilt,
+		long bytes,
+		long failed,
+		Duration elapsed
+		) {
+
+    public String summary() {
+        return String.format("Exported %d files (%.1f MB) to %s in %.1f s, %d rebuilt from the chunk store, %d failed.",
+                files, bytes / (1024.0 * 1024.0), destination, elapsed.toMillis() / 1000.0, rebuilt, failed);
+    }
+}
@@ -0,0 +1,40 @@
+package com.alphaindiamike.miiv.services.dupes;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the groups in memory for the console report, which lists them by their first file.
+ */
+public class CollectingDuplicateSink implements DuplicateSink {
+    private final List<DuplicateGroup> groups = new ArrayList<>();
+    private List<Path> files;
+
+    @Override
+    public void beginGroup(long size, String algorithm, byte[] digest) {
+        files = new ArrayList<>();
+    }
+
+    @Override
+    public void file(Path file) {
+        files.add(file);
+    }
+
+    @Override
+    public void endGroup() {
+        groups.add(new DuplicateGroup(List.copyOf(files)));
+        files = null;
+    }
+
+    public List<DuplicateGroup> groups() {
+        List<DuplicateGroup> sorted = new ArrayList<>(groups);
+        sorted.sort(Comparator.comparing(group -> group.files().get(0)));
+        return sorted;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,51 @@
+package com.alphaindiamike.miiv.services.dupes;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.HexFormat;
+
+/**
+ * Writes one CSV row per member: group number, size, algorithm, digest and path, after a header
+ * row. Paths are quoted as in RFC 4180 when they contain a comma, quote or line break.
+ */
+public class CsvDuplicateSink implements DuplicateSink {
+    private final Writer writer;
+    private long group;
+    private String key;
+
+    public CsvDuplicateSink(Writer writer) throws IOException {
+        this.writer = writer;
+        writer.write("group,size,algorithm,digest,path\n");
+    }
+
+    @Override
+    public void beginGroup(long size, String algorithm, byte[] digest) {
+        group++;
+        key = group + "," + size + "," + algorithm + "," + HexFormat.of().formatHex(digest) + ",";
+    }
+
+    @Override
+    public void file(Path file) throws IOException {
+        writer.write(key);
+        writer.write(quote(file.toString()));
+        writer.write('\n');
+    }
+
+    @Override
+    public void endGroup() {
+        key = null;
+    }
+
+    static String quote(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
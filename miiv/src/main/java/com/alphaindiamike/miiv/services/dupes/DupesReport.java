@@ -0,0 +1,49 @@
+package com.alphaindiamike.miiv.services.dupes;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of miiv dupes. Scanned counts the files compared, read those whose content had to be
+ * hashed or decoded because no valid cached hash was found, failed those which could not be read.
+ * Groups written to an output file are only counted; otherwise they are listed in the report.
+ */
+public record DupesReport(
+		boolean similar,
+		long scanned,
+		long read,
+		long failed,
+		long groupCount,
+		long groupedFiles,
+		List<DuplicateGroup> groups,
+		Path output,
+		Duration elapsed
+		) {
+
+    /**
+     * A report listing its groups.
+     */
+    public DupesReport(boolean similar, long scanned, long read, long failed, List<DuplicateGroup> groups,
+            Duration elapsed) {
+        this(similar, scanned, read, failed, groups.size(),
+                groups.stream().mapToLong(group -> group.files().size()).sum(), groups, null, elapsed);
+    }
+
+    public String summary() {
+        String kind = similar ? "similar images" : "duplicate files";
+        StringBuilder text = new StringBuilder(String.format("Found %d groups of %s (%d files) among %d %s in %.1f s: "
+                + "%d read, %d failed.", groupCount, kind, groupedFiles, scanned, similar ? "images" : "files",
+                elapsed.toMillis() / 1000.0, read, failed));
+        if (output != null) {
+            return text.append(" Groups written to ").append(output).toString();
+        }
+        for (DuplicateGroup group : groups) {
+            text.append('\n');
+            for (int i = 0; i < group.files().size(); i++) {
+                text.append(i == 0 ? "\n  " : "\n  = ").append(group.files().get(i));
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,12 @@
+package com.alphaindiamike.miiv.services.dupes;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Files found to be duplicates, or similar images, of each other, ordered by path.
+ */
+public record DuplicateGroup(
+		List<Path> files
+		) {
+}
@@ -0,0 +1,40 @@
+package com.alphaindiamike.miiv.services.dupes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Receives groups of duplicate files as they are found: {@link #beginGroup}, then each member
+ * ordered by path, then {@link #endGroup()}. A group is never revisited once ended.
+ */
+public interface DuplicateSink extends Closeable {
+
+    /**
+     * @param size      The size shared by the members.
+     * @param algorithm The digest algorithm, "sha-256".
+     * @param digest    The digest shared by the members.
+     */
+    void beginGroup(long size, String algorithm, byte[] digest) throws IOException;
+
+    void file(Path file) throws IOException;
+
+    void endGroup() throws IOException;
+
+    /**
+     * Opens a sink writing to a file, as CSV for a .csv file and as JSON lines otherwise.
+     * An existing file is replaced.
+     *
+     * @throws IOException if the file cannot be created.
+     */
+    static DuplicateSink toFile(Path output) throws IOException {
+        var writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8);
+        if (output.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv")) {
+            return new CsvDuplicateSink(writer);
+        }
+        return new JsonLinesDuplicateSink(writer);
+    }
+}
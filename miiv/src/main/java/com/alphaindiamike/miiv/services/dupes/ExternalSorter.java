@@ -0,0 +1,248 @@
+package com.alphaindiamike.miiv.services.dupes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sorts more records than fit on the heap: records are buffered up to a fixed count, then sorted and
+ * spilled to a run file; reading merges the runs, at most {@link #MAX_FAN_IN} at a time. Heap use
+ * is bounded by the buffer whatever the number of records. Without a spill, records never touch
+ * the disk. Run files live in a temporary directory removed on close.
+ *
+ * @param <T> The record type.
+ */
+public class ExternalSorter<T> implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ExternalSorter.class);
+    static final int MAX_FAN_IN = 64;
+    private static final int STREAM_BUFFER = 1 << 16;
+
+    /**
+     * Writes and reads records of a run file.
+     */
+    public interface Codec<T> {
+        void write(DataOutputStream out, T value) throws IOException;
+
+        T read(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * The records in order; {@link #next()} returns null after the last one.
+     */
+    public interface SortedRecords<T> extends Closeable {
+        T next() throws IOException;
+    }
+
+    private record Run(Path file, long count) {
+    }
+
+    private final Comparator<T> order;
+    private final Codec<T> codec;
+    private final int bufferSize;
+    private final Path parent;
+    private final List<T> buffer = new ArrayList<>();
+    private final List<Run> runs = new ArrayList<>();
+    private Path directory;
+    private long size;
+    private int runNumber;
+
+    /**
+     * @param order      The sort order.
+     * @param codec      The run file format of a record.
+     * @param bufferSize The records kept on the heap before a spill.
+     * @param parent     The directory in which the temporary run directory is created.
+     */
+    public ExternalSorter(Comparator<T> order, Codec<T> codec, int bufferSize, Path parent) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("The sort buffer must hold at least one record, got: " + bufferSize);
+        }
+        this.order = order;
+        this.codec = codec;
+        this.bufferSize = bufferSize;
+        this.parent = parent;
+    }
+
+    public void add(T record) throws IOException {
+        buffer.add(record);
+        size++;
+        if (buffer.size() >= bufferSize) {
+            spill();
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * The run files written so far.
+     */
+    public int spills() {
+        return runNumber;
+    }
+
+    /**
+     * Starts reading the records in order. No records may be added afterwards.
+     *
+     * @throws IOException if the runs cannot be merged or opened.
+     */
+    public SortedRecords<T> sorted() throws IOException {
+        if (runs.isEmpty()) {
+            buffer.sort(order);
+            Iterator<T> records = buffer.iterator();
+            return new SortedRecords<>() {
+                @Override
+                public T next() {
+                    return records.hasNext() ? records.next() : null;
+                }
+
+                @Override
+                public void close() {
+                    buffer.clear();
+                }
+            };
+        }
+        spill();
+        while (runs.size() > MAX_FAN_IN) {
+            List<Run> merged = new ArrayList<>(runs.subList(0, MAX_FAN_IN));
+            runs.subList(0, MAX_FAN_IN).clear();
+            runs.add(mergeToRun(merged));
+        }
+        return new Merge(new ArrayList<>(runs));
+    }
+
+    private void spill() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        buffer.sort(order);
+        Path file = nextRunFile();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), STREAM_BUFFER))) {
+            for (T record : buffer) {
+                codec.write(out, record);
+            }
+        }
+        runs.add(new Run(file, buffer.size()));
+        logger.debug("Spilled {} records to {}", buffer.size(), file);
+        buffer.clear();
+    }
+
+    private Run mergeToRun(List<Run> merged) throws IOException {
+        Path file = nextRunFile();
+        long count = 0;
+        try (Merge merge = new Merge(merged);
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(file), STREAM_BUFFER))) {
+            for (T record = merge.next(); record != null; record = merge.next()) {
+                codec.write(out, record);
+                count++;
+            }
+        }
+        for (Run run : merged) {
+            Files.deleteIfExists(run.file());
+        }
+        return new Run(file, count);
+    }
+
+    private Path nextRunFile() throws IOException {
+        if (directory == null) {
+            Files.createDirectories(parent);
+            directory = Files.createTempDirectory(parent, "sort-");
+        }
+        return directory.resolve("run-" + (++runNumber) + ".bin");
+    }
+
+    @Override
+    public void close() {
+        buffer.clear();
+        if (directory == null) {
+            return;
+        }
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            logger.warn("Failed to remove sort directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * K-way merge of sorted runs through a heap holding the next record of each run.
+     */
+    private final class Merge implements SortedRecords<T> {
+        private final PriorityQueue<RunReader> heads = new PriorityQueue<>((a, b) -> order.compare(a.head, b.head));
+        private final List<RunReader> readers = new ArrayList<>();
+
+        Merge(List<Run> merged) throws IOException {
+            try {
+                for (Run run : merged) {
+                    RunReader reader = new RunReader(run);
+                    readers.add(reader);
+                    if (reader.advance()) {
+                        heads.add(reader);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public T next() throws IOException {
+            RunReader reader = heads.poll();
+            if (reader == null) {
+                return null;
+            }
+            T record = reader.head;
+            if (reader.advance()) {
+                heads.add(reader);
+            }
+            return record;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (RunReader reader : readers) {
+                reader.in.close();
+            }
+        }
+    }
+
+    private final class RunReader {
+        private final DataInputStream in;
+        private long remaining;
+        private T head;
+
+        RunReader(Run run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run.file()), STREAM_BUFFER));
+            this.remaining = run.count();
+        }
+
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                head = null;
+                return false;
+            }
+            remaining--;
+            head = codec.read(in);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.alphaindiamike.miiv.services.dupes;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alphaindiamike.miiv.privatelib.functions.DatabaseFunctionsLib;
+import com.alphaindiamike.miiv.privatelib.functions.PerceptualHashFunctionsLib.ImageHashes;
+import com.alphaindiamike.miiv.services.ingest.FileIdentity;
+
+/**
+ * Perceptual hashes of workspace images, kept in the image_hashes table of the workspace database.
+ * Like the content digest cache, an entry is only returned while the path still has the size,
+ * modification time and file key it was hashed with. Lookups take a batch of files; new hashes are
+ * written in one transaction per batch.
+ */
+public class ImageHashCache implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ImageHashCache.class);
+    public static final int MAX_BATCH = 500;
+
+    private final Connection connection;
+    private final PreparedStatement upsert;
+    private final Map<Integer, PreparedStatement> selects = new HashMap<>();
+    private boolean broken;
+
+    private ImageHashCache(Connection connection) throws SQLException {
+        this.connection = connection;
+        try {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS image_hashes (path TEXT PRIMARY KEY, "
+                        + "size INTEGER NOT NULL, modified INTEGER NOT NULL, file_key TEXT NOT NULL, "
+                        + "dhash INTEGER NOT NULL, phash INTEGER NOT NULL)");
+            }
+            upsert = connection.prepareStatement("INSERT OR REPLACE INTO image_hashes "
+                    + "(path, size, modified, file_key, dhash, phash) VALUES (?, ?, ?, ?, ?, ?)");
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the image hashes of a workspace.
+     *
+     * @throws SQLException if the workspace database cannot be opened.
+     */
+    public static ImageHashCache open(Path workspace) throws SQLException {
+        return new ImageHashCache(DatabaseFunctionsLib.openWorkspaceDatabase(workspace));
+    }
+
+    /**
+     * Looks up the hashes of at most {@link #MAX_BATCH} files.
+     *
+     * @return The valid entries by path; files without one are missing.
+     */
+    public Map<Path, ImageHashes> lookup(List<FileIdentity> files) {
+        Map<Path, ImageHashes> found = new HashMap<>();
+        if (broken || files.isEmpty()) {
+            return found;
+        }
+        try {
+            Map<String, FileIdentity> byPath = new HashMap<>();
+            PreparedStatement select = selectFor(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                select.setString(i + 1, files.get(i).path().toString());
+                byPath.put(files.get(i).path().toString(), files.get(i));
+            }
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    FileIdentity file = byPath.get(rs.getString("path"));
+                    if (file != null && file.size() == rs.getLong("size")
+                            && file.modified() == rs.getLong("modified")
+                            && file.fileKey().equals(rs.getString("file_key"))) {
+                        found.put(file.path(), new ImageHashes(rs.getLong("dhash"), rs.getLong("phash")));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            fail("read", e);
+        }
+        return found;
+    }
+
+    private PreparedStatement selectFor(int count) throws SQLException {
+        PreparedStatement select = selects.get(count);
+        if (select == null) {
+            select = connection.prepareStatement("SELECT path, size, modified, file_key, dhash, phash "
+                    + "FROM image_hashes WHERE path IN (" + String.join(", ", Collections.nCopies(count, "?")) + ")");
+            selects.put(count, select);
+        }
+        return select;
+    }
+
+    /**
+     * Records the hashes of a batch of files, replacing what was known about their paths.
+     */
+    public void store(Map<FileIdentity, ImageHashes> hashes) {
+        if (broken || hashes.isEmpty()) {
+            return;
+        }
+        try {
+            connection.setAutoCommit(false);
+            try {
+                for (Map.Entry<FileIdentity, ImageHashes> entry : hashes.entrySet()) {
+                    FileIdentity file = entry.getKey();
+                    upsert.setString(1, file.path().toString());
+                    upsert.setLong(2, file.size());
+                    upsert.setLong(3, file.modified());
+                    upsert.setString(4, file.fileKey());
+                    upsert.setLong(5, entry.getValue().dHash());
+                    upsert.setLong(6, entry.getValue().pHash());
+                    upsert.addBatch();
+                }
+                upsert.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            fail("write", e);
+        }
+    }
+
+    /**
+     * The cache is an optimization: after a database error it is bypassed for the rest of the run.
+     */
+    private void fail(String action, SQLException e) {
+        broken = true;
+        logger.warn("Failed to {} the image hash cache, continuing without it: {}", action, e.getMessage());
+    }
+
+    @Override
+    public void close() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.warn("Failed to close the image hash cache: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.alphaindiamike.miiv.services.dupes;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.HexFormat;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes one JSON object per group and line, e.g.
+ * {"size":12,"algorithm":"sha-256","digest":"9f86...","files":["/w/a.zip","/w/b.zip"]}.
+ * Members are streamed into the files array, so a group is never held in memory.
+ */
+public class JsonLinesDuplicateSink implements DuplicateSink {
+    private final Writer writer;
+    private final JsonGenerator generator;
+
+    public JsonLinesDuplicateSink(Writer writer) throws IOException {
+        this.writer = writer;
+        this.generator = new JsonFactory().createGenerator(writer);
+        this.generator.setRootValueSeparator(null);
+    }
+
+    @Override
+    public void beginGroup(long size, String algorithm, byte[] digest) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("size", size);
+        generator.writeStringField("algorithm", algorithm);
+        generator.writeStringField("digest", HexFormat.of().formatHex(digest));
+        generator.writeArrayFieldStart("files");
+    }
+
+    @Override
+    public void file(Path file) throws IOException {
+        generator.writeString(file.toString());
+    }
+
+    @Override
+    public void endGroup() throws IOException {
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+        writer.close();
+    }
+}
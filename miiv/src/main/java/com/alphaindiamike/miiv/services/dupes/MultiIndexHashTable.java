@@ -0,0 +1,104 @@
+package com.alphaindiamike.miiv.services.dupes;
+
+import java.util.function.IntConsumer;
+
+import com.alphaindiamike.miiv.privatelib.functions.PerceptualHashFunctionsLib;
+
+/**
+ * Multi-index hashing over 64-bit hashes with the Hamming distance. Each hash is split into four
+ * 16-bit substrings, and every substring position has its own table. Two hashes within distance r
+ * differ in at most r / 4 bits in at least one substring, so a search only probes the substrings
+ * within r / 4 of the query's in each table and checks the full distance of the hashes found
+ * there: for the radii used with perceptual hashes, a few thousand candidates out of hundreds of
+ * thousands. BK-trees, by comparison, visit most of their nodes at those radii on 64-bit hashes.
+ * The tables are built once over all hashes, as sorted id arrays with bucket offsets: no object
+ * per hash. Searches may run concurrently.
+ */
+public class MultiIndexHashTable {
+    private static final int TABLES = 4;
+    private static final int SUBSTRING_BITS = Long.SIZE / TABLES;
+    private static final int BUCKETS = 1 << SUBSTRING_BITS;
+
+    private final long[] hashes;
+    // Per table: the ids of bucket b are ids[t][offsets[t][b] .. offsets[t][b + 1])
+    private final int[][] offsets = new int[TABLES][];
+    private final int[][] ids = new int[TABLES][];
+
+    /**
+     * Indexes the hashes; the id of a hash is its index.
+     */
+    public MultiIndexHashTable(long[] hashes) {
+        this.hashes = hashes;
+        for (int table = 0; table < TABLES; table++) {
+            int[] starts = new int[BUCKETS + 1];
+            for (long hash : hashes) {
+                starts[substring(hash, table) + 1]++;
+            }
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                starts[bucket + 1] += starts[bucket];
+            }
+            int[] next = starts.clone();
+            int[] sorted = new int[hashes.length];
+            for (int id = 0; id < hashes.length; id++) {
+                sorted[next[substring(hashes[id], table)]++] = id;
+            }
+            offsets[table] = starts;
+            ids[table] = sorted;
+        }
+    }
+
+    /**
+     * Passes the id of every hash within the radius of the query, each once.
+     */
+    public void search(long hash, int radius, IntConsumer found) {
+        int subRadius = Math.min(radius / TABLES, SUBSTRING_BITS);
+        for (int table = 0; table < TABLES; table++) {
+            int key = substring(hash, table);
+            for (int flipped = 0; flipped <= subRadius; flipped++) {
+                // Every mask of SUBSTRING_BITS bits with the given number of bits set, in increasing order
+                int mask = (1 << flipped) - 1;
+                while (mask < BUCKETS) {
+                    probe(hash, radius, subRadius, table, key ^ mask, found);
+                    if (mask == 0) {
+                        break;
+                    }
+                    int lowest = mask & -mask;
+                    int carried = mask + lowest;
+                    mask = carried | (((mask ^ carried) >>> 2) / lowest);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return hashes.length;
+    }
+
+    private void probe(long hash, int radius, int subRadius, int table, int bucket, IntConsumer found) {
+        int[] tableIds = ids[table];
+        for (int i = offsets[table][bucket], end = offsets[table][bucket + 1]; i < end; i++) {
+            int id = tableIds[i];
+            long candidate = hashes[id];
+            if (PerceptualHashFunctionsLib.distance(hash, candidate) <= radius
+                    && !foundInEarlierTable(hash, candidate, table, subRadius)) {
+                found.accept(id);
+            }
+        }
+    }
+
+    /**
+     * Whether an earlier table already reported the candidate.
+     */
+    private static boolean foundInEarlierTable(long hash, long candidate, int table, int subRadius) {
+        for (int earlier = 0; earlier < table; earlier++) {
+            if (Integer.bitCount(substring(hash, earlier) ^ substring(candidate, earlier)) <= subRadius) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int substring(long hash, int table) {
+        return (int) (hash >>> (table * SUBSTRING_BITS)) & (BUCKETS - 1);
+    }
+}
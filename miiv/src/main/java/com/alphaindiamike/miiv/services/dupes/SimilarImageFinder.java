@@ -0,0 +1,220 @@
+package com.alphaindiamike.miiv.services.dupes;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alphaindiamike.miiv.privatelib.functions.PerceptualHashFunctionsLib;
+import com.alphaindiamike.miiv.privatelib.functions.PerceptualHashFunctionsLib.ImageHashes;
+import com.alphaindiamike.miiv.services.ingest.FileIdentity;
+
+/**
+ * Groups images which look alike: re-encoded, resized or slightly edited copies of the same picture.
+ * Images are indexed by pHash in a {@link MultiIndexHashTable}; each image queries the index for
+ * the images within the distance and pairs are confirmed by dHash within the same distance. Matches are joined
+ * transitively into groups. Hashes come from the cache where valid; the other images are decoded
+ * in parallel, a batch at a time, and their hashes added to the cache.
+ */
+public class SimilarImageFinder {
+    private static final Logger logger = LoggerFactory.getLogger(SimilarImageFinder.class);
+
+    private final ImageHashCache cache;
+    private final int threads;
+    private final LongAdder scanned = new LongAdder();
+    private final LongAdder decoded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * @param cache   The cache of image hashes, or null to decode every image.
+     * @param threads The threads decoding images.
+     */
+    public SimilarImageFinder(ImageHashCache cache, int threads) {
+        this.cache = cache;
+        this.threads = threads;
+    }
+
+    /**
+     * Finds the groups of similar images below the folders.
+     *
+     * @param folders     The folders to search, recursively; nested folders may be listed too.
+     * @param maxDistance The largest Hamming distance, of 64 bits, at which two images match.
+     * @return The groups of at least two images, ordered by their first path.
+     */
+    public List<DuplicateGroup> find(List<Path> folders, int maxDistance) {
+        TreeMap<Path, FileIdentity> images = listImages(folders);
+        scanned.add(images.size());
+        List<Path> paths = new ArrayList<>(images.size());
+        List<ImageHashes> hashes = new ArrayList<>(images.size());
+        ForkJoinPool decoders = new ForkJoinPool(threads);
+        try {
+            List<FileIdentity> batch = new ArrayList<>(ImageHashCache.MAX_BATCH);
+            for (FileIdentity image : images.values()) {
+                batch.add(image);
+                if (batch.size() == ImageHashCache.MAX_BATCH) {
+                    hashBatch(batch, decoders, paths, hashes);
+                    batch.clear();
+                }
+            }
+            hashBatch(batch, decoders, paths, hashes);
+        } finally {
+            decoders.shutdownNow();
+        }
+        return group(paths, hashes, maxDistance);
+    }
+
+    public long scanned() {
+        return scanned.sum();
+    }
+
+    /**
+     * Images decoded because no valid cached hash was found.
+     */
+    public long decoded() {
+        return decoded.sum();
+    }
+
+    public long failed() {
+        return failed.sum();
+    }
+
+    private TreeMap<Path, FileIdentity> listImages(List<Path> folders) {
+        TreeMap<Path, FileIdentity> images = new TreeMap<>();
+        for (Path folder : folders) {
+            try {
+                Files.walkFileTree(folder, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        if (attributes.isRegularFile() && PerceptualHashFunctionsLib.isImage(file)) {
+                            images.putIfAbsent(file, FileIdentity.of(file, attributes));
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        logger.error("Failed to read {} due to {}", file, e.getMessage());
+                        failed.increment();
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (NoSuchFileException e) {
+                // Scheme folder not created yet
+            } catch (IOException e) {
+                logger.error("Failed to list directory: {} due to {}", folder, e.getMessage());
+                failed.increment();
+            }
+        }
+        return images;
+    }
+
+    private void hashBatch(List<FileIdentity> batch, ForkJoinPool decoders, List<Path> paths, List<ImageHashes> hashes) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Map<Path, ImageHashes> known = cache == null ? new HashMap<>() : cache.lookup(batch);
+        List<FileIdentity> missing = batch.stream().filter(image -> !known.containsKey(image.path())).toList();
+        Map<FileIdentity, ImageHashes> computed = new ConcurrentHashMap<>();
+        decoders.submit(() -> missing.parallelStream().forEach(image -> {
+            ImageHashes hash = decode(image.path());
+            if (hash != null) {
+                computed.put(image, hash);
+            }
+        })).join();
+        if (cache != null) {
+            cache.store(computed);
+        }
+        for (Map.Entry<FileIdentity, ImageHashes> entry : computed.entrySet()) {
+            known.put(entry.getKey().path(), entry.getValue());
+        }
+        for (FileIdentity image : batch) {
+            ImageHashes hash = known.get(image.path());
+            if (hash != null) {
+                paths.add(image.path());
+                hashes.add(hash);
+            }
+        }
+    }
+
+    private ImageHashes decode(Path image) {
+        decoded.increment();
+        try {
+            ImageHashes hash = PerceptualHashFunctionsLib.hashImage(image);
+            if (hash == null) {
+                logger.warn("No image reader for {}", image);
+                failed.increment();
+            }
+            return hash;
+        } catch (IOException e) {
+            logger.error("Failed to decode image {} due to {}", image, e.getMessage());
+            failed.increment();
+            return null;
+        }
+    }
+
+    private static List<DuplicateGroup> group(List<Path> paths, List<ImageHashes> hashes, int maxDistance) {
+        int count = paths.size();
+        long[] pHashes = new long[count];
+        for (int i = 0; i < count; i++) {
+            pHashes[i] = hashes.get(i).pHash();
+        }
+        MultiIndexHashTable index = new MultiIndexHashTable(pHashes);
+        int[] parents = new int[count];
+        for (int i = 0; i < count; i++) {
+            parents[i] = i;
+        }
+        for (int i = 0; i < count; i++) {
+            int image = i;
+            long dHash = hashes.get(i).dHash();
+            index.search(pHashes[i], maxDistance, match -> {
+                if (match > image && PerceptualHashFunctionsLib.distance(dHash, hashes.get(match).dHash()) <= maxDistance) {
+                    union(parents, image, match);
+                }
+            });
+        }
+        Map<Integer, List<Path>> byRoot = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            byRoot.computeIfAbsent(find(parents, i), root -> new ArrayList<>()).add(paths.get(i));
+        }
+        // Paths were added in order, so the files of every group are sorted
+        List<DuplicateGroup> groups = new ArrayList<>();
+        for (List<Path> files : byRoot.values()) {
+            if (files.size() > 1) {
+                groups.add(new DuplicateGroup(files));
+            }
+        }
+        groups.sort(Comparator.comparing(group -> group.files().get(0)));
+        return groups;
+    }
+
+    private static int find(int[] parents, int node) {
+        while (parents[node] != node) {
+            parents[node] = parents[parents[node]];
+            node = parents[node];
+        }
+        return node;
+    }
+
+    private static void union(int[] parents, int first, int second) {
+        int firstRoot = find(parents, first);
+        int secondRoot = find(parents, second);
+        if (firstRoot != secondRoot) {
+            parents[Math.max(firstRoot, secondRoot)] = Math.min(firstRoot, secondRoot);
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.alphaindiamike.miiv.services.dupes;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alphaindiamike.miiv.privatelib.functions.ContentHashFunctionsLib.Algorithm;
+import com.alphaindiamike.miiv.services.ingest.ContentHasher;
+import com.alphaindiamike.miiv.services.ingest.ContentHasher.HashResult;
+import com.alphaindiamike.miiv.services.ingest.DuplicateDetector;
+import com.alphaindiamike.miiv.services.ingest.FileIdentity;
+import com.alphaindiamike.miiv.services.ingest.HashCache;
+
+/**
+ * Finds files with equal content in three sorted passes, like {@link DuplicateDetector} but with
+ * bounded memory: the walked files are sorted by size, files sharing their size get a head/tail
+ * digest and are sorted by size and digest, and those sharing that get a SHA-256 digest and are
+ * sorted by it. Only SHA-256 groups are reported; the head/tail digest is not cryptographic, even
+ * where it covers a whole file. Each pass runs through an {@link ExternalSorter}, so heap use
+ * does not grow with the number of files, and groups are handed to the sink as soon as the sorted
+ * records move past them. Digests are read from and added to the hash cache.
+ */
+public class StreamingDuplicateFinder {
+    private static final Logger logger = LoggerFactory.getLogger(StreamingDuplicateFinder.class);
+    public static final String FULL_ALGORITHM = "sha-256";
+    private static final int HASH_BATCH = 1000;
+    private static final byte[] NO_DIGEST = new byte[0];
+
+    /**
+     * A walked file with the digest of the current pass.
+     */
+    record ScannedFile(long size, byte[] digest, String path, long modified, String fileKey) {
+
+        FileIdentity identity() {
+            return new FileIdentity(Paths.get(path), size, modified, fileKey);
+        }
+
+        boolean sameContentAs(ScannedFile other) {
+            return size == other.size && Arrays.equals(digest, other.digest);
+        }
+    }
+
+    static final Comparator<ScannedFile> ORDER = Comparator.comparingLong(ScannedFile::size)
+            .thenComparing(ScannedFile::digest, Arrays::compareUnsigned)
+            .thenComparing(ScannedFile::path);
+
+    static final ExternalSorter.Codec<ScannedFile> CODEC = new ExternalSorter.Codec<>() {
+        @Override
+        public void write(DataOutputStream out, ScannedFile file) throws IOException {
+            out.writeLong(file.size());
+            out.writeByte(file.digest().length);
+            out.write(file.digest());
+            out.writeUTF(file.path());
+            out.writeLong(file.modified());
+            out.writeUTF(file.fileKey());
+        }
+
+        @Override
+        public ScannedFile read(DataInputStream in) throws IOException {
+            long size = in.readLong();
+            byte[] digest = new byte[in.readUnsignedByte()];
+            in.readFully(digest);
+            return new ScannedFile(size, digest, in.readUTF(), in.readLong(), in.readUTF());
+        }
+    };
+
+    private interface RunVisitor {
+        void member(ScannedFile file, boolean first) throws IOException, InterruptedException;
+
+        void endRun() throws IOException;
+    }
+
+    private final HashCache cache;
+    private final ContentHasher hasher;
+    private final int sortBuffer;
+    private final Path spillDirectory;
+    private long scanned;
+    private long read;
+    private long failed;
+    private long groups;
+    private long groupedFiles;
+    private int spills;
+
+    /**
+     * @param cache          The digest cache, or null to hash every candidate.
+     * @param hasher         Hashes the candidates in parallel.
+     * @param sortBuffer     The records each sorter holds on the heap before it spills.
+     * @param spillDirectory Where the sorters spill.
+     */
+    public StreamingDuplicateFinder(HashCache cache, ContentHasher hasher, int sortBuffer, Path spillDirectory) {
+        this.cache = cache;
+        this.hasher = hasher;
+        this.sortBuffer = sortBuffer;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Walks a folder and hands every group of files with equal content to the sink, each group
+     * ordered by path and the groups by size.
+     *
+     * @param root     The folder to walk.
+     * @param excluded Paths not compared, with everything below them.
+     * @param sink     Receives the groups.
+     * @throws IOException          if the folder cannot be walked, the sorters cannot spill or the sink fails.
+     * @throws InterruptedException if interrupted while hashing.
+     */
+    public void find(Path root, Set<Path> excluded, DuplicateSink sink) throws IOException, InterruptedException {
+        try (ExternalSorter<ScannedFile> bySize = sorter();
+                ExternalSorter<ScannedFile> byPartial = sorter();
+                ExternalSorter<ScannedFile> byFull = sorter()) {
+            walk(root, excluded, bySize);
+            List<ScannedFile> batch = new ArrayList<>(HASH_BATCH);
+            try (ExternalSorter.SortedRecords<ScannedFile> records = bySize.sorted()) {
+                forEachRun(records, new RunVisitor() {
+                    @Override
+                    public void member(ScannedFile file, boolean first) throws IOException, InterruptedException {
+                        batch.add(file);
+                        if (batch.size() == HASH_BATCH) {
+                            hash(batch, byPartial, true);
+                        }
+                    }
+
+                    @Override
+                    public void endRun() {
+                    }
+                });
+            }
+            hash(batch, byPartial, true);
+
+            try (ExternalSorter.SortedRecords<ScannedFile> records = byPartial.sorted()) {
+                forEachRun(records, new RunVisitor() {
+                    @Override
+                    public void member(ScannedFile file, boolean first) throws IOException, InterruptedException {
+                        batch.add(file);
+                        if (batch.size() == HASH_BATCH) {
+                            hash(batch, byFull, false);
+                        }
+                    }
+
+                    @Override
+                    public void endRun() {
+                    }
+                });
+            }
+            hash(batch, byFull, false);
+
+            try (ExternalSorter.SortedRecords<ScannedFile> records = byFull.sorted()) {
+                forEachRun(records, new RunVisitor() {
+                    @Override
+                    public void member(ScannedFile file, boolean first) throws IOException {
+                        emit(sink, file, first, FULL_ALGORITHM);
+                    }
+
+                    @Override
+                    public void endRun() throws IOException {
+                        sink.endGroup();
+                    }
+                });
+            }
+            spills = bySize.spills() + byPartial.spills() + byFull.spills();
+        }
+        logger.debug("Compared {} files of {} with {} spilled sort runs", scanned, root, spills);
+    }
+
+    private ExternalSorter<ScannedFile> sorter() {
+        return new ExternalSorter<>(ORDER, CODEC, sortBuffer, spillDirectory);
+    }
+
+    private void walk(Path root, Set<Path> excluded, ExternalSorter<ScannedFile> bySize) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                return excluded.contains(directory) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                if (attributes.isRegularFile() && !excluded.contains(file)) {
+                    FileIdentity identity = FileIdentity.of(file, attributes);
+                    bySize.add(new ScannedFile(identity.size(), NO_DIGEST, file.toString(), identity.modified(),
+                            identity.fileKey()));
+                    scanned++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                logger.error("Failed to read {} due to {}", file, e.getMessage());
+                failed++;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Calls the visitor for each record whose size and digest it shares with a neighbour, so only
+     * the first record of a run is ever held back.
+     */
+    private static void forEachRun(ExternalSorter.SortedRecords<ScannedFile> records, RunVisitor visitor)
+            throws IOException, InterruptedException {
+        ScannedFile previous = null;
+        ScannedFile pending = null;
+        boolean open = false;
+        for (ScannedFile file = records.next(); file != null; file = records.next()) {
+            if (previous != null && previous.sameContentAs(file)) {
+                if (pending != null) {
+                    visitor.member(pending, true);
+                    pending = null;
+                    open = true;
+                }
+                visitor.member(file, false);
+            } else {
+                if (open) {
+                    visitor.endRun();
+                    open = false;
+                }
+                pending = file;
+            }
+            previous = file;
+        }
+        if (open) {
+            visitor.endRun();
+        }
+    }
+
+    private void emit(DuplicateSink sink, ScannedFile file, boolean first, String algorithm) throws IOException {
+        if (first) {
+            sink.beginGroup(file.size(), algorithm, file.digest());
+            groups++;
+        }
+        sink.file(Paths.get(file.path()));
+        groupedFiles++;
+    }
+
+    /**
+     * Digests a batch of files, from the cache where it has them and in parallel otherwise, and adds
+     * them to the next sorter. Files which cannot be read are counted as failed and left out.
+     */
+    private void hash(List<ScannedFile> batch, ExternalSorter<ScannedFile> next, boolean partial)
+            throws IOException, InterruptedException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<FileIdentity> identities = new ArrayList<>(batch.size());
+        for (ScannedFile file : batch) {
+            identities.add(file.identity());
+        }
+        Map<Path, HashCache.CachedDigests> cached = cache != null ? cache.lookup(identities) : Map.of();
+        List<ScannedFile> missing = new ArrayList<>();
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            ScannedFile file = batch.get(i);
+            byte[] digest = known(cached.get(identities.get(i).path()), partial);
+            if (digest != null) {
+                next.add(withDigest(file, digest));
+            } else {
+                missing.add(file);
+                paths.add(identities.get(i).path());
+            }
+        }
+        List<HashResult> results = partial
+                ? hasher.hashHeadsAndTails(paths, DuplicateDetector.PARTIAL_BLOCK_SIZE, Algorithm.FAST_128)
+                : hasher.hashAll(paths, Algorithm.SHA_256);
+        read += results.size();
+        for (int i = 0; i < results.size(); i++) {
+            HashResult result = results.get(i);
+            ScannedFile file = missing.get(i);
+            if (result.error() != null) {
+                logger.error("Failed to read {} due to {}", result.file(), result.error().getMessage());
+                failed++;
+                continue;
+            }
+            next.add(withDigest(file, result.digest()));
+            remember(file, cached.get(result.file()), partial, result.digest());
+        }
+        batch.clear();
+    }
+
+    private static byte[] known(HashCache.CachedDigests digests, boolean partial) {
+        if (digests == null) {
+            return null;
+        }
+        if (partial) {
+            return DuplicateDetector.PARTIAL_KIND.equals(digests.partialKind()) ? digests.partial() : null;
+        }
+        return digests.full();
+    }
+
+    /**
+     * Adds a new digest to the cache, keeping what it knew about the file. A full digest is hashed
+     * after the partial one, which is the digest the file was sorted by.
+     */
+    private void remember(ScannedFile file, HashCache.CachedDigests known, boolean partial, byte[] digest) {
+        if (cache == null || file.modified() < 0) {
+            return;
+        }
+        if (partial) {
+            cache.store(new HashCache.CachedDigests(file.identity(), DuplicateDetector.PARTIAL_KIND, digest,
+                    known != null ? known.full() : null));
+        } else {
+            cache.store(new HashCache.CachedDigests(file.identity(), DuplicateDetector.PARTIAL_KIND, file.digest(),
+                    digest));
+        }
+    }
+
+    private static ScannedFile withDigest(ScannedFile file, byte[] digest) {
+        return new ScannedFile(file.size(), digest, file.path(), file.modified(), file.fileKey());
+    }
+
+    public long scanned() {
+        return scanned;
+    }
+
+    /**
+     * The files hashed because the cache had no digest for them.
+     */
+    public long read() {
+        return read;
+    }
+
+    public long failed() {
+        return failed;
+    }
+
+    public long groups() {
+        return groups;
+    }
+
+    public long groupedFiles() {
+        return groupedFiles;
+    }
+
+    /**
+     * The sorted runs written to disk by the last search; none when every pass fit in the buffer.
+     */
+    public int spills() {
+        return spills;
+    }
+}
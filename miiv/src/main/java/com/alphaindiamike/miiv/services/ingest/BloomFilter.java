@@ -0,0 +1,176 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over 64-bit keys: answers "certainly not added" or "probably added". Sized for an
+ * expected number of keys and a false positive rate, which it exceeds once more keys are added.
+ * Probes use double hashing of the key; keys and probes may run concurrently.
+ */
+public class BloomFilter {
+    private static final long MAGIC = 0x4d4949565f424c4dL; // MIIV_BLM
+    private static final int VERSION = 2;
+
+    private final long capacity;
+    private final double falsePositiveRate;
+    private final int hashes;
+    private final long bitCount;
+    private final AtomicLongArray words;
+    private final AtomicLong keys = new AtomicLong();
+    private volatile long sequence;
+
+    /**
+     * @param capacity          The number of keys the filter is sized for.
+     * @param falsePositiveRate The false positive rate at capacity, e.g. 0.01.
+     */
+    public BloomFilter(long capacity, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must lie between 0 and 1, got: " + falsePositiveRate);
+        }
+        this.capacity = Math.max(1, capacity);
+        this.falsePositiveRate = falsePositiveRate;
+        double bits = -this.capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (long) Math.ceil(bits / Long.SIZE)));
+        this.bitCount = (long) wordCount * Long.SIZE;
+        this.hashes = Math.max(1, (int) Math.round(bitCount / (double) this.capacity * Math.log(2)));
+        this.words = new AtomicLongArray(wordCount);
+    }
+
+    private BloomFilter(long capacity, double falsePositiveRate, int hashes, AtomicLongArray words, long keys,
+            long sequence) {
+        this.capacity = capacity;
+        this.falsePositiveRate = falsePositiveRate;
+        this.hashes = hashes;
+        this.bitCount = (long) words.length() * Long.SIZE;
+        this.words = words;
+        this.keys.set(keys);
+        this.sequence = sequence;
+    }
+
+    public void put(long key) {
+        long h1 = mix(key);
+        long h2 = mix(h1 ^ key) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+        keys.incrementAndGet();
+    }
+
+    public boolean mightContain(long key) {
+        long h1 = mix(key);
+        long h2 = mix(h1 ^ key) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keys added, counting repeated keys each time.
+     */
+    public long keys() {
+        return keys.get();
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    public double falsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    /**
+     * The version of the data the filter was built from, as set by its owner; kept in the file so
+     * a reader can tell whether the filter is still complete.
+     */
+    public long sequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long sizeInBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    /**
+     * Writes the filter to a file, replacing it atomically.
+     */
+    public void writeTo(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(capacity);
+            out.writeDouble(falsePositiveRate);
+            out.writeInt(hashes);
+            out.writeLong(keys.get());
+            out.writeLong(sequence);
+            out.writeInt(words.length());
+            for (int i = 0; i < words.length(); i++) {
+                out.writeLong(words.get(i));
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a filter written by {@link #writeTo(Path)}.
+     *
+     * @throws IOException if the file cannot be read or is not a filter of this version.
+     */
+    public static BloomFilter readFrom(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readLong() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a filter file of version " + VERSION + ": " + file);
+            }
+            long capacity = in.readLong();
+            double falsePositiveRate = in.readDouble();
+            int hashes = in.readInt();
+            long keys = in.readLong();
+            long sequence = in.readLong();
+            int wordCount = in.readInt();
+            if (capacity < 1 || hashes < 1 || wordCount < 1) {
+                throw new IOException("Corrupt filter file: " + file);
+            }
+            AtomicLongArray words = new AtomicLongArray(wordCount);
+            for (int i = 0; i < wordCount; i++) {
+                words.set(i, in.readLong());
+            }
+            return new BloomFilter(capacity, falsePositiveRate, hashes, words, keys, sequence);
+        }
+    }
+
+    /**
+     * The finalizer of MurmurHash3, spreading every input bit over the result.
+     */
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,111 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs each task on its own thread, virtual where the runtime offers virtual threads, with a
+ * semaphore capping how many tasks are in flight. Small-file ingest is bound by the latency of
+ * blocking open/stat/close calls rather than by bandwidth; cheap threads keep many of those calls
+ * outstanding at once while the cap keeps the number of open file handles in check.
+ * The build targets Java 17, so the virtual thread factory is looked up at runtime; on a JVM
+ * without it the tasks run on platform threads created on demand, still capped by the semaphore.
+ */
+class BoundedIoExecutor implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(BoundedIoExecutor.class);
+
+    private final int permits;
+    private final Semaphore inFlight;
+    private final ExecutorService executor;
+    private final boolean virtual;
+
+    BoundedIoExecutor(int permits) {
+        this.permits = permits;
+        this.inFlight = new Semaphore(permits);
+        ExecutorService virtualExecutor = newVirtualThreadExecutor();
+        this.virtual = virtualExecutor != null;
+        if (virtual) {
+            this.executor = virtualExecutor;
+        } else {
+            logger.info("Virtual threads are not available on Java {}, using up to {} platform I/O threads.",
+                    Runtime.version().feature(), permits);
+            this.executor = Executors.newCachedThreadPool(platformThreadFactory());
+        }
+    }
+
+    /**
+     * Runs the task once fewer than the permitted number of tasks are in flight.
+     *
+     * @throws InterruptedException if interrupted while waiting for a permit.
+     */
+    void execute(Runnable task) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until every task handed to {@link #execute(Runnable)} has finished.
+     */
+    void awaitIdle() throws InterruptedException {
+        inFlight.acquire(permits);
+        inFlight.release(permits);
+    }
+
+    /**
+     * Waits until every task has finished, interrupting the ones still running at the deadline.
+     */
+    void awaitIdle(long deadlineMillis) throws InterruptedException {
+        long wait = Math.max(1, deadlineMillis - System.currentTimeMillis());
+        if (inFlight.tryAcquire(permits, wait, TimeUnit.MILLISECONDS)) {
+            inFlight.release(permits);
+        } else {
+            executor.shutdownNow();
+        }
+    }
+
+    boolean isVirtual() {
+        return virtual;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            // Before Java 21, or on 19/20 without --enable-preview
+            return null;
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "miiv-io-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,100 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.alphaindiamike.miiv.privatelib.functions.ContentHashFunctionsLib;
+import com.alphaindiamike.miiv.privatelib.functions.ContentHashFunctionsLib.Algorithm;
+
+/**
+ * Hashes batches of files on a fixed thread pool, one file per task. Each thread keeps its own hash
+ * state and read buffer, see {@link ContentHashFunctionsLib}, so the pool scales with cores on cached
+ * data and with the queue depth of the device otherwise.
+ */
+public class ContentHasher implements AutoCloseable {
+    private final ExecutorService pool;
+
+    /**
+     * The digest of a file, or why it could not be computed.
+     */
+    public record HashResult(
+    		Path file,
+    		byte[] digest,
+    		IOException error
+    		) {
+    }
+
+    public ContentHasher(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "miiv-hasher-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Hashes the files in parallel and waits for all of them.
+     *
+     * @return One result per file, in the order of the files.
+     * @throws InterruptedException if interrupted while waiting; pending files are not hashed.
+     */
+    public List<HashResult> hashAll(List<Path> files, Algorithm algorithm) throws InterruptedException {
+        return hashAll(files, file -> ContentHashFunctionsLib.hashFile(file, algorithm));
+    }
+
+    /**
+     * Hashes the first and last block of the files in parallel, see
+     * {@link ContentHashFunctionsLib#hashHeadAndTail}, and waits for all of them.
+     *
+     * @return One result per file, in the order of the files.
+     * @throws InterruptedException if interrupted while waiting; pending files are not hashed.
+     */
+    public List<HashResult> hashHeadsAndTails(List<Path> files, int blockSize, Algorithm algorithm)
+            throws InterruptedException {
+        return hashAll(files, file -> ContentHashFunctionsLib.hashHeadAndTail(file, blockSize, algorithm));
+    }
+
+    private List<HashResult> hashAll(List<Path> files, Digest digest) throws InterruptedException {
+        List<Future<HashResult>> pending = new ArrayList<>(files.size());
+        for (Path file : files) {
+            pending.add(pool.submit(() -> hash(file, digest)));
+        }
+        List<HashResult> results = new ArrayList<>(files.size());
+        try {
+            for (Future<HashResult> result : pending) {
+                results.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            pending.forEach(result -> result.cancel(true));
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Hash task failed unexpectedly", e.getCause());
+        }
+        return results;
+    }
+
+    private interface Digest {
+        byte[] of(Path file) throws IOException;
+    }
+
+    private static HashResult hash(Path file, Digest digest) {
+        try {
+            return new HashResult(file, digest.of(file), null);
+        } catch (IOException e) {
+            return new HashResult(file, null, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
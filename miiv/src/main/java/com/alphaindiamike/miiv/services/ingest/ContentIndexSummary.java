@@ -0,0 +1,24 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.time.Duration;
+
+/**
+ * Outcome of miiv index: the workspace files listed, those hashed because they were new or
+ * changed, the index entries of files no longer present, and the size of the rebuilt filter.
+ */
+public record ContentIndexSummary(
+		long files,
+		long hashed,
+		long removed,
+		long failed,
+		long filterBytes,
+		double falsePositiveRate,
+		Duration elapsed
+		) {
+
+    public String summary() {
+        return String.format("Indexed %d workspace files in %.1f s: %d hashed, %d removed, %d failed. "
+                + "Content filter: %d KB at a false positive rate of %s.", files, elapsed.toMillis() / 1000.0,
+                hashed, removed, failed, filterBytes / 1024, falsePositiveRate);
+    }
+}
@@ -0,0 +1,101 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Walk stage of the ingest pipeline. Lists one source directory, journals the listing, hands its
+ * files to the classify stage and forks a task per subdirectory; idle walkers steal subtrees from
+ * busy ones. Handing over blocks while the classify queue is full.
+ */
+class DirectoryWalkTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryWalkTask.class);
+
+    private final transient IngestEngine engine;
+    private final transient Path directory;
+
+    DirectoryWalkTask(IngestEngine engine, Path directory) {
+        this.engine = engine;
+        this.directory = directory;
+    }
+
+    @Override
+    protected void compute() {
+        List<SourceFile> files = new ArrayList<>();
+        List<Path> subdirectories = new ArrayList<>();
+
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                BasicFileAttributes attributes = readAttributes(entry);
+                if (attributes == null) {
+                    continue;
+                }
+                if (attributes.isDirectory()) {
+                    if (!engine.isExcluded(entry)) {
+                        subdirectories.add(entry);
+                    }
+                } else if (attributes.isRegularFile()) {
+                    files.add(new SourceFile(entry, attributes));
+                } else {
+                    logger.debug("Skipping {}, not a regular file or directory.", entry);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Failed to list directory: {} due to {}", directory, e.getMessage());
+            engine.recordFailure();
+            return;
+        }
+        engine.directoryListed(directory, files, subdirectories);
+
+        List<RecursiveAction> subtasks = new ArrayList<>();
+        for (Path subdirectory : subdirectories) {
+            subtasks.add(new DirectoryWalkTask(engine, subdirectory));
+        }
+        // Subtrees are forked first so other walkers can take them while this one hands over files
+        for (RecursiveAction subtask : subtasks) {
+            subtask.fork();
+        }
+        if (submitAll(engine, files)) {
+            for (RecursiveAction subtask : subtasks) {
+                subtask.join();
+            }
+        }
+    }
+
+    /**
+     * Hands the files to the pipeline, stopping early when the walker is interrupted.
+     *
+     * @return false if the walk was interrupted.
+     */
+    static boolean submitAll(IngestEngine engine, List<SourceFile> files) {
+        try {
+            engine.filesListed(files);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Walk interrupted, {} listed files were not handed over.", files.size());
+            return false;
+        }
+    }
+
+    private BasicFileAttributes readAttributes(Path entry) {
+        try {
+            return Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            logger.error("Failed to read attributes of {} due to {}", entry, e.getMessage());
+            engine.recordFailure();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alphaindiamike.miiv.privatelib.functions.DocumentDateFunctionsLib;
+
+/**
+ * Dates the documents kept in folders versioned by date: the date in their metadata, see
+ * {@link DocumentDateFunctionsLib}, else their modification time. Dates read from metadata are kept
+ * in the hash cache with the digests of the file, so an unchanged file is read once; the lookup and
+ * the read run on the write stage thread placing the file. Safe for use by several threads.
+ */
+public class DocumentDater {
+    private static final Logger logger = LoggerFactory.getLogger(DocumentDater.class);
+    private static final String NO_DATE = "";
+
+    private final HashCache cache;
+    private final LongAdder read = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder modified = new LongAdder();
+
+    /**
+     * @param cache The cache of document dates, or null to read every file asked about.
+     */
+    public DocumentDater(HashCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * The date of the document: the one in its metadata, else the local date of its modification time.
+     */
+    public LocalDate dateOf(FileIdentity file) {
+        LocalDateTime date = metadataDateOf(file);
+        if (date != null) {
+            return date.toLocalDate();
+        }
+        modified.increment();
+        return LocalDate.ofInstant(Instant.ofEpochMilli(file.modified()), ZoneId.systemDefault());
+    }
+
+    /**
+     * The cached or read metadata date of the file, or null if it has none or cannot be read.
+     */
+    private LocalDateTime metadataDateOf(FileIdentity file) {
+        boolean cacheable = cache != null && file.modified() >= 0;
+        if (cacheable) {
+            HashCache.CachedDigests cached = cache.lookup(List.of(file)).get(file.path());
+            if (cached != null && cached.documentDate() != null) {
+                cacheHits.increment();
+                return parse(cached.documentDate());
+            }
+        }
+        LocalDateTime date;
+        try {
+            date = DocumentDateFunctionsLib.documentDate(file.path());
+        } catch (IOException e) {
+            logger.debug("Failed to read the date of {} due to {}", file.path(), e.getMessage());
+            return null;
+        }
+        read.increment();
+        if (cacheable) {
+            cache.store(new HashCache.CachedDigests(file, null, null, null, null,
+                    date == null ? NO_DATE : date.toString()));
+        }
+        return date;
+    }
+
+    private static LocalDateTime parse(String cached) {
+        if (cached.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(cached);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The files whose metadata was read.
+     */
+    public long read() {
+        return read.sum();
+    }
+
+    public long cacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * The files dated by their modification time, their metadata holding no date.
+     */
+    public long modified() {
+        return modified.sum();
+    }
+}
@@ -0,0 +1,456 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.alphaindiamike.miiv.model.filesystem.FileEntity;
+import com.alphaindiamike.miiv.model.filesystem.FileEntityDAO;
+import com.alphaindiamike.miiv.privatelib.exceptions.CatalogException;
+import com.alphaindiamike.miiv.privatelib.functions.ContentHashFunctionsLib;
+import com.alphaindiamike.miiv.privatelib.functions.ContentHashFunctionsLib.Algorithm;
+
+/**
+ * Finds files whose content equals a file registered before, reading as little as possible:
+ * <ol>
+ * <li>files are bucketed by exact size; the first file of a size is unique and is not read at all;</li>
+ * <li>within a bucket files are compared by a fast 128-bit hash of their first and last block;</li>
+ * <li>only files whose partial hashes match are hashed in full with SHA-256.</li>
+ * </ol>
+ * Digests of registered files are computed lazily, when a second file of their size arrives, and
+ * kept for later comparisons. Buckets are locked individually, so files of different sizes are
+ * checked in parallel. When a registered file is moved, {@link #relocated(Path, Path)} tells the
+ * detector where to read it; a file that cannot be read never matches.
+ * With a {@link HashCache}, the digests a bucket needs are looked up in one batch before any file
+ * is read, and digests computed here are added to the cache, so unchanged files are not read again
+ * in later runs.
+ * With a {@link WorkspaceContentIndex}, a file is first checked against the content already in the
+ * workspace: a size missing from the index filter settles it without reading anything, a
+ * (size, head/tail digest) pair missing from it after reading the file's head and tail.
+ * With the file catalog, a file whose SHA-256 is already known, from the cache, is first looked up
+ * by that digest in the catalog's memory-mapped index, which answers a miss without a query; a
+ * cataloged file matches while its size and modification time are still the ones cataloged.
+ */
+public class DuplicateDetector {
+    public static final int PARTIAL_BLOCK_SIZE = 64 * 1024;
+    /**
+     * Identifies how partial digests are computed; cached partial digests of another kind are ignored.
+     */
+    public static final String PARTIAL_KIND = "murmur3-128-head-tail-65536";
+    private static final byte[] UNREADABLE = new byte[0];
+
+    private final Map<Long, List<Candidate>> buckets = new ConcurrentHashMap<>();
+    private final Map<Path, Candidate> candidates = new ConcurrentHashMap<>();
+    private final LongAdder registered = new LongAdder();
+    private final LongAdder partialHashes = new LongAdder();
+    private final LongAdder fullHashes = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final HashCache cache;
+    private final WorkspaceContentIndex index;
+    private final FileEntityDAO catalog;
+    private final Path workspace;
+    private final LongAdder knownInWorkspace = new LongAdder();
+
+    /**
+     * A file with distinct content, and what is known about it so far.
+     */
+    private static final class Candidate {
+        private final FileIdentity identity;
+        private final Path registeredAs;
+        private volatile Path location;
+        private byte[] partial;
+        private byte[] full;
+        private boolean looked;
+
+        Candidate(FileIdentity identity) {
+            this.identity = identity;
+            this.registeredAs = identity.path();
+            this.location = identity.path();
+        }
+    }
+
+    public DuplicateDetector() {
+        this(null);
+    }
+
+    /**
+     * @param cache The persistent digest cache, or null to hash every file needed.
+     */
+    public DuplicateDetector(HashCache cache) {
+        this(cache, null);
+    }
+
+    /**
+     * @param cache The persistent digest cache, or null to hash every file needed.
+     * @param index The index of the workspace content, or null to only compare files registered here.
+     */
+    public DuplicateDetector(HashCache cache, WorkspaceContentIndex index) {
+        this(cache, index, null, null);
+    }
+
+    /**
+     * @param cache     The persistent digest cache, or null to hash every file needed.
+     * @param index     The index of the workspace content, or null to only compare files registered here.
+     * @param catalog   The file catalog of the workspace, or null to not look files up by their digest.
+     * @param workspace The workspace the catalog paths are relative to.
+     */
+    public DuplicateDetector(HashCache cache, WorkspaceContentIndex index, FileEntityDAO catalog, Path workspace) {
+        this.cache = cache;
+        this.index = index;
+        this.catalog = catalog;
+        this.workspace = workspace;
+    }
+
+    /**
+     * Registers a file which is not cached, or finds the registered file with the same content.
+     *
+     * @param file The file.
+     * @param size Its size.
+     * @return The file as it was registered whose content equals this one, or null if the content is new.
+     * @throws IOException if the file cannot be read.
+     */
+    public Path register(Path file, long size) throws IOException {
+        return register(new FileIdentity(file, size, -1, ""));
+    }
+
+    /**
+     * Registers a file, or finds the registered file, or with an index the workspace file, with the same content.
+     *
+     * @param file The file as listed.
+     * @return The file as it was registered, or the workspace file, whose content equals this one,
+     *         or null if the content is new.
+     * @throws IOException if the file cannot be read.
+     */
+    public Path register(FileIdentity file) throws IOException {
+        registered.increment();
+        long size = file.size();
+        List<Candidate> bucket = buckets.computeIfAbsent(size, key -> new ArrayList<>());
+        synchronized (bucket) {
+            Candidate incoming = new Candidate(file);
+            if (catalog != null) {
+                Path known = findInCatalog(incoming, bucket);
+                if (known != null) {
+                    knownInWorkspace.increment();
+                    return known;
+                }
+            }
+            if (index != null && index.mightContainSize(size)) {
+                Path known = findInWorkspace(incoming, bucket);
+                if (known != null) {
+                    knownInWorkspace.increment();
+                    return known;
+                }
+            }
+            if (!bucket.isEmpty()) {
+                lookupCached(incoming, bucket);
+                if (incoming.partial == null) {
+                    incoming.partial = partialDigest(incoming.location);
+                    remember(incoming);
+                }
+                for (Candidate candidate : bucket) {
+                    // The head/tail digest is not cryptographic, even when it covers the whole file
+                    if (!MessageDigest.isEqual(incoming.partial, partialDigest(candidate))) {
+                        continue;
+                    }
+                    if (incoming.full == null) {
+                        incoming.full = fullDigest(incoming.location);
+                        remember(incoming);
+                    }
+                    if (MessageDigest.isEqual(incoming.full, fullDigest(candidate))) {
+                        return candidate.registeredAs;
+                    }
+                }
+            }
+            bucket.add(incoming);
+            candidates.put(incoming.registeredAs, incoming);
+            return null;
+        }
+    }
+
+    /**
+     * Looks for a cataloged workspace file with the cached SHA-256 of the incoming file. Nothing is
+     * read: without a cached digest, or when the catalog cannot be read, the file is compared as usual.
+     */
+    private Path findInCatalog(Candidate incoming, List<Candidate> bucket) throws IOException {
+        lookupCached(incoming, bucket);
+        if (incoming.full == null) {
+            return null;
+        }
+        List<FileEntity> cataloged;
+        try {
+            cataloged = catalog.findByHash(incoming.full);
+        } catch (CatalogException e) {
+            return null;
+        }
+        for (FileEntity entry : cataloged) {
+            if (entry.getSize() != incoming.identity.size()) {
+                continue;
+            }
+            Path path = workspace.resolve(entry.getPath());
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (attributes.size() == entry.getSize() && attributes.lastModifiedTime().toMillis() == entry.getModified()) {
+                    return path;
+                }
+            } catch (IOException e) {
+                // Removed or unreadable since it was cataloged
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Looks for an indexed workspace file with the content of the incoming file. Indexed files
+     * whose size or modification time changed since are dropped from the index and never match.
+     */
+    private Path findInWorkspace(Candidate incoming, List<Candidate> bucket) throws IOException {
+        lookupCached(incoming, bucket);
+        if (incoming.partial == null) {
+            incoming.partial = partialDigest(incoming.location);
+            remember(incoming);
+        }
+        long size = incoming.identity.size();
+        if (!index.mightContain(size, incoming.partial)) {
+            return null;
+        }
+        for (WorkspaceContentIndex.Entry entry : index.candidates(size, incoming.partial)) {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(entry.path(), BasicFileAttributes.class);
+            } catch (IOException e) {
+                index.remove(entry.path());
+                continue;
+            }
+            if (attributes.size() != entry.size() || attributes.lastModifiedTime().toMillis() != entry.modified()) {
+                index.remove(entry.path());
+                continue;
+            }
+            if (incoming.full == null) {
+                incoming.full = fullDigest(incoming.location);
+                remember(incoming);
+            }
+            byte[] full = entry.full();
+            if (full == null) {
+                full = fullDigest(entry.path());
+                index.fullDigestComputed(entry.path(), full);
+            }
+            if (MessageDigest.isEqual(incoming.full, full)) {
+                return entry.path();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The head/tail digest of a registered file, computed at its current location if it was never needed.
+     *
+     * @throws IOException if the file cannot be read.
+     */
+    public byte[] partialDigestOf(Path file) throws IOException {
+        Candidate candidate = candidates.get(file);
+        if (candidate == null) {
+            return partialDigest(file);
+        }
+        synchronized (buckets.get(candidate.identity.size())) {
+            if (candidate.partial == null) {
+                candidate.partial = partialDigest(candidate.location);
+                remember(candidate);
+            }
+            return candidate.partial;
+        }
+    }
+
+    /**
+     * The full digest of a registered file if it was computed, else null.
+     */
+    public byte[] knownFullDigestOf(Path file) {
+        Candidate candidate = candidates.get(file);
+        if (candidate == null) {
+            return null;
+        }
+        synchronized (buckets.get(candidate.identity.size())) {
+            return candidate.full;
+        }
+    }
+
+    /**
+     * Records that a registered file now lives elsewhere, e.g. after a move into the workspace.
+     */
+    public void relocated(Path file, Path location) {
+        Candidate candidate = candidates.get(file);
+        if (candidate != null) {
+            candidate.location = location;
+        }
+    }
+
+    /**
+     * Records that a registered file was moved into the chunk store, where it can no longer be read
+     * as a file: its digests are settled first, the partial one at its current location.
+     *
+     * @param fullDigest The full digest taken while storing the file.
+     * @throws IOException if the partial digest is needed and the file cannot be read.
+     */
+    public void relocatedAsChunks(Path file, Path stub, byte[] fullDigest) throws IOException {
+        Candidate candidate = candidates.get(file);
+        if (candidate == null) {
+            return;
+        }
+        synchronized (buckets.get(candidate.identity.size())) {
+            if (candidate.partial == null) {
+                candidate.partial = partialDigest(candidate.location);
+            }
+            candidate.full = fullDigest;
+            remember(candidate);
+            candidate.location = stub;
+        }
+    }
+
+    /**
+     * The current location of a registered file.
+     */
+    public Path locationOf(Path file) {
+        Candidate candidate = candidates.get(file);
+        return candidate == null ? file : candidate.location;
+    }
+
+    /**
+     * Fills in the cached digests of the incoming file and of the registered files of its bucket
+     * which were not looked up yet, in one batch.
+     */
+    private void lookupCached(Candidate incoming, List<Candidate> bucket) {
+        if (cache == null) {
+            return;
+        }
+        List<Candidate> wanted = new ArrayList<>();
+        for (Candidate candidate : bucket) {
+            if (!candidate.looked && candidate.partial == null) {
+                wanted.add(candidate);
+            }
+        }
+        if (!incoming.looked) {
+            wanted.add(incoming);
+        }
+        List<FileIdentity> identities = new ArrayList<>(wanted.size());
+        for (Candidate candidate : wanted) {
+            candidate.looked = true;
+            if (candidate.identity.modified() >= 0) {
+                identities.add(candidate.identity);
+            }
+        }
+        if (identities.isEmpty()) {
+            return;
+        }
+        Map<Path, HashCache.CachedDigests> cached = cache.lookup(identities);
+        for (Candidate candidate : wanted) {
+            HashCache.CachedDigests digests = cached.get(candidate.registeredAs);
+            if (digests == null || (digests.partial() == null && digests.full() == null)) {
+                continue;
+            }
+            cacheHits.increment();
+            if (PARTIAL_KIND.equals(digests.partialKind())) {
+                candidate.partial = digests.partial();
+            }
+            candidate.full = digests.full();
+        }
+    }
+
+    /**
+     * Adds what is known about a file at its registered location to the cache.
+     */
+    private void remember(Candidate candidate) {
+        if (cache != null && candidate.identity.modified() >= 0 && candidate.location.equals(candidate.registeredAs)) {
+            cache.store(new HashCache.CachedDigests(candidate.identity, PARTIAL_KIND, candidate.partial,
+                    candidate.full));
+        }
+    }
+
+    private byte[] partialDigest(Path file) throws IOException {
+        partialHashes.increment();
+        return ContentHashFunctionsLib.hashHeadAndTail(file, PARTIAL_BLOCK_SIZE, Algorithm.FAST_128);
+    }
+
+    /**
+     * Partial digest of a registered file; empty when it cannot be read, which matches nothing.
+     */
+    private byte[] partialDigest(Candidate candidate) {
+        if (candidate.partial == null) {
+            candidate.partial = read(candidate, true);
+            if (candidate.partial != null) {
+                remember(candidate);
+            }
+        }
+        return candidate.partial != null ? candidate.partial : UNREADABLE;
+    }
+
+    private byte[] fullDigest(Path file) throws IOException {
+        fullHashes.increment();
+        return ContentHashFunctionsLib.hashFile(file, Algorithm.SHA_256);
+    }
+
+    private byte[] fullDigest(Candidate candidate) {
+        if (candidate.full == null) {
+            candidate.full = read(candidate, false);
+            if (candidate.full != null) {
+                remember(candidate);
+            }
+        }
+        return candidate.full != null ? candidate.full : UNREADABLE;
+    }
+
+    /**
+     * Digests a registered file at its current location. A file moved concurrently is read again
+     * at its new location once.
+     *
+     * @return The digest, or null if the file cannot be read; it is tried again on the next comparison.
+     */
+    private byte[] read(Candidate candidate, boolean partial) {
+        Path location = candidate.location;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                return partial ? partialDigest(location) : fullDigest(location);
+            } catch (NoSuchFileException e) {
+                if (location.equals(candidate.location)) {
+                    break;
+                }
+                location = candidate.location;
+            } catch (IOException e) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    public long registeredFiles() {
+        return registered.sum();
+    }
+
+    public long partialHashes() {
+        return partialHashes.sum();
+    }
+
+    public long fullHashes() {
+        return fullHashes.sum();
+    }
+
+    /**
+     * Files found to be in the workspace already, through the index.
+     */
+    public long knownInWorkspace() {
+        return knownInWorkspace.sum();
+    }
+
+    /**
+     * Files whose digests were found in the cache.
+     */
+    public long cacheHits() {
+        return cacheHits.sum();
+    }
+}
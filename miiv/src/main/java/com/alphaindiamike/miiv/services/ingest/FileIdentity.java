@@ -0,0 +1,27 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * What a cached digest is valid for: a path with the size, modification time and file key
+ * (device and inode, where the file system has them) it had when it was hashed. A change of any
+ * of them invalidates the digest.
+ */
+public record FileIdentity(
+		Path path,
+		long size,
+		long modified,
+		String fileKey
+		) {
+
+    public static FileIdentity of(Path path, BasicFileAttributes attributes) {
+        Object fileKey = attributes.fileKey();
+        return new FileIdentity(path, attributes.size(), attributes.lastModifiedTime().toMillis(),
+                fileKey == null ? "" : fileKey.toString());
+    }
+
+    public static FileIdentity of(SourceFile file) {
+        return of(file.path(), file.attributes());
+    }
+}
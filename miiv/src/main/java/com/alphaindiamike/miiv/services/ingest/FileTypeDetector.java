@@ -0,0 +1,91 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alphaindiamike.miiv.privatelib.functions.ContentSniffingFunctionsLib;
+
+/**
+ * Picks the file type a source file is routed by: its extension, unless its content shows another
+ * type, see {@link ContentSniffingFunctionsLib}. Sniffed types are kept in the hash cache with the
+ * digests of the file, so an unchanged file is sniffed once. Safe for use by several threads.
+ */
+public class FileTypeDetector {
+    private static final Logger logger = LoggerFactory.getLogger(FileTypeDetector.class);
+    private static final String NO_SIGNATURE = "";
+
+    private final HashCache cache;
+    private final LongAdder sniffed = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder corrected = new LongAdder();
+
+    /**
+     * @param cache The cache of sniffed types, or null to sniff every file asked about.
+     */
+    public FileTypeDetector(HashCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * The type to route the file by.
+     *
+     * @param file      The file.
+     * @param extension Its lower case extension without the dot, empty if it has none.
+     * @return The extension if the content matches it or no signature, else the sniffed type.
+     */
+    public String fileTypeOf(FileIdentity file, String extension) {
+        String type = sniffedTypeOf(file);
+        if (type == null || type.isEmpty() || ContentSniffingFunctionsLib.matchesExtension(type, extension)) {
+            return extension;
+        }
+        corrected.increment();
+        logger.debug("Routing {} as {} by its content", file.path(), type);
+        return type;
+    }
+
+    /**
+     * The cached or sniffed type of the file: empty if it matches no signature, null if it cannot be read.
+     */
+    private String sniffedTypeOf(FileIdentity file) {
+        boolean cacheable = cache != null && file.modified() >= 0;
+        if (cacheable) {
+            HashCache.CachedDigests cached = cache.lookup(List.of(file)).get(file.path());
+            if (cached != null && cached.fileType() != null) {
+                cacheHits.increment();
+                return cached.fileType();
+            }
+        }
+        String type;
+        try {
+            type = ContentSniffingFunctionsLib.sniff(file.path());
+        } catch (IOException e) {
+            logger.debug("Failed to sniff {} due to {}", file.path(), e.getMessage());
+            return null;
+        }
+        sniffed.increment();
+        type = type == null ? NO_SIGNATURE : type;
+        if (cacheable) {
+            cache.store(new HashCache.CachedDigests(file, null, null, null, type));
+        }
+        return type;
+    }
+
+    public long sniffed() {
+        return sniffed.sum();
+    }
+
+    public long cacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * The files routed by their content instead of their extension.
+     */
+    public long corrected() {
+        return corrected.sum();
+    }
+}
@@ -0,0 +1,281 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alphaindiamike.miiv.privatelib.functions.DatabaseFunctionsLib;
+
+/**
+ * Persistent cache of content digests. Digests of files inside the workspace are kept in the
+ * workspace database, digests of files elsewhere in the global store, so a source ingested into
+ * several workspaces is hashed once. An entry is only returned while the path still has the size,
+ * modification time and file key it was hashed with.
+ * Lookups take a batch of files and run one prepared query per store; new digests are buffered
+ * and written in batched transactions, and at the latest when the cache is closed.
+ * The type sniffed from the first bytes of a file and the date read from its metadata are kept with
+ * its digests. Storing what is known about an unchanged file keeps what was known before, so digests,
+ * type and date can be stored apart.
+ */
+public class HashCache implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(HashCache.class);
+    public static final String GLOBAL_DATABASE_FILE = "hashcache.db";
+    private static final int MAX_BATCH = 500;
+
+    private final Path workspace;
+    private final Store workspaceStore;
+    private final Store globalStore;
+
+    /**
+     * Digests known for a file. The partial digest is only valid for the kind it was computed with.
+     * The file type is the one sniffed from its content, empty if it matched no signature, or null if
+     * it was never sniffed. The document date is an ISO local date-time read from its metadata, empty
+     * if it has none, or null if it was never read.
+     */
+    public record CachedDigests(
+    		FileIdentity identity,
+    		String partialKind,
+    		byte[] partial,
+    		byte[] full,
+    		String fileType,
+    		String documentDate
+    		) {
+
+        public CachedDigests(FileIdentity identity, String partialKind, byte[] partial, byte[] full) {
+            this(identity, partialKind, partial, full, null, null);
+        }
+
+        public CachedDigests(FileIdentity identity, String partialKind, byte[] partial, byte[] full, String fileType) {
+            this(identity, partialKind, partial, full, fileType, null);
+        }
+    }
+
+    private HashCache(Path workspace, Store workspaceStore, Store globalStore) {
+        this.workspace = workspace;
+        this.workspaceStore = workspaceStore;
+        this.globalStore = globalStore;
+    }
+
+    /**
+     * Opens the cache of a workspace and the global cache next to the global settings.
+     *
+     * @throws SQLException if one of the databases cannot be opened.
+     */
+    public static HashCache open(Path workspace) throws SQLException {
+        return open(workspace, DatabaseFunctionsLib.globalDatabaseFile(GLOBAL_DATABASE_FILE));
+    }
+
+    /**
+     * Opens the cache of a workspace with the global cache in the given database file.
+     *
+     * @throws SQLException if one of the databases cannot be opened.
+     */
+    public static HashCache open(Path workspace, Path globalDatabase) throws SQLException {
+        Store workspaceStore = new Store(DatabaseFunctionsLib.openWorkspaceDatabase(workspace));
+        try {
+            return new HashCache(workspace, workspaceStore, new Store(DatabaseFunctionsLib.openDatabase(globalDatabase)));
+        } catch (SQLException e) {
+            workspaceStore.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Looks up the digests of a batch of files.
+     *
+     * @return The valid entries by path; files without one are missing.
+     */
+    public Map<Path, CachedDigests> lookup(List<FileIdentity> files) {
+        List<FileIdentity> inWorkspace = new ArrayList<>();
+        List<FileIdentity> elsewhere = new ArrayList<>();
+        for (FileIdentity file : files) {
+            (file.path().startsWith(workspace) ? inWorkspace : elsewhere).add(file);
+        }
+        Map<Path, CachedDigests> found = new HashMap<>();
+        workspaceStore.lookup(inWorkspace, found);
+        globalStore.lookup(elsewhere, found);
+        return found;
+    }
+
+    /**
+     * Records the digests, type or date of a file. Values left null keep what was known about the file
+     * while it is unchanged; what was known about an earlier version of the path is replaced.
+     */
+    public void store(CachedDigests digests) {
+        (digests.identity().path().startsWith(workspace) ? workspaceStore : globalStore).store(digests);
+    }
+
+    @Override
+    public void close() {
+        workspaceStore.close();
+        globalStore.close();
+    }
+
+    /**
+     * The content_hashes table of one database.
+     */
+    private static final class Store {
+        private final Connection connection;
+        private final PreparedStatement upsert;
+        private final List<CachedDigests> pending = new ArrayList<>();
+        private final Map<Integer, PreparedStatement> selects = new HashMap<>();
+        private boolean broken;
+
+        Store(Connection connection) throws SQLException {
+            this.connection = connection;
+            try {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("CREATE TABLE IF NOT EXISTS content_hashes (path TEXT PRIMARY KEY, "
+                            + "size INTEGER NOT NULL, modified INTEGER NOT NULL, file_key TEXT NOT NULL, "
+                            + "partial_kind TEXT, partial BLOB, full BLOB, file_type TEXT, document_date TEXT)");
+                    for (String column : List.of("file_type", "document_date")) {
+                        if (!hasColumn(statement, column)) {
+                            statement.execute("ALTER TABLE content_hashes ADD COLUMN " + column + " TEXT");
+                        }
+                    }
+                }
+                String unchanged = "size = excluded.size AND modified = excluded.modified AND file_key = excluded.file_key";
+                upsert = connection.prepareStatement("INSERT INTO content_hashes "
+                        + "(path, size, modified, file_key, partial_kind, partial, full, file_type, document_date) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT(path) DO UPDATE SET "
+                        + "partial_kind = CASE WHEN " + unchanged + " AND excluded.partial IS NULL "
+                        + "THEN partial_kind ELSE excluded.partial_kind END, "
+                        + "partial = CASE WHEN " + unchanged + " AND excluded.partial IS NULL "
+                        + "THEN partial ELSE excluded.partial END, "
+                        + "full = CASE WHEN " + unchanged + " AND excluded.full IS NULL THEN full ELSE excluded.full END, "
+                        + "file_type = CASE WHEN " + unchanged + " AND excluded.file_type IS NULL "
+                        + "THEN file_type ELSE excluded.file_type END, "
+                        + "document_date = CASE WHEN " + unchanged + " AND excluded.document_date IS NULL "
+                        + "THEN document_date ELSE excluded.document_date END, "
+                        + "size = excluded.size, modified = excluded.modified, file_key = excluded.file_key");
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+        }
+
+        private static boolean hasColumn(Statement statement, String column) throws SQLException {
+            try (ResultSet rs = statement.executeQuery("PRAGMA table_info(content_hashes)")) {
+                while (rs.next()) {
+                    if (column.equals(rs.getString("name"))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        synchronized void lookup(List<FileIdentity> files, Map<Path, CachedDigests> found) {
+            if (broken) {
+                return;
+            }
+            try {
+                for (int from = 0; from < files.size(); from += MAX_BATCH) {
+                    List<FileIdentity> batch = files.subList(from, Math.min(files.size(), from + MAX_BATCH));
+                    Map<String, FileIdentity> byPath = new HashMap<>();
+                    PreparedStatement select = selectFor(batch.size());
+                    for (int i = 0; i < batch.size(); i++) {
+                        select.setString(i + 1, batch.get(i).path().toString());
+                        byPath.put(batch.get(i).path().toString(), batch.get(i));
+                    }
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            FileIdentity file = byPath.get(rs.getString("path"));
+                            if (file != null && file.size() == rs.getLong("size")
+                                    && file.modified() == rs.getLong("modified")
+                                    && file.fileKey().equals(rs.getString("file_key"))) {
+                                found.put(file.path(), new CachedDigests(file, rs.getString("partial_kind"),
+                                        rs.getBytes("partial"), rs.getBytes("full"), rs.getString("file_type"),
+                                        rs.getString("document_date")));
+                            }
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                fail("read", e);
+            }
+        }
+
+        private PreparedStatement selectFor(int count) throws SQLException {
+            PreparedStatement select = selects.get(count);
+            if (select == null) {
+                select = connection.prepareStatement("SELECT path, size, modified, file_key, partial_kind, partial, full, file_type, "
+                        + "document_date FROM content_hashes WHERE path IN (" + String.join(", ", Collections.nCopies(count, "?")) + ")");
+                selects.put(count, select);
+            }
+            return select;
+        }
+
+        synchronized void store(CachedDigests digests) {
+            if (broken) {
+                return;
+            }
+            pending.add(digests);
+            if (pending.size() >= MAX_BATCH) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (pending.isEmpty() || broken) {
+                return;
+            }
+            try {
+                connection.setAutoCommit(false);
+                try {
+                    for (CachedDigests digests : pending) {
+                        FileIdentity file = digests.identity();
+                        upsert.setString(1, file.path().toString());
+                        upsert.setLong(2, file.size());
+                        upsert.setLong(3, file.modified());
+                        upsert.setString(4, file.fileKey());
+                        upsert.setString(5, digests.partialKind());
+                        upsert.setBytes(6, digests.partial());
+                        upsert.setBytes(7, digests.full());
+                        upsert.setString(8, digests.fileType());
+                        upsert.setString(9, digests.documentDate());
+                        upsert.addBatch();
+                    }
+                    upsert.executeBatch();
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                fail("write", e);
+            }
+            pending.clear();
+        }
+
+        /**
+         * The cache is an optimization: after a database error it is bypassed for the rest of the run.
+         */
+        private void fail(String action, SQLException e) {
+            broken = true;
+            logger.warn("Failed to {} the hash cache, continuing without it: {}", action, e.getMessage());
+        }
+
+        synchronized void close() {
+            flush();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.warn("Failed to close the hash cache: {}", e.getMessage());
+            }
+        }
+    }
+}
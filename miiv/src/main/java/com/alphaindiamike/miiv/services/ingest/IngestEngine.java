@@ -0,0 +1,878 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.security.MessageDigest;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alphaindiamike.miiv.model.filesystem.ContentRoutine;
+import com.alphaindiamike.miiv.model.filesystem.FileEntity;
+import com.alphaindiamike.miiv.model.filesystem.FileEntityDAO;
+import com.alphaindiamike.miiv.model.filesystem.SqliteFileEntityDAO;
+import com.alphaindiamike.miiv.privatelib.exceptions.CatalogException;
+import com.alphaindiamike.miiv.privatelib.functions.ContentHashFunctionsLib;
+import com.alphaindiamike.miiv.privatelib.functions.ContentHashFunctionsLib.Algorithm;
+import com.alphaindiamike.miiv.privatelib.functions.DatabaseFunctionsLib;
+import com.alphaindiamike.miiv.privatelib.functions.FileSystemFunctionsLib;
+import com.alphaindiamike.miiv.privatelib.functions.FileTransferFunctionsLib;
+import com.alphaindiamike.miiv.services.chunks.ChunkStore;
+
+/**
+ * Ingest engine. A run is executed by an {@link IngestPipeline}: {@link DirectoryWalkTask}s list the
+ * source, the classify stage routes each file through the scheme, the optional hash stage drops
+ * content already seen in the run or already in the workspace, see {@link WorkspaceContentIndex},
+ * and the write stage puts the file into place.
+ * Progress is recorded in an {@link OperationJournal}. Copied bytes are first written to a
+ * per-run staging directory inside .miiv and renamed into place once complete, so an interrupted
+ * run never leaves partial files in the scheme folders.
+ * Writes draw from an {@link IoThrottle}, whose limits are polled from the workspace database.
+ * With chunked versions, files routed to folders with a content routine go to the {@link ChunkStore}
+ * and leave a stub in the folder. With dated versions, their names start with the document date,
+ * see {@link DocumentDater}, read on the write stage thread.
+ * Every file put into place is recorded in the file catalog, see {@link SqliteFileEntityDAO}, with
+ * the node, type and date it was placed by and, where the run computed it, its SHA-256.
+ */
+public class IngestEngine {
+    private static final Logger logger = LoggerFactory.getLogger(IngestEngine.class);
+    private static final String STAGING_DIRECTORY = "staging";
+    private static final long LIMITS_POLL_MILLIS = 1000;
+    private static final long SHUTDOWN_GRACE_MILLIS = 5000;
+
+    private final SchemeRouter router;
+    private final Path workspace;
+    private final IngestOperation operation;
+    private final IngestOptions options;
+    private final OperationJournal journal;
+    private final Path stagingDirectory;
+    private final AtomicLong stagingCounter = new AtomicLong();
+    private boolean sameFileStore;
+    private final AtomicBoolean linkFallbackReported = new AtomicBoolean();
+    private volatile IngestPipeline pipeline;
+    private final IoThrottle throttle;
+
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder inPlace = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder chunked = new LongAdder();
+    private final LongAdder chunkBytes = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Set<Path> reservedTargets = ConcurrentHashMap.newKeySet();
+    private final Set<Path> createdFolders = ConcurrentHashMap.newKeySet();
+    private DuplicateDetector duplicateDetector;
+    private FileTypeDetector fileTypes;
+    private WorkspaceContentIndex contentIndex;
+    private ChunkStore chunkStore;
+    private Set<Path> chunkedFolders = Set.of();
+    private DocumentDater documentDates;
+    private Set<Path> datedFolders = Set.of();
+    private final Map<Path, Path> movedDuplicates = new ConcurrentHashMap<>();
+    private FileEntityDAO catalog;
+    private final AtomicBoolean catalogFailureReported = new AtomicBoolean();
+
+    public IngestEngine(SchemeRouter router, Path workspace, IngestOperation operation, IngestOptions options,
+            OperationJournal journal) {
+        this.router = router;
+        this.workspace = workspace;
+        this.operation = operation;
+        this.options = options;
+        this.journal = journal;
+        this.stagingDirectory = DatabaseFunctionsLib.workspaceMetadataDirectory(workspace)
+                .resolve(STAGING_DIRECTORY).resolve("run-" + journal.getRunId());
+        this.throttle = new IoThrottle(options.getRateLimits());
+    }
+
+    /**
+     * Brings every regular file below the source into the workspace and waits for completion.
+     *
+     * @param source The source directory.
+     * @return The report of the run.
+     * @throws IOException if the staging directory cannot be prepared.
+     */
+    public IngestReport run(Path source) throws IOException {
+        return execute(source, new DirectoryWalkTask(this, source));
+    }
+
+    /**
+     * Continues an interrupted run: files the journal lists as planned or in flight are executed
+     * without listing their directories again, and only directories whose listing never reached
+     * the journal are walked.
+     *
+     * @param source The source directory of the interrupted run.
+     * @return The report of the resumed part of the run.
+     * @throws IOException if the staging directory cannot be prepared.
+     */
+    public IngestReport resume(Path source) throws IOException {
+        return execute(source, new ResumeTask(this));
+    }
+
+    /**
+     * Executes a placement plan written by {@link PlacementPlanner}: files are written to the planned
+     * folders and names without being classified again, and planned duplicates are skipped once their
+     * content is confirmed equal. Names taken since planning get a " (n)" suffix as usual.
+     *
+     * @param plan The opened plan; the caller closes it.
+     * @return The report of the run.
+     * @throws IOException if the staging directory cannot be prepared.
+     */
+    public IngestReport runPlan(PlacementPlan.Reader plan) throws IOException {
+        return execute(plan.getSource(), new PlanExecutionTask(this, plan));
+    }
+
+    private IngestReport execute(Path source, RecursiveAction walk) throws IOException {
+        long start = System.nanoTime();
+        sameFileStore = isSameFileStore(source, workspace);
+        prepareStagingDirectory();
+        pipeline = new IngestPipeline(this, options);
+        HashCache hashCache = openHashCache();
+        fileTypes = new FileTypeDetector(hashCache);
+        contentIndex = openContentIndex();
+        catalog = openCatalog();
+        duplicateDetector = new DuplicateDetector(hashCache, contentIndex, catalog, workspace);
+        if (options.isChunkVersions()) {
+            openChunkStore();
+        }
+        if (options.isDateVersions()) {
+            documentDates = new DocumentDater(hashCache);
+            datedFolders = router.foldersWithContent(EnumSet.allOf(ContentRoutine.class));
+        }
+        ScheduledExecutorService limitsWatcher = watchRateLimits();
+
+        // Ctrl-C: let the workers finish the file in hand, then commit what the journal knows so the run can be resumed
+        Thread flushJournal = new Thread(() -> {
+            try {
+                stop(SHUTDOWN_GRACE_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            journal.close();
+        }, "miiv-journal-flush");
+        Runtime.getRuntime().addShutdownHook(flushJournal);
+        try {
+            if (pipeline.run(walk)) {
+                deleteMovedDuplicates();
+                journal.finish();
+            } else {
+                logger.warn("Run {} was stopped, resume it with --resume.", journal.getRunId());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Run {} was interrupted, resume it with --resume.", journal.getRunId());
+        } finally {
+            limitsWatcher.shutdownNow();
+            closeCatalog();
+            if (chunkStore != null) {
+                chunkStore.close();
+            }
+            if (contentIndex != null) {
+                contentIndex.close();
+            }
+            if (hashCache != null) {
+                hashCache.close();
+            }
+            journal.close();
+            removeShutdownHook(flushJournal);
+            removeStagingDirectory();
+        }
+        if (operation == IngestOperation.MOVE) {
+            // Directories emptied by the move; ones holding skipped or failed files stay
+            int removed = FileSystemFunctionsLib.removeEmptyDirectories(source);
+            logger.debug("Removed {} emptied directories below {}", removed, source);
+        }
+        logger.info("Sniffed the content of {} files ({} cached), {} routed by content instead of extension.",
+                fileTypes.sniffed(), fileTypes.cacheHits(), fileTypes.corrected());
+        if (options.isDeduplicate()) {
+            logger.info("Duplicate check of {} files: {} partial and {} full hashes, {} cached, {} already in the workspace.",
+                    duplicateDetector.registeredFiles(), duplicateDetector.partialHashes(),
+                    duplicateDetector.fullHashes(), duplicateDetector.cacheHits(), duplicateDetector.knownInWorkspace());
+        }
+        if (documentDates != null) {
+            logger.info("Dated versions: read the metadata of {} files ({} cached), {} dated by modification time.",
+                    documentDates.read(), documentDates.cacheHits(), documentDates.modified());
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        return new IngestReport(operation, files.sum(), bytes.sum(), inPlace.sum(), duplicates.sum(),
+                chunked.sum(), chunkBytes.sum(),
+                failed.sum() + pipeline.failures(), pipeline.writeConcurrency(), elapsed, pipeline.statistics());
+    }
+
+    /**
+     * Stops the run in progress, as Ctrl-C does: the stages finish the file each thread has in hand and
+     * leave their queues, so the run stays unfinished in the journal and --resume picks up the rest.
+     *
+     * @param graceMillis How long the threads may take to finish their current file before they are interrupted.
+     * @throws InterruptedException if interrupted while waiting for the threads.
+     */
+    public void stop(long graceMillis) throws InterruptedException {
+        IngestPipeline running = pipeline;
+        if (running != null) {
+            running.stop(graceMillis);
+        }
+    }
+
+    /**
+     * Opens the digest cache; without it the run hashes every file it needs to compare and sniffs
+     * every file whose type it checks.
+     */
+    private HashCache openHashCache() {
+        try {
+            return HashCache.open(workspace);
+        } catch (SQLException e) {
+            logger.warn("Failed to open the hash cache, hashing without it: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Opens the file catalog; without it the run places files without recording them.
+     */
+    private FileEntityDAO openCatalog() {
+        try {
+            return SqliteFileEntityDAO.open(workspace);
+        } catch (SQLException e) {
+            logger.warn("Failed to open the file catalog, not recording placed files: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void closeCatalog() {
+        if (catalog == null) {
+            return;
+        }
+        try {
+            catalog.close();
+        } catch (CatalogException e) {
+            logger.warn("Failed to record the last placed files in the file catalog: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the index of the workspace content. Every run adds the files it places, so a later --dedup
+     * run finds them; without it only files of the run are compared.
+     */
+    private WorkspaceContentIndex openContentIndex() {
+        try {
+            return WorkspaceContentIndex.open(workspace, options.getContentFilterFalsePositiveRate());
+        } catch (SQLException e) {
+            logger.warn("Failed to open the workspace content index, comparing within the run only: {}",
+                    e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Opens the chunk store for the folders with a content routine; without it they get plain files.
+     */
+    private void openChunkStore() {
+        try {
+            chunkStore = ChunkStore.open(workspace);
+            chunkedFolders = router.foldersWithContent(EnumSet.allOf(ContentRoutine.class));
+        } catch (SQLException | IOException e) {
+            logger.warn("Failed to open the chunk store, writing plain files: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Publishes the limits of the run in the workspace database and polls them, so miiv throttle
+     * can change them while the run is in progress.
+     */
+    private ScheduledExecutorService watchRateLimits() {
+        long runId = journal.getRunId();
+        try {
+            RateLimitStore.write(workspace, runId, throttle.getLimits());
+        } catch (SQLException e) {
+            logger.warn("Failed to record the rate limits of run {}: {}", runId, e.getMessage());
+        }
+        if (!throttle.getLimits().isUnlimited()) {
+            logger.info("Run {} limited to {}", runId, throttle.getLimits().describe());
+        }
+        ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "miiv-rate-limits");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(() -> {
+            try {
+                RateLimitStore.read(workspace, runId).filter(throttle::update)
+                        .ifPresent(limits -> logger.info("Run {} now limited to {}", runId, limits.describe()));
+            } catch (SQLException e) {
+                logger.debug("Failed to poll the rate limits of run {}: {}", runId, e.getMessage());
+            }
+        }, LIMITS_POLL_MILLIS, LIMITS_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        return watcher;
+    }
+
+    IngestOperation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Directories of the workspace itself are skipped when the workspace lies inside the source.
+     */
+    boolean isExcluded(Path directory) {
+        return directory.startsWith(workspace);
+    }
+
+    OperationJournal getJournal() {
+        return journal;
+    }
+
+    void directoryListed(Path directory, List<SourceFile> listedFiles, List<Path> subdirectories) {
+        journal.directoryListed(directory, listedFiles, subdirectories);
+    }
+
+    /**
+     * Hands the files of one listing to the pipeline, waiting while its queues are full.
+     */
+    void filesListed(List<SourceFile> listedFiles) throws InterruptedException {
+        pipeline.submit(listedFiles);
+    }
+
+    /**
+     * Journals files of a plan and hands them to the stages after classify, waiting while their queues are full.
+     */
+    void filesPlanned(List<RoutedFile> plannedFiles) throws InterruptedException {
+        List<SourceFile> sources = new ArrayList<>(plannedFiles.size());
+        for (RoutedFile planned : plannedFiles) {
+            sources.add(planned.file());
+        }
+        journal.filesPlanned(sources);
+        pipeline.submitRouted(plannedFiles);
+    }
+
+    /**
+     * Classify stage: picks the scheme folder of the file.
+     *
+     * @return The routed file, or null if no folder accepts it.
+     */
+    RoutedFile classify(SourceFile file) {
+        FileIdentity identity = FileIdentity.of(file);
+        String fileType = router.fileTypeOf(identity, fileTypes);
+        Path folder = router.route(identity.path(), fileType);
+        if (folder == null) {
+            logger.warn("No scheme folder accepts {}, skipped.", file.path());
+            journal.fileFailed(file.path());
+            failed.increment();
+            return null;
+        }
+        return new RoutedFile(file, folder, fileType);
+    }
+
+    /**
+     * Hash stage: drops files whose content equals a file already passed on in this run or an
+     * indexed workspace file, see {@link DuplicateDetector}. Files of a size not seen before, in
+     * the run and in the index filter, are passed on without being read.
+     *
+     * @return The file, or null if it is a duplicate or cannot be read.
+     */
+    RoutedFile deduplicate(RoutedFile routed) {
+        Path source = routed.file().path();
+        Path original;
+        try {
+            original = duplicateDetector.register(FileIdentity.of(routed.file()));
+        } catch (IOException e) {
+            logger.error("Failed to hash {} due to {}", source, e.getMessage());
+            journal.fileFailed(source);
+            failed.increment();
+            return null;
+        }
+        if (original != null) {
+            logger.info(original.startsWith(workspace) ? "Skipping {}, already in the workspace as {}"
+                    : "Skipping {}, same content as {}", source, original);
+            journal.fileSkipped(source);
+            duplicates.increment();
+            if (operation == IngestOperation.MOVE && options.isDeleteDuplicates()) {
+                movedDuplicates.put(source, original);
+            }
+            return null;
+        }
+        return routed;
+    }
+
+    /**
+     * Deletes the source files of a move whose content was moved into the workspace. A duplicate is
+     * only deleted once its original is in place, so a failed original keeps its duplicates.
+     */
+    private void deleteMovedDuplicates() {
+        for (Map.Entry<Path, Path> duplicate : movedDuplicates.entrySet()) {
+            Path location = duplicateDetector.locationOf(duplicate.getValue());
+            if (!location.startsWith(workspace)) {
+                logger.warn("Keeping {}, its original {} was not moved.", duplicate.getKey(), duplicate.getValue());
+                continue;
+            }
+            try {
+                Files.delete(duplicate.getKey());
+                journal.fileDone(duplicate.getKey(), location);
+                logger.debug("Deleted {}, its content was moved to {}", duplicate.getKey(), location);
+            } catch (IOException e) {
+                logger.error("Failed to delete duplicate {} due to {}", duplicate.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Write stage: copies, links or moves the file into its folder.
+     */
+    void writeFile(RoutedFile routed) {
+        SourceFile file = routed.file();
+        try {
+            if (routed.duplicateOf() != null && sameContent(file, routed.duplicateOf())) {
+                logger.info("Skipping {}, same content as {}", file.path(), routed.duplicateOf());
+                journal.fileSkipped(file.path());
+                duplicates.increment();
+                return;
+            }
+            throttle.acquireOperation();
+            ensureFolder(routed.folder());
+            String targetName = routed.targetName();
+            LocalDate documentDate = null;
+            if (datedFolders.contains(routed.folder())) {
+                documentDate = documentDates.dateOf(FileIdentity.of(file));
+                targetName = datedName(documentDate, targetName);
+            }
+            if (chunkStore != null && chunkedFolders.contains(routed.folder())) {
+                StoredStub stored = storeAsChunks(file, routed.folder(), targetName);
+                Path stub = stored.stub();
+                journal.fileDone(file.path(), stub);
+                catalogPlaced(routed, stub, file.size(), file.attributes().lastModifiedTime().toMillis(), stored.digest(),
+                        documentDate);
+                files.increment();
+                logger.debug("Stored {} as chunks, stub {}", file.path(), stub);
+                return;
+            }
+            Path target = placeIntoFolder(file, routed.folder(), targetName);
+            journal.fileDone(file.path(), target);
+            if (options.isDeduplicate() && operation == IngestOperation.MOVE) {
+                // Later files of the same size are compared with the moved file
+                duplicateDetector.relocated(file.path(), target);
+            }
+            if (contentIndex != null) {
+                indexPlaced(file, target);
+            }
+            BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+            catalogPlaced(routed, target, attributes.size(), attributes.lastModifiedTime().toMillis(),
+                    options.isDeduplicate() ? duplicateDetector.knownFullDigestOf(file.path()) : null, documentDate);
+            files.increment();
+            logger.debug("{} {} to {}", operation.pastTense(), file.path(), target);
+        } catch (InterruptedIOException e) {
+            // Left planned or in flight in the journal, so --resume picks it up again
+            logger.warn("Interrupted before {} was done: {}", file.path(), e.getMessage());
+        } catch (IOException e) {
+            logger.error("Failed to {} {} due to {}", operation.name().toLowerCase(), file.path(), e.getMessage());
+            journal.fileFailed(file.path());
+            failed.increment();
+        }
+    }
+
+    /**
+     * Prefixes the name with the document date, "2023-05-14 cv.pdf", unless it already starts with it.
+     */
+    private static String datedName(LocalDate documentDate, String fileName) {
+        String date = documentDate.toString();
+        return fileName.startsWith(date) ? fileName : date + " " + fileName;
+    }
+
+    /**
+     * Records a placed file in the file catalog. The catalog is bookkeeping: a failure to write it is
+     * reported once and does not fail the file.
+     */
+    private void catalogPlaced(RoutedFile routed, Path target, long size, long modified, byte[] hash,
+            LocalDate documentDate) {
+        if (catalog == null) {
+            return;
+        }
+        String fileType = routed.fileType() != null ? routed.fileType() : SchemeRouter.extensionOf(routed.file().path());
+        try {
+            catalog.save(new FileEntity(relativeName(target), relativeName(routed.folder()), size, modified, hash,
+                    fileType, documentDate, System.currentTimeMillis()));
+        } catch (CatalogException e) {
+            if (catalogFailureReported.compareAndSet(false, true)) {
+                logger.warn("Failed to record placed files in the file catalog: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The path relative to the workspace with "/" separators, the form the catalog keys files by.
+     */
+    private String relativeName(Path path) {
+        return workspace.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/");
+    }
+
+    /**
+     * Adds a placed file to the workspace content index, so later --dedup runs recognize it. A run
+     * without --dedup never hashed the file and takes the head/tail digest from the target.
+     */
+    private void indexPlaced(SourceFile file, Path target) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+            byte[] partial = options.isDeduplicate() ? duplicateDetector.partialDigestOf(file.path())
+                    : duplicateDetector.partialDigestOf(target);
+            contentIndex.add(new WorkspaceContentIndex.Entry(target, attributes.size(),
+                    attributes.lastModifiedTime().toMillis(), partial, duplicateDetector.knownFullDigestOf(file.path())));
+        } catch (IOException e) {
+            logger.debug("Not indexing {}: {}", target, e.getMessage());
+        }
+    }
+
+    /**
+     * Sweep stage of the physical schedule: classifies a batch of small files read in inode order
+     * and writes them folder by folder, each folder in one go, keeping the inode order within it.
+     */
+    void sweep(List<SourceFile> batch) {
+        Map<Path, List<RoutedFile>> byFolder = new LinkedHashMap<>();
+        for (SourceFile file : batch) {
+            RoutedFile routed = classify(file);
+            if (routed != null && options.isDeduplicate()) {
+                routed = deduplicate(routed);
+            }
+            if (routed != null) {
+                byFolder.computeIfAbsent(routed.folder(), folder -> new ArrayList<>()).add(routed);
+            }
+        }
+        for (List<RoutedFile> folder : byFolder.values()) {
+            for (RoutedFile routed : folder) {
+                writeFile(routed);
+            }
+        }
+    }
+
+    /**
+     * A journaled file whose source disappeared: a move completed before the run stopped,
+     * anything else failed.
+     */
+    void sourceMissing(Path source) {
+        if (operation == IngestOperation.MOVE) {
+            logger.debug("{} was already moved before the run stopped.", source);
+            journal.fileDone(source, null);
+        } else {
+            logger.error("Source file disappeared since it was planned: {}", source);
+            journal.fileFailed(source);
+            failed.increment();
+        }
+    }
+
+    /**
+     * A journaled file that was in flight when the run stopped, with the target it was given. Copies and
+     * cross-device moves are staged and renamed into place without replacing anything, so a plain file
+     * under the target name is either the whole file or somebody else's: it counts as written only if its
+     * content equals the source, and a move then only has its source left to delete. Stubs are written in
+     * place, so an unreadable stub is a leftover of the interrupted write and is removed. Anything else
+     * under the name is kept and the file is written again under a free name.
+     *
+     * @return true if the file must not be written again.
+     */
+    boolean writtenBeforeStop(SourceFile file, Path target) {
+        try {
+            if (!Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+                return false;
+            }
+            byte[] written = null;
+            if (ChunkStore.isStub(target)) {
+                ChunkStore.Stub stub = readStubOrNull(target);
+                if (stub == null) {
+                    logger.debug("Removing {}, left incomplete when the run stopped.", target);
+                    Files.delete(target);
+                    return false;
+                }
+                if (stub.size() == file.size()) {
+                    written = stub.digest();
+                }
+            } else if (Files.isRegularFile(target, LinkOption.NOFOLLOW_LINKS) && Files.size(target) == file.size()) {
+                written = ContentHashFunctionsLib.hashFile(target, Algorithm.SHA_256);
+            }
+            if (written == null
+                    || !MessageDigest.isEqual(written, ContentHashFunctionsLib.hashFile(file.path(), Algorithm.SHA_256))) {
+                logger.info("{} holds other content than {}, writing it under another name.", target, file.path());
+                return false;
+            }
+            if (operation == IngestOperation.MOVE) {
+                Files.delete(file.path());
+            }
+            logger.debug("{} was already written to {} before the run stopped.", file.path(), target);
+            journal.fileDone(file.path(), target);
+            files.increment();
+            return true;
+        } catch (IOException e) {
+            logger.error("Failed to check {}, left in flight when the run stopped, due to {}", target, e.getMessage());
+            journal.fileFailed(file.path());
+            failed.increment();
+            return true;
+        }
+    }
+
+    private static ChunkStore.Stub readStubOrNull(Path stub) {
+        try {
+            return ChunkStore.readStub(stub);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    void recordFailure() {
+        failed.increment();
+    }
+
+    private void ensureFolder(Path folder) throws IOException {
+        if (createdFolders.contains(folder)) {
+            return;
+        }
+        Files.createDirectories(folder);
+        createdFolders.add(folder);
+    }
+
+    /**
+     * Writes the file under a free name. A name taken between the check and the write is never
+     * replaced: the write fails and is retried with the next suffix.
+     */
+    private Path placeIntoFolder(SourceFile file, Path folder, String fileName) throws IOException {
+        while (true) {
+            Path target = reserveTarget(folder, fileName);
+            journal.fileStarted(file.path(), target);
+            boolean taken = false;
+            try {
+                bytes.add(write(file, target));
+                return target;
+            } catch (FileAlreadyExistsException e) {
+                // The name stays reserved, so the next attempt moves on even if the check cannot see the entry
+                taken = true;
+                logger.debug("Target {} appeared concurrently, picking another name.", target);
+            } finally {
+                if (!taken) {
+                    reservedTargets.remove(target);
+                }
+            }
+        }
+    }
+
+    /**
+     * A file stored as chunks: its stub and the SHA-256 of its content.
+     */
+    private record StoredStub(Path stub, byte[] digest) {
+    }
+
+    /**
+     * Stores the file in the chunk store under a free name, like {@link #placeIntoFolder}. A move
+     * reads the stored content back and compares it with the source before deleting the source.
+     */
+    private StoredStub storeAsChunks(SourceFile file, Path folder, String fileName) throws IOException {
+        while (true) {
+            Path target = reserveTarget(folder, fileName);
+            Path stub = stubOf(target);
+            journal.fileStarted(file.path(), stub);
+            boolean taken = false;
+            try {
+                ChunkStore.StoredFile stored = chunkStore.store(file.path(), stub, throttle);
+                if (operation == IngestOperation.MOVE) {
+                    chunkStore.verify(stub, stored.digest());
+                    if (options.isDeduplicate()) {
+                        duplicateDetector.relocatedAsChunks(file.path(), stub, stored.digest());
+                    }
+                    Files.delete(file.path());
+                }
+                bytes.add(stored.size());
+                chunked.increment();
+                chunkBytes.add(stored.newBytes());
+                return new StoredStub(stub, stored.digest());
+            } catch (FileAlreadyExistsException e) {
+                taken = true;
+                logger.debug("Stub {} appeared concurrently, picking another name.", stub);
+            } finally {
+                if (!taken) {
+                    reservedTargets.remove(target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares the file with the presumed original of a plan; a missing original never matches.
+     */
+    private boolean sameContent(SourceFile file, Path original) throws IOException {
+        try {
+            if (Files.size(original) != file.size()) {
+                return false;
+            }
+            byte[] originalDigest = ContentHashFunctionsLib.hashFile(original, Algorithm.SHA_256);
+            return MessageDigest.isEqual(originalDigest, ContentHashFunctionsLib.hashFile(file.path(), Algorithm.SHA_256));
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private long write(SourceFile file, Path target) throws IOException {
+        switch (operation) {
+            case MOVE:
+                return move(file, target);
+            case LINK:
+                return link(file, target);
+            case COPY:
+            default:
+                return copy(file, target);
+        }
+    }
+
+    /**
+     * Copies into the staging directory, then renames the complete copy into place without
+     * replacing a file that took the name meanwhile.
+     */
+    private long copy(SourceFile file, Path target) throws IOException {
+        Path staged = nextStagingFile();
+        long copied = FileTransferFunctionsLib.transferFile(file.path(), staged,
+                options.getLargeFileThreshold(), options.getChunkSize(), throttle);
+        try {
+            FileTransferFunctionsLib.renameFile(staged, target);
+        } catch (IOException e) {
+            Files.deleteIfExists(staged);
+            throw e;
+        }
+        return copied;
+    }
+
+    private Path nextStagingFile() {
+        return stagingDirectory.resolve(stagingCounter.incrementAndGet() + ".part");
+    }
+
+    /**
+     * Creates the staging directory of the run. Leftovers of an interrupted attempt of the
+     * same run are partial copies and are discarded.
+     */
+    private void prepareStagingDirectory() throws IOException {
+        removeStagingDirectory();
+        Files.createDirectories(stagingDirectory);
+    }
+
+    private void removeStagingDirectory() {
+        if (!Files.exists(stagingDirectory)) {
+            return;
+        }
+        try (Stream<Path> leftovers = Files.walk(stagingDirectory)) {
+            leftovers.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    logger.warn("Failed to remove staging file: {} due to {}", path, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Failed to clean staging directory: {} due to {}", stagingDirectory, e.getMessage());
+        }
+    }
+
+    /**
+     * Hard-links the workspace entry to the source file, a metadata-only operation.
+     * Across devices, or where the file system refuses links, the file is copied instead.
+     */
+    private long link(SourceFile file, Path target) throws IOException {
+        if (sameFileStore) {
+            try {
+                Files.createLink(target, file.path());
+                inPlace.increment();
+                return file.size();
+            } catch (FileAlreadyExistsException e) {
+                throw e;
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                reportLinkFallback(file.path(), e);
+            }
+        } else {
+            reportLinkFallback(file.path(), null);
+        }
+        return copy(file, target);
+    }
+
+    private void reportLinkFallback(Path file, Exception cause) {
+        if (linkFallbackReported.compareAndSet(false, true)) {
+            logger.warn("Cannot hard-link {} into the workspace ({}), copying instead.", file,
+                    cause == null ? "different device" : cause.toString());
+        } else {
+            logger.debug("Copying {} instead of linking.", file);
+        }
+    }
+
+    /**
+     * Renames when source and workspace share a file store; nested mount points inside the source
+     * surface as AtomicMoveNotSupportedException and take the verified cross-device path.
+     */
+    private long move(SourceFile file, Path target) throws IOException {
+        if (sameFileStore) {
+            try {
+                FileTransferFunctionsLib.renameFile(file.path(), target);
+                inPlace.increment();
+                return file.size();
+            } catch (AtomicMoveNotSupportedException e) {
+                logger.debug("{} is on another device, falling back to copy and verify.", file.path());
+            }
+        }
+        return FileTransferFunctionsLib.moveAcrossFileStores(file.path(), target, nextStagingFile(), throttle);
+    }
+
+    /**
+     * Picks a free file name in the folder, appending " (n)" before the extension on collisions.
+     * A name is taken by a file or by the chunk store stub of a file. Reservations guard against
+     * two workers choosing the same name at the same time.
+     */
+    private Path reserveTarget(Path folder, String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        String stem = dot > 0 ? fileName.substring(0, dot) : fileName;
+        String extension = dot > 0 ? fileName.substring(dot) : "";
+        Path candidate = folder.resolve(fileName);
+        for (int n = 1; isTaken(candidate) || !reservedTargets.add(candidate); n++) {
+            candidate = folder.resolve(stem + " (" + n + ")" + extension);
+        }
+        return candidate;
+    }
+
+    private static boolean isTaken(Path candidate) {
+        return Files.exists(candidate) || Files.exists(stubOf(candidate));
+    }
+
+    private static Path stubOf(Path target) {
+        return target.resolveSibling(target.getFileName() + ChunkStore.STUB_EXTENSION);
+    }
+
+    private static boolean isSameFileStore(Path source, Path workspace) {
+        try {
+            return Files.getFileStore(source).equals(Files.getFileStore(workspace));
+        } catch (IOException e) {
+            logger.warn("Could not compare file stores of {} and {}: {}", source, workspace, e.getMessage());
+            return false;
+        }
+    }
+
+    private static void removeShutdownHook(Thread hook) {
+        try {
+            Runtime.getRuntime().removeShutdownHook(hook);
+        } catch (IllegalStateException e) {
+            // The JVM is already shutting down and runs the hook itself
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+/**
+ * What an ingest run does with each source file.
+ */
+public enum IngestOperation {
+    COPY("Copied"),
+    MOVE("Moved"),
+    // Copy by hard link where source and workspace share a file store
+    LINK("Linked");
+
+    private final String pastTense;
+
+    IngestOperation(String pastTense) {
+        this.pastTense = pastTense;
+    }
+
+    public String pastTense() {
+        return pastTense;
+    }
+}
@@ -0,0 +1,216 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import com.alphaindiamike.miiv.privatelib.functions.FileTransferFunctionsLib;
+
+/**
+ * Tunables of an ingest run. Workers are the threads of the write stage; the other pipeline stages
+ * have their own thread budgets, see {@link IngestPipeline}. Defaults are filled from the global settings by the IngestService
+ * and may be overridden per command.
+ */
+public class IngestOptions {
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    public static final int DEFAULT_IO_PERMITS = 256;
+    public static final long DEFAULT_SMALL_FILE_THRESHOLD = 4L * 1024 * 1024;
+
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int walkThreads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+    private int classifyThreads = 1;
+    private int hashThreads = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private boolean deduplicate;
+    private boolean deleteDuplicates;
+    private IoExecutorMode ioMode = IoExecutorMode.PLATFORM;
+    private int ioPermits = DEFAULT_IO_PERMITS;
+    private RateLimits rateLimits = RateLimits.UNLIMITED;
+    private ScheduleMode scheduleMode;
+    private long smallFileThreshold = DEFAULT_SMALL_FILE_THRESHOLD;
+    private long largeFileThreshold = FileTransferFunctionsLib.DEFAULT_LARGE_FILE_THRESHOLD;
+    private long chunkSize = FileTransferFunctionsLib.DEFAULT_CHUNK_SIZE;
+    private double contentFilterFalsePositiveRate = WorkspaceContentIndex.DEFAULT_FALSE_POSITIVE_RATE;
+    private boolean chunkVersions;
+    private boolean dateVersions;
+
+    public IngestOptions() {
+    }
+
+    // Getters
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getWalkThreads() {
+        return walkThreads;
+    }
+
+    public int getClassifyThreads() {
+        return classifyThreads;
+    }
+
+    public int getHashThreads() {
+        return hashThreads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    /**
+     * Whether a move deletes source files whose content was moved into the workspace by the same run.
+     */
+    public boolean isDeleteDuplicates() {
+        return deleteDuplicates;
+    }
+
+    public IoExecutorMode getIoMode() {
+        return ioMode;
+    }
+
+    public int getIoPermits() {
+        return ioPermits;
+    }
+
+    public RateLimits getRateLimits() {
+        return rateLimits;
+    }
+
+    /**
+     * The schedule of the run, or null until it is resolved for the source device.
+     */
+    public ScheduleMode getScheduleMode() {
+        return scheduleMode;
+    }
+
+    /**
+     * Files up to this size are swept in the physical schedule; larger ones are streamed on their own.
+     */
+    public long getSmallFileThreshold() {
+        return smallFileThreshold;
+    }
+
+    public long getLargeFileThreshold() {
+        return largeFileThreshold;
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * The false positive rate of the filter of the workspace content index, see {@link WorkspaceContentIndex}.
+     */
+    public double getContentFilterFalsePositiveRate() {
+        return contentFilterFalsePositiveRate;
+    }
+
+    /**
+     * Whether files routed to version controlled folders go to the chunk store, see
+     * {@link com.alphaindiamike.miiv.services.chunks.ChunkStore}.
+     */
+    public boolean isChunkVersions() {
+        return chunkVersions;
+    }
+
+    /**
+     * Whether files routed to version controlled folders are named after their document date, see
+     * {@link DocumentDater}.
+     */
+    public boolean isDateVersions() {
+        return dateVersions;
+    }
+
+    // Setters
+    public void setWorkers(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("At least one worker is required, got: " + workers);
+        }
+        this.workers = workers;
+    }
+
+    public void setWalkThreads(int walkThreads) {
+        this.walkThreads = requireThreads("walk", walkThreads);
+    }
+
+    public void setClassifyThreads(int classifyThreads) {
+        this.classifyThreads = requireThreads("classify", classifyThreads);
+    }
+
+    public void setHashThreads(int hashThreads) {
+        this.hashThreads = requireThreads("hash", hashThreads);
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive, got: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+
+    public void setDeleteDuplicates(boolean deleteDuplicates) {
+        this.deleteDuplicates = deleteDuplicates;
+    }
+
+    public void setIoMode(IoExecutorMode ioMode) {
+        this.ioMode = ioMode;
+    }
+
+    public void setIoPermits(int ioPermits) {
+        if (ioPermits < 1) {
+            throw new IllegalArgumentException("At least one I/O permit is required, got: " + ioPermits);
+        }
+        this.ioPermits = ioPermits;
+    }
+
+    public void setRateLimits(RateLimits rateLimits) {
+        this.rateLimits = rateLimits;
+    }
+
+    public void setScheduleMode(ScheduleMode scheduleMode) {
+        this.scheduleMode = scheduleMode;
+    }
+
+    public void setSmallFileThreshold(long smallFileThreshold) {
+        this.smallFileThreshold = smallFileThreshold;
+    }
+
+    public void setLargeFileThreshold(long largeFileThreshold) {
+        this.largeFileThreshold = largeFileThreshold;
+    }
+
+    public void setChunkSize(long chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive, got: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    public void setContentFilterFalsePositiveRate(double contentFilterFalsePositiveRate) {
+        if (!(contentFilterFalsePositiveRate > 0 && contentFilterFalsePositiveRate < 1)) {
+            throw new IllegalArgumentException("The false positive rate must lie between 0 and 1, got: "
+                    + contentFilterFalsePositiveRate);
+        }
+        this.contentFilterFalsePositiveRate = contentFilterFalsePositiveRate;
+    }
+
+    public void setChunkVersions(boolean chunkVersions) {
+        this.chunkVersions = chunkVersions;
+    }
+
+    public void setDateVersions(boolean dateVersions) {
+        this.dateVersions = dateVersions;
+    }
+
+    private static int requireThreads(String stage, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The " + stage + " stage needs at least one thread, got: " + threads);
+        }
+        return threads;
+    }
+}
@@ -0,0 +1,230 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Staged ingest: walk → classify → hash → write.
+ * <ul>
+ * <li>walk: a fork-join pool lists directories, journals the listings and emits every regular file;</li>
+ * <li>classify: picks the scheme folder of each file;</li>
+ * <li>hash: drops files whose content was already seen in this run (only with deduplication on);</li>
+ * <li>write: copies, links or moves the file into its folder.</li>
+ * </ul>
+ * Stages are connected by bounded queues and have their own thread budgets, so metadata-heavy
+ * stages never wait behind large transfers and a slow stage stalls its producers instead of
+ * buffering the whole source tree. Queue depths are sampled every second and logged, which shows
+ * the bottleneck of a run: the stage in front of the fullest queue.
+ * In {@link IoExecutorMode#VIRTUAL} the write stage dispatches each file to its own thread of a
+ * {@link BoundedIoExecutor} instead of draining its queue with a fixed worker pool.
+ * In {@link ScheduleMode#PHYSICAL} a single walker feeds an extra sweep stage, see {@link #submit(List)}.
+ */
+class IngestPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(IngestPipeline.class);
+    private static final long SAMPLE_MILLIS = 1000;
+    private static final int SAMPLES_PER_LOG = 10;
+    private static final int SWEEP_BATCH_SIZE = 256;
+
+    private final IngestOptions options;
+    private final PipelineStage<SourceFile, RoutedFile> classify;
+    private final PipelineStage<RoutedFile, RoutedFile> hash;
+    private final PipelineStage<RoutedFile, Void> write;
+    private final PipelineStage<List<SourceFile>, Void> sweep;
+    private final List<PipelineStage<?, ?>> stages = new ArrayList<>();
+    private final BoundedIoExecutor io;
+    private int samples;
+
+    IngestPipeline(IngestEngine engine, IngestOptions options) {
+        this.options = options;
+        int capacity = options.getQueueCapacity();
+        if (options.getIoMode() == IoExecutorMode.VIRTUAL) {
+            // A single dispatcher hands every file to its own thread, up to the I/O permits
+            io = new BoundedIoExecutor(options.getIoPermits());
+            write = new PipelineStage<>("write", 1, capacity, file -> {
+                dispatch(() -> engine.writeFile(file));
+                return null;
+            }, null);
+        } else {
+            io = null;
+            write = new PipelineStage<>("write", options.getWorkers(), capacity, file -> {
+                engine.writeFile(file);
+                return null;
+            }, null);
+        }
+        hash = options.isDeduplicate()
+                ? new PipelineStage<>("hash", options.getHashThreads(), capacity, engine::deduplicate, write)
+                : null;
+        classify = new PipelineStage<>("classify", options.getClassifyThreads(), capacity, engine::classify,
+                hash != null ? hash : write);
+        // A single sweeper reads the small files of the physical schedule one after the other
+        sweep = options.getScheduleMode() == ScheduleMode.PHYSICAL
+                ? new PipelineStage<>("sweep", 1, capacity, batch -> {
+                    engine.sweep(batch);
+                    return null;
+                }, null)
+                : null;
+        stages.add(classify);
+        if (sweep != null) {
+            stages.add(sweep);
+        }
+        if (hash != null) {
+            stages.add(hash);
+        }
+        stages.add(write);
+    }
+
+    /**
+     * Hands the listed files of one directory to the pipeline. Called by walk tasks; blocks while
+     * the receiving queue is full. In the physical schedule the files are sorted by inode, small
+     * ones go to the sweep stage in batches and large ones are streamed through the write stage.
+     */
+    void submit(List<SourceFile> files) throws InterruptedException {
+        if (sweep == null) {
+            for (SourceFile file : files) {
+                classify.put(file);
+            }
+            return;
+        }
+        List<SourceFile> ordered = new ArrayList<>(files);
+        ordered.sort(PhysicalOrder.BY_INODE);
+        List<SourceFile> batch = new ArrayList<>();
+        for (SourceFile file : ordered) {
+            if (file.size() > options.getSmallFileThreshold()) {
+                classify.put(file);
+                continue;
+            }
+            batch.add(file);
+            if (batch.size() == SWEEP_BATCH_SIZE) {
+                sweep.put(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            sweep.put(batch);
+        }
+    }
+
+    /**
+     * Hands files of a placement plan past the classify stage, to the hash stage with deduplication on
+     * and else to the write stage; in the physical schedule in inode order.
+     */
+    void submitRouted(List<RoutedFile> files) throws InterruptedException {
+        PipelineStage<RoutedFile, ?> target = hash != null ? hash : write;
+        List<RoutedFile> ordered = files;
+        if (sweep != null) {
+            ordered = new ArrayList<>(files);
+            ordered.sort(Comparator.comparing(RoutedFile::file, PhysicalOrder.BY_INODE));
+        }
+        for (RoutedFile file : ordered) {
+            target.put(file);
+        }
+    }
+
+    /**
+     * Runs the walk and waits until every stage has drained.
+     *
+     * @param walk The root walk task, listing the source or the journal of a resumed run.
+     * @return false if the run was stopped, see {@link #stop(long)}: items left in the queues were never
+     *         processed and are still planned in the journal.
+     * @throws InterruptedException if the run was interrupted; stages stop after their current item.
+     */
+    boolean run(RecursiveAction walk) throws InterruptedException {
+        stages.forEach(PipelineStage::start);
+        ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "miiv-pipeline-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        monitor.scheduleAtFixedRate(this::sampleQueues, SAMPLE_MILLIS, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+
+        // Parallel walkers would interleave directories on the device
+        int walkThreads = sweep != null ? 1 : options.getWalkThreads();
+        ForkJoinPool walkers = new ForkJoinPool(walkThreads);
+        try {
+            walkers.invoke(walk);
+            sampleQueues();
+            // Downstream stages are closed only after everything upstream has been handed over
+            for (PipelineStage<?, ?> stage : stages) {
+                stage.closeAndAwait();
+            }
+            if (io != null) {
+                io.awaitIdle();
+            }
+            return stages.stream().noneMatch(PipelineStage::isStopped);
+        } finally {
+            // After a failed walk the stages still drain what they hold, then stop
+            stages.forEach(PipelineStage::close);
+            walkers.shutdownNow();
+            monitor.shutdownNow();
+            if (io != null) {
+                io.close();
+            }
+        }
+    }
+
+    /**
+     * Stops a run in progress, e.g. on Ctrl-C: every stage stops after the item each thread has in
+     * hand and leaves its queue to the journal. Threads still busy at the end of the grace period are
+     * interrupted, so transfers stop at their next chunk.
+     *
+     * @param graceMillis How long the threads may take to finish their current item.
+     */
+    void stop(long graceMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + graceMillis;
+        stages.forEach(PipelineStage::stop);
+        for (PipelineStage<?, ?> stage : stages) {
+            stage.awaitStopped(deadline);
+        }
+        if (io != null) {
+            io.awaitIdle(deadline);
+        }
+    }
+
+    private void dispatch(Runnable write) {
+        try {
+            io.execute(write);
+        } catch (InterruptedException e) {
+            // The file stays planned in the journal; the dispatcher stops at its next poll
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Threads doing per-file I/O in the write stage: the workers, or the I/O permits in virtual mode.
+     */
+    int writeConcurrency() {
+        return io != null ? options.getIoPermits() : options.getWorkers();
+    }
+
+    private synchronized void sampleQueues() {
+        String depths = stages.stream()
+                .map(stage -> stage.getName() + "=" + stage.sampleDepth())
+                .collect(Collectors.joining(", "));
+        if (++samples % SAMPLES_PER_LOG == 0) {
+            logger.info("Pipeline queue depths: {}", depths);
+        } else {
+            logger.debug("Pipeline queue depths: {}", depths);
+        }
+    }
+
+    List<StageStatistics> statistics() {
+        return stages.stream().map(PipelineStage::statistics).collect(Collectors.toList());
+    }
+
+    /**
+     * Items lost to unexpected errors inside a stage.
+     */
+    long failures() {
+        return stages.stream().mapToLong(PipelineStage::failures).sum();
+    }
+}
@@ -0,0 +1,59 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Outcome of an ingest run. Files counted as in place were renamed (move) or hard-linked (link)
+ * on the same file store; they count towards files and bytes without any byte having been copied.
+ * Duplicates were left out because a file with the same content was already ingested by the run.
+ * Chunked files went to the chunk store; of their bytes, only chunkBytes were new and written.
+ */
+public record IngestReport(
+		IngestOperation operation,
+		long files,
+		long bytes,
+		long inPlace,
+		long duplicates,
+		long chunked,
+		long chunkBytes,
+		long failed,
+		int workers,
+		Duration elapsed,
+		List<StageStatistics> stages
+		) {
+
+    public double megabytesPerSecond() {
+        double seconds = Math.max(elapsed.toMillis(), 1) / 1000.0;
+        return bytes / (1024.0 * 1024.0) / seconds;
+    }
+
+    public double filesPerSecond() {
+        double seconds = Math.max(elapsed.toMillis(), 1) / 1000.0;
+        return files / seconds;
+    }
+
+    public String summary() {
+        String inPlaceNote = "";
+        if (inPlace > 0) {
+            inPlaceNote = String.format(", %d %s", inPlace,
+                    operation == IngestOperation.LINK ? "hard-linked" : "renamed in place");
+        }
+        if (chunked > 0) {
+            inPlaceNote += String.format(", %d stored as chunks writing %.1f MB", chunked, chunkBytes / (1024.0 * 1024.0));
+        }
+        String duplicatesNote = duplicates > 0 ? String.format(", %d duplicates skipped", duplicates) : "";
+        return String.format("%s %d files (%.1f MB%s) in %.1f s with %d workers (%.1f MB/s, %.0f files/s)%s, %d failed.",
+                operation.pastTense(), files, bytes / (1024.0 * 1024.0), inPlaceNote,
+                elapsed.toMillis() / 1000.0, workers, megabytesPerSecond(), filesPerSecond(), duplicatesNote, failed);
+    }
+
+    /**
+     * Average and peak queue depth of each stage, e.g. "classify 0/3 of 1024 (1 threads)".
+     */
+    public String stageSummary() {
+        return "Stage queues (average/peak): "
+                + stages.stream().map(StageStatistics::summary).collect(Collectors.joining(", "));
+    }
+}
@@ -0,0 +1,25 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+/**
+ * How the write stage runs its per-file I/O.
+ */
+public enum IoExecutorMode {
+    /** A fixed pool of workers platform threads, each blocking on its own file. */
+    PLATFORM,
+    /** One virtual thread per file, with a semaphore capping the files in flight. */
+    VIRTUAL;
+
+    /**
+     * Parses a mode name as given on the command line or in the settings.
+     *
+     * @throws IllegalArgumentException if the name is unknown.
+     */
+    public static IoExecutorMode parse(String name) {
+        for (IoExecutorMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown I/O executor: " + name + " (expected platform or virtual)");
+    }
+}
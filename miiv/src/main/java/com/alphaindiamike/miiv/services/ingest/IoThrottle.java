@@ -0,0 +1,75 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.io.InterruptedIOException;
+
+import com.alphaindiamike.miiv.privatelib.functions.FileTransferFunctionsLib.TransferThrottle;
+
+/**
+ * Shared I/O budget of the write stage: one token bucket for bytes, one for file operations.
+ * Every copied chunk takes its bytes, every written, renamed or linked file takes one operation.
+ * Limits can be replaced while the run is in progress.
+ */
+class IoThrottle implements TransferThrottle {
+    private static final long MAX_CHUNK = 1024L * 1024;
+    private static final long MIN_CHUNK = 64L * 1024;
+
+    private final TokenBucket bytes;
+    private final TokenBucket operations;
+    private volatile RateLimits limits;
+
+    IoThrottle(RateLimits limits) {
+        this.bytes = new TokenBucket(limits.bytesPerSecond());
+        this.operations = new TokenBucket(limits.filesPerSecond());
+        this.limits = limits;
+    }
+
+    /**
+     * Applies new limits to the running transfers.
+     *
+     * @return true if the limits changed.
+     */
+    boolean update(RateLimits newLimits) {
+        if (newLimits.equals(limits)) {
+            return false;
+        }
+        bytes.setRate(newLimits.bytesPerSecond());
+        operations.setRate(newLimits.filesPerSecond());
+        limits = newLimits;
+        return true;
+    }
+
+    RateLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Chunks of a tenth of the byte rate, between 64 KB and 1 MB, keep each wait short.
+     */
+    @Override
+    public long chunkSize() {
+        long rate = limits.bytesPerSecond();
+        return rate == 0 ? Long.MAX_VALUE : Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, rate / 10));
+    }
+
+    @Override
+    public void acquire(long count) throws InterruptedIOException {
+        try {
+            bytes.acquire(count);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the byte budget");
+        }
+    }
+
+    /**
+     * Takes one file operation from the budget.
+     */
+    void acquireOperation() throws InterruptedIOException {
+        try {
+            operations.acquire(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the operation budget");
+        }
+    }
+}
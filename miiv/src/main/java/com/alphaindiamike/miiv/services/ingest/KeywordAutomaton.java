@@ -0,0 +1,156 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton finding every occurrence of a set of keywords in one pass over a text, in
+ * time linear in the text whatever the number of keywords. Keywords match whole words only and
+ * ignore case; any character which is not a letter or digit separates words, so "rental contract"
+ * is found in "Rental_Contract-2023.pdf". Immutable once built and safe for use by several threads.
+ */
+public final class KeywordAutomaton {
+
+    /**
+     * Receives the matches of a scan.
+     */
+    public interface MatchConsumer {
+        /**
+         * @param keyword The index of the keyword in the list the automaton was built from.
+         * @param start   The index of its first character in the text.
+         * @param end     The index after its last character.
+         */
+        void match(int keyword, int start, int end);
+    }
+
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] fail;
+    /** The longest keyword ending at a state, or -1. */
+    private final int[] output;
+    /** The nearest state on the fail chain with an output, or -1. */
+    private final int[] nextOutput;
+    private final int[] lengths;
+
+    /**
+     * Builds the automaton. Keywords are normalized like the texts scanned; blank keywords never match.
+     */
+    public KeywordAutomaton(List<String> keywords) {
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        outputs.add(-1);
+        lengths = new int[keywords.size()];
+        for (int keyword = 0; keyword < keywords.size(); keyword++) {
+            String normalized = normalize(keywords.get(keyword)).trim();
+            lengths[keyword] = normalized.length();
+            if (normalized.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < normalized.length(); i++) {
+                Integer next = trie.get(state).get(normalized.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    outputs.add(-1);
+                    trie.get(state).put(normalized.charAt(i), next);
+                }
+                state = next;
+            }
+            if (outputs.get(state) == -1) {
+                outputs.set(state, keyword);
+            }
+        }
+
+        int states = trie.size();
+        labels = new char[states][];
+        targets = new int[states][];
+        output = new int[states];
+        for (int state = 0; state < states; state++) {
+            TreeMap<Character, Integer> edges = trie.get(state);
+            labels[state] = new char[edges.size()];
+            targets[state] = new int[edges.size()];
+            int i = 0;
+            for (var edge : edges.entrySet()) {
+                labels[state][i] = edge.getKey();
+                targets[state][i++] = edge.getValue();
+            }
+            output[state] = outputs.get(state);
+        }
+
+        // Breadth first, so the fail state of every state is final before its children are visited
+        fail = new int[states];
+        nextOutput = new int[states];
+        nextOutput[0] = -1;
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) {
+            fail[child] = 0;
+            nextOutput[child] = -1;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            for (int i = 0; i < labels[state].length; i++) {
+                int child = targets[state][i];
+                int fallback = fail[state];
+                while (fallback != 0 && step(fallback, labels[state][i]) < 0) {
+                    fallback = fail[fallback];
+                }
+                int next = step(fallback, labels[state][i]);
+                fail[child] = next >= 0 && next != child ? next : 0;
+                nextOutput[child] = output[fail[child]] >= 0 ? fail[child] : nextOutput[fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    private int step(int state, char c) {
+        int i = Arrays.binarySearch(labels[state], c);
+        return i >= 0 ? targets[state][i] : -1;
+    }
+
+    /**
+     * Lower case letters and digits; everything else becomes a space.
+     */
+    private static char normalize(char c) {
+        return Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : ' ';
+    }
+
+    private static String normalize(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = normalize(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Reports every whole-word occurrence of a keyword in the text, in the order they end.
+     */
+    public void scan(CharSequence text, MatchConsumer consumer) {
+        int state = 0;
+        for (int position = 0; position < text.length(); position++) {
+            char c = normalize(text.charAt(position));
+            int next = step(state, c);
+            while (next < 0 && state != 0) {
+                state = fail[state];
+                next = step(state, c);
+            }
+            state = next < 0 ? 0 : next;
+            for (int found = output[state] >= 0 ? state : nextOutput[state]; found >= 0; found = nextOutput[found]) {
+                int keyword = output[found];
+                int end = position + 1;
+                int start = end - lengths[keyword];
+                if ((start == 0 || normalize(text.charAt(start - 1)) == ' ')
+                        && (end == text.length() || normalize(text.charAt(end)) == ' ')) {
+                    consumer.match(keyword, start, end);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alphaindiamike.miiv.privatelib.functions.DatabaseFunctionsLib;
+
+/**
+ * Write-behind journal of an ingest run in the workspace database.
+ * Every source file gets one row that moves from PLANNED to IN_FLIGHT to DONE (or FAILED),
+ * or straight to SKIPPED when its content duplicates another file of the run;
+ * every source directory gets one row that is flagged once its listing has been journaled.
+ * Updates are queued by the workers and committed by a single writer thread in batched
+ * transactions. The rows produced by one directory listing are always committed together,
+ * so a directory flagged as walked has all its entries in the journal and never needs
+ * to be listed again on resume.
+ */
+public class OperationJournal implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(OperationJournal.class);
+
+    static final int PLANNED = 0;
+    static final int IN_FLIGHT = 1;
+    static final int DONE = 2;
+    static final int FAILED = 3;
+    static final int SKIPPED = 4;
+
+    private static final int QUEUE_CAPACITY = 100_000;
+    private static final int MAX_UNITS_PER_TRANSACTION = 5_000;
+    private static final long FLUSH_INTERVAL_MILLIS = 250;
+
+    private final Connection connection;
+    private final long runId;
+    private final BlockingQueue<JournalUnit> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private volatile boolean closed;
+    private volatile boolean broken;
+
+    // Only used by the writer thread, and by readers while holding the connection lock
+    private PreparedStatement insertDirectory;
+    private PreparedStatement insertFile;
+    private PreparedStatement markDirectoryWalked;
+    private PreparedStatement updateFile;
+
+    /**
+     * A run recorded in the journal.
+     */
+    public record JournalRun(
+    		long id,
+    		IngestOperation operation,
+    		Path source
+    		) {
+    }
+
+    /**
+     * A file row still to be executed on resume, with the target it was given if it was in flight.
+     */
+    record PendingFile(long id, Path source, Path target) {
+    }
+
+    /**
+     * A group of journal statements which is always committed in a single transaction.
+     */
+    private interface JournalUnit {
+        void apply(OperationJournal journal) throws SQLException;
+    }
+
+    private OperationJournal(Connection connection, long runId) throws SQLException {
+        this.connection = connection;
+        this.runId = runId;
+        prepareStatements();
+        this.writer = new Thread(this::writeLoop, "miiv-journal-" + runId);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Records a new run and starts its journal.
+     *
+     * @param workspace The workspace directory.
+     * @param operation The operation of the run.
+     * @param source    The source directory of the run.
+     * @return The journal of the new run.
+     * @throws SQLException if the workspace database cannot be opened or written.
+     */
+    public static OperationJournal start(Path workspace, IngestOperation operation, Path source) throws SQLException {
+        Connection connection = DatabaseFunctionsLib.openWorkspaceDatabase(workspace);
+        try {
+            initializeSchema(connection);
+            long runId;
+            try (PreparedStatement insertRun = connection.prepareStatement(
+                    "INSERT INTO journal_runs (operation, source, started) VALUES (?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                insertRun.setString(1, operation.name());
+                insertRun.setString(2, source.toString());
+                insertRun.setLong(3, System.currentTimeMillis());
+                insertRun.executeUpdate();
+                try (ResultSet keys = insertRun.getGeneratedKeys()) {
+                    keys.next();
+                    runId = keys.getLong(1);
+                }
+            }
+            try (PreparedStatement insertRoot = connection.prepareStatement(
+                    "INSERT INTO journal_dirs (run_id, path, walked) VALUES (?, ?, 0)")) {
+                insertRoot.setLong(1, runId);
+                insertRoot.setString(2, source.toString());
+                insertRoot.executeUpdate();
+            }
+            return new OperationJournal(connection, runId);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reopens the journal of an unfinished run so it can be resumed.
+     *
+     * @param workspace The workspace directory.
+     * @param run       The run to resume, see {@link #findUnfinishedRun(Path, IngestOperation)}.
+     * @return The journal of the run.
+     * @throws SQLException if the workspace database cannot be opened.
+     */
+    public static OperationJournal reopen(Path workspace, JournalRun run) throws SQLException {
+        Connection connection = DatabaseFunctionsLib.openWorkspaceDatabase(workspace);
+        try {
+            initializeSchema(connection);
+            return new OperationJournal(connection, run.id());
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Finds the most recent unfinished run of the operation in the workspace.
+     *
+     * @param workspace The workspace directory.
+     * @param operation The operation to look for.
+     * @return The run, or empty when every run of the operation completed.
+     * @throws SQLException if the workspace database cannot be read.
+     */
+    public static Optional<JournalRun> findUnfinishedRun(Path workspace, IngestOperation operation) throws SQLException {
+        try (Connection connection = DatabaseFunctionsLib.openWorkspaceDatabase(workspace)) {
+            initializeSchema(connection);
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT id, source FROM journal_runs WHERE operation = ? AND finished IS NULL ORDER BY id DESC LIMIT 1")) {
+                select.setString(1, operation.name());
+                try (ResultSet rs = select.executeQuery()) {
+                    if (rs.next()) {
+                        return Optional.of(new JournalRun(rs.getLong("id"), operation, Paths.get(rs.getString("source"))));
+                    }
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    static void initializeSchema(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS journal_runs (id INTEGER PRIMARY KEY, operation TEXT NOT NULL, "
+                    + "source TEXT NOT NULL, started INTEGER NOT NULL, finished INTEGER)");
+            statement.execute("CREATE TABLE IF NOT EXISTS journal_dirs (run_id INTEGER NOT NULL, path TEXT NOT NULL, "
+                    + "walked INTEGER NOT NULL, PRIMARY KEY (run_id, path))");
+            statement.execute("CREATE TABLE IF NOT EXISTS journal_files (id INTEGER PRIMARY KEY, run_id INTEGER NOT NULL, "
+                    + "source TEXT NOT NULL, target TEXT, size INTEGER NOT NULL, state INTEGER NOT NULL, "
+                    + "UNIQUE (run_id, source))");
+            statement.execute("CREATE INDEX IF NOT EXISTS journal_files_state ON journal_files (run_id, state, id)");
+        }
+    }
+
+    private void prepareStatements() throws SQLException {
+        insertDirectory = connection.prepareStatement(
+                "INSERT OR IGNORE INTO journal_dirs (run_id, path, walked) VALUES (?, ?, 0)");
+        insertFile = connection.prepareStatement(
+                "INSERT OR IGNORE INTO journal_files (run_id, source, size, state) VALUES (?, ?, ?, " + PLANNED + ")");
+        markDirectoryWalked = connection.prepareStatement(
+                "UPDATE journal_dirs SET walked = 1 WHERE run_id = ? AND path = ?");
+        updateFile = connection.prepareStatement(
+                "UPDATE journal_files SET state = ?, target = COALESCE(?, target) WHERE run_id = ? AND source = ?");
+    }
+
+    public long getRunId() {
+        return runId;
+    }
+
+    /**
+     * Journals the complete listing of a directory: its files as planned, its subdirectories as not yet walked,
+     * and the directory itself as walked.
+     */
+    void directoryListed(Path directory, List<SourceFile> files, List<Path> subdirectories) {
+        enqueue(journal -> {
+            for (Path subdirectory : subdirectories) {
+                journal.insertDirectory.setLong(1, runId);
+                journal.insertDirectory.setString(2, subdirectory.toString());
+                journal.insertDirectory.addBatch();
+            }
+            for (SourceFile file : files) {
+                journal.insertFile.setLong(1, runId);
+                journal.insertFile.setString(2, file.path().toString());
+                journal.insertFile.setLong(3, file.size());
+                journal.insertFile.addBatch();
+            }
+            journal.markDirectoryWalked.setLong(1, runId);
+            journal.markDirectoryWalked.setString(2, directory.toString());
+            journal.markDirectoryWalked.addBatch();
+        });
+    }
+
+    /**
+     * Journals files taken from a placement plan as planned; their directories are never listed.
+     */
+    void filesPlanned(List<SourceFile> files) {
+        enqueue(journal -> {
+            for (SourceFile file : files) {
+                journal.insertFile.setLong(1, runId);
+                journal.insertFile.setString(2, file.path().toString());
+                journal.insertFile.setLong(3, file.size());
+                journal.insertFile.addBatch();
+            }
+        });
+    }
+
+    void fileStarted(Path source, Path target) {
+        updateFileState(source, target, IN_FLIGHT);
+    }
+
+    void fileDone(Path source, Path target) {
+        updateFileState(source, target, DONE);
+    }
+
+    void fileFailed(Path source) {
+        updateFileState(source, null, FAILED);
+    }
+
+    void fileSkipped(Path source) {
+        updateFileState(source, null, SKIPPED);
+    }
+
+    private void updateFileState(Path source, Path target, int state) {
+        enqueue(journal -> {
+            journal.updateFile.setInt(1, state);
+            journal.updateFile.setString(2, target == null ? null : target.toString());
+            journal.updateFile.setLong(3, runId);
+            journal.updateFile.setString(4, source.toString());
+            journal.updateFile.addBatch();
+        });
+    }
+
+    private void enqueue(JournalUnit unit) {
+        if (closed || broken) {
+            return;
+        }
+        try {
+            queue.put(unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the next page of files that were planned or in flight when the run stopped.
+     *
+     * @param afterId Only rows with a larger id are returned; 0 for the first page.
+     * @param limit   Maximum number of rows.
+     * @return The rows, ordered by id.
+     * @throws SQLException if the journal cannot be read.
+     */
+    List<PendingFile> pendingFiles(long afterId, int limit) throws SQLException {
+        List<PendingFile> pending = new ArrayList<>();
+        synchronized (connection) {
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT id, source, target, state FROM journal_files WHERE run_id = ? AND state IN (" + PLANNED + ", " + IN_FLIGHT
+                    + ") AND id > ? ORDER BY id LIMIT ?")) {
+                select.setLong(1, runId);
+                select.setLong(2, afterId);
+                select.setInt(3, limit);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        String target = rs.getInt("state") == IN_FLIGHT ? rs.getString("target") : null;
+                        pending.add(new PendingFile(rs.getLong("id"), Paths.get(rs.getString("source")),
+                                target == null ? null : Paths.get(target)));
+                    }
+                }
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Lists the directories whose listing was never journaled.
+     *
+     * @return The directories to walk on resume.
+     * @throws SQLException if the journal cannot be read.
+     */
+    List<Path> unwalkedDirectories() throws SQLException {
+        List<Path> directories = new ArrayList<>();
+        synchronized (connection) {
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT path FROM journal_dirs WHERE run_id = ? AND walked = 0")) {
+                select.setLong(1, runId);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        directories.add(Paths.get(rs.getString("path")));
+                    }
+                }
+            }
+        }
+        return directories;
+    }
+
+    /**
+     * Flushes all queued updates and marks the run as finished, so it is no longer offered for resume.
+     * A run with files still planned or in flight is left unfinished, so --resume picks them up.
+     *
+     * @return true if the run was marked as finished.
+     */
+    public boolean finish() {
+        close();
+        synchronized (connection) {
+            try (PreparedStatement count = connection.prepareStatement(
+                    "SELECT COUNT(*) FROM journal_files WHERE run_id = ? AND state IN (" + PLANNED + ", " + IN_FLIGHT + ")");
+                    PreparedStatement update = connection.prepareStatement(
+                    "UPDATE journal_runs SET finished = ? WHERE id = ?")) {
+                count.setLong(1, runId);
+                long pending;
+                try (ResultSet rs = count.executeQuery()) {
+                    pending = rs.getLong(1);
+                }
+                if (pending > 0) {
+                    logger.warn("Run {} has {} files left planned or in flight, resume it with --resume.", runId, pending);
+                    return false;
+                }
+                update.setLong(1, System.currentTimeMillis());
+                update.setLong(2, runId);
+                update.executeUpdate();
+                return true;
+            } catch (SQLException e) {
+                logger.error("Failed to mark run {} as finished: {}", runId, e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Stops accepting updates and waits until the queued ones are committed.
+     * Safe to call several times, also from a shutdown hook.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Releases the database connection. Must follow {@link #close()} or {@link #finish()}.
+     */
+    public void release() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.warn("Failed to close the journal database: {}", e.getMessage());
+        }
+    }
+
+    private void writeLoop() {
+        List<JournalUnit> batch = new ArrayList<>();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                JournalUnit first = queue.poll(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_UNITS_PER_TRANSACTION - 1);
+                commit(batch);
+            } catch (InterruptedException e) {
+                // Only close() ends the writer; keep draining
+            } catch (SQLException e) {
+                logger.error("Journal of run {} could not be written, resume will not be possible: {}", runId, e.getMessage());
+                broken = true;
+                queue.clear();
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<JournalUnit> batch) throws SQLException {
+        synchronized (connection) {
+            connection.setAutoCommit(false);
+            try {
+                for (JournalUnit unit : batch) {
+                    unit.apply(this);
+                }
+                // Inserts first, so updates of rows planned in this transaction find them
+                insertDirectory.executeBatch();
+                insertFile.executeBatch();
+                markDirectoryWalked.executeBatch();
+                updateFile.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                insertDirectory.clearBatch();
+                insertFile.clearBatch();
+                markDirectoryWalked.clearBatch();
+                updateFile.clearBatch();
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.util.Comparator;
+
+/**
+ * Orders files by their position on the device as far as the file system exposes it: the inode
+ * number carried in {@link java.nio.file.attribute.BasicFileAttributes#fileKey()}. On ext4, XFS and
+ * similar file systems inodes allocated together sit close together, and so, mostly, do their
+ * data blocks. File systems without file keys keep the listing order.
+ */
+final class PhysicalOrder {
+    private static final String INODE_MARKER = "ino=";
+
+    static final Comparator<SourceFile> BY_INODE = Comparator.comparingLong(PhysicalOrder::inodeOf);
+
+    private PhysicalOrder() {
+    }
+
+    /**
+     * Extracts the inode from a Unix file key, rendered as "(dev=803,ino=1234)".
+     *
+     * @return The inode number, or 0 if the file system exposes none.
+     */
+    static long inodeOf(SourceFile file) {
+        Object fileKey = file.attributes().fileKey();
+        if (fileKey == null) {
+            return 0;
+        }
+        String key = fileKey.toString();
+        int start = key.indexOf(INODE_MARKER);
+        if (start < 0) {
+            return 0;
+        }
+        start += INODE_MARKER.length();
+        long inode = 0;
+        for (int i = start; i < key.length() && Character.isDigit(key.charAt(i)); i++) {
+            inode = inode * 10 + (key.charAt(i) - '0');
+        }
+        return inode;
+    }
+}
@@ -0,0 +1,172 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One stage of the ingest pipeline: a bounded input queue drained by a fixed number of threads.
+ * Each item is handed to the stage function and its result, if any, is put into the next stage.
+ * A full queue blocks the producer, so a slow stage throttles everything upstream of it instead
+ * of letting work pile up on the heap.
+ *
+ * @param <I> The items this stage consumes.
+ * @param <O> The items this stage hands to the next one.
+ */
+class PipelineStage<I, O> {
+    private static final Logger logger = LoggerFactory.getLogger(PipelineStage.class);
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * Work of a stage. Returning null ends the item in this stage.
+     */
+    interface StageFunction<I, O> {
+        O apply(I item);
+    }
+
+    private final String name;
+    private final int threads;
+    private final BlockingQueue<I> queue;
+    private final StageFunction<I, O> function;
+    private final PipelineStage<O, ?> next;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean inputClosed;
+    private volatile boolean stopped;
+    private final LongAdder failures = new LongAdder();
+
+    private final AtomicLong depthSamples = new AtomicLong();
+    private final AtomicLong depthTotal = new AtomicLong();
+    private final AtomicLong depthPeak = new AtomicLong();
+
+    PipelineStage(String name, int threads, int capacity, StageFunction<I, O> function, PipelineStage<O, ?> next) {
+        this.name = name;
+        this.threads = threads;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.function = function;
+        this.next = next;
+    }
+
+    void start() {
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::drain, "miiv-" + name + "-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Hands an item to this stage, waiting while its queue is full. Once the stage is stopped the item
+     * is dropped instead, so producers never wait for a queue nobody drains.
+     */
+    void put(I item) throws InterruptedException {
+        while (!stopped && !queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            // Full: wait for room or for a stop
+        }
+    }
+
+    /**
+     * Signals that no more items will arrive and waits until the queue is drained and every
+     * thread has finished its last item. Items already handed to the next stage are not awaited.
+     */
+    void closeAndAwait() throws InterruptedException {
+        close();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    /**
+     * Signals that no more items will arrive; threads stop once the queue is empty.
+     */
+    void close() {
+        inputClosed = true;
+    }
+
+    /**
+     * Stops the threads after the item each has in hand, leaving queued items unprocessed.
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Waits until every thread has stopped, interrupting the ones still running at the deadline.
+     */
+    void awaitStopped(long deadlineMillis) throws InterruptedException {
+        for (Thread worker : workers) {
+            worker.join(Math.max(1, deadlineMillis - System.currentTimeMillis()));
+            if (worker.isAlive()) {
+                worker.interrupt();
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            while (!stopped && (!inputClosed || !queue.isEmpty())) {
+                I item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (item == null) {
+                    continue;
+                }
+                O result = apply(item);
+                if (result != null && next != null) {
+                    next.put(result);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Stage {} was interrupted with {} items queued.", name, queue.size());
+        }
+    }
+
+    private O apply(I item) {
+        try {
+            return function.apply(item);
+        } catch (RuntimeException e) {
+            logger.error("Stage {} failed on {}: {}", name, item, e.toString());
+            failures.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Records the current queue depth; called periodically by the pipeline monitor.
+     */
+    int sampleDepth() {
+        int depth = queue.size();
+        depthSamples.incrementAndGet();
+        depthTotal.addAndGet(depth);
+        depthPeak.accumulateAndGet(depth, Math::max);
+        return depth;
+    }
+
+    /**
+     * Items whose stage function threw; failures the function reports itself are not counted here.
+     */
+    long failures() {
+        return failures.sum();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    StageStatistics statistics() {
+        long samples = depthSamples.get();
+        double averageDepth = samples == 0 ? 0 : (double) depthTotal.get() / samples;
+        return new StageStatistics(name, threads, queue.size() + queue.remainingCapacity(), averageDepth,
+                depthPeak.get());
+    }
+}
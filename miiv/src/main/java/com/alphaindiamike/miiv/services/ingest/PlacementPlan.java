@@ -0,0 +1,208 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The plan file written by miiv plan and executed by miiv copy --plan: a gzip compressed text file
+ * with a header naming the source and the workspace, followed by one tab separated row per source file:
+ * action, source, size, modification time (epoch millis), folder, target name and duplicate.
+ * Sources are relative to the source directory and folders relative to the workspace; a duplicate is
+ * prefixed s: for a source file or w: for a workspace file. Tabs, line breaks and backslashes in
+ * names are escaped with a backslash.
+ */
+public final class PlacementPlan {
+    private static final String MAGIC = "#miiv-plan 1";
+    private static final String SOURCE_HEADER = "#source\t";
+    private static final String WORKSPACE_HEADER = "#workspace\t";
+    private static final String CREATED_HEADER = "#created\t";
+    private static final String SOURCE_PREFIX = "s:";
+    private static final String WORKSPACE_PREFIX = "w:";
+
+    private PlacementPlan() {
+    }
+
+    /**
+     * Writes a plan file, replacing an existing one.
+     *
+     * @param file      The plan file.
+     * @param source    The source directory the entries were planned from.
+     * @param workspace The workspace directory the entries were planned against.
+     * @param entries   The entries, with absolute paths.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(Path file, Path source, Path workspace, List<PlanEntry> entries) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(file)), StandardCharsets.UTF_8))) {
+            writer.write(MAGIC + "\n");
+            writer.write(SOURCE_HEADER + escape(source.toString()) + "\n");
+            writer.write(WORKSPACE_HEADER + escape(workspace.toString()) + "\n");
+            writer.write(CREATED_HEADER + Instant.now() + "\n");
+            StringBuilder row = new StringBuilder();
+            for (PlanEntry entry : entries) {
+                row.setLength(0);
+                row.append(entry.action().name()).append('\t')
+                        .append(escape(source.relativize(entry.source()).toString())).append('\t')
+                        .append(entry.size()).append('\t')
+                        .append(entry.modified()).append('\t')
+                        .append(entry.folder() == null ? "" : escape(workspace.relativize(entry.folder()).toString()))
+                        .append('\t')
+                        .append(entry.targetName() == null ? "" : escape(entry.targetName())).append('\t');
+                Path duplicate = entry.duplicateOf();
+                if (duplicate != null) {
+                    row.append(duplicate.startsWith(workspace)
+                            ? WORKSPACE_PREFIX + escape(workspace.relativize(duplicate).toString())
+                            : SOURCE_PREFIX + escape(source.relativize(duplicate).toString()));
+                }
+                writer.write(row.append('\n').toString());
+            }
+        }
+    }
+
+    /**
+     * Opens a plan file for reading; entries are read in chunks with {@link Reader#next(int)}.
+     *
+     * @throws IOException if the file cannot be read or is not a plan file.
+     */
+    public static Reader open(Path file) throws IOException {
+        return new Reader(file);
+    }
+
+    /**
+     * Sequential reader of a plan file, resolving its entries to absolute paths.
+     */
+    public static final class Reader implements Closeable {
+        private final Path file;
+        private final BufferedReader reader;
+        private final Path source;
+        private final Path workspace;
+        private int line;
+
+        private Reader(Path file) throws IOException {
+            this.file = file;
+            this.reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8));
+            try {
+                if (!MAGIC.equals(readLine())) {
+                    throw new IOException(file + " is not a miiv plan file");
+                }
+                this.source = Paths.get(header(SOURCE_HEADER));
+                this.workspace = Paths.get(header(WORKSPACE_HEADER));
+                header(CREATED_HEADER);
+            } catch (IOException | RuntimeException e) {
+                reader.close();
+                throw e;
+            }
+        }
+
+        public Path getSource() {
+            return source;
+        }
+
+        public Path getWorkspace() {
+            return workspace;
+        }
+
+        /**
+         * Reads up to max entries.
+         *
+         * @return The entries, empty at the end of the plan.
+         * @throws IOException if the file cannot be read or holds a malformed row.
+         */
+        public List<PlanEntry> next(int max) throws IOException {
+            List<PlanEntry> entries = new ArrayList<>(Math.min(max, 4096));
+            String row;
+            while (entries.size() < max && (row = readLine()) != null) {
+                if (!row.isEmpty()) {
+                    entries.add(parse(row));
+                }
+            }
+            return entries;
+        }
+
+        private PlanEntry parse(String row) throws IOException {
+            String[] fields = row.split("\t", -1);
+            if (fields.length != 7) {
+                throw malformed();
+            }
+            try {
+                Path folder = fields[4].isEmpty() ? null : workspace.resolve(unescape(fields[4]));
+                String targetName = fields[5].isEmpty() ? null : unescape(fields[5]);
+                Path duplicate = null;
+                if (fields[6].startsWith(WORKSPACE_PREFIX)) {
+                    duplicate = workspace.resolve(unescape(fields[6].substring(WORKSPACE_PREFIX.length())));
+                } else if (fields[6].startsWith(SOURCE_PREFIX)) {
+                    duplicate = source.resolve(unescape(fields[6].substring(SOURCE_PREFIX.length())));
+                }
+                return new PlanEntry(PlanAction.valueOf(fields[0]), source.resolve(unescape(fields[1])),
+                        Long.parseLong(fields[2]), Long.parseLong(fields[3]), folder, targetName, duplicate);
+            } catch (IllegalArgumentException e) {
+                throw malformed();
+            }
+        }
+
+        private String header(String prefix) throws IOException {
+            String row = readLine();
+            if (row == null || !row.startsWith(prefix)) {
+                throw malformed();
+            }
+            return unescape(row.substring(prefix.length()));
+        }
+
+        private String readLine() throws IOException {
+            line++;
+            return reader.readLine();
+        }
+
+        private IOException malformed() {
+            return new IOException("Malformed plan file " + file + " at line " + line);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    static String escape(String value) {
+        if (value.indexOf('\\') < 0 && value.indexOf('\t') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                unescaped.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+}
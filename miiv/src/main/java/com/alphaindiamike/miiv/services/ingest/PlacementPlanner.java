@@ -0,0 +1,224 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Computes the placement of every source file without touching the workspace: the scheme folder,
+ * the file name it gets there and whether it presumably duplicates a file already in the folder or
+ * an earlier source file. Only metadata is read, and the first bytes of files whose type is sniffed,
+ * see {@link SchemeRouter#route(FileIdentity, FileTypeDetector)}. The source is walked and routed by a fork-join pool;
+ * name conflicts are then resolved per folder, folders in parallel, listing each workspace folder once.
+ * Source files are assigned names in path order, so planning the same trees twice gives the same plan.
+ */
+public class PlacementPlanner {
+    private static final Logger logger = LoggerFactory.getLogger(PlacementPlanner.class);
+
+    private final SchemeRouter router;
+    private final FileTypeDetector fileTypes;
+    private final Path workspace;
+    private final int walkThreads;
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * A routed source file waiting for its name.
+     */
+    private record Placement(Path source, long size, long modified, Path folder) {
+        String name() {
+            return source.getFileName().toString();
+        }
+    }
+
+    /**
+     * A workspace file or planned target, kept by name to detect conflicts and duplicates.
+     */
+    private record Occupant(long size, long modified, Path path) {
+        boolean matches(Placement placement) {
+            return size == placement.size() && modified == placement.modified();
+        }
+    }
+
+    public PlacementPlanner(SchemeRouter router, FileTypeDetector fileTypes, Path workspace, int walkThreads) {
+        this.router = router;
+        this.fileTypes = fileTypes;
+        this.workspace = workspace;
+        this.walkThreads = walkThreads;
+    }
+
+    /**
+     * Plans the placement of every regular file below the source.
+     *
+     * @param source The source directory.
+     * @return The entries, ordered by source path.
+     */
+    public List<PlanEntry> plan(Path source) {
+        Queue<Placement> routed = new ConcurrentLinkedQueue<>();
+        Queue<PlanEntry> unrouted = new ConcurrentLinkedQueue<>();
+        ForkJoinPool walkers = new ForkJoinPool(walkThreads);
+        try {
+            walkers.invoke(new PlanWalkTask(source, routed, unrouted));
+            Map<Path, List<Placement>> byFolder = routed.stream().collect(Collectors.groupingBy(Placement::folder));
+            List<PlanEntry> entries = walkers.submit(() -> byFolder.entrySet().parallelStream()
+                    .flatMap(folder -> placeFolder(folder.getKey(), folder.getValue()).stream())
+                    .collect(Collectors.toCollection(ArrayList::new))).join();
+            entries.addAll(unrouted);
+            entries.sort(Comparator.comparing(PlanEntry::source));
+            return entries;
+        } finally {
+            walkers.shutdownNow();
+        }
+    }
+
+    /**
+     * Directories and files that could not be read while planning; they are missing from the plan.
+     */
+    public long failures() {
+        return failed.sum();
+    }
+
+    private List<PlanEntry> placeFolder(Path folder, List<Placement> placements) {
+        placements.sort(Comparator.comparing(Placement::source));
+        Map<String, Occupant> occupants = listFolder(folder);
+        Map<String, Occupant> firstSources = new HashMap<>();
+        List<PlanEntry> entries = new ArrayList<>(placements.size());
+        for (Placement placement : placements) {
+            String name = placement.name();
+            Occupant original = occupant(folder, occupants, name);
+            if (original == null || !original.matches(placement)) {
+                original = firstSources.get(name);
+            }
+            if (original != null && original.matches(placement)) {
+                entries.add(new PlanEntry(PlanAction.DUPLICATE, placement.source(), placement.size(),
+                        placement.modified(), folder, null, original.path()));
+                continue;
+            }
+            String target = name;
+            int dot = name.lastIndexOf('.');
+            String stem = dot > 0 ? name.substring(0, dot) : name;
+            String extension = dot > 0 ? name.substring(dot) : "";
+            for (int n = 1; occupants.containsKey(target); n++) {
+                target = stem + " (" + n + ")" + extension;
+            }
+            Occupant occupant = new Occupant(placement.size(), placement.modified(), placement.source());
+            occupants.put(target, occupant);
+            firstSources.putIfAbsent(name, occupant);
+            entries.add(new PlanEntry(target.equals(name) ? PlanAction.PLACE : PlanAction.RENAME, placement.source(),
+                    placement.size(), placement.modified(), folder, target, null));
+        }
+        return entries;
+    }
+
+    /**
+     * Names in the workspace folder, mapped to null; attributes are only read for names a source file also has.
+     */
+    private Map<String, Occupant> listFolder(Path folder) {
+        Map<String, Occupant> occupants = new HashMap<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+            for (Path entry : entries) {
+                occupants.put(entry.getFileName().toString(), null);
+            }
+        } catch (NoSuchFileException e) {
+            // Created on execution
+        } catch (IOException e) {
+            logger.warn("Failed to list workspace folder {} due to {}, conflicts there are resolved on execution.",
+                    folder, e.getMessage());
+        }
+        return occupants;
+    }
+
+    /**
+     * The occupant of a name; workspace files are stat'ed on their first lookup.
+     */
+    private static Occupant occupant(Path folder, Map<String, Occupant> occupants, String name) {
+        Occupant occupant = occupants.get(name);
+        if (occupant != null || !occupants.containsKey(name)) {
+            return occupant;
+        }
+        Path path = folder.resolve(name);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            // Directories and links never match a source file
+            occupant = new Occupant(attributes.isRegularFile() ? attributes.size() : -1,
+                    attributes.lastModifiedTime().toMillis(), path);
+        } catch (IOException e) {
+            occupant = new Occupant(-1, 0, path);
+        }
+        occupants.put(name, occupant);
+        return occupant;
+    }
+
+    /**
+     * Lists one source directory, routes its files and forks a task per subdirectory.
+     */
+    private final class PlanWalkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Path directory;
+        private final transient Queue<Placement> routed;
+        private final transient Queue<PlanEntry> unrouted;
+
+        PlanWalkTask(Path directory, Queue<Placement> routed, Queue<PlanEntry> unrouted) {
+            this.directory = directory;
+            this.routed = routed;
+            this.unrouted = unrouted;
+        }
+
+        @Override
+        protected void compute() {
+            List<PlanWalkTask> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        logger.error("Failed to read attributes of {} due to {}", entry, e.getMessage());
+                        failed.increment();
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        if (!entry.startsWith(workspace)) {
+                            subtasks.add(new PlanWalkTask(entry, routed, unrouted));
+                        }
+                    } else if (attributes.isRegularFile()) {
+                        route(entry, attributes);
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Failed to list directory: {} due to {}", directory, e.getMessage());
+                failed.increment();
+            }
+            invokeAll(subtasks);
+        }
+
+        private void route(Path file, BasicFileAttributes attributes) {
+            long modified = attributes.lastModifiedTime().toMillis();
+            Path folder = router.route(FileIdentity.of(file, attributes), fileTypes);
+            if (folder == null) {
+                unrouted.add(new PlanEntry(PlanAction.UNROUTED, file, attributes.size(), modified, null, null, null));
+            } else {
+                routed.add(new Placement(file, attributes.size(), modified, folder));
+            }
+        }
+    }
+}
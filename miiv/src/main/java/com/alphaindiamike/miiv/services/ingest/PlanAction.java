@@ -0,0 +1,15 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+/**
+ * What a placement plan does with a source file.
+ */
+public enum PlanAction {
+    /** Placed under its own name. */
+    PLACE,
+    /** Placed under a " (n)" name because its own name is taken in the folder. */
+    RENAME,
+    /** Same name, size and modification time as a workspace file or an earlier source file; skipped once the content is confirmed equal. */
+    DUPLICATE,
+    /** No scheme folder accepts the file. */
+    UNROUTED
+}
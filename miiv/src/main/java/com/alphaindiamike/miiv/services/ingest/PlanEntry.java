@@ -0,0 +1,18 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.nio.file.Path;
+
+/**
+ * Placement of one source file in a plan. Folder, target name and duplicate are null where the
+ * action has none.
+ */
+public record PlanEntry(
+		PlanAction action,
+		Path source,
+		long size,
+		long modified,
+		Path folder,
+		String targetName,
+		Path duplicateOf
+		) {
+}
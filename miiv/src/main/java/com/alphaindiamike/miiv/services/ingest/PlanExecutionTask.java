@@ -0,0 +1,105 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Root walk task of a plan run. The plan is read chunk by chunk instead of listing the source; its
+ * files are journaled and handed past the classify stage with their planned folder and name.
+ * The source directory is journaled as walked up front, so resuming an interrupted plan run continues
+ * the files already handed over and does not list the source again.
+ */
+class PlanExecutionTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(PlanExecutionTask.class);
+    private static final int CHUNK_SIZE = 4096;
+
+    private final transient IngestEngine engine;
+    private final transient PlacementPlan.Reader plan;
+
+    PlanExecutionTask(IngestEngine engine, PlacementPlan.Reader plan) {
+        this.engine = engine;
+        this.plan = plan;
+    }
+
+    @Override
+    protected void compute() {
+        engine.directoryListed(plan.getSource(), List.of(), List.of());
+        try {
+            List<PlanEntry> chunk = plan.next(CHUNK_SIZE);
+            while (!chunk.isEmpty()) {
+                List<RoutedFile> files = readAttributes(chunk);
+                try {
+                    engine.filesPlanned(files);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logger.warn("Plan execution interrupted, {} planned files were not handed over.", files.size());
+                    return;
+                }
+                chunk = plan.next(CHUNK_SIZE);
+            }
+        } catch (IOException e) {
+            logger.error("Failed to read the plan: {}", e.getMessage());
+            engine.recordFailure();
+        }
+    }
+
+    private List<RoutedFile> readAttributes(List<PlanEntry> chunk) {
+        List<RoutedFile> files = new ArrayList<>(chunk.size());
+        for (PlanEntry entry : chunk) {
+            if (entry.action() == PlanAction.UNROUTED) {
+                logger.warn("No scheme folder accepted {} when it was planned, skipped.", entry.source());
+                engine.recordFailure();
+                continue;
+            }
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(entry.source(), BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+                SourceFile file = new SourceFile(entry.source(), attributes);
+                String targetName = entry.targetName() != null ? entry.targetName()
+                        : entry.source().getFileName().toString();
+                files.add(new RoutedFile(file, entry.folder(), targetName, presumedOriginal(entry, attributes)));
+            } catch (NoSuchFileException e) {
+                logger.error("Planned file disappeared: {}", entry.source());
+                engine.recordFailure();
+            } catch (IOException e) {
+                logger.error("Failed to read attributes of {} due to {}", entry.source(), e.getMessage());
+                engine.recordFailure();
+            }
+        }
+        return files;
+    }
+
+    /**
+     * The file the entry presumably duplicates: the one found when planning, or the planned target
+     * itself when it already holds a file with the same size and time, as after executing the plan
+     * before. The content is compared by the write stage.
+     */
+    private static Path presumedOriginal(PlanEntry entry, BasicFileAttributes source) {
+        if (entry.duplicateOf() != null) {
+            return entry.duplicateOf();
+        }
+        Path target = entry.folder().resolve(entry.targetName());
+        try {
+            BasicFileAttributes existing = Files.readAttributes(target, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            if (existing.isRegularFile() && existing.size() == source.size()
+                    && existing.lastModifiedTime().equals(source.lastModifiedTime())) {
+                return target;
+            }
+        } catch (IOException e) {
+            // Usually not there yet
+        }
+        return null;
+    }
+}
@@ -0,0 +1,39 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of miiv plan: where the plan was written and how many entries got each action.
+ * Failed counts files and directories that could not be read and are missing from the plan.
+ */
+public record PlanSummary(
+		Path planFile,
+		long place,
+		long rename,
+		long duplicate,
+		long unrouted,
+		long failed,
+		Duration elapsed
+		) {
+
+    public static PlanSummary of(Path planFile, List<PlanEntry> entries, long failed, Duration elapsed) {
+        long[] counts = new long[PlanAction.values().length];
+        for (PlanEntry entry : entries) {
+            counts[entry.action().ordinal()]++;
+        }
+        return new PlanSummary(planFile, counts[PlanAction.PLACE.ordinal()], counts[PlanAction.RENAME.ordinal()],
+                counts[PlanAction.DUPLICATE.ordinal()], counts[PlanAction.UNROUTED.ordinal()], failed, elapsed);
+    }
+
+    public long files() {
+        return place + rename + duplicate + unrouted;
+    }
+
+    public String summary() {
+        return String.format("Planned %d files in %.1f s: %d placed, %d renamed on conflict, %d duplicates, "
+                + "%d without folder, %d failed. Plan written to %s",
+                files(), elapsed.toMillis() / 1000.0, place, rename, duplicate, unrouted, failed, planFile);
+    }
+}
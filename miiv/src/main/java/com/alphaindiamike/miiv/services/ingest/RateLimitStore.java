@@ -0,0 +1,88 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Optional;
+
+import com.alphaindiamike.miiv.privatelib.functions.DatabaseFunctionsLib;
+
+/**
+ * Rate limits of journaled runs in the workspace database. A running engine polls the row of its
+ * run, so limits written from another process take effect within a poll interval.
+ */
+public class RateLimitStore {
+
+    private RateLimitStore() {
+    }
+
+    /**
+     * Records the limits of a run.
+     *
+     * @throws SQLException if the workspace database cannot be written.
+     */
+    public static void write(Path workspace, long runId, RateLimits limits) throws SQLException {
+        try (Connection connection = DatabaseFunctionsLib.openWorkspaceDatabase(workspace)) {
+            initializeSchema(connection);
+            try (PreparedStatement upsert = connection.prepareStatement(
+                    "INSERT OR REPLACE INTO run_limits (run_id, bytes_per_second, files_per_second) VALUES (?, ?, ?)")) {
+                upsert.setLong(1, runId);
+                upsert.setLong(2, limits.bytesPerSecond());
+                upsert.setLong(3, limits.filesPerSecond());
+                upsert.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Replaces the limits of every unfinished run of the workspace, including one in progress.
+     *
+     * @return The number of runs updated.
+     * @throws SQLException if the workspace database cannot be written.
+     */
+    public static int adjustUnfinishedRuns(Path workspace, RateLimits limits) throws SQLException {
+        try (Connection connection = DatabaseFunctionsLib.openWorkspaceDatabase(workspace)) {
+            OperationJournal.initializeSchema(connection);
+            initializeSchema(connection);
+            try (PreparedStatement upsert = connection.prepareStatement(
+                    "INSERT OR REPLACE INTO run_limits (run_id, bytes_per_second, files_per_second) "
+                    + "SELECT id, ?, ? FROM journal_runs WHERE finished IS NULL")) {
+                upsert.setLong(1, limits.bytesPerSecond());
+                upsert.setLong(2, limits.filesPerSecond());
+                return upsert.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Reads the limits of a run.
+     *
+     * @return The limits, or empty if none were recorded.
+     * @throws SQLException if the workspace database cannot be read.
+     */
+    public static Optional<RateLimits> read(Path workspace, long runId) throws SQLException {
+        try (Connection connection = DatabaseFunctionsLib.openWorkspaceDatabase(workspace)) {
+            initializeSchema(connection);
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT bytes_per_second, files_per_second FROM run_limits WHERE run_id = ?")) {
+                select.setLong(1, runId);
+                try (ResultSet rs = select.executeQuery()) {
+                    if (rs.next()) {
+                        return Optional.of(new RateLimits(rs.getLong(1), rs.getLong(2)));
+                    }
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static void initializeSchema(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS run_limits (run_id INTEGER PRIMARY KEY, "
+                    + "bytes_per_second INTEGER NOT NULL, files_per_second INTEGER NOT NULL)");
+        }
+    }
+}
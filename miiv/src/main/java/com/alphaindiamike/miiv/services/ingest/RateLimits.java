@@ -0,0 +1,32 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+/**
+ * I/O budget of an ingest run. A limit of 0 means unlimited.
+ */
+public record RateLimits(
+		long bytesPerSecond,
+		long filesPerSecond
+		) {
+    public static final RateLimits UNLIMITED = new RateLimits(0, 0);
+    private static final long MEGABYTE = 1024L * 1024;
+
+    public RateLimits {
+        if (bytesPerSecond < 0 || filesPerSecond < 0) {
+            throw new IllegalArgumentException("Rate limits must not be negative");
+        }
+    }
+
+    public static RateLimits ofMegabytes(long megabytesPerSecond, long filesPerSecond) {
+        return new RateLimits(megabytesPerSecond * MEGABYTE, filesPerSecond);
+    }
+
+    public boolean isUnlimited() {
+        return bytesPerSecond == 0 && filesPerSecond == 0;
+    }
+
+    public String describe() {
+        String bytes = bytesPerSecond == 0 ? "unlimited MB/s" : (bytesPerSecond / MEGABYTE) + " MB/s";
+        String files = filesPerSecond == 0 ? "unlimited files/s" : filesPerSecond + " files/s";
+        return bytes + ", " + files;
+    }
+}
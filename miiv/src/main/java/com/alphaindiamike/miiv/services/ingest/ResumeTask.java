@@ -0,0 +1,81 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alphaindiamike.miiv.services.ingest.OperationJournal.PendingFile;
+
+/**
+ * Root walk task of a resumed run. Pending files are read from the journal page by page, so the
+ * heap does not grow with the size of the interrupted run, and handed to the classify stage;
+ * files that were in flight are first checked against the target the journal gave them.
+ * Directories whose listing never reached the journal are walked as usual.
+ */
+class ResumeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(ResumeTask.class);
+    private static final int PAGE_SIZE = 4096;
+
+    private final transient IngestEngine engine;
+
+    ResumeTask(IngestEngine engine) {
+        this.engine = engine;
+    }
+
+    @Override
+    protected void compute() {
+        OperationJournal journal = engine.getJournal();
+        try {
+            // Pending rows first: rows added by the walks below are handed over by the walks themselves
+            List<PendingFile> page = journal.pendingFiles(0, PAGE_SIZE);
+            while (!page.isEmpty()) {
+                if (!DirectoryWalkTask.submitAll(engine, readAttributes(page))) {
+                    return;
+                }
+                page = journal.pendingFiles(page.get(page.size() - 1).id(), PAGE_SIZE);
+            }
+
+            List<Path> unwalked = journal.unwalkedDirectories();
+            logger.info("Resuming run {}: {} directories left to walk.", journal.getRunId(), unwalked.size());
+            List<RecursiveAction> walks = new ArrayList<>();
+            for (Path directory : unwalked) {
+                walks.add(new DirectoryWalkTask(engine, directory));
+            }
+            invokeAll(walks);
+        } catch (SQLException e) {
+            logger.error("Failed to read the journal of run {}: {}", journal.getRunId(), e.getMessage());
+            engine.recordFailure();
+        }
+    }
+
+    private List<SourceFile> readAttributes(List<PendingFile> page) {
+        List<SourceFile> files = new ArrayList<>(page.size());
+        for (PendingFile pending : page) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(pending.source(), BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+                SourceFile file = new SourceFile(pending.source(), attributes);
+                if (pending.target() == null || !engine.writtenBeforeStop(file, pending.target())) {
+                    files.add(file);
+                }
+            } catch (NoSuchFileException e) {
+                engine.sourceMissing(pending.source());
+            } catch (IOException e) {
+                logger.error("Failed to read attributes of {} due to {}", pending.source(), e.getMessage());
+                engine.recordFailure();
+            }
+        }
+        return files;
+    }
+}
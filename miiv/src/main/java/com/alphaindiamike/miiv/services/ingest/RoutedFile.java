@@ -0,0 +1,25 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.nio.file.Path;
+
+/**
+ * A source file together with the scheme folder the classify stage picked for it.
+ * Files from a placement plan also carry the planned file name, and, when the plan found a file
+ * with the same name, size and modification time, the file they presumably duplicate. The file type
+ * is the one the file was routed by, null for files of a plan.
+ */
+record RoutedFile(SourceFile file, Path folder, String targetName, Path duplicateOf, String fileType) {
+
+    RoutedFile(SourceFile file, Path folder, String fileType) {
+        this(file, folder, file.path().getFileName().toString(), null, fileType);
+    }
+
+    RoutedFile(SourceFile file, Path folder, String targetName, Path duplicateOf) {
+        this(file, folder, targetName, duplicateOf, null);
+    }
+
+    @Override
+    public String toString() {
+        return file.path().toString();
+    }
+}
@@ -0,0 +1,237 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.alphaindiamike.miiv.model.filesystem.ContentRoutine;
+import com.alphaindiamike.miiv.model.filesystem.RepositoryScheme;
+
+/**
+ * The RepositoryScheme compiled into a flat, immutable table: every node is a folder id, its
+ * path relative to the workspace, and every file type maps to the id of the folder receiving it,
+ * so routing a file is one hash lookup on its extension instead of a walk of the scheme tree.
+ * The table is compiled once per scheme and shared read-only by all threads.
+ * <p>
+ * File types are normalized to lower case without a leading dot. When several nodes prefer the
+ * same type, the first node in scheme order (depth first, parents before their children) wins, as
+ * it always has, so existing workspaces keep receiving such files in the same folder; the nodes
+ * passed over are kept for {@link #ambiguousFileTypes()}. Files whose type no node prefers go to the
+ * first node preferring "other".
+ * <p>
+ * Nodes versioned by type or by title list their types or titles in template.type. All of these
+ * keywords are compiled into one {@link KeywordAutomaton}, so a file name is scanned once whatever
+ * their number. A file whose name contains a keyword goes to its node, before routing by type,
+ * if the node prefers the file type or lists no preferred types; the longest keyword wins, then the
+ * first node in scheme order.
+ */
+public final class RoutingTable {
+    public static final String OTHER_FILE_TYPE = "other";
+    public static final int NO_FOLDER = -1;
+
+    /**
+     * A scheme node: its folder relative to the workspace, its preferred file types and content routine.
+     */
+    public record Folder(
+    		Path path,
+    		Set<String> fileTypes,
+    		ContentRoutine content,
+    		List<String> keywords
+    		) {
+
+        boolean accepts(String fileType) {
+            return fileTypes.isEmpty() || fileTypes.contains(fileType);
+        }
+    }
+
+    /**
+     * A template keyword found in a name or text, and the folder of the node listing it.
+     */
+    public record KeywordMatch(
+    		int folder,
+    		String keyword,
+    		int start,
+    		int end
+    		) {
+    }
+
+    private static final Set<ContentRoutine> TEMPLATE_ROUTINES = Set.of(
+            ContentRoutine.VERSION_CONTROLLED_BY_DATE_AND_TYPE, ContentRoutine.VERSION_CONTROLLED_BY_DATE_AND_TITLE);
+
+    private final List<Folder> folders;
+    private final Map<String, Integer> folderByFileType;
+    private final Map<String, List<Integer>> candidatesByFileType;
+    private final int otherFolder;
+    private final List<String> keywords = new ArrayList<>();
+    private final int[] keywordFolders;
+    private final KeywordAutomaton keywordAutomaton;
+
+    private RoutingTable(List<Folder> folders, Map<String, List<Integer>> candidatesByFileType) {
+        this.folders = List.copyOf(folders);
+        List<Integer> owners = new ArrayList<>();
+        for (int id = 0; id < folders.size(); id++) {
+            for (String keyword : folders.get(id).keywords()) {
+                keywords.add(keyword);
+                owners.add(id);
+            }
+        }
+        this.keywordFolders = owners.stream().mapToInt(Integer::intValue).toArray();
+        this.keywordAutomaton = new KeywordAutomaton(keywords);
+        Map<String, Integer> winners = new HashMap<>();
+        Map<String, List<Integer>> ambiguous = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Integer>> entry : candidatesByFileType.entrySet()) {
+            winners.put(entry.getKey(), entry.getValue().get(0));
+            if (entry.getValue().size() > 1) {
+                ambiguous.put(entry.getKey(), List.copyOf(entry.getValue()));
+            }
+        }
+        this.folderByFileType = Map.copyOf(winners);
+        this.candidatesByFileType = Collections.unmodifiableMap(ambiguous);
+        this.otherFolder = winners.getOrDefault(OTHER_FILE_TYPE, NO_FOLDER);
+    }
+
+    /**
+     * Compiles the scheme.
+     *
+     * @throws IllegalStateException if no scheme is loaded.
+     */
+    public static RoutingTable compile(RepositoryScheme scheme) {
+        if (scheme == null) {
+            throw new IllegalStateException("No repository scheme loaded, cannot route files.");
+        }
+        List<Folder> folders = new ArrayList<>();
+        Map<String, List<Integer>> candidates = new LinkedHashMap<>();
+        collect(scheme.getChildren(), null, folders, candidates);
+        return new RoutingTable(folders, candidates);
+    }
+
+    private static void collect(List<RepositoryScheme> nodes, Path parent, List<Folder> folders,
+            Map<String, List<Integer>> candidates) {
+        if (nodes == null) {
+            return;
+        }
+        for (RepositoryScheme node : nodes) {
+            Path path = parent == null ? Paths.get(node.getName()) : parent.resolve(node.getName());
+            int id = folders.size();
+            Set<String> fileTypes = new LinkedHashSet<>();
+            if (node.getPreferredFileTypes() != null) {
+                for (String fileType : node.getPreferredFileTypes()) {
+                    String key = normalize(fileType);
+                    if (!key.isEmpty() && fileTypes.add(key)) {
+                        candidates.computeIfAbsent(key, type -> new ArrayList<>()).add(id);
+                    }
+                }
+            }
+            List<String> keywords = List.of();
+            if (node.getContent() != null && TEMPLATE_ROUTINES.contains(node.getContent())
+                    && node.getTemplate() != null && node.getTemplate().getType() != null) {
+                keywords = node.getTemplate().getType().stream().filter(keyword -> !keyword.isBlank()).toList();
+            }
+            folders.add(new Folder(path, Collections.unmodifiableSet(fileTypes), node.getContent(), keywords));
+            collect(node.getChildren(), path, folders, candidates);
+        }
+    }
+
+    /**
+     * The key of a file type: trimmed, lower case, without a leading dot and interned, so the
+     * keys of the table are shared with every other use of the same file type.
+     */
+    static String normalize(String fileType) {
+        String key = fileType.trim().toLowerCase(Locale.ROOT);
+        if (key.startsWith(".")) {
+            key = key.substring(1);
+        }
+        return key.intern();
+    }
+
+    /**
+     * The id of the folder receiving the file.
+     *
+     * @return The id, or {@link #NO_FOLDER} if no node prefers the file type and none prefers "other".
+     */
+    public int route(Path file) {
+        return route(file.getFileName().toString(), SchemeRouter.extensionOf(file));
+    }
+
+    /**
+     * The id of the folder receiving a file, by the template keywords in its name and then by its type.
+     *
+     * @param fileName The file name.
+     * @param fileType Its type, a lower case extension without the dot.
+     * @return The id, or {@link #NO_FOLDER} if neither a keyword nor the type selects a folder.
+     */
+    public int route(String fileName, String fileType) {
+        KeywordMatch match = matchKeywords(fileName, fileType);
+        return match != null ? match.folder() : routeFileType(fileType);
+    }
+
+    /**
+     * Finds the template keyword selecting the folder of a name or text block, in one scan of it.
+     *
+     * @param text     The file name or text.
+     * @param fileType The type of the file, or null to consider every node.
+     * @return The longest keyword of a node accepting the type, the first node on a tie, or null.
+     */
+    public KeywordMatch matchKeywords(CharSequence text, String fileType) {
+        if (keywordFolders.length == 0) {
+            return null;
+        }
+        KeywordMatch[] best = new KeywordMatch[1];
+        keywordAutomaton.scan(text, (keyword, start, end) -> {
+            int folder = keywordFolders[keyword];
+            if (fileType != null && !folders.get(folder).accepts(fileType)) {
+                return;
+            }
+            KeywordMatch current = best[0];
+            if (current == null || end - start > current.end() - current.start()
+                    || (end - start == current.end() - current.start() && folder < current.folder())) {
+                best[0] = new KeywordMatch(folder, keywords.get(keyword), start, end);
+            }
+        });
+        return best[0];
+    }
+
+    /**
+     * The id of the folder receiving files of the type, a lower case extension without the dot.
+     *
+     * @return The id, or {@link #NO_FOLDER} if no node prefers the file type and none prefers "other".
+     */
+    public int routeFileType(String fileType) {
+        Integer id = fileType.isEmpty() ? null : folderByFileType.get(fileType);
+        return id != null ? id : otherFolder;
+    }
+
+    /**
+     * Tells whether a node prefers files of the type.
+     */
+    public boolean prefers(String fileType) {
+        return folderByFileType.containsKey(fileType);
+    }
+
+    public Folder folder(int id) {
+        return folders.get(id);
+    }
+
+    /**
+     * The folders in scheme order; a folder's id is its index.
+     */
+    public List<Folder> folders() {
+        return folders;
+    }
+
+    /**
+     * The file types preferred by more than one node, each with the ids of those nodes in scheme
+     * order; the first one receives the files.
+     */
+    public Map<String, List<Integer>> ambiguousFileTypes() {
+        return candidatesByFileType;
+    }
+}
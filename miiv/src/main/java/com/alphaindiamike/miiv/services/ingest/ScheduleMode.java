@@ -0,0 +1,28 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+/**
+ * Order in which the files of a source are read.
+ */
+public enum ScheduleMode {
+    /** Directory entry order, with parallel walkers; suited to SSDs and network shares. */
+    WALK,
+    /**
+     * One walker; the files of each directory sorted by inode, small files swept per destination
+     * folder and large files streamed separately. Suited to spinning disks, where seeks dominate.
+     */
+    PHYSICAL;
+
+    /**
+     * Parses a mode name as given on the command line or in the settings.
+     *
+     * @throws IllegalArgumentException if the name is unknown.
+     */
+    public static ScheduleMode parse(String name) {
+        for (ScheduleMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown schedule: " + name + " (expected walk or physical)");
+    }
+}
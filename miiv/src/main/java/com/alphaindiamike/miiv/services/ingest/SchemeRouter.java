@@ -0,0 +1,134 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import com.alphaindiamike.miiv.model.filesystem.ContentRoutine;
+import com.alphaindiamike.miiv.model.filesystem.RepositoryScheme;
+import com.alphaindiamike.miiv.privatelib.functions.ContentSniffingFunctionsLib;
+
+/**
+ * Maps a source file to the workspace folder selected by the RepositoryScheme, through its
+ * compiled {@link RoutingTable}: a template keyword in the file name selects its node, else the
+ * first node (depth first) listing the file extension in its preferredFileTypes wins; files
+ * without a match go to the node accepting "other".
+ * The folders are resolved against the workspace once, so routing a file is one scan of its name and one lookup.
+ */
+public class SchemeRouter {
+    public static final String OTHER_FILE_TYPE = RoutingTable.OTHER_FILE_TYPE;
+
+    private final RoutingTable table;
+    private final Path[] folders;
+
+    public SchemeRouter(RepositoryScheme repositoryScheme, Path workspace) {
+        this(RoutingTable.compile(repositoryScheme), workspace);
+    }
+
+    public SchemeRouter(RoutingTable table, Path workspace) {
+        if (table == null) {
+            throw new IllegalStateException("No repository scheme loaded, cannot route files.");
+        }
+        this.table = table;
+        this.folders = new Path[table.folders().size()];
+        for (int id = 0; id < folders.length; id++) {
+            folders[id] = workspace.resolve(table.folder(id).path());
+        }
+    }
+
+    /**
+     * Resolves the workspace folder for the given file.
+     *
+     * @param file The source file.
+     * @return The target folder, or null if the scheme has no node for the file type and no "other" node.
+     */
+    public Path route(Path file) {
+        int id = table.route(file);
+        return id == RoutingTable.NO_FOLDER ? null : folders[id];
+    }
+
+    /**
+     * Resolves the workspace folder for the given file, by its content where the extension cannot be
+     * trusted: files without an extension, with one no node prefers, or with one of a type which has
+     * a signature are sniffed; see {@link FileTypeDetector}.
+     *
+     * @param file      The source file.
+     * @param fileTypes Sniffs file types, or null to route by extension only.
+     * @return The target folder, or null if the scheme has no node for the file type and no "other" node.
+     */
+    public Path route(FileIdentity file, FileTypeDetector fileTypes) {
+        return route(file.path(), fileTypeOf(file, fileTypes));
+    }
+
+    /**
+     * Returns the file type the file is routed by: its extension, or the type sniffed from its content
+     * where the extension cannot be trusted, see {@link #route(FileIdentity, FileTypeDetector)}.
+     *
+     * @param file      The source file.
+     * @param fileTypes Sniffs file types, or null to use the extension only.
+     * @return The lower case type, empty if the file has no extension and matched no signature.
+     */
+    public String fileTypeOf(FileIdentity file, FileTypeDetector fileTypes) {
+        String extension = extensionOf(file.path());
+        if (fileTypes != null && (extension.isEmpty() || !table.prefers(extension)
+                || ContentSniffingFunctionsLib.hasSignature(extension))) {
+            extension = fileTypes.fileTypeOf(file, extension);
+        }
+        return extension;
+    }
+
+    /**
+     * Resolves the workspace folder for a file of the given type, see {@link #fileTypeOf}.
+     *
+     * @return The target folder, or null if the scheme has no node for the file type and no "other" node.
+     */
+    public Path route(Path file, String fileType) {
+        int id = table.route(file.getFileName().toString(), fileType);
+        return id == RoutingTable.NO_FOLDER ? null : folders[id];
+    }
+
+    /**
+     * Lists the workspace folders of the nodes preferring at least one of the file types, depth first.
+     *
+     * @param fileTypes Lower case extensions, without the dot.
+     * @return The folders, parents before their children.
+     */
+    public List<Path> foldersAccepting(Set<String> fileTypes) {
+        List<Path> accepting = new ArrayList<>();
+        for (int id = 0; id < folders.length; id++) {
+            if (table.folder(id).fileTypes().stream().anyMatch(fileTypes::contains)) {
+                accepting.add(folders[id]);
+            }
+        }
+        return accepting;
+    }
+
+    /**
+     * Lists the workspace folders of the nodes with one of the content routines.
+     */
+    public Set<Path> foldersWithContent(Set<ContentRoutine> routines) {
+        Set<Path> withContent = new HashSet<>();
+        for (int id = 0; id < folders.length; id++) {
+            ContentRoutine content = table.folder(id).content();
+            if (content != null && routines.contains(content)) {
+                withContent.add(folders[id]);
+            }
+        }
+        return withContent;
+    }
+
+    /**
+     * Returns the lower case extension of the file name, without the dot, or an empty string.
+     */
+    public static String extensionOf(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot <= 0 || dot == name.length() - 1) {
+            return "";
+        }
+        return name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,17 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A regular file found below the source, with the attributes read while listing its directory.
+ */
+public record SourceFile(
+		Path path,
+		BasicFileAttributes attributes
+		) {
+
+    public long size() {
+        return attributes.size();
+    }
+}
@@ -0,0 +1,18 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+/**
+ * Queue occupancy of one pipeline stage over a run. A stage whose queue stays near capacity is
+ * slower than its producers; a stage whose queue stays empty is starved by the stage before it.
+ */
+public record StageStatistics(
+		String stage,
+		int threads,
+		int capacity,
+		double averageDepth,
+		long peakDepth
+		) {
+
+    public String summary() {
+        return String.format("%s %.0f/%d of %d (%d threads)", stage, averageDepth, peakDepth, capacity, threads);
+    }
+}
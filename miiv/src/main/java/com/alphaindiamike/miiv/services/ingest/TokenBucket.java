@@ -0,0 +1,82 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket refilled continuously at a configurable rate. A caller takes the tokens it needs
+ * at once and, when the bucket runs dry, waits until its debt is paid off; callers queued behind
+ * it wait for theirs in turn. Up to one second of unused rate is kept as a burst allowance, so
+ * short pauses are caught up quickly while the long-run rate never exceeds the limit.
+ * A rate of 0 means unlimited. The rate can be changed at any time from any thread.
+ */
+public class TokenBucket {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private long ratePerSecond;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(long ratePerSecond) {
+        setRate(ratePerSecond);
+    }
+
+    /**
+     * Changes the rate. Accumulated tokens above the new burst allowance are dropped, and so is
+     * any debt when the limit is lifted.
+     *
+     * @param ratePerSecond Tokens per second, 0 for unlimited.
+     * @throws IllegalArgumentException if the rate is negative.
+     */
+    public synchronized void setRate(long ratePerSecond) {
+        if (ratePerSecond < 0) {
+            throw new IllegalArgumentException("Rate must not be negative, got: " + ratePerSecond);
+        }
+        refill(System.nanoTime());
+        this.ratePerSecond = ratePerSecond;
+        tokens = ratePerSecond == 0 ? 0 : Math.min(tokens, ratePerSecond);
+    }
+
+    public synchronized long getRate() {
+        return ratePerSecond;
+    }
+
+    /**
+     * Takes the tokens, waiting as long as the current rate requires.
+     *
+     * @param count Number of tokens.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void acquire(long count) throws InterruptedException {
+        long waitNanos = reserve(count, System.nanoTime());
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes the tokens and returns how long the caller has to wait before using them.
+     *
+     * @param count Number of tokens.
+     * @param now   The current System.nanoTime().
+     * @return Nanoseconds to wait, 0 if the tokens are available right away.
+     */
+    public synchronized long reserve(long count, long now) {
+        if (ratePerSecond == 0) {
+            return 0;
+        }
+        refill(now);
+        tokens -= count;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) (-tokens * NANOS_PER_SECOND / ratePerSecond);
+    }
+
+    private void refill(long now) {
+        if (ratePerSecond > 0 && lastRefill != 0) {
+            double earned = (double) (now - lastRefill) * ratePerSecond / NANOS_PER_SECOND;
+            tokens = Math.min(tokens + earned, ratePerSecond);
+        }
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,421 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alphaindiamike.miiv.privatelib.functions.DatabaseFunctionsLib;
+
+/**
+ * Index of the content already in the workspace, so an ingest can recognize a known file without
+ * touching the workspace. Two parts, both in .miiv:
+ * <ul>
+ * <li>the workspace_content table of the workspace database, listing each indexed file with its
+ * size, modification time, head/tail digest and, once computed, full digest, indexed by size;</li>
+ * <li>a {@link BloomFilter} in content.bloom over the sizes and the (size, head/tail digest)
+ * pairs of the table. A file whose size or pair is not in the filter is certainly not indexed:
+ * one memory probe, no database query and no I/O.</li>
+ * </ul>
+ * The filter is derived from the table: it is rebuilt from it when its file is missing or
+ * unreadable, was built for another false positive rate, or holds more keys than it was sized for.
+ * Every write of rows bumps a sequence kept next to the table, and the filter file records the
+ * sequence it covers. A filter whose sequence differs, because a run was killed before writing
+ * it or another run added rows meanwhile, may lack keys and is rebuilt as well.
+ * Files placed by every ingest are added as they are written, with or without --dedup, so the
+ * filter never misses a placed file; miiv index rescans the whole workspace. Files changed or removed since they were indexed are dropped when a lookup
+ * finds them stale.
+ */
+public class WorkspaceContentIndex implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(WorkspaceContentIndex.class);
+    public static final String FILTER_FILE = "content.bloom";
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+    private static final int MAX_BATCH = 500;
+    // Room for the keys added until the next rebuild
+    private static final long MIN_CAPACITY = 1 << 16;
+    private static final long SIZE_KEY_SEED = 0x5f3759df9e3779b9L;
+    private static final long NO_SEQUENCE = -1;
+
+    private final Connection connection;
+    private final Path filterFile;
+    private final double falsePositiveRate;
+    private final PreparedStatement upsert;
+    private final PreparedStatement selectCandidates;
+    private final PreparedStatement delete;
+    private final PreparedStatement updateFull;
+    private final Map<Integer, PreparedStatement> selects = new HashMap<>();
+    private final List<Entry> pending = new ArrayList<>();
+    private final PreparedStatement bumpSequence;
+    private volatile BloomFilter filter;
+    private boolean filterChanged;
+    // The table sequence the filter covers; NO_SEQUENCE once another writer added rows it lacks
+    private long sequence;
+
+    /**
+     * An indexed workspace file. The digests are valid while the file has the size and modification time.
+     */
+    public record Entry(
+    		Path path,
+    		long size,
+    		long modified,
+    		byte[] partial,
+    		byte[] full
+    		) {
+    }
+
+    private WorkspaceContentIndex(Connection connection, Path filterFile, double falsePositiveRate)
+            throws SQLException {
+        this.connection = connection;
+        this.filterFile = filterFile;
+        this.falsePositiveRate = falsePositiveRate;
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS workspace_content (path TEXT PRIMARY KEY, "
+                    + "size INTEGER NOT NULL, modified INTEGER NOT NULL, partial BLOB NOT NULL, full BLOB, "
+                    + "generation INTEGER NOT NULL DEFAULT 0)");
+            statement.execute("CREATE INDEX IF NOT EXISTS workspace_content_size ON workspace_content (size)");
+            statement.execute("CREATE TABLE IF NOT EXISTS workspace_content_sequence "
+                    + "(id INTEGER PRIMARY KEY CHECK (id = 0), sequence INTEGER NOT NULL)");
+            statement.execute("INSERT OR IGNORE INTO workspace_content_sequence (id, sequence) VALUES (0, 0)");
+        }
+        upsert = connection.prepareStatement("INSERT OR REPLACE INTO workspace_content "
+                + "(path, size, modified, partial, full, generation) VALUES (?, ?, ?, ?, ?, ?)");
+        selectCandidates = connection.prepareStatement("SELECT path, size, modified, partial, full "
+                + "FROM workspace_content WHERE size = ? AND partial = ?");
+        delete = connection.prepareStatement("DELETE FROM workspace_content WHERE path = ?");
+        updateFull = connection.prepareStatement("UPDATE workspace_content SET full = ? WHERE path = ?");
+        bumpSequence = connection.prepareStatement(
+                "UPDATE workspace_content_sequence SET sequence = sequence + 1 WHERE id = 0 RETURNING sequence");
+    }
+
+    /**
+     * Opens the index of a workspace, rebuilding its filter from the table when needed.
+     *
+     * @param falsePositiveRate The false positive rate the filter is built for.
+     * @throws SQLException if the workspace database cannot be opened.
+     */
+    public static WorkspaceContentIndex open(Path workspace, double falsePositiveRate) throws SQLException {
+        Connection connection = DatabaseFunctionsLib.openWorkspaceDatabase(workspace);
+        try {
+            WorkspaceContentIndex index = new WorkspaceContentIndex(connection,
+                    DatabaseFunctionsLib.workspaceMetadataDirectory(workspace).resolve(FILTER_FILE), falsePositiveRate);
+            index.loadFilter();
+            return index;
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    private void loadFilter() throws SQLException {
+        try {
+            BloomFilter loaded = BloomFilter.readFrom(filterFile);
+            long current = tableSequence();
+            if (loaded.sequence() != current) {
+                logger.info("Rebuilding the content filter, which is behind the index");
+            } else if (loaded.falsePositiveRate() == falsePositiveRate && loaded.keys() <= loaded.capacity()) {
+                filter = loaded;
+                sequence = current;
+                return;
+            } else {
+                logger.info("Rebuilding the content filter for a false positive rate of {} and {} keys",
+                        falsePositiveRate, loaded.keys());
+            }
+        } catch (NoSuchFileException e) {
+            logger.debug("No content filter yet, building it from the index");
+        } catch (IOException e) {
+            logger.warn("Failed to read the content filter, rebuilding it: {}", e.getMessage());
+        }
+        rebuildFilter();
+    }
+
+    /**
+     * Builds the filter from the table and writes it to .miiv.
+     *
+     * @return The number of indexed files.
+     * @throws SQLException if the table cannot be read.
+     */
+    public synchronized long rebuildFilter() throws SQLException {
+        flush();
+        // Read first: rows added by others while the table is read make the sequence differ on the next open
+        long covered = tableSequence();
+        long files;
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM workspace_content")) {
+            files = rs.getLong(1);
+        }
+        // Two keys per file, and room to grow before the next rebuild
+        BloomFilter rebuilt = new BloomFilter(Math.max(MIN_CAPACITY, 4 * files), falsePositiveRate);
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT size, partial FROM workspace_content")) {
+            while (rs.next()) {
+                long size = rs.getLong(1);
+                rebuilt.put(sizeKey(size));
+                rebuilt.put(contentKey(size, rs.getBytes(2)));
+            }
+        }
+        filter = rebuilt;
+        sequence = covered;
+        filterChanged = true;
+        saveFilter();
+        return files;
+    }
+
+    /**
+     * Whether a file of this size may be indexed; false is certain.
+     */
+    public boolean mightContainSize(long size) {
+        return filter.mightContain(sizeKey(size));
+    }
+
+    /**
+     * Whether a file of this size and head/tail digest may be indexed; false is certain.
+     */
+    public boolean mightContain(long size, byte[] partial) {
+        return filter.mightContain(contentKey(size, partial));
+    }
+
+    /**
+     * The indexed files with the size and head/tail digest.
+     */
+    public synchronized List<Entry> candidates(long size, byte[] partial) {
+        List<Entry> found = new ArrayList<>();
+        try {
+            flush();
+            selectCandidates.setLong(1, size);
+            selectCandidates.setBytes(2, partial);
+            try (ResultSet rs = selectCandidates.executeQuery()) {
+                while (rs.next()) {
+                    found.add(new Entry(Path.of(rs.getString("path")), rs.getLong("size"), rs.getLong("modified"),
+                            rs.getBytes("partial"), rs.getBytes("full")));
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("Failed to read the content index: {}", e.getMessage());
+        }
+        return found;
+    }
+
+    /**
+     * Adds a workspace file, or replaces what was known about its path. The file is in the filter
+     * at once and in the table at the latest when the index is closed.
+     */
+    public synchronized void add(Entry entry) {
+        filter.put(sizeKey(entry.size()));
+        filter.put(contentKey(entry.size(), entry.partial()));
+        filterChanged = true;
+        pending.add(entry);
+        if (pending.size() >= MAX_BATCH) {
+            try {
+                flush();
+            } catch (SQLException e) {
+                logger.warn("Failed to write the content index: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Records the full digest of an indexed file.
+     */
+    public synchronized void fullDigestComputed(Path path, byte[] full) {
+        try {
+            flush();
+            updateFull.setBytes(1, full);
+            updateFull.setString(2, path.toString());
+            updateFull.executeUpdate();
+        } catch (SQLException e) {
+            logger.warn("Failed to write the content index: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Drops a file which was removed or changed since it was indexed. Its keys stay in the filter
+     * until it is rebuilt; they only cost a query.
+     */
+    public synchronized void remove(Path path) {
+        try {
+            flush();
+            delete.setString(1, path.toString());
+            delete.executeUpdate();
+        } catch (SQLException e) {
+            logger.warn("Failed to write the content index: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * The indexed size and modification time of a batch of at most 500 paths.
+     */
+    synchronized Map<Path, long[]> indexed(List<Path> paths) throws SQLException {
+        flush();
+        Map<Path, long[]> found = new HashMap<>();
+        if (paths.isEmpty()) {
+            return found;
+        }
+        PreparedStatement select = selects.get(paths.size());
+        if (select == null) {
+            select = connection.prepareStatement("SELECT path, size, modified FROM workspace_content WHERE path IN ("
+                    + String.join(", ", Collections.nCopies(paths.size(), "?")) + ")");
+            selects.put(paths.size(), select);
+        }
+        for (int i = 0; i < paths.size(); i++) {
+            select.setString(i + 1, paths.get(i).toString());
+        }
+        try (ResultSet rs = select.executeQuery()) {
+            while (rs.next()) {
+                found.put(Path.of(rs.getString("path")), new long[]{rs.getLong("size"), rs.getLong("modified")});
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Marks indexed paths as seen by the scan of the generation, see {@link #removeUnseen(long)}.
+     */
+    synchronized void markSeen(List<Path> paths, long generation) throws SQLException {
+        flush();
+        try (PreparedStatement mark = connection.prepareStatement(
+                "UPDATE workspace_content SET generation = ? WHERE path = ?")) {
+            connection.setAutoCommit(false);
+            try {
+                for (Path path : paths) {
+                    mark.setLong(1, generation);
+                    mark.setString(2, path.toString());
+                    mark.addBatch();
+                }
+                mark.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Writes the pending entries with the generation of a scan.
+     */
+    synchronized void addScanned(List<Entry> entries, long generation) throws SQLException {
+        flush();
+        write(entries, generation);
+        for (Entry entry : entries) {
+            filter.put(sizeKey(entry.size()));
+            filter.put(contentKey(entry.size(), entry.partial()));
+        }
+        filterChanged = true;
+    }
+
+    /**
+     * Drops the files a scan of the generation did not see.
+     *
+     * @return The number of files dropped.
+     */
+    synchronized int removeUnseen(long generation) throws SQLException {
+        flush();
+        try (PreparedStatement sweep = connection.prepareStatement(
+                "DELETE FROM workspace_content WHERE generation <> ?")) {
+            sweep.setLong(1, generation);
+            return sweep.executeUpdate();
+        }
+    }
+
+    public BloomFilter getFilter() {
+        return filter;
+    }
+
+    private void flush() throws SQLException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        write(pending, 0);
+        // Only once committed: after a rollback the entries are written again with the next flush
+        pending.clear();
+    }
+
+    private void write(List<Entry> entries, long generation) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            for (Entry entry : entries) {
+                upsert.setString(1, entry.path().toString());
+                upsert.setLong(2, entry.size());
+                upsert.setLong(3, entry.modified());
+                upsert.setBytes(4, entry.partial());
+                upsert.setBytes(5, entry.full());
+                upsert.setLong(6, generation);
+                upsert.addBatch();
+            }
+            upsert.executeBatch();
+            long next;
+            try (ResultSet rs = bumpSequence.executeQuery()) {
+                rs.next();
+                next = rs.getLong(1);
+            }
+            connection.commit();
+            // Rows of another writer in between are missing from this filter
+            sequence = sequence != NO_SEQUENCE && next == sequence + 1 ? next : NO_SEQUENCE;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private void saveFilter() {
+        if (!filterChanged) {
+            return;
+        }
+        try {
+            filter.setSequence(sequence);
+            filter.writeTo(filterFile);
+            filterChanged = false;
+        } catch (IOException e) {
+            // Rebuilt from the table on the next open
+            logger.warn("Failed to write the content filter: {}", e.getMessage());
+        }
+    }
+
+    private long tableSequence() throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT sequence FROM workspace_content_sequence WHERE id = 0")) {
+            return rs.getLong(1);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            logger.warn("Failed to write the content index: {}", e.getMessage());
+        }
+        saveFilter();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.warn("Failed to close the content index: {}", e.getMessage());
+        }
+    }
+
+    private static long sizeKey(long size) {
+        return BloomFilter.mix(size ^ SIZE_KEY_SEED);
+    }
+
+    private static long contentKey(long size, byte[] partial) {
+        return BloomFilter.mix(size) ^ ByteBuffer.wrap(partial).getLong();
+    }
+}
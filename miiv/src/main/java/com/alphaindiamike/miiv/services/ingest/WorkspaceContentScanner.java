@@ -0,0 +1,156 @@
+package com.alphaindiamike.miiv.services.ingest;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alphaindiamike.miiv.privatelib.functions.ContentHashFunctionsLib;
+import com.alphaindiamike.miiv.privatelib.functions.ContentHashFunctionsLib.Algorithm;
+import com.alphaindiamike.miiv.privatelib.functions.DatabaseFunctionsLib;
+
+/**
+ * Brings the {@link WorkspaceContentIndex} up to date with the workspace: files are listed in
+ * batches, files indexed with their current size and modification time are kept, new and changed
+ * files get their head/tail digest, computed in parallel, and files no longer present are dropped.
+ * The filter is rebuilt from the table at the end.
+ */
+public class WorkspaceContentScanner {
+    private static final Logger logger = LoggerFactory.getLogger(WorkspaceContentScanner.class);
+    private static final int BATCH = 500;
+
+    private final WorkspaceContentIndex index;
+    private final int threads;
+    private final LongAdder files = new LongAdder();
+    private final LongAdder hashed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * @param index   The opened index.
+     * @param threads The threads hashing new and changed files.
+     */
+    public WorkspaceContentScanner(WorkspaceContentIndex index, int threads) {
+        this.index = index;
+        this.threads = threads;
+    }
+
+    /**
+     * Scans the workspace, without its metadata directory.
+     *
+     * @return The counts of the scan.
+     * @throws IOException if the workspace cannot be walked.
+     * @throws SQLException if the index cannot be written.
+     */
+    public ContentIndexSummary scan(Path workspace) throws IOException, SQLException {
+        long start = System.nanoTime();
+        long generation = System.currentTimeMillis();
+        Path metadata = DatabaseFunctionsLib.workspaceMetadataDirectory(workspace);
+        List<FileIdentity> batch = new ArrayList<>(BATCH);
+        ForkJoinPool hashers = new ForkJoinPool(threads);
+        try {
+            Files.walkFileTree(workspace, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                    return directory.equals(metadata) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                    if (attributes.isRegularFile()) {
+                        batch.add(FileIdentity.of(file, attributes));
+                        if (batch.size() == BATCH) {
+                            indexBatch(batch, generation, hashers);
+                            batch.clear();
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    logger.error("Failed to read {} due to {}", file, e.getMessage());
+                    failed.increment();
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            indexBatch(batch, generation, hashers);
+        } catch (SqlFailure e) {
+            throw e.getCause();
+        } finally {
+            hashers.shutdownNow();
+        }
+        int removed = index.removeUnseen(generation);
+        index.rebuildFilter();
+        BloomFilter filter = index.getFilter();
+        return new ContentIndexSummary(files.sum(), hashed.sum(), removed, failed.sum(), filter.sizeInBytes(),
+                filter.falsePositiveRate(), Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private void indexBatch(List<FileIdentity> batch, long generation, ForkJoinPool hashers) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        files.add(batch.size());
+        try {
+            Map<Path, long[]> indexed = index.indexed(batch.stream().map(FileIdentity::path).toList());
+            List<Path> unchanged = new ArrayList<>();
+            List<FileIdentity> changed = new ArrayList<>();
+            for (FileIdentity file : batch) {
+                long[] known = indexed.get(file.path());
+                if (known != null && known[0] == file.size() && known[1] == file.modified()) {
+                    unchanged.add(file.path());
+                } else {
+                    changed.add(file);
+                }
+            }
+            index.markSeen(unchanged, generation);
+            List<WorkspaceContentIndex.Entry> entries = hashers.submit(() -> changed.parallelStream()
+                    .map(this::hash).filter(Objects::nonNull).toList()).join();
+            index.addScanned(entries, generation);
+        } catch (SQLException e) {
+            throw new SqlFailure(e);
+        }
+    }
+
+    private WorkspaceContentIndex.Entry hash(FileIdentity file) {
+        try {
+            byte[] partial = ContentHashFunctionsLib.hashHeadAndTail(file.path(), DuplicateDetector.PARTIAL_BLOCK_SIZE,
+                    Algorithm.FAST_128);
+            hashed.increment();
+            return new WorkspaceContentIndex.Entry(file.path(), file.size(), file.modified(), partial, null);
+        } catch (IOException e) {
+            logger.error("Failed to hash {} due to {}", file.path(), e.getMessage());
+            failed.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Carries a database error out of the file visitor.
+     */
+    private static final class SqlFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SqlFailure(SQLException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+}
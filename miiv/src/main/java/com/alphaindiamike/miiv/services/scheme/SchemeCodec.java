@@ -0,0 +1,193 @@
+package com.alphaindiamike.miiv.services.scheme;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.alphaindiamike.miiv.model.filesystem.ContentRoutine;
+import com.alphaindiamike.miiv.model.filesystem.RepositoryScheme;
+
+/**
+ * The binary form of a validated RepositoryScheme, read back without JSON parsing or data binding.
+ * The file starts with a magic number, the format version and the SHA-256 of the structure.json it
+ * was compiled from, and ends with a CRC32 of everything before it. It is only used while the hash
+ * matches the JSON file; a stale, truncated or corrupt file is ignored.
+ * <p>
+ * Nodes are written depth first, each followed by its children. Strings and lists which the JSON
+ * leaves out are written as absent, so a decoded scheme equals the parsed one.
+ */
+public final class SchemeCodec {
+    private static final int MAGIC = 0x4d495653; // "MIVS"
+    private static final short FORMAT = 1;
+    private static final int HASH_LENGTH = 32;
+
+    private SchemeCodec() {
+    }
+
+    /**
+     * Writes the binary form, replacing the file atomically so concurrent readers see the old or the new one.
+     *
+     * @param scheme   The validated scheme.
+     * @param jsonHash The SHA-256 of the JSON it was parsed from.
+     * @param file     The cache file; its directory is created if needed.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(RepositoryScheme scheme, byte[] jsonHash, Path file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(FORMAT);
+        out.write(jsonHash, 0, HASH_LENGTH);
+        writeNode(out, scheme);
+        out.flush();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, bytes.toByteArray());
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Reads the binary form compiled from the JSON with the given hash.
+     *
+     * @return The scheme, or null if the file is missing, stale or damaged.
+     * @throws IOException if the file exists but cannot be read.
+     */
+    public static RepositoryScheme read(Path file, byte[] jsonHash) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        int headerLength = 4 + 2 + HASH_LENGTH;
+        if (bytes.length < headerLength + 8) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != MAGIC || in.readShort() != FORMAT
+                || !Arrays.equals(in.readNBytes(HASH_LENGTH), jsonHash)) {
+            return null;
+        }
+        in.skipNBytes(bytes.length - 8 - headerLength);
+        if (in.readLong() != crc.getValue()) {
+            return null;
+        }
+        in = new DataInputStream(new ByteArrayInputStream(bytes, headerLength, bytes.length - 8 - headerLength));
+        try {
+            return readNode(in);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void writeNode(DataOutputStream out, RepositoryScheme node) throws IOException {
+        writeString(out, node.getName());
+        writeInteger(out, node.getSchemaVersionMajor());
+        writeInteger(out, node.getSchemaVersionMinor());
+        writeString(out, node.getPurpose());
+        writeStrings(out, node.getPreferredFileTypes());
+        out.writeByte(node.getContent() == null ? -1 : node.getContent().ordinal());
+        out.writeBoolean(node.getTemplate() != null);
+        if (node.getTemplate() != null) {
+            writeStrings(out, node.getTemplate().getType());
+        }
+        writeStrings(out, node.getType());
+        List<RepositoryScheme> children = node.getChildren();
+        out.writeInt(children == null ? -1 : children.size());
+        if (children != null) {
+            for (RepositoryScheme child : children) {
+                writeNode(out, child);
+            }
+        }
+    }
+
+    private static RepositoryScheme readNode(DataInputStream in) throws IOException {
+        RepositoryScheme node = new RepositoryScheme();
+        node.setName(readString(in));
+        node.setSchemaVersionMajor(readInteger(in));
+        node.setSchemaVersionMinor(readInteger(in));
+        node.setPurpose(readString(in));
+        node.setPreferredFileTypes(readStrings(in));
+        int content = in.readByte();
+        node.setContent(content < 0 ? null : ContentRoutine.values()[content]);
+        if (in.readBoolean()) {
+            RepositoryScheme.Template template = new RepositoryScheme.Template();
+            template.setType(readStrings(in));
+            node.setTemplate(template);
+        }
+        node.setType(readStrings(in));
+        int count = in.readInt();
+        if (count >= 0) {
+            List<RepositoryScheme> children = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                children.add(readNode(in));
+            }
+            node.setChildren(children);
+        }
+        return node;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values == null ? -1 : values.size());
+        if (values != null) {
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,86 @@
+package com.alphaindiamike.miiv.services.scheme;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import com.alphaindiamike.miiv.model.filesystem.RepositoryScheme;
+import com.alphaindiamike.miiv.privatelib.exceptions.SchemeException;
+
+/**
+ * Checks a RepositoryScheme before it is used or cached: every folder has a name usable as a single
+ * path element, unique among its siblings regardless of case (so the tree materializes the same on
+ * case-insensitive file systems), and listed file types and template types are not blank.
+ */
+public final class SchemeValidator {
+    private static final int MAX_REPORTED_PROBLEMS = 20;
+
+    private SchemeValidator() {
+    }
+
+    /**
+     * @throws SchemeException listing the problems found, if any.
+     */
+    public static void validate(RepositoryScheme scheme) {
+        if (scheme == null) {
+            throw new SchemeException("The repository scheme is empty.");
+        }
+        List<String> problems = new ArrayList<>();
+        if (scheme.getChildren() == null || scheme.getChildren().isEmpty()) {
+            problems.add("the scheme defines no folders");
+        }
+        validateChildren(scheme.getChildren(), "", problems);
+        if (!problems.isEmpty()) {
+            List<String> reported = problems.subList(0, Math.min(problems.size(), MAX_REPORTED_PROBLEMS));
+            throw new SchemeException("Invalid repository scheme: " + String.join("; ", reported)
+                    + (problems.size() > reported.size() ? "; and " + (problems.size() - reported.size()) + " more" : ""));
+        }
+    }
+
+    private static void validateChildren(List<RepositoryScheme> nodes, String parent, List<String> problems) {
+        if (nodes == null) {
+            return;
+        }
+        Set<String> siblings = new HashSet<>();
+        for (RepositoryScheme node : nodes) {
+            if (node == null) {
+                problems.add("empty folder entry below '" + parent + "'");
+                continue;
+            }
+            String name = node.getName();
+            String path = parent.isEmpty() ? String.valueOf(name) : parent + "/" + name;
+            if (name == null || name.isBlank()) {
+                problems.add("folder without a name below '" + parent + "'");
+                continue;
+            }
+            if (name.equals(".") || name.equals("..") || name.indexOf('/') >= 0 || name.indexOf('\\') >= 0
+                    || name.indexOf('\0') >= 0 || !name.equals(name.strip())) {
+                problems.add("'" + path + "' is not a valid folder name");
+            }
+            if (!siblings.add(name.toLowerCase(Locale.ROOT))) {
+                problems.add("'" + path + "' is listed twice");
+            }
+            if (hasBlank(node.getPreferredFileTypes())) {
+                problems.add("'" + path + "' lists a blank file type");
+            }
+            if (node.getTemplate() != null && hasBlank(node.getTemplate().getType())) {
+                problems.add("'" + path + "' lists a blank template type");
+            }
+            validateChildren(node.getChildren(), path, problems);
+        }
+    }
+
+    private static boolean hasBlank(List<String> values) {
+        if (values == null) {
+            return false;
+        }
+        for (String value : values) {
+            if (value == null || value.isBlank()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
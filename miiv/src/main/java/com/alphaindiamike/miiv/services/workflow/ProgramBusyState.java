@@ -1,16 +1,31 @@
 package com.alphaindiamike.miiv.services.workflow;
 
+/**
+ * Represents a running copy, move or link of a source directory into the workspace.
+ * The run itself is executed by the ingest pipeline; this state only records what is running
+ * and refuses to start a second run until the first one returned to the ready state.
+ */
 public class ProgramBusyState implements ProgramState{
 	
 	private String srcDir = "";
 	private String destDir = "";
+	private final opType operation;
 	private enum opType {
 			COPY,
-			MOVE
+			MOVE,
+			LINK
 	}
 	
+	/**
+	 * @param destDir   The workspace receiving the files.
+	 * @param sourceDir The source directory of the run.
+	 * @param OpType    The operation name: COPY, MOVE or LINK.
+	 * @throws IllegalArgumentException if the operation is unknown.
+	 */
 	public ProgramBusyState(String destDir, String sourceDir, String OpType) {
-		
+		this.destDir = destDir;
+		this.srcDir = sourceDir;
+		this.operation = opType.valueOf(OpType.toUpperCase());
 	}
 	
 	@Override
@@ -18,11 +33,31 @@ public class ProgramBusyState implements ProgramState{
 		return "Busy";
 	}
 
+	public String getSourceDirectory() {
+		return srcDir;
+	}
+
+	public String getWorkspaceDirectory() {
+		return destDir;
+	}
+
+	public String getOperation() {
+		return operation.name();
+	}
+
+	/**
+	 * Transitions to the next state once the run has ended.
+	 *
+	 * @throws IllegalStateException if the next state is another run.
+	 */
 	@Override
 	public ProgramState handleStateChange(ProgramStateContext context, ProgramState nextState, String[] parameters) {
-		
-		
-		return new WorkspaceReadyState(destDir);
+		if (nextState instanceof ProgramBusyState) {
+			throw new IllegalStateException("A " + operation.name().toLowerCase() + " of " + srcDir
+					+ " is still running in " + destDir);
+		}
+		context.setState(nextState);
+		return nextState;
 	}
 
 }
@@ -12,10 +12,17 @@ public class WorkspaceReadyState implements ProgramState{
 		return "Ready";
 	}
 
+	public String getWorkspaceDirectory() {
+		return activeWorkspacePath;
+	}
+
+	/**
+	 * A ready workspace accepts any next state: another workspace or a run into this one.
+	 */
 	@Override
 	public ProgramState handleStateChange(ProgramStateContext context, ProgramState nextState, String[] parameters) {
-		
-		return null;
+		context.setState(nextState);
+		return nextState;
 	}
 
 }
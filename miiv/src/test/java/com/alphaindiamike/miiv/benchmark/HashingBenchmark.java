@@ -0,0 +1,77 @@
+package com.alphaindiamike.miiv.benchmark;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import com.alphaindiamike.miiv.privatelib.functions.ContentHashFunctionsLib.Algorithm;
+import com.alphaindiamike.miiv.services.ingest.ContentHasher;
+
+/**
+ * Measures the throughput of both hash modes of {@link ContentHasher} on files in the page cache,
+ * once with small files read through the direct buffer and once with large memory-mapped files.
+ * Not part of the test suite; run it after mvn test-compile:
+ *
+ * <pre>
+ * mvn -q dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *     com.alphaindiamike.miiv.benchmark.HashingBenchmark [total MB] [threads] [rounds]
+ * </pre>
+ * Drop the page cache between rounds (echo 3 &gt; /proc/sys/vm/drop_caches) to measure the device instead.
+ */
+public class HashingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int totalMegabytes = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        System.out.printf("%d MB per set, %d threads, Java %d, %d processors%n", totalMegabytes, threads,
+                Runtime.version().feature(), Runtime.getRuntime().availableProcessors());
+        Path directory = Files.createTempDirectory("miiv_hash_benchmark");
+        try (ContentHasher hasher = new ContentHasher(threads)) {
+            List<Path> small = createFiles(directory.resolve("small"), totalMegabytes * 16, 64 * 1024);
+            List<Path> large = createFiles(directory.resolve("large"), Math.max(1, totalMegabytes / 64), 64 * 1024 * 1024);
+            for (int round = 1; round <= rounds; round++) {
+                for (Algorithm algorithm : Algorithm.values()) {
+                    measure(round, "64 KB files", hasher, small, algorithm, totalMegabytes);
+                    measure(round, "64 MB files", hasher, large, algorithm, large.size() * 64);
+                }
+            }
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    private static void measure(int round, String set, ContentHasher hasher, List<Path> files, Algorithm algorithm,
+            long megabytes) throws InterruptedException {
+        long start = System.nanoTime();
+        hasher.hashAll(files, algorithm);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("round %d %-11s %-8s %8.0f MB/s %9.0f files/s%n", round, set, algorithm,
+                megabytes / seconds, files.size() / seconds);
+    }
+
+    private static List<Path> createFiles(Path directory, int count, int size) throws Exception {
+        Files.createDirectories(directory);
+        Random random = new Random(42);
+        byte[] content = new byte[size];
+        List<Path> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            random.nextBytes(content);
+            files.add(Files.write(directory.resolve("f" + i + ".bin"), content));
+        }
+        return files;
+    }
+
+    private static void deleteRecursively(Path directory) throws Exception {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
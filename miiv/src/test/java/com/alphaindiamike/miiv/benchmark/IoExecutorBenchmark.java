@@ -0,0 +1,91 @@
+package com.alphaindiamike.miiv.benchmark;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import com.alphaindiamike.miiv.services.ConfigurationLoaderService;
+import com.alphaindiamike.miiv.services.ingest.IngestEngine;
+import com.alphaindiamike.miiv.services.ingest.IngestOperation;
+import com.alphaindiamike.miiv.services.ingest.IngestOptions;
+import com.alphaindiamike.miiv.services.ingest.IngestReport;
+import com.alphaindiamike.miiv.services.ingest.IoExecutorMode;
+import com.alphaindiamike.miiv.services.ingest.OperationJournal;
+import com.alphaindiamike.miiv.services.ingest.SchemeRouter;
+
+/**
+ * Compares the files per second of the platform worker pool with the virtual thread I/O executor
+ * on a source of many small files. Not part of the test suite; run it from the miiv directory
+ * (structure.json is read from there) after mvn test-compile:
+ *
+ * <pre>
+ * mvn -q dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *     com.alphaindiamike.miiv.benchmark.IoExecutorBenchmark [files] [bytes per file] [rounds]
+ * </pre>
+ */
+public class IoExecutorBenchmark {
+    private static final int FILES_PER_DIRECTORY = 100;
+
+    public static void main(String[] args) throws Exception {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int fileSize = args.length > 1 ? Integer.parseInt(args[1]) : 512;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        ConfigurationLoaderService configuration = new ConfigurationLoaderService();
+        Path source = createSource(files, fileSize);
+        try {
+            System.out.printf("%d files of %d bytes, Java %d, %d processors%n", files, fileSize,
+                    Runtime.version().feature(), Runtime.getRuntime().availableProcessors());
+            for (int round = 1; round <= rounds; round++) {
+                for (IoExecutorMode mode : IoExecutorMode.values()) {
+                    IngestReport report = copy(configuration, source, mode);
+                    System.out.printf("round %d %-8s %8.0f files/s  %s%n", round, mode, report.filesPerSecond(),
+                            report.summary());
+                }
+            }
+        } finally {
+            deleteRecursively(source);
+        }
+    }
+
+    private static IngestReport copy(ConfigurationLoaderService configuration, Path source, IoExecutorMode mode)
+            throws Exception {
+        Path workspace = Files.createTempDirectory("miiv_benchmark_workspace");
+        try {
+            IngestOptions options = new IngestOptions();
+            options.setIoMode(mode);
+            OperationJournal journal = OperationJournal.start(workspace, IngestOperation.COPY, source);
+            try {
+                SchemeRouter router = new SchemeRouter(configuration.getRepositoryScheme(), workspace);
+                return new IngestEngine(router, workspace, IngestOperation.COPY, options, journal).run(source);
+            } finally {
+                journal.release();
+            }
+        } finally {
+            deleteRecursively(workspace);
+        }
+    }
+
+    private static Path createSource(int files, int fileSize) throws Exception {
+        Path source = Files.createTempDirectory("miiv_benchmark_source");
+        byte[] content = new byte[fileSize];
+        for (int i = 0; i < files; i++) {
+            Path directory = source.resolve("d" + (i / FILES_PER_DIRECTORY));
+            if (i % FILES_PER_DIRECTORY == 0) {
+                Files.createDirectories(directory);
+            }
+            content[0] = (byte) i;
+            Files.write(directory.resolve("mail" + i + ".eml"), content);
+        }
+        return source;
+    }
+
+    private static void deleteRecursively(Path directory) throws Exception {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.alphaindiamike.miiv.benchmark;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import com.alphaindiamike.miiv.services.ConfigurationLoaderService;
+import com.alphaindiamike.miiv.services.ingest.IngestEngine;
+import com.alphaindiamike.miiv.services.ingest.IngestOperation;
+import com.alphaindiamike.miiv.services.ingest.IngestOptions;
+import com.alphaindiamike.miiv.services.ingest.IngestReport;
+import com.alphaindiamike.miiv.services.ingest.OperationJournal;
+import com.alphaindiamike.miiv.services.ingest.ScheduleMode;
+import com.alphaindiamike.miiv.services.ingest.SchemeRouter;
+
+/**
+ * Compares the walk and physical schedules copying an existing source, typically a directory on
+ * a USB hard disk, into temporary workspaces. Not part of the test suite; run it like
+ * {@link IoExecutorBenchmark}:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *     com.alphaindiamike.miiv.benchmark.ScheduleModeBenchmark /media/usb/photos [workers]
+ * </pre>
+ *
+ * Each run should start with a cold page cache, otherwise the second schedule reads from memory;
+ * on Linux run "sync; echo 3 | sudo tee /proc/sys/vm/drop_caches" when the benchmark pauses.
+ */
+public class ScheduleModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: ScheduleModeBenchmark <source> [workers]");
+            return;
+        }
+        Path source = Paths.get(args[0]).toAbsolutePath().normalize();
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        ConfigurationLoaderService configuration = new ConfigurationLoaderService();
+
+        for (ScheduleMode mode : ScheduleMode.values()) {
+            System.out.printf("Drop the page cache, then press Enter to run the %s schedule.%n", mode);
+            System.in.read();
+            IngestReport report = copy(configuration, source, mode, workers);
+            System.out.printf("%-8s %8.0f files/s %8.1f MB/s  %s%n%s%n", mode, report.filesPerSecond(),
+                    report.megabytesPerSecond(), report.summary(), report.stageSummary());
+        }
+    }
+
+    private static IngestReport copy(ConfigurationLoaderService configuration, Path source, ScheduleMode mode,
+            int workers) throws Exception {
+        Path workspace = Files.createTempDirectory("miiv_benchmark_workspace");
+        try {
+            IngestOptions options = new IngestOptions();
+            options.setScheduleMode(mode);
+            options.setWorkers(workers);
+            OperationJournal journal = OperationJournal.start(workspace, IngestOperation.COPY, source);
+            try {
+                SchemeRouter router = new SchemeRouter(configuration.getRepositoryScheme(), workspace);
+                return new IngestEngine(router, workspace, IngestOperation.COPY, options, journal).run(source);
+            } finally {
+                journal.release();
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(workspace)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.alphaindiamike.miiv.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.alphaindiamike.miiv.privatelib.functions.PerceptualHashFunctionsLib;
+import com.alphaindiamike.miiv.services.dupes.MultiIndexHashTable;
+
+/**
+ * Compares similarity queries on a {@link MultiIndexHashTable} with a linear scan over the same hashes.
+ * Images are simulated as random 64-bit hashes, a share of them near copies of an earlier one.
+ * Not part of the test suite; run it after mvn test-compile:
+ *
+ * <pre>
+ * mvn -q dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *     com.alphaindiamike.miiv.benchmark.SimilarityIndexBenchmark [images] [queries] [radius]
+ * </pre>
+ */
+public class SimilarityIndexBenchmark {
+
+    public static void main(String[] args) {
+        int images = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int radius = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        Random random = new Random(1);
+        long[] hashes = new long[images];
+        for (int i = 0; i < images; i++) {
+            hashes[i] = i > 0 && i % 10 == 0 ? flip(hashes[i - 1], 1 + random.nextInt(radius), random) : random.nextLong();
+        }
+
+        long start = System.nanoTime();
+        MultiIndexHashTable index = new MultiIndexHashTable(hashes);
+        System.out.printf("%d images, radius %d: index built in %d ms%n", images, radius,
+                (System.nanoTime() - start) / 1_000_000);
+
+        for (int round = 1; round <= 3; round++) {
+            LongAdder found = new LongAdder();
+            start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                index.search(hashes[q * (images / queries)], radius, id -> found.increment());
+            }
+            long indexNanos = System.nanoTime() - start;
+
+            long scanned = 0;
+            start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                long query = hashes[q * (images / queries)];
+                for (long hash : hashes) {
+                    if (PerceptualHashFunctionsLib.distance(query, hash) <= radius) {
+                        scanned++;
+                    }
+                }
+            }
+            long scanNanos = System.nanoTime() - start;
+            System.out.printf("round %d: multi-index %.1f us/query, linear scan %.1f us/query, %d = %d matches%n", round,
+                    indexNanos / 1000.0 / queries, scanNanos / 1000.0 / queries, found.sum(), scanned);
+        }
+    }
+
+    private static long flip(long hash, int bits, Random random) {
+        for (int i = 0; i < bits; i++) {
+            hash ^= 1L << random.nextInt(64);
+        }
+        return hash;
+    }
+}
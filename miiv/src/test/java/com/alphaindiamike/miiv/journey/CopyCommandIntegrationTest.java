@@ -0,0 +1,489 @@
+package com.alphaindiamike.miiv.journey;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.alphaindiamike.miiv.App;
+import com.alphaindiamike.miiv.model.filesystem.FileEntity;
+import com.alphaindiamike.miiv.model.filesystem.FileEntityDAO;
+import com.alphaindiamike.miiv.model.filesystem.SqliteFileEntityDAO;
+import com.alphaindiamike.miiv.privatelib.functions.DatabaseFunctionsLib;
+import com.alphaindiamike.miiv.services.ApplicationService;
+import com.alphaindiamike.miiv.services.ConfigurationLoaderService;
+import com.alphaindiamike.miiv.services.GlobalSettingsService;
+import com.alphaindiamike.miiv.services.ingest.IngestEngine;
+import com.alphaindiamike.miiv.services.ingest.IngestOperation;
+import com.alphaindiamike.miiv.services.ingest.IngestOptions;
+import com.alphaindiamike.miiv.services.ingest.IngestReport;
+import com.alphaindiamike.miiv.services.ingest.OperationJournal;
+import com.alphaindiamike.miiv.services.ingest.RateLimits;
+import com.alphaindiamike.miiv.services.ingest.SchemeRouter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CopyCommandIntegrationTest {
+	private AnnotationConfigApplicationContext context;
+    private ApplicationService applicationService;
+    private Path workspaceDirectory;
+    private Path sourceDirectory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        context = new AnnotationConfigApplicationContext(App.class);
+        applicationService = context.getBean(ApplicationService.class);
+
+        workspaceDirectory = Files.createTempDirectory("test_workspace");
+        sourceDirectory = Files.createTempDirectory("test_source");
+
+        // Remove workspace setting for a clean shot
+        GlobalSettingsService glbSet = context.getBean(GlobalSettingsService.class);
+        glbSet.deleteSetting("workspace_dir");
+        applicationService.performAction(new String[]{"init", workspaceDirectory.toString()});
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        context.close();
+        deleteRecursively(workspaceDirectory);
+        deleteRecursively(sourceDirectory);
+    }
+
+    private void deleteRecursively(Path directory) throws Exception {
+        Files.walk(directory)
+             .sorted((o1, o2) -> -o1.compareTo(o2)) // Sort in reverse order to delete contents before the directory
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    @Test
+    public void testCopyRoutesFilesIntoSchemeFolders() throws Exception {
+        Path nested = Files.createDirectories(sourceDirectory.resolve("a").resolve("b"));
+        Files.writeString(sourceDirectory.resolve("backup.zip"), "zip content");
+        Files.writeString(nested.resolve("notes.unknown"), "other content");
+
+        applicationService.performAction(new String[]{"copy", sourceDirectory.toString(), "--workers", "2"});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        assertEquals("zip content", Files.readString(workspaceDirectory.resolve("05 Backups").resolve("backup.zip")));
+        assertEquals("other content", Files.readString(workspaceDirectory.resolve("99 Archive").resolve("notes.unknown")));
+        assertTrue(Files.exists(sourceDirectory.resolve("backup.zip")), "Copy must leave the source untouched");
+    }
+
+    @Test
+    public void testCopyRoutesExtensionlessAndMislabeledFilesByContent() throws Exception {
+        Files.write(sourceDirectory.resolve("scan"), "%PDF-1.4\n%content".getBytes(StandardCharsets.US_ASCII));
+        Files.write(sourceDirectory.resolve("archive.txt"), new byte[]{'P', 'K', 3, 4, 0, 0, 0, 0});
+        Files.writeString(sourceDirectory.resolve("notes.pdf"), "not a pdf at all");
+
+        applicationService.performAction(new String[]{"copy", sourceDirectory.toString()});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        Path idCard = workspaceDirectory.resolve("01 Personal").resolve("01 Personal Documents")
+                .resolve("01 My Documents").resolve("01 ID Card");
+        assertTrue(Files.exists(idCard.resolve("scan")), "an extensionless pdf goes where pdf files go");
+        assertTrue(Files.exists(workspaceDirectory.resolve("05 Backups").resolve("archive.txt")),
+                "a zip archive named .txt goes where zip files go");
+        assertTrue(Files.exists(idCard.resolve("notes.pdf")), "content matching no signature keeps its extension");
+    }
+
+    @Test
+    public void testCopyRoutesFilesNamedAfterATemplateTypeToItsNode() throws Exception {
+        Files.writeString(sourceDirectory.resolve("Internet_Bill-2023.pdf"), "internet");
+        Files.writeString(sourceDirectory.resolve("internetworking.pdf"), "not a template type");
+
+        applicationService.performAction(new String[]{"copy", sourceDirectory.toString()});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        Path personalDocuments = workspaceDirectory.resolve("01 Personal").resolve("01 Personal Documents");
+        assertTrue(Files.exists(personalDocuments.resolve("04 Rental Documents").resolve("Internet_Bill-2023.pdf")));
+        assertTrue(Files.exists(personalDocuments.resolve("01 My Documents").resolve("01 ID Card").resolve("internetworking.pdf")),
+                "keywords match whole words only");
+    }
+
+    @Test
+    public void testCopyWithVirtualIoExecutor() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            Files.writeString(Files.createDirectories(sourceDirectory.resolve("d" + i % 5)).resolve("f" + i + ".zip"), "" + i);
+        }
+
+        applicationService.performAction(new String[]{"copy", sourceDirectory.toString(), "--io", "virtual", "--io-permits", "8"});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        try (Stream<Path> backups = Files.list(workspaceDirectory.resolve("05 Backups"))) {
+            assertEquals(50, backups.count());
+        }
+    }
+
+    @Test
+    public void testCopyWithinRateLimits() throws Exception {
+        Files.writeString(sourceDirectory.resolve("limited.zip"), "limited");
+
+        applicationService.performAction(new String[]{"copy", sourceDirectory.toString(), "--limit-mb", "1", "--limit-files", "100"});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        assertEquals("limited", Files.readString(workspaceDirectory.resolve("05 Backups").resolve("limited.zip")));
+
+        applicationService.performAction(new String[]{"throttle", "--limit-files", "5"});
+        assertTrue(applicationService.getResponse().startsWith("No copy or move is running"), applicationService.getResponse());
+    }
+
+    @Test
+    public void testCopyWithPhysicalSchedule() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            Path directory = Files.createDirectories(sourceDirectory.resolve("d" + i % 2));
+            Files.writeString(directory.resolve("f" + i + (i % 2 == 0 ? ".zip" : ".unknown")), "" + i);
+        }
+
+        applicationService.performAction(new String[]{"copy", sourceDirectory.toString(), "--schedule", "physical"});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        assertTrue(applicationService.getResponse().contains("sweep"), applicationService.getResponse());
+        assertEquals("4", Files.readString(workspaceDirectory.resolve("05 Backups").resolve("f4.zip")));
+        assertEquals("5", Files.readString(workspaceDirectory.resolve("99 Archive").resolve("f5.unknown")));
+    }
+
+    @Test
+    public void testScheduleIsStoredPerSourceDevice() throws Exception {
+        try {
+            applicationService.performAction(new String[]{"schedule", sourceDirectory.toString(), "physical"});
+            assertTrue(applicationService.getResponse().endsWith("physical order."), applicationService.getResponse());
+        } finally {
+            applicationService.performAction(new String[]{"schedule", sourceDirectory.toString(), "default"});
+        }
+        assertTrue(applicationService.getResponse().endsWith("walk order."), applicationService.getResponse());
+    }
+
+    @Test
+    public void testCopyKeepsBothFilesOnNameCollision() throws Exception {
+        Files.writeString(Files.createDirectories(sourceDirectory.resolve("x")).resolve("same.zip"), "first");
+        Files.writeString(Files.createDirectories(sourceDirectory.resolve("y")).resolve("same.zip"), "second");
+
+        applicationService.performAction(new String[]{"copy", sourceDirectory.toString()});
+
+        Path backups = workspaceDirectory.resolve("05 Backups");
+        assertTrue(Files.exists(backups.resolve("same.zip")));
+        assertTrue(Files.exists(backups.resolve("same (1).zip")));
+    }
+
+    @Test
+    public void testCopyNeverReplacesATakenTargetName() throws Exception {
+        Files.writeString(sourceDirectory.resolve("taken.zip"), "new content");
+        // A name the free-name check cannot see, as if it was taken right after the check
+        Path dangling = workspaceDirectory.resolve("05 Backups").resolve("taken.zip");
+        Files.createSymbolicLink(dangling, workspaceDirectory.resolve("missing.zip"));
+
+        applicationService.performAction(new String[]{"copy", sourceDirectory.toString()});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        assertTrue(Files.isSymbolicLink(dangling), "the existing entry is kept");
+        assertEquals("new content", Files.readString(dangling.resolveSibling("taken (1).zip")));
+    }
+
+    @Test
+    public void testCopyWithDedupSkipsRepeatedContent() throws Exception {
+        Files.writeString(Files.createDirectories(sourceDirectory.resolve("x")).resolve("one.zip"), "same content");
+        Files.writeString(Files.createDirectories(sourceDirectory.resolve("y")).resolve("two.zip"), "same content");
+        Files.writeString(sourceDirectory.resolve("three.zip"), "other content");
+
+        applicationService.performAction(new String[]{"copy", sourceDirectory.toString(), "--dedup", "--hashers", "2"});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        try (Stream<Path> backups = Files.list(workspaceDirectory.resolve("05 Backups"))) {
+            assertEquals(2, backups.count());
+        }
+        assertTrue(applicationService.getResponse().contains("1 duplicates skipped"), applicationService.getResponse());
+        assertTrue(applicationService.getResponse().contains("Stage queues"), applicationService.getResponse());
+    }
+
+    @Test
+    public void testCopyWithDedupSkipsContentAlreadyInWorkspace() throws Exception {
+        Files.writeString(workspaceDirectory.resolve("05 Backups").resolve("placed.zip"), "placed content");
+        applicationService.performAction(new String[]{"index"});
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        assertTrue(applicationService.getResponse().startsWith("Indexed 1 workspace files"), applicationService.getResponse());
+
+        Files.writeString(sourceDirectory.resolve("renamed.zip"), "placed content");
+        Files.writeString(sourceDirectory.resolve("new.zip"), "new content");
+        applicationService.performAction(new String[]{"copy", sourceDirectory.toString(), "--dedup"});
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        assertTrue(applicationService.getResponse().contains("1 duplicates skipped"), applicationService.getResponse());
+
+        // Files placed by a --dedup run are indexed as they are written
+        applicationService.performAction(new String[]{"copy", sourceDirectory.toString(), "--dedup"});
+        assertTrue(applicationService.getResponse().contains("2 duplicates skipped"), applicationService.getResponse());
+        try (Stream<Path> backups = Files.list(workspaceDirectory.resolve("05 Backups"))) {
+            assertEquals(2, backups.count());
+        }
+    }
+
+    @Test
+    public void testCopyWithDedupFindsFilesPlacedWithoutDedup() throws Exception {
+        Files.writeString(sourceDirectory.resolve("placed.zip"), "placed content");
+        applicationService.performAction(new String[]{"copy", sourceDirectory.toString()});
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+
+        Files.move(sourceDirectory.resolve("placed.zip"), sourceDirectory.resolve("renamed.zip"));
+        applicationService.performAction(new String[]{"copy", sourceDirectory.toString(), "--dedup"});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        assertTrue(applicationService.getResponse().contains("1 duplicates skipped"), applicationService.getResponse());
+        assertFalse(Files.exists(workspaceDirectory.resolve("05 Backups").resolve("renamed.zip")));
+    }
+
+    @Test
+    public void testCopyWithChunkVersionsStoresVersionsAndExportRebuildsThem() throws Exception {
+        byte[] version = new byte[256 * 1024];
+        new Random(2).nextBytes(version);
+        Files.write(Files.createDirectories(sourceDirectory.resolve("2023")).resolve("cv.docx"), version);
+        version[100_000] ^= 1;
+        Files.write(Files.createDirectories(sourceDirectory.resolve("2024")).resolve("cv.docx"), version);
+        Files.writeString(sourceDirectory.resolve("backup.zip"), "zip content");
+
+        applicationService.performAction(new String[]{"copy", sourceDirectory.toString(), "--chunk-versions"});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        assertTrue(applicationService.getResponse().contains("2 stored as chunks"), applicationService.getResponse());
+        Path cvs = workspaceDirectory.resolve("01 Personal").resolve("01 Personal Documents")
+                .resolve("01 My Documents").resolve("08 CVs");
+        assertTrue(Files.exists(cvs.resolve("cv.docx.miivchunks")));
+        assertTrue(Files.exists(cvs.resolve("cv (1).docx.miivchunks")));
+        assertTrue(Files.exists(workspaceDirectory.resolve("05 Backups").resolve("backup.zip")),
+                "Folders without a content routine keep plain files");
+
+        Path exported = sourceDirectory.resolve("exported");
+        applicationService.performAction(new String[]{"export", cvs.toString(), exported.toString()});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        assertTrue(applicationService.getResponse().startsWith("Exported 2 files"), applicationService.getResponse());
+        byte[] first = Files.readAllBytes(exported.resolve("cv.docx"));
+        byte[] second = Files.readAllBytes(exported.resolve("cv (1).docx"));
+        assertEquals(version.length, first.length);
+        assertTrue(Arrays.equals(version, first) ^ Arrays.equals(version, second),
+                "Exactly one export holds the edited version");
+    }
+
+    @Test
+    public void testCopyWithDateVersionsNamesVersionsAfterTheirDocumentDate() throws Exception {
+        Files.writeString(sourceDirectory.resolve("cv.docx"), "first version");
+        Files.setLastModifiedTime(sourceDirectory.resolve("cv.docx"),
+                FileTime.from(LocalDate.of(2021, 3, 4).atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant()));
+        Files.writeString(sourceDirectory.resolve("2022-01-02 letter.docx"), "already dated");
+        Files.setLastModifiedTime(sourceDirectory.resolve("2022-01-02 letter.docx"),
+                FileTime.from(LocalDate.of(2022, 1, 2).atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant()));
+        Files.writeString(sourceDirectory.resolve("backup.zip"), "zip content");
+
+        applicationService.performAction(new String[]{"copy", sourceDirectory.toString(), "--date-versions"});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        Path cvs = workspaceDirectory.resolve("01 Personal").resolve("01 Personal Documents")
+                .resolve("01 My Documents").resolve("08 CVs");
+        assertTrue(Files.exists(cvs.resolve("2021-03-04 cv.docx")), "without metadata the modification date is used");
+        assertTrue(Files.exists(cvs.resolve("2022-01-02 letter.docx")), "names starting with their date are kept");
+        assertTrue(Files.exists(workspaceDirectory.resolve("05 Backups").resolve("backup.zip")),
+                "folders without a content routine keep the names");
+        try (FileEntityDAO catalog = SqliteFileEntityDAO.open(workspaceDirectory)) {
+            assertEquals(3, catalog.count());
+            FileEntity cv = catalog.findById("01 Personal/01 Personal Documents/01 My Documents/08 CVs/2021-03-04 cv.docx");
+            assertNotNull(cv, "placed files are recorded in the catalog");
+            assertEquals("01 Personal/01 Personal Documents/01 My Documents/08 CVs", cv.getNode());
+            assertEquals("docx", cv.getContentType());
+            assertEquals(LocalDate.of(2021, 3, 4), cv.getDocumentDate());
+            assertNull(catalog.findById("05 Backups/backup.zip").getDocumentDate());
+        }
+    }
+
+    @Test
+    public void testPlanIsExecutedByCopy() throws Exception {
+        Path backups = Files.createDirectories(workspaceDirectory.resolve("05 Backups"));
+        Files.writeString(backups.resolve("taken.zip"), "already in the workspace");
+        Files.writeString(sourceDirectory.resolve("taken.zip"), "new content");
+        Path first = Files.writeString(Files.createDirectories(sourceDirectory.resolve("x")).resolve("twin.zip"), "twin");
+        Path second = Files.writeString(Files.createDirectories(sourceDirectory.resolve("y")).resolve("twin.zip"), "twin");
+        Files.setLastModifiedTime(second, Files.getLastModifiedTime(first));
+        Path planFile = sourceDirectory.getParent().resolve(sourceDirectory.getFileName() + ".plan.gz");
+
+        try {
+            applicationService.performAction(new String[]{"plan", sourceDirectory.toString(), "--out", planFile.toString()});
+
+            assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+            assertTrue(applicationService.getResponse().contains("1 renamed on conflict, 1 duplicates"),
+                    applicationService.getResponse());
+            try (Stream<Path> planned = Files.list(backups)) {
+                assertEquals(1, planned.count(), "Planning must not touch the workspace");
+            }
+
+            applicationService.performAction(new String[]{"copy", "--plan", planFile.toString()});
+
+            assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+            assertEquals("new content", Files.readString(backups.resolve("taken (1).zip")));
+            assertEquals("twin", Files.readString(backups.resolve("twin.zip")));
+            assertFalse(Files.exists(backups.resolve("twin (1).zip")));
+            assertTrue(applicationService.getResponse().contains("1 duplicates skipped"), applicationService.getResponse());
+        } finally {
+            Files.deleteIfExists(planFile);
+        }
+    }
+
+    @Test
+    public void testCopyWithLinkHardLinksFilesOnTheSameVolume() throws Exception {
+        Path source = Files.writeString(sourceDirectory.resolve("linked.zip"), "linked content");
+
+        applicationService.performAction(new String[]{"copy", sourceDirectory.toString(), "--link"});
+
+        Path target = workspaceDirectory.resolve("05 Backups").resolve("linked.zip");
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        assertTrue(Files.isSameFile(source, target), "Same-volume link ingest should not duplicate the file");
+        assertTrue(applicationService.getResponse().contains("1 hard-linked"), applicationService.getResponse());
+    }
+
+    @Test
+    public void testCopyResumeContinuesInterruptedRun() throws Exception {
+        Files.writeString(Files.createDirectories(sourceDirectory.resolve("late")).resolve("resumed.zip"), "resumed");
+        // A run that stopped before its first directory listing reached the journal
+        OperationJournal journal = OperationJournal.start(workspaceDirectory.toAbsolutePath(), IngestOperation.COPY,
+                sourceDirectory.toAbsolutePath());
+        journal.close();
+        journal.release();
+
+        applicationService.performAction(new String[]{"copy", "--resume"});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        assertEquals("resumed", Files.readString(workspaceDirectory.resolve("05 Backups").resolve("resumed.zip")));
+
+        // The resumed run is finished and not offered again
+        applicationService.performAction(new String[]{"copy", "--resume"});
+        assertTrue(applicationService.getErrorResponse().startsWith("Nothing to resume"));
+    }
+
+    @Test
+    public void testCopyResumeChecksTheTargetsOfFilesInFlight() throws Exception {
+        Path done = Files.writeString(sourceDirectory.resolve("done.zip"), "done content");
+        Path partial = Files.writeString(sourceDirectory.resolve("partial.zip"), "partial content");
+        Path foreign = Files.writeString(sourceDirectory.resolve("foreign.zip"), "foreign content");
+        Path backups = workspaceDirectory.resolve("05 Backups");
+        // A run stopped after renaming one file into place, before journaling it as done; the other
+        // targets were taken by files created after the run stopped
+        Files.writeString(backups.resolve("done.zip"), "done content");
+        Files.writeString(backups.resolve("partial.zip"), "part");
+        Files.writeString(backups.resolve("foreign.zip"), "FOREIGN CONTENT");
+        OperationJournal journal = OperationJournal.start(workspaceDirectory.toAbsolutePath(), IngestOperation.COPY,
+                sourceDirectory.toAbsolutePath());
+        journal.close();
+        journal.release();
+        try (Connection connection = DatabaseFunctionsLib.openWorkspaceDatabase(workspaceDirectory.toAbsolutePath());
+                PreparedStatement insert = connection.prepareStatement("INSERT INTO journal_files "
+                        + "(run_id, source, target, size, state) VALUES (?, ?, ?, ?, 1)");
+                Statement statement = connection.createStatement()) {
+            for (Path source : List.of(done, partial, foreign)) {
+                insert.setLong(1, journal.getRunId());
+                insert.setString(2, source.toAbsolutePath().toString());
+                insert.setString(3, backups.resolve(source.getFileName()).toAbsolutePath().toString());
+                insert.setLong(4, Files.size(source));
+                insert.executeUpdate();
+            }
+            statement.executeUpdate("UPDATE journal_dirs SET walked = 1 WHERE run_id = " + journal.getRunId());
+        }
+
+        applicationService.performAction(new String[]{"copy", "--resume"});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        assertEquals("done content", Files.readString(backups.resolve("done.zip")));
+        assertFalse(Files.exists(backups.resolve("done (1).zip")), "a completed file is not copied again");
+        assertEquals("part", Files.readString(backups.resolve("partial.zip")), "files of others are never removed");
+        assertEquals("partial content", Files.readString(backups.resolve("partial (1).zip")));
+        assertEquals("FOREIGN CONTENT", Files.readString(backups.resolve("foreign.zip")),
+                "a file of the same size is compared by content");
+        assertEquals("foreign content", Files.readString(backups.resolve("foreign (1).zip")));
+    }
+
+    @Test
+    public void testCopyStoppedAfterTheWalkStaysResumable() throws Exception {
+        int count = 6;
+        for (int i = 0; i < count; i++) {
+            Files.writeString(sourceDirectory.resolve("file" + i + ".zip"), "content " + i);
+        }
+        Path workspace = workspaceDirectory.toAbsolutePath();
+        Path source = sourceDirectory.toAbsolutePath();
+        IngestOptions options = new IngestOptions();
+        // One file per second: the walk is journaled long before the last file is written
+        options.setRateLimits(new RateLimits(0, 1));
+        SchemeRouter router = new SchemeRouter(context.getBean(ConfigurationLoaderService.class).getRepositoryScheme(),
+                workspace);
+        OperationJournal journal = OperationJournal.start(workspace, IngestOperation.COPY, source);
+        ExecutorService runner = Executors.newSingleThreadExecutor();
+        try {
+            IngestEngine engine = new IngestEngine(router, workspace, IngestOperation.COPY, options, journal);
+            Future<IngestReport> run = runner.submit(() -> engine.run(source));
+            awaitJournaledFiles(journal.getRunId(), count);
+            // As on Ctrl-C
+            engine.stop(0);
+            run.get();
+        } finally {
+            runner.shutdown();
+            journal.release();
+        }
+        assertTrue(OperationJournal.findUnfinishedRun(workspace, IngestOperation.COPY).isPresent(),
+                "a stopped run is offered for resume");
+
+        applicationService.performAction(new String[]{"copy", "--resume"});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        Path backups = workspaceDirectory.resolve("05 Backups");
+        for (int i = 0; i < count; i++) {
+            assertEquals("content " + i, Files.readString(backups.resolve("file" + i + ".zip")));
+        }
+        try (Stream<Path> placed = Files.list(backups)) {
+            assertEquals(count, placed.count());
+        }
+    }
+
+    private void awaitJournaledFiles(long runId, int count) throws Exception {
+        try (Connection connection = DatabaseFunctionsLib.openWorkspaceDatabase(workspaceDirectory.toAbsolutePath());
+                PreparedStatement select = connection.prepareStatement(
+                        "SELECT COUNT(*) FROM journal_files WHERE run_id = ?")) {
+            select.setLong(1, runId);
+            for (int attempt = 0; attempt < 200; attempt++) {
+                try (ResultSet rs = select.executeQuery()) {
+                    if (rs.getInt(1) == count) {
+                        return;
+                    }
+                }
+                Thread.sleep(50);
+            }
+        }
+        throw new AssertionError("The listing of the source never reached the journal");
+    }
+
+    @Test
+    public void testCopyRejectsSourceInsideWorkspace() throws Exception {
+        applicationService.performAction(new String[]{"copy", workspaceDirectory.resolve("05 Backups").toString()});
+
+        assertFalse(applicationService.getIsPositiveResponse());
+        assertTrue(applicationService.getErrorResponse().startsWith("The provided source lies inside the workspace."));
+    }
+}
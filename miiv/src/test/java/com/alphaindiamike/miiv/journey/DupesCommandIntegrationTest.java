@@ -0,0 +1,156 @@
+package com.alphaindiamike.miiv.journey;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.alphaindiamike.miiv.App;
+import com.alphaindiamike.miiv.services.ApplicationService;
+import com.alphaindiamike.miiv.services.GlobalSettingsService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DupesCommandIntegrationTest {
+	private AnnotationConfigApplicationContext context;
+    private ApplicationService applicationService;
+    private Path workspaceDirectory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        context = new AnnotationConfigApplicationContext(App.class);
+        applicationService = context.getBean(ApplicationService.class);
+
+        workspaceDirectory = Files.createTempDirectory("test_workspace");
+
+        // Remove workspace setting for a clean shot
+        GlobalSettingsService glbSet = context.getBean(GlobalSettingsService.class);
+        glbSet.deleteSetting("workspace_dir");
+        applicationService.performAction(new String[]{"init", workspaceDirectory.toString()});
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        context.close();
+        Files.walk(workspaceDirectory)
+             .sorted((o1, o2) -> -o1.compareTo(o2)) // Sort in reverse order to delete contents before the directory
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    private static BufferedImage picture(int width, int height, Color spot) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(spot);
+        graphics.fillOval(width / 4, height / 4, width / 2, height / 3);
+        graphics.fillRect(0, height * 3 / 4, width / 3, height / 4);
+        graphics.dispose();
+        return image;
+    }
+
+    @Test
+    public void testDupesReportsFilesWithEqualContent() throws Exception {
+        Path backups = workspaceDirectory.resolve("05 Backups");
+        Files.writeString(backups.resolve("one.zip"), "same content");
+        Files.writeString(workspaceDirectory.resolve("99 Archive").resolve("two.zip"), "same content");
+        Files.writeString(backups.resolve("three.zip"), "diff content");
+
+        applicationService.performAction(new String[]{"dupes"});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        String response = applicationService.getResponse();
+        assertTrue(response.startsWith("Found 1 groups of duplicate files (2 files)"), response);
+        assertTrue(response.contains("one.zip") && response.contains("two.zip"), response);
+        assertFalse(response.contains("three.zip"), response);
+    }
+
+    @Test
+    public void testDupesOutStreamsGroupsAsJsonLinesAndCsv() throws Exception {
+        Path backups = workspaceDirectory.resolve("05 Backups");
+        Files.writeString(backups.resolve("one.zip"), "same content");
+        Files.writeString(workspaceDirectory.resolve("99 Archive").resolve("two,too.zip"), "same content");
+        Files.writeString(backups.resolve("three.zip"), "diff content");
+        Path output = Files.createTempDirectory("dupes_out");
+        try {
+            Path jsonLines = output.resolve("dupes.jsonl");
+            applicationService.performAction(new String[]{"dupes", "--out", jsonLines.toString()});
+
+            assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+            String response = applicationService.getResponse();
+            assertTrue(response.startsWith("Found 1 groups of duplicate files (2 files)"), response);
+            assertFalse(response.contains("one.zip"), response);
+            List<String> lines = Files.readAllLines(jsonLines);
+            assertEquals(1, lines.size(), lines.toString());
+            JsonNode group = new ObjectMapper().readTree(lines.get(0));
+            assertEquals(12, group.get("size").asLong());
+            assertEquals("sha-256", group.get("algorithm").asText());
+            assertEquals(2, group.get("files").size());
+            assertTrue(group.get("files").get(0).asText().endsWith("one.zip"), lines.get(0));
+
+            Path csv = output.resolve("dupes.csv");
+            applicationService.performAction(new String[]{"dupes", "--out", csv.toString()});
+
+            assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+            lines = Files.readAllLines(csv);
+            assertEquals(3, lines.size(), lines.toString());
+            assertEquals("group,size,algorithm,digest,path", lines.get(0));
+            assertTrue(lines.get(1).startsWith("1,12,sha-256,") && lines.get(1).endsWith("one.zip"), lines.get(1));
+            assertTrue(lines.get(2).endsWith("two,too.zip\""), lines.get(2));
+        } finally {
+            Files.walk(output)
+                 .sorted((o1, o2) -> -o1.compareTo(o2))
+                 .map(Path::toFile)
+                 .forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void testDupesSimilarReportsResizedImages() throws Exception {
+        Path idCard = workspaceDirectory.resolve("01 Personal").resolve("01 Personal Documents")
+                .resolve("01 My Documents").resolve("01 ID Card");
+        Files.createDirectories(idCard);
+        BufferedImage scan = picture(600, 400, Color.BLUE);
+        ImageIO.write(scan, "png", idCard.resolve("scan.png").toFile());
+        BufferedImage smaller = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = smaller.createGraphics();
+        graphics.drawImage(scan, 0, 0, 300, 200, null);
+        graphics.dispose();
+        ImageIO.write(smaller, "jpg", idCard.resolve("scan-small.jpg").toFile());
+
+        applicationService.performAction(new String[]{"dupes", "--similar"});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        String response = applicationService.getResponse();
+        assertTrue(response.startsWith("Found 1 groups of similar images (2 files) among 2 images"), response);
+    }
+
+    @Test
+    public void testDistanceRequiresSimilar() {
+        applicationService.performAction(new String[]{"dupes", "--distance", "6"});
+
+        assertFalse(applicationService.getIsPositiveResponse());
+    }
+
+    @Test
+    public void testOutIsNotAcceptedWithSimilar() {
+        applicationService.performAction(new String[]{"dupes", "--similar", "--out", "similar.jsonl"});
+
+        assertFalse(applicationService.getIsPositiveResponse());
+    }
+}
@@ -0,0 +1,116 @@
+package com.alphaindiamike.miiv.journey;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.alphaindiamike.miiv.App;
+import com.alphaindiamike.miiv.services.ApplicationService;
+import com.alphaindiamike.miiv.services.GlobalSettingsService;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MoveCommandIntegrationTest {
+	private AnnotationConfigApplicationContext context;
+    private ApplicationService applicationService;
+    private Path workspaceDirectory;
+    private Path sourceDirectory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        context = new AnnotationConfigApplicationContext(App.class);
+        applicationService = context.getBean(ApplicationService.class);
+
+        workspaceDirectory = Files.createTempDirectory("test_workspace");
+        sourceDirectory = Files.createTempDirectory("test_source");
+
+        // Remove workspace setting for a clean shot
+        GlobalSettingsService glbSet = context.getBean(GlobalSettingsService.class);
+        glbSet.deleteSetting("workspace_dir");
+        applicationService.performAction(new String[]{"init", workspaceDirectory.toString()});
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        context.close();
+        deleteRecursively(workspaceDirectory);
+        deleteRecursively(sourceDirectory);
+    }
+
+    private void deleteRecursively(Path directory) throws Exception {
+        Files.walk(directory)
+             .sorted((o1, o2) -> -o1.compareTo(o2)) // Sort in reverse order to delete contents before the directory
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    @Test
+    public void testMoveRenamesFilesAndRemovesEmptiedDirectories() throws Exception {
+        Path nested = Files.createDirectories(sourceDirectory.resolve("a").resolve("b"));
+        Files.writeString(nested.resolve("backup.zip"), "zip content");
+        Files.writeString(sourceDirectory.resolve("notes.unknown"), "other content");
+
+        applicationService.performAction(new String[]{"move", sourceDirectory.toString()});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        assertEquals("zip content", Files.readString(workspaceDirectory.resolve("05 Backups").resolve("backup.zip")));
+        assertEquals("other content", Files.readString(workspaceDirectory.resolve("99 Archive").resolve("notes.unknown")));
+        assertFalse(Files.exists(sourceDirectory.resolve("a")), "Emptied source directories should be removed");
+        assertTrue(Files.exists(sourceDirectory), "The source root itself is kept");
+    }
+
+    @Test
+    public void testMoveKeepsBothFilesOnNameCollision() throws Exception {
+        Files.writeString(workspaceDirectory.resolve("05 Backups").resolve("same.zip"), "already there");
+        Files.writeString(sourceDirectory.resolve("same.zip"), "incoming");
+
+        applicationService.performAction(new String[]{"move", sourceDirectory.toString()});
+
+        Path backups = workspaceDirectory.resolve("05 Backups");
+        assertEquals("already there", Files.readString(backups.resolve("same.zip")));
+        assertEquals("incoming", Files.readString(backups.resolve("same (1).zip")));
+    }
+
+    @Test
+    public void testMoveWithChunkVersionsDeletesStoredFilesAndTheirDuplicates() throws Exception {
+        Files.writeString(Files.createDirectories(sourceDirectory.resolve("x")).resolve("cv.docx"), "first version");
+        Files.writeString(Files.createDirectories(sourceDirectory.resolve("y")).resolve("cv.docx"), "first version");
+        Files.writeString(Files.createDirectories(sourceDirectory.resolve("z")).resolve("cv.docx"), "second version");
+
+        applicationService.performAction(new String[]{"move", sourceDirectory.toString(), "--chunk-versions",
+                "--delete-duplicates"});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        assertTrue(applicationService.getResponse().contains("2 stored as chunks"), applicationService.getResponse());
+        assertTrue(applicationService.getResponse().contains("1 duplicates skipped"), applicationService.getResponse());
+        try (Stream<Path> left = Files.walk(sourceDirectory)) {
+            assertEquals(1, left.count(), "Only the source root is left");
+        }
+    }
+
+    @Test
+    public void testMoveDeletesDuplicatesOfMovedFiles() throws Exception {
+        Files.writeString(Files.createDirectories(sourceDirectory.resolve("x")).resolve("one.zip"), "same content");
+        Files.writeString(Files.createDirectories(sourceDirectory.resolve("y")).resolve("two.zip"), "same content");
+        Files.writeString(sourceDirectory.resolve("three.zip"), "diff content");
+
+        applicationService.performAction(new String[]{"move", sourceDirectory.toString(), "--delete-duplicates"});
+
+        assertTrue(applicationService.getIsPositiveResponse(), applicationService.getErrorResponse());
+        assertTrue(applicationService.getResponse().contains("1 duplicates skipped"), applicationService.getResponse());
+        try (Stream<Path> backups = Files.list(workspaceDirectory.resolve("05 Backups"))) {
+            assertEquals(2, backups.count());
+        }
+        try (Stream<Path> left = Files.list(sourceDirectory)) {
+            assertEquals(0, left.count(), "The duplicate and its emptied directory should be gone");
+        }
+    }
+}
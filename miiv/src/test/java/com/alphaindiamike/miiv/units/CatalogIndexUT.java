@@ -0,0 +1,159 @@
+package com.alphaindiamike.miiv.units;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.alphaindiamike.miiv.model.filesystem.CatalogIndex;
+import com.alphaindiamike.miiv.model.filesystem.FileEntity;
+import com.alphaindiamike.miiv.model.filesystem.FileEntityDAO;
+import com.alphaindiamike.miiv.model.filesystem.SqliteFileEntityDAO;
+import com.alphaindiamike.miiv.privatelib.functions.DatabaseFunctionsLib;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogIndexUT {
+    private Path workspace;
+    private Path indexFile;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        workspace = Files.createTempDirectory("catalog_index_test");
+        indexFile = DatabaseFunctionsLib.workspaceMetadataDirectory(workspace).resolve(CatalogIndex.INDEX_FILE);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.walk(workspace)
+             .sorted((o1, o2) -> -o1.compareTo(o2)) // Sort in reverse order
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    private static byte[] hash(int value) {
+        byte[] hash = new byte[32];
+        hash[0] = (byte) value;
+        hash[1] = (byte) (value >> 8);
+        hash[2] = (byte) (value >> 16);
+        return hash;
+    }
+
+    private static FileEntity file(String path, int hash) {
+        return new FileEntity(path, "01 Bills", 10, 1000, hash(hash), "pdf", null, 2000);
+    }
+
+    private static long[] sorted(long[] ids) {
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    @Test
+    void testPathsAndHashesAreLookedUpInTheIndex() throws Exception {
+        long a;
+        long b;
+        try (FileEntityDAO catalog = SqliteFileEntityDAO.open(workspace)) {
+            FileEntity first = file("01 Bills/a.pdf", 1);
+            FileEntity second = file("01 Bills/b.pdf", 1);
+            catalog.saveAll(List.of(first, second));
+            a = first.getId();
+            b = second.getId();
+            assertTrue(a > 0 && b > 0 && a != b, "saved files get their ids");
+            assertEquals(a, catalog.idOf("01 Bills/a.pdf"));
+            assertArrayEquals(sorted(new long[]{a, b}), sorted(catalog.idsOf(hash(1))));
+            assertEquals(CatalogIndex.NO_ID, catalog.idOf("01 Bills/missing.pdf"));
+            assertEquals(0, catalog.idsOf(hash(9)).length);
+
+            // New content for b: its id stays and the old hash no longer finds it
+            catalog.save(file("01 Bills/b.pdf", 2));
+            assertEquals(b, catalog.idOf("01 Bills/b.pdf"));
+            assertArrayEquals(new long[]{a}, catalog.idsOf(hash(1)));
+            assertArrayEquals(new long[]{b}, catalog.idsOf(hash(2)));
+            assertEquals(b, catalog.findById("01 Bills/b.pdf").getId());
+            assertTrue(Files.exists(indexFile));
+        }
+
+        try (FileEntityDAO catalog = SqliteFileEntityDAO.open(workspace)) {
+            assertEquals(a, catalog.idOf("01 Bills/a.pdf"), "the index is mapped again as it is");
+            assertArrayEquals(new long[]{b}, catalog.idsOf(hash(2)));
+        }
+
+        Files.write(indexFile, new byte[]{1, 2, 3});
+        try (FileEntityDAO catalog = SqliteFileEntityDAO.open(workspace)) {
+            assertEquals(b, catalog.idOf("01 Bills/b.pdf"), "a damaged index is rebuilt from the catalog");
+            assertArrayEquals(new long[]{a}, catalog.idsOf(hash(1)));
+        }
+    }
+
+    @Test
+    void testIndexIsRebuiltAfterChangesItDidNotSee() throws Exception {
+        try (FileEntityDAO catalog = SqliteFileEntityDAO.open(workspace)) {
+            catalog.save(file("01 Bills/a.pdf", 1));
+        }
+        Path saved = Files.copy(indexFile, workspace.resolve("saved.index"));
+        try (FileEntityDAO catalog = SqliteFileEntityDAO.open(workspace)) {
+            catalog.save(file("01 Bills/b.pdf", 2));
+        }
+        // An index of an earlier state of the catalog
+        Files.copy(saved, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        try (FileEntityDAO catalog = SqliteFileEntityDAO.open(workspace)) {
+            assertNotEquals(CatalogIndex.NO_ID, catalog.idOf("01 Bills/b.pdf"));
+            assertEquals(1, catalog.idsOf(hash(2)).length);
+        }
+    }
+
+    @Test
+    void testIdsFoundInTheIndexAreCheckedAgainstTheCatalog() throws Exception {
+        long a;
+        try (FileEntityDAO catalog = SqliteFileEntityDAO.open(workspace)) {
+            FileEntity first = file("01 Bills/a.pdf", 1);
+            catalog.save(first);
+            catalog.idOf("01 Bills/a.pdf");
+            a = first.getId();
+        }
+        long sequence;
+        try (CatalogIndex index = CatalogIndex.open(indexFile)) {
+            sequence = index.sequence();
+        }
+        // An index of the right sequence which maps another path to the row
+        CatalogIndex.build(indexFile, 2, List.of(new CatalogIndex.Entry(a, "01 Bills/a.pdf", hash(1)),
+                new CatalogIndex.Entry(a, "01 Bills/ghost.pdf", hash(1))), sequence);
+
+        try (FileEntityDAO catalog = SqliteFileEntityDAO.open(workspace)) {
+            assertEquals(a, catalog.idOf("01 Bills/a.pdf"));
+            assertEquals(CatalogIndex.NO_ID, catalog.idOf("01 Bills/ghost.pdf"));
+            assertNull(catalog.findById("01 Bills/ghost.pdf"));
+        }
+    }
+
+    @Test
+    void testTableGrowsAndOtherMappingsFollow() throws Exception {
+        CatalogIndex.build(indexFile, 0, List.of(), 0);
+        try (CatalogIndex writer = CatalogIndex.open(indexFile); CatalogIndex reader = CatalogIndex.open(indexFile)) {
+            long size = Files.size(indexFile);
+            int count = 20_000;
+            List<CatalogIndex.Entry> entries = new ArrayList<>();
+            for (int i = 1; i <= count; i++) {
+                entries.add(new CatalogIndex.Entry(i, "node/file" + i + ".pdf", hash(i % 1000)));
+                if (entries.size() == 1000) {
+                    writer.putAll(entries, i / 1000);
+                    entries.clear();
+                }
+            }
+            assertTrue(Files.size(indexFile) > size, "the table grew");
+            assertEquals(count / 1000, reader.sequence());
+            for (int i = 1; i <= count; i++) {
+                assertEquals(i, reader.idOf("node/file" + i + ".pdf"));
+            }
+            assertEquals(count / 1000, reader.idsOf(hash(7)).length);
+            assertEquals(CatalogIndex.NO_ID, reader.idOf("node/file0.pdf"));
+        }
+    }
+}
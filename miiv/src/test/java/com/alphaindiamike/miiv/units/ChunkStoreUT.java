@@ -0,0 +1,100 @@
+package com.alphaindiamike.miiv.units;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.alphaindiamike.miiv.privatelib.functions.FileTransferFunctionsLib.TransferThrottle;
+import com.alphaindiamike.miiv.services.chunks.ChunkStore;
+import com.alphaindiamike.miiv.services.chunks.ContentDefinedChunker;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkStoreUT {
+    private Path testDirectory;
+    private Path workspace;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        testDirectory = Files.createTempDirectory("chunk_store_test");
+        workspace = Files.createDirectories(testDirectory.resolve("workspace"));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.walk(testDirectory)
+             .sorted((o1, o2) -> -o1.compareTo(o2)) // Sort in reverse order
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    private static List<String> chunksOf(byte[] data) throws Exception {
+        List<String> chunks = new ArrayList<>();
+        ContentDefinedChunker.DEFAULT.split(new ByteArrayInputStream(data), (buffer, offset, length) -> {
+            assertTrue(length <= ContentDefinedChunker.DEFAULT_MAX_SIZE);
+            chunks.add(new String(buffer, offset, length, "ISO-8859-1"));
+        });
+        return chunks;
+    }
+
+    @Test
+    void testInsertionOnlyChangesTheChunksAroundIt() throws Exception {
+        byte[] original = new byte[1 << 20];
+        new Random(11).nextBytes(original);
+        byte[] edited = new byte[original.length + 100];
+        System.arraycopy(original, 0, edited, 0, 500_000);
+        System.arraycopy(original, 500_000, edited, 500_100, original.length - 500_000);
+
+        List<String> before = chunksOf(original);
+        List<String> after = chunksOf(edited);
+        Set<String> shared = new HashSet<>(before);
+        shared.retainAll(after);
+
+        assertEquals(original.length, before.stream().mapToInt(String::length).sum());
+        assertTrue(before.size() > 64 && before.size() < 512, "Chunks: " + before.size());
+        assertTrue(after.size() - shared.size() <= 3, "New chunks: " + (after.size() - shared.size()));
+    }
+
+    @Test
+    void testVersionsShareTheirChunksAndReadBackUnchanged() throws Exception {
+        byte[] document = new byte[512 * 1024];
+        new Random(5).nextBytes(document);
+        Random edits = new Random(6);
+        long stored = 0;
+        try (ChunkStore store = ChunkStore.open(workspace)) {
+            for (int version = 1; version <= 10; version++) {
+                document[edits.nextInt(document.length)] ^= 0x5a;
+                Path source = Files.write(testDirectory.resolve("cv-" + version + ".docx"), document);
+                Path stub = workspace.resolve("cv-" + version + ".docx" + ChunkStore.STUB_EXTENSION);
+
+                stored += store.store(source, stub, TransferThrottle.NONE).newBytes();
+
+                try (InputStream in = store.read(stub)) {
+                    assertArrayEquals(document, in.readAllBytes());
+                }
+            }
+            assertTrue(stored < 2L * document.length, "Stored bytes: " + stored);
+            assertThrows(FileAlreadyExistsException.class, () -> store.store(testDirectory.resolve("cv-1.docx"),
+                    workspace.resolve("cv-1.docx" + ChunkStore.STUB_EXTENSION), TransferThrottle.NONE));
+        }
+
+        try (ChunkStore store = ChunkStore.open(workspace)) {
+            Path exported = testDirectory.resolve("exported.docx");
+            assertEquals(document.length, store.export(workspace.resolve("cv-10.docx" + ChunkStore.STUB_EXTENSION),
+                    exported));
+            assertArrayEquals(document, Files.readAllBytes(exported));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.alphaindiamike.miiv.units;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.alphaindiamike.miiv.privatelib.functions.ContentHashFunctionsLib;
+import com.alphaindiamike.miiv.privatelib.functions.ContentHashFunctionsLib.Algorithm;
+import com.alphaindiamike.miiv.privatelib.functions.Murmur3Hash128;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentHashFunctionsLibUT {
+    private Path testDirectory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        testDirectory = Files.createTempDirectory("hash_test");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.walk(testDirectory)
+             .sorted((o1, o2) -> -o1.compareTo(o2)) // Sort in reverse order
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    private static byte[] murmur(byte[] content) {
+        Murmur3Hash128 hash = new Murmur3Hash128();
+        hash.update(ByteBuffer.wrap(content));
+        return hash.digest();
+    }
+
+    @Test
+    void testMurmurMatchesReferenceValues() {
+        ByteBuffer hello = ByteBuffer.wrap(murmur("hello".getBytes(StandardCharsets.UTF_8))).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(0xcbd8a7b341bd9b02L, hello.getLong());
+        assertEquals(0x5b1e906a48ae1d19L, hello.getLong());
+
+        ByteBuffer empty = ByteBuffer.wrap(murmur(new byte[0]));
+        assertEquals(0, empty.getLong());
+        assertEquals(0, empty.getLong());
+    }
+
+    @Test
+    void testMurmurIsIndependentOfChunking() {
+        byte[] content = new byte[1000];
+        new Random(5).nextBytes(content);
+        Murmur3Hash128 hash = new Murmur3Hash128();
+        for (int position = 0, chunk = 1; position < content.length; position += chunk, chunk = chunk % 23 + 1) {
+            hash.update(ByteBuffer.wrap(content, position, Math.min(chunk, content.length - position)));
+        }
+
+        assertArrayEquals(murmur(content), hash.digest());
+    }
+
+    @Test
+    void testMappedFilesHashLikeTheirContent() throws Exception {
+        byte[] content = new byte[(int) ContentHashFunctionsLib.MAP_THRESHOLD + 12_345];
+        new Random(6).nextBytes(content);
+        Path file = Files.write(testDirectory.resolve("large.bin"), content);
+
+        assertArrayEquals(murmur(content), ContentHashFunctionsLib.hashFile(file, Algorithm.FAST_128));
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(content),
+                ContentHashFunctionsLib.hashFile(file, Algorithm.SHA_256));
+    }
+
+    @Test
+    void testHeadAndTailHashIgnoresTheMiddle() throws Exception {
+        byte[] content = new byte[10_000];
+        new Random(7).nextBytes(content);
+        Path original = Files.write(testDirectory.resolve("original.bin"), content);
+        content[5_000] ^= 1;
+        Path changed = Files.write(testDirectory.resolve("changed.bin"), content);
+
+        byte[] first = ContentHashFunctionsLib.hashHeadAndTail(original, 1024, Algorithm.FAST_128);
+        assertArrayEquals(first, ContentHashFunctionsLib.hashHeadAndTail(original, 1024, Algorithm.FAST_128));
+        assertArrayEquals(first, ContentHashFunctionsLib.hashHeadAndTail(changed, 1024, Algorithm.FAST_128));
+        assertFalse(MessageDigest.isEqual(ContentHashFunctionsLib.hashFile(original, Algorithm.FAST_128),
+                ContentHashFunctionsLib.hashFile(changed, Algorithm.FAST_128)));
+    }
+}
@@ -0,0 +1,106 @@
+package com.alphaindiamike.miiv.units;
+
+import org.junit.jupiter.api.Test;
+
+import com.alphaindiamike.miiv.privatelib.functions.ContentSniffingFunctionsLib;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentSniffingUT {
+
+    private static String sniff(byte[] data) {
+        return ContentSniffingFunctionsLib.sniff(data, data.length);
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] data = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            data[i] = (byte) values[i];
+        }
+        return data;
+    }
+
+    private static byte[] zip(String... names) throws Exception {
+        return zip(null, names);
+    }
+
+    /**
+     * A zip whose entries are stored; the extra field, if any, is given to the first entry.
+     */
+    private static byte[] zip(byte[] extra, String... names) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (String name : names) {
+                byte[] content = (name.equals("mimetype") ? "application/vnd.oasis.opendocument.text"
+                        : "content of " + name).getBytes(StandardCharsets.US_ASCII);
+                ZipEntry entry = new ZipEntry(name);
+                // Stored entries carry their sizes in the local header, as the mimetype entry of ODF does
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(content.length);
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                entry.setCrc(crc.getValue());
+                if (extra != null && name.equals(names[0])) {
+                    entry.setExtra(extra);
+                }
+                zip.putNextEntry(entry);
+                zip.write(content);
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void testSignaturesMatchTheirTypes() {
+        assertEquals("jpg", sniff(bytes(0xff, 0xd8, 0xff, 0xe0, 0, 0x10, 'J', 'F', 'I', 'F')));
+        assertEquals("png", sniff(bytes(0x89, 'P', 'N', 'G', 0x0d, 0x0a, 0x1a, 0x0a, 0, 0)));
+        assertEquals("tiff", sniff(bytes('M', 'M', 0, 0x2a, 0, 0, 0, 8)));
+        assertEquals("pdf", sniff("%PDF-1.7\n%".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals("doc", sniff(bytes(0xd0, 0xcf, 0x11, 0xe0, 0xa1, 0xb1, 0x1a, 0xe1)));
+        assertEquals("avi", sniff("RIFF\u0010\u0000\u0000\u0000AVI LIST".getBytes(StandardCharsets.ISO_8859_1)));
+        assertEquals("mp4", sniff(bytes(0, 0, 0, 0x18, 'f', 't', 'y', 'p', 'i', 's', 'o', 'm')));
+        assertEquals("mov", sniff(bytes(0, 0, 0, 0x14, 'f', 't', 'y', 'p', 'q', 't', ' ', ' ')));
+        assertNull(sniff("plain text".getBytes(StandardCharsets.US_ASCII)));
+        assertNull(sniff(new byte[0]));
+    }
+
+    @Test
+    void testZipArchivesAreToldApartFromOfficeAndOpenDocumentFiles() throws Exception {
+        assertEquals("zip", sniff(zip("photos/a.jpg", "photos/b.jpg")));
+        assertEquals("docx", sniff(zip("[Content_Types].xml", "_rels/.rels", "word/document.xml")));
+        assertEquals("xlsx", sniff(zip("[Content_Types].xml", "xl/workbook.xml")));
+        assertEquals("odt", sniff(zip("mimetype", "content.xml")));
+    }
+
+    @Test
+    void testEntryDataBeyondTheHeadIsNotRead() throws Exception {
+        // An extra field of an unknown kind pushing the mimetype past the 4 KB head
+        byte[] extra = new byte[6000];
+        extra[0] = (byte) 0xfe;
+        extra[1] = (byte) 0xca;
+        extra[2] = (byte) ((extra.length - 4) & 0xff);
+        extra[3] = (byte) ((extra.length - 4) >> 8);
+        byte[] head = Arrays.copyOf(zip(extra, "mimetype", "content.xml"), 4096);
+
+        assertEquals("zip", ContentSniffingFunctionsLib.sniff(head, head.length));
+        assertEquals("zip", ContentSniffingFunctionsLib.sniff(head, 100));
+    }
+
+    @Test
+    void testExtensionsOfTheSameFamilyAreNotCorrected() {
+        assertTrue(ContentSniffingFunctionsLib.matchesExtension("jpg", "jpeg"));
+        assertTrue(ContentSniffingFunctionsLib.matchesExtension("zip", "docx"));
+        assertTrue(ContentSniffingFunctionsLib.matchesExtension("doc", "xls"));
+        assertFalse(ContentSniffingFunctionsLib.matchesExtension("pdf", "jpg"));
+        assertTrue(ContentSniffingFunctionsLib.hasSignature("pdf"));
+        assertFalse(ContentSniffingFunctionsLib.hasSignature("txt"));
+    }
+}
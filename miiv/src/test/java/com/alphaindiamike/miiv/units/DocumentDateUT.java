@@ -0,0 +1,157 @@
+package com.alphaindiamike.miiv.units;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.alphaindiamike.miiv.privatelib.functions.DocumentDateFunctionsLib;
+import com.alphaindiamike.miiv.services.ingest.DocumentDater;
+import com.alphaindiamike.miiv.services.ingest.FileIdentity;
+import com.alphaindiamike.miiv.services.ingest.HashCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentDateUT {
+    private Path testDirectory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        testDirectory = Files.createTempDirectory("document_date_test");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.walk(testDirectory)
+             .sorted((o1, o2) -> -o1.compareTo(o2)) // Sort in reverse order
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    private static void ascii(ByteBuffer tiff, int offset, String text) {
+        byte[] bytes = (text + "\0").getBytes(StandardCharsets.US_ASCII);
+        tiff.put(offset, bytes, 0, bytes.length);
+    }
+
+    private static void entry(ByteBuffer tiff, int tag, int type, int count, int value) {
+        tiff.putShort((short) tag).putShort((short) type).putInt(count).putInt(value);
+    }
+
+    /**
+     * A TIFF structure with the DateTime in its first directory and, if given, the digitized and
+     * original dates in an EXIF directory.
+     */
+    private static byte[] tiff(ByteOrder order, String dateTime, String digitized, String original) {
+        ByteBuffer tiff = ByteBuffer.allocate(128).order(order);
+        tiff.put((byte) (order == ByteOrder.LITTLE_ENDIAN ? 'I' : 'M')).put(tiff.get(0)).putShort((short) 42).putInt(8);
+        tiff.putShort((short) (original == null ? 1 : 2));
+        entry(tiff, 0x0132, 2, 20, 38);
+        if (original != null) {
+            entry(tiff, 0x8769, 4, 1, 58);
+        }
+        tiff.putInt(0);
+        ascii(tiff, 38, dateTime);
+        if (original != null) {
+            tiff.position(58);
+            tiff.putShort((short) 2);
+            entry(tiff, 0x9004, 2, 20, 88);
+            entry(tiff, 0x9003, 2, 20, 108);
+            tiff.putInt(0);
+            ascii(tiff, 88, digitized);
+            ascii(tiff, 108, original);
+        }
+        return tiff.array();
+    }
+
+    private static byte[] jpeg(byte[] tiff) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(new byte[]{(byte) 0xff, (byte) 0xd8});
+        // A JFIF segment before the EXIF one
+        out.writeBytes(new byte[]{(byte) 0xff, (byte) 0xe0, 0, 16, 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0});
+        int length = 2 + 6 + tiff.length;
+        out.writeBytes(new byte[]{(byte) 0xff, (byte) 0xe1, (byte) (length >> 8), (byte) length, 'E', 'x', 'i', 'f', 0, 0});
+        out.writeBytes(tiff);
+        out.writeBytes(new byte[]{(byte) 0xff, (byte) 0xda, 0, 2, 1, 2, 3, (byte) 0xff, (byte) 0xd9});
+        return out.toByteArray();
+    }
+
+    private Path write(String name, byte[] content) throws Exception {
+        return Files.write(testDirectory.resolve(name), content);
+    }
+
+    @Test
+    void testExifDatesOfJpegAndTiffFiles() throws Exception {
+        Path photo = write("photo.jpg", jpeg(tiff(ByteOrder.LITTLE_ENDIAN,
+                "2020:01:01 10:00:00", "2019:07:30 08:00:00", "2019:07:29 18:45:12")));
+        Path scan = write("scan.tif", tiff(ByteOrder.BIG_ENDIAN, "2018:02:03 04:05:06", null, null));
+        Path unset = write("unset.jpg", jpeg(tiff(ByteOrder.BIG_ENDIAN,
+                "0000:00:00 00:00:00", "0000:00:00 00:00:00", "0000:00:00 00:00:00")));
+
+        assertEquals(LocalDateTime.of(2019, 7, 29, 18, 45, 12), DocumentDateFunctionsLib.documentDate(photo),
+                "DateTimeOriginal comes before DateTimeDigitized and DateTime");
+        assertEquals(LocalDateTime.of(2018, 2, 3, 4, 5, 6), DocumentDateFunctionsLib.documentDate(scan));
+        assertNull(DocumentDateFunctionsLib.documentDate(unset), "zeroed dates are no dates");
+        assertNull(DocumentDateFunctionsLib.documentDate(write("notes.txt",
+                "plain text".getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    @Test
+    void testPdfCreationDateIsFoundInTheTailThenInTheHead() throws Exception {
+        byte[] filler = new byte[DocumentDateFunctionsLib.PDF_WINDOW * 2];
+        Arrays.fill(filler, (byte) ' ');
+        ByteArrayOutputStream updated = new ByteArrayOutputStream();
+        updated.writeBytes("%PDF-1.4\n1 0 obj << /CreationDate (D:1999) >> endobj\n".getBytes(StandardCharsets.US_ASCII));
+        updated.writeBytes(filler);
+        updated.writeBytes("9 0 obj << /CreationDate (D:20210304112233+01'00') >> endobj\ntrailer << /Info 9 0 R >>\n%%EOF"
+                .getBytes(StandardCharsets.US_ASCII));
+        ByteArrayOutputStream linearized = new ByteArrayOutputStream();
+        linearized.writeBytes("%PDF-1.7\n1 0 obj << /Producer (x) /CreationDate\n(D:201508) >> endobj\n"
+                .getBytes(StandardCharsets.US_ASCII));
+        linearized.writeBytes(filler);
+
+        assertEquals(LocalDateTime.of(2021, 3, 4, 11, 22, 33),
+                DocumentDateFunctionsLib.documentDate(write("updated.pdf", updated.toByteArray())));
+        assertEquals(LocalDateTime.of(2015, 8, 1, 0, 0),
+                DocumentDateFunctionsLib.documentDate(write("linearized.pdf", linearized.toByteArray())));
+    }
+
+    @Test
+    void testDatesAreCachedAndFallBackToTheModificationTime() throws Exception {
+        Path workspace = Files.createDirectories(testDirectory.resolve("workspace"));
+        Path photo = write("photo.jpg", jpeg(tiff(ByteOrder.LITTLE_ENDIAN,
+                "2020:01:01 10:00:00", "2019:07:30 08:00:00", "2019:07:29 18:45:12")));
+        Path notes = write("notes.txt", "plain text".getBytes(StandardCharsets.US_ASCII));
+        LocalDate modified = LocalDate.of(2016, 5, 6);
+        Files.setLastModifiedTime(notes, FileTime.from(modified.atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant()));
+
+        FileIdentity photoIdentity = FileIdentity.of(photo, Files.readAttributes(photo, BasicFileAttributes.class));
+        FileIdentity notesIdentity = FileIdentity.of(notes, Files.readAttributes(notes, BasicFileAttributes.class));
+        try (HashCache cache = HashCache.open(workspace, testDirectory.resolve("hashcache.db"))) {
+            DocumentDater dater = new DocumentDater(cache);
+            assertEquals(LocalDate.of(2019, 7, 29), dater.dateOf(photoIdentity));
+            assertEquals(modified, dater.dateOf(notesIdentity));
+            assertEquals(2, dater.read());
+        }
+        try (HashCache cache = HashCache.open(workspace, testDirectory.resolve("hashcache.db"))) {
+            DocumentDater dater = new DocumentDater(cache);
+            assertEquals(LocalDate.of(2019, 7, 29), dater.dateOf(photoIdentity));
+            assertEquals(modified, dater.dateOf(notesIdentity));
+            assertEquals(0, dater.read());
+            assertEquals(2, dater.cacheHits(), "files without a metadata date are cached too");
+            assertEquals(1, dater.modified());
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.alphaindiamike.miiv.units;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.alphaindiamike.miiv.model.filesystem.FileEntity;
+import com.alphaindiamike.miiv.model.filesystem.FileEntityDAO;
+import com.alphaindiamike.miiv.model.filesystem.SqliteFileEntityDAO;
+import com.alphaindiamike.miiv.privatelib.functions.ContentHashFunctionsLib;
+import com.alphaindiamike.miiv.privatelib.functions.ContentHashFunctionsLib.Algorithm;
+import com.alphaindiamike.miiv.services.ingest.DuplicateDetector;
+import com.alphaindiamike.miiv.services.ingest.FileIdentity;
+import com.alphaindiamike.miiv.services.ingest.HashCache;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DuplicateDetectorUT {
+    private static final int LARGE = 3 * DuplicateDetector.PARTIAL_BLOCK_SIZE;
+    private Path testDirectory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        testDirectory = Files.createTempDirectory("dedup_test");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.walk(testDirectory)
+             .sorted((o1, o2) -> -o1.compareTo(o2)) // Sort in reverse order
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    private Path write(String name, byte[] content) throws Exception {
+        return Files.write(testDirectory.resolve(name), content);
+    }
+
+    private static byte[] randomContent(int size, long seed) {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    @Test
+    void testFilesOfUniqueSizeAreNeverRead() throws Exception {
+        DuplicateDetector detector = new DuplicateDetector();
+
+        assertNull(detector.register(write("a", new byte[10]), 10));
+        assertNull(detector.register(write("b", new byte[20]), 20));
+
+        assertEquals(0, detector.partialHashes());
+        assertEquals(0, detector.fullHashes());
+    }
+
+    @Test
+    void testDifferentHeadsAreSeparatedWithoutFullHash() throws Exception {
+        DuplicateDetector detector = new DuplicateDetector();
+        Path first = write("first", randomContent(LARGE, 1));
+        Path second = write("second", randomContent(LARGE, 2));
+
+        assertNull(detector.register(first, LARGE));
+        assertNull(detector.register(second, LARGE));
+
+        assertEquals(2, detector.partialHashes());
+        assertEquals(0, detector.fullHashes());
+    }
+
+    @Test
+    void testSameHeadAndTailIsDecidedByFullHash() throws Exception {
+        byte[] content = randomContent(LARGE, 3);
+        Path original = write("original", content);
+        Path copy = write("copy", content.clone());
+        // Only the middle block differs
+        content[LARGE / 2] ^= 1;
+        Path changed = write("changed", content);
+        DuplicateDetector detector = new DuplicateDetector();
+
+        assertNull(detector.register(original, LARGE));
+        assertEquals(original, detector.register(copy, LARGE));
+        assertNull(detector.register(changed, LARGE));
+
+        assertTrue(detector.fullHashes() >= 2);
+    }
+
+    @Test
+    void testRelocatedOriginalIsReadAtItsNewLocation() throws Exception {
+        byte[] content = randomContent(100, 4);
+        Path original = write("original", content);
+        Path duplicate = write("duplicate", content);
+        DuplicateDetector detector = new DuplicateDetector();
+
+        assertNull(detector.register(original, 100));
+        Path moved = Files.move(original, testDirectory.resolve("moved"));
+        detector.relocated(original, moved);
+
+        assertEquals(original, detector.register(duplicate, 100));
+        assertEquals(moved, detector.locationOf(original));
+    }
+
+    @Test
+    void testSmallFilesWithEqualPartialDigestsAreDecidedByFullHash() throws Exception {
+        Path workspace = Files.createDirectory(testDirectory.resolve("workspace"));
+        Path original = write("original", randomContent(100, 5));
+        Path other = write("other", randomContent(100, 6));
+        FileIdentity originalIdentity = FileIdentity.of(original, Files.readAttributes(original, BasicFileAttributes.class));
+        FileIdentity otherIdentity = FileIdentity.of(other, Files.readAttributes(other, BasicFileAttributes.class));
+        Path globalDatabase = testDirectory.resolve("hashcache.db");
+        try (HashCache cache = HashCache.open(workspace, globalDatabase)) {
+            // A head/tail collision: the partial digest covers both files whole, yet their content differs
+            byte[] collision = new byte[16];
+            cache.store(new HashCache.CachedDigests(originalIdentity, DuplicateDetector.PARTIAL_KIND, collision, null));
+            cache.store(new HashCache.CachedDigests(otherIdentity, DuplicateDetector.PARTIAL_KIND, collision, null));
+        }
+        try (HashCache cache = HashCache.open(workspace, globalDatabase)) {
+            DuplicateDetector detector = new DuplicateDetector(cache);
+
+            assertNull(detector.register(originalIdentity));
+            assertNull(detector.register(otherIdentity), "a partial match alone is no duplicate");
+            assertEquals(0, detector.partialHashes());
+            assertEquals(2, detector.fullHashes());
+        }
+    }
+
+    @Test
+    void testFileWithCachedDigestIsFoundInTheCatalogWithoutReading() throws Exception {
+        Path workspace = Files.createDirectories(testDirectory.resolve("workspace"));
+        byte[] content = randomContent(LARGE, 7);
+        Path placed = Files.write(Files.createDirectories(workspace.resolve("05 Backups")).resolve("placed.bin"), content);
+        Path incoming = write("incoming.bin", content);
+        FileIdentity incomingIdentity = FileIdentity.of(incoming, Files.readAttributes(incoming, BasicFileAttributes.class));
+        byte[] digest = ContentHashFunctionsLib.hashFile(incoming, Algorithm.SHA_256);
+        Path globalDatabase = testDirectory.resolve("hashcache.db");
+        try (HashCache cache = HashCache.open(workspace, globalDatabase)) {
+            cache.store(new HashCache.CachedDigests(incomingIdentity, null, null, digest));
+        }
+
+        try (HashCache cache = HashCache.open(workspace, globalDatabase);
+                FileEntityDAO catalog = SqliteFileEntityDAO.open(workspace)) {
+            catalog.save(new FileEntity("05 Backups/placed.bin", "05 Backups", LARGE,
+                    Files.getLastModifiedTime(placed).toMillis(), digest, "bin", null, 0));
+            DuplicateDetector detector = new DuplicateDetector(cache, null, catalog, workspace);
+
+            assertEquals(placed, detector.register(incomingIdentity));
+            assertEquals(0, detector.partialHashes());
+            assertEquals(0, detector.fullHashes());
+
+            // Changed since it was cataloged: the cataloged digest no longer describes it
+            Files.setLastModifiedTime(placed, FileTime.fromMillis(Files.getLastModifiedTime(placed).toMillis() - 10_000));
+            assertNull(new DuplicateDetector(cache, null, catalog, workspace).register(incomingIdentity));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.alphaindiamike.miiv.units;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.alphaindiamike.miiv.model.filesystem.FileEntity;
+import com.alphaindiamike.miiv.model.filesystem.FileEntityDAO;
+import com.alphaindiamike.miiv.model.filesystem.SqliteFileEntityDAO;
+import com.alphaindiamike.miiv.privatelib.functions.DatabaseFunctionsLib;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileCatalogUT {
+    private Path workspace;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        workspace = Files.createTempDirectory("file_catalog_test");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.walk(workspace)
+             .sorted((o1, o2) -> -o1.compareTo(o2)) // Sort in reverse order
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    private static byte[] hash(int value) {
+        byte[] hash = new byte[32];
+        hash[0] = (byte) value;
+        return hash;
+    }
+
+    private static FileEntity file(String node, String name, int hash) {
+        return new FileEntity(node + "/" + name, node, 10, 1000, hash(hash), "pdf", null, 2000);
+    }
+
+    @Test
+    void testFilesAreFoundByPathHashAndNode() throws Exception {
+        try (FileEntityDAO catalog = SqliteFileEntityDAO.open(workspace)) {
+            catalog.saveAll(List.of(file("01 Bills", "a.pdf", 1), file("01 Bills", "b.pdf", 2),
+                    file("02 Scans", "a.pdf", 1)));
+            catalog.save(new FileEntity("02 Scans/c.jpg", "02 Scans", 20, 3000, null, "jpg",
+                    LocalDate.of(2019, 7, 29), 4000));
+
+            FileEntity scan = catalog.findById("02 Scans/c.jpg");
+            assertNotNull(scan, "buffered saves are visible to the finders");
+            assertEquals(LocalDate.of(2019, 7, 29), scan.getDocumentDate());
+            assertEquals("jpg", scan.getContentType());
+            assertNull(scan.getHash());
+            assertNull(catalog.findById("02 Scans/missing.pdf"));
+
+            assertEquals(List.of("01 Bills/a.pdf", "02 Scans/a.pdf"),
+                    catalog.findByHash(hash(1)).stream().map(FileEntity::getPath).toList());
+            assertEquals(List.of("01 Bills/a.pdf", "01 Bills/b.pdf"),
+                    catalog.findByNode("01 Bills").stream().map(FileEntity::getPath).toList());
+
+            catalog.save(file("01 Bills", "b.pdf", 3));
+            assertEquals(4, catalog.count(), "saving a path again replaces its entry");
+            assertTrue(catalog.findByHash(hash(2)).isEmpty());
+        }
+        try (Connection connection = DatabaseFunctionsLib.openDatabase(DatabaseFunctionsLib
+                .workspaceMetadataDirectory(workspace).resolve(SqliteFileEntityDAO.CATALOG_DATABASE_FILE));
+                Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("PRAGMA journal_mode")) {
+            assertTrue(rs.next());
+            assertEquals("wal", rs.getString(1));
+        }
+    }
+
+    @Test
+    void testLargeBatchesAreWrittenCompletely() throws Exception {
+        int count = 100_000;
+        List<FileEntity> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            files.add(file("node" + (i % 100), "file" + i + ".pdf", i));
+        }
+        try (FileEntityDAO catalog = SqliteFileEntityDAO.open(workspace)) {
+            catalog.saveAll(files.subList(0, count / 2));
+            for (FileEntity file : files.subList(count / 2, count)) {
+                catalog.save(file);
+            }
+        }
+        try (FileEntityDAO catalog = SqliteFileEntityDAO.open(workspace)) {
+            assertEquals(count, catalog.count(), "closing writes the buffered saves");
+            assertEquals(count / 100, catalog.findByNode("node7").size());
+            assertEquals("node99/file99999.pdf", catalog.findById("node99/file99999.pdf").getPath());
+        }
+    }
+}
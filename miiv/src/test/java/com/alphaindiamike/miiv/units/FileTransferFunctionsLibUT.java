@@ -0,0 +1,113 @@
+package com.alphaindiamike.miiv.units;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.alphaindiamike.miiv.privatelib.functions.FileTransferFunctionsLib;
+
+import java.io.File;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileTransferFunctionsLibUT {
+    private Path testDirectory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        testDirectory = Files.createTempDirectory("transfer_test");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.walk(testDirectory)
+             .sorted((o1, o2) -> -o1.compareTo(o2)) // Sort in reverse order
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    @Test
+    void testSmallFileIsCopiedWithContentAndModificationTime() throws Exception {
+        Path source = Files.writeString(testDirectory.resolve("small.txt"), "small content");
+        Path target = testDirectory.resolve("small-copy.txt");
+
+        long copied = FileTransferFunctionsLib.transferFile(source, target, 1024, 16);
+
+        assertEquals(13, copied);
+        assertEquals("small content", Files.readString(target));
+        assertEquals(Files.getLastModifiedTime(source), Files.getLastModifiedTime(target));
+    }
+
+    @Test
+    void testLargeFileIsCopiedInChunks() throws Exception {
+        byte[] content = new byte[10_000];
+        new Random(42).nextBytes(content);
+        Path source = Files.write(testDirectory.resolve("large.bin"), content);
+        Path target = testDirectory.resolve("large-copy.bin");
+
+        // Threshold below the file size forces 100 byte chunks
+        long copied = FileTransferFunctionsLib.transferFile(source, target, 1024, 100);
+
+        assertEquals(content.length, copied);
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+
+    @Test
+    void testExistingTargetIsNeitherOverwrittenNorDeleted() throws Exception {
+        Path source = Files.writeString(testDirectory.resolve("source.txt"), "new");
+        Path target = Files.writeString(testDirectory.resolve("target.txt"), "existing");
+
+        assertThrows(FileAlreadyExistsException.class,
+                () -> FileTransferFunctionsLib.transferFile(source, target, 1024, 16));
+        assertEquals("existing", Files.readString(target));
+    }
+
+    @Test
+    void testMoveAcrossFileStoresVerifiesAndDeletesSource() throws Exception {
+        byte[] content = new byte[3_000_000];
+        new Random(7).nextBytes(content);
+        Path source = Files.write(testDirectory.resolve("move.bin"), content);
+        Path target = testDirectory.resolve("moved.bin");
+
+        Path staging = testDirectory.resolve("moved.part");
+
+        long moved = FileTransferFunctionsLib.moveAcrossFileStores(source, target, staging);
+
+        assertEquals(content.length, moved);
+        assertFalse(Files.exists(source), "The source must be deleted after a verified copy");
+        assertFalse(Files.exists(staging), "The staging file must be renamed into place");
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+
+    @Test
+    void testRenameNeverReplacesAnExistingTarget() throws Exception {
+        Path source = Files.writeString(testDirectory.resolve("source.txt"), "new");
+        Path target = Files.writeString(testDirectory.resolve("target.txt"), "existing");
+
+        assertThrows(FileAlreadyExistsException.class, () -> FileTransferFunctionsLib.renameFile(source, target));
+        assertEquals("existing", Files.readString(target));
+        assertEquals("new", Files.readString(source));
+
+        Path free = testDirectory.resolve("free.txt");
+        FileTransferFunctionsLib.renameFile(source, free);
+        assertFalse(Files.exists(source));
+        assertEquals("new", Files.readString(free));
+    }
+
+    @Test
+    void testMoveAcrossFileStoresKeepsSourceWhenTargetExists() throws Exception {
+        Path source = Files.writeString(testDirectory.resolve("move.txt"), "new");
+        Path target = Files.writeString(testDirectory.resolve("moved.txt"), "existing");
+        Path staging = testDirectory.resolve("moved.part");
+
+        assertThrows(FileAlreadyExistsException.class,
+                () -> FileTransferFunctionsLib.moveAcrossFileStores(source, target, staging));
+        assertEquals("existing", Files.readString(target));
+        assertEquals("new", Files.readString(source));
+        assertFalse(Files.exists(staging));
+    }
+}
@@ -0,0 +1,127 @@
+package com.alphaindiamike.miiv.units;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.alphaindiamike.miiv.services.ingest.DuplicateDetector;
+import com.alphaindiamike.miiv.services.ingest.FileIdentity;
+import com.alphaindiamike.miiv.services.ingest.HashCache;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashCacheUT {
+    private Path testDirectory;
+    private Path workspace;
+    private Path globalDatabase;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        testDirectory = Files.createTempDirectory("hash_cache_test");
+        workspace = Files.createDirectories(testDirectory.resolve("workspace"));
+        globalDatabase = testDirectory.resolve("global").resolve("hashcache.db");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.walk(testDirectory)
+             .sorted((o1, o2) -> -o1.compareTo(o2)) // Sort in reverse order
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    private static FileIdentity identityOf(Path file) throws Exception {
+        return FileIdentity.of(file, Files.readAttributes(file, BasicFileAttributes.class));
+    }
+
+    @Test
+    void testDigestsSurviveReopeningAndAreKeptPerStore() throws Exception {
+        Path source = Files.writeString(testDirectory.resolve("source.txt"), "source");
+        Path placed = Files.writeString(workspace.resolve("placed.txt"), "placed");
+        try (HashCache cache = HashCache.open(workspace, globalDatabase)) {
+            cache.store(new HashCache.CachedDigests(identityOf(source), "kind", new byte[]{1}, new byte[]{2}));
+            cache.store(new HashCache.CachedDigests(identityOf(placed), "kind", new byte[]{3}, null));
+        }
+
+        try (HashCache cache = HashCache.open(workspace, globalDatabase)) {
+            Map<Path, HashCache.CachedDigests> found = cache.lookup(List.of(identityOf(source), identityOf(placed)));
+
+            assertArrayEquals(new byte[]{2}, found.get(source).full());
+            assertArrayEquals(new byte[]{3}, found.get(placed).partial());
+        }
+        assertTrue(Files.exists(globalDatabase), "Digests of files outside the workspace go to the global store");
+    }
+
+    @Test
+    void testFileTypeIsKeptWithTheDigestsOfAnUnchangedFile() throws Exception {
+        Path file = Files.writeString(testDirectory.resolve("scan"), "content");
+        try (HashCache cache = HashCache.open(workspace, globalDatabase)) {
+            cache.store(new HashCache.CachedDigests(identityOf(file), "kind", new byte[]{1}, null));
+            cache.store(new HashCache.CachedDigests(identityOf(file), null, null, null, "pdf"));
+            cache.store(new HashCache.CachedDigests(identityOf(file), "kind", new byte[]{1}, new byte[]{2}));
+        }
+
+        try (HashCache cache = HashCache.open(workspace, globalDatabase)) {
+            HashCache.CachedDigests found = cache.lookup(List.of(identityOf(file))).get(file);
+
+            assertEquals("pdf", found.fileType());
+            assertArrayEquals(new byte[]{1}, found.partial());
+            assertArrayEquals(new byte[]{2}, found.full());
+        }
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() - 60_000));
+        try (HashCache cache = HashCache.open(workspace, globalDatabase)) {
+            cache.store(new HashCache.CachedDigests(identityOf(file), "kind", new byte[]{3}, null));
+
+            HashCache.CachedDigests found = cache.lookup(List.of(identityOf(file))).get(file);
+            assertNull(found, "the store is buffered until closed");
+        }
+        try (HashCache cache = HashCache.open(workspace, globalDatabase)) {
+            HashCache.CachedDigests found = cache.lookup(List.of(identityOf(file))).get(file);
+
+            assertArrayEquals(new byte[]{3}, found.partial());
+            assertNull(found.full(), "what was known about the earlier version is dropped");
+            assertNull(found.fileType());
+        }
+    }
+
+    @Test
+    void testChangedFileInvalidatesItsDigests() throws Exception {
+        Path file = Files.writeString(testDirectory.resolve("file.txt"), "content");
+        try (HashCache cache = HashCache.open(workspace, globalDatabase)) {
+            cache.store(new HashCache.CachedDigests(identityOf(file), "kind", new byte[]{1}, new byte[]{2}));
+        }
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() - 60_000));
+
+        try (HashCache cache = HashCache.open(workspace, globalDatabase)) {
+            assertTrue(cache.lookup(List.of(identityOf(file))).isEmpty());
+        }
+    }
+
+    @Test
+    void testSecondRunReadsNothingForUnchangedFiles() throws Exception {
+        byte[] content = new byte[3 * DuplicateDetector.PARTIAL_BLOCK_SIZE];
+        Path original = Files.write(testDirectory.resolve("original.bin"), content);
+        Path copy = Files.write(testDirectory.resolve("copy.bin"), content);
+
+        for (int run = 0; run < 2; run++) {
+            try (HashCache cache = HashCache.open(workspace, globalDatabase)) {
+                DuplicateDetector detector = new DuplicateDetector(cache);
+
+                assertNull(detector.register(identityOf(original)));
+                assertEquals(original, detector.register(identityOf(copy)));
+                if (run == 1) {
+                    assertEquals(0, detector.partialHashes() + detector.fullHashes());
+                    assertEquals(2, detector.cacheHits());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.alphaindiamike.miiv.units;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.alphaindiamike.miiv.model.filesystem.RepositoryScheme;
+import com.alphaindiamike.miiv.privatelib.functions.DatabaseFunctionsLib;
+import com.alphaindiamike.miiv.privatelib.functions.FileSystemFunctionsLib;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MaterializationUT {
+    private Path workspace;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        workspace = Files.createTempDirectory("materialization_test");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.walk(workspace)
+             .sorted((o1, o2) -> -o1.compareTo(o2)) // Sort in reverse order
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    private static RepositoryScheme node(String name, RepositoryScheme... children) {
+        RepositoryScheme node = new RepositoryScheme();
+        node.setName(name);
+        node.setChildren(children.length == 0 ? null : new ArrayList<>(List.of(children)));
+        return node;
+    }
+
+    /**
+     * A wide generated scheme: 20 top level folders of 50 folders each.
+     */
+    private static RepositoryScheme generated() {
+        List<RepositoryScheme> top = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            RepositoryScheme[] children = new RepositoryScheme[50];
+            for (int j = 0; j < children.length; j++) {
+                children[j] = node(String.format("%02d-%02d", i, j));
+            }
+            top.add(node(String.format("%02d", i), children));
+        }
+        RepositoryScheme root = node("root");
+        root.setChildren(top);
+        return root;
+    }
+
+    @Test
+    void testUnchangedSchemeIsANoOp() throws Exception {
+        RepositoryScheme scheme = generated();
+        Files.createDirectories(workspace.resolve("03"));
+
+        assertEquals(20 * 51 - 1, FileSystemFunctionsLib.createDirectoryStructure(scheme, workspace.toString()),
+                "existing folders are kept");
+        assertTrue(Files.isDirectory(workspace.resolve("19").resolve("19-49")));
+        assertTrue(Files.exists(DatabaseFunctionsLib.workspaceMetadataDirectory(workspace)
+                .resolve(FileSystemFunctionsLib.MATERIALIZATION_MANIFEST)));
+
+        Files.delete(workspace.resolve("07").resolve("07-07"));
+        assertEquals(0, FileSystemFunctionsLib.createDirectoryStructure(scheme, workspace.toString()));
+        assertFalse(Files.exists(workspace.resolve("07").resolve("07-07")), "an unchanged scheme touches no folder");
+    }
+
+    @Test
+    void testChangedSchemeCreatesOnlyTheDiff() throws Exception {
+        RepositoryScheme scheme = generated();
+        FileSystemFunctionsLib.createDirectoryStructure(scheme, workspace.toString());
+        Files.delete(workspace.resolve("07").resolve("07-07"));
+        Files.delete(workspace.resolve("08").resolve("08-08"));
+
+        scheme.getChildren().get(8).getChildren().get(8).setChildren(List.of(node("new below a removed folder")));
+        scheme.getChildren().add(node("20", node("20-00", node("deep"))));
+        scheme.getChildren().remove(0);
+
+        assertEquals(4, FileSystemFunctionsLib.createDirectoryStructure(scheme, workspace.toString()));
+        assertTrue(Files.isDirectory(workspace.resolve("20").resolve("20-00").resolve("deep")));
+        assertTrue(Files.isDirectory(workspace.resolve("08").resolve("08-08").resolve("new below a removed folder")));
+        assertFalse(Files.exists(workspace.resolve("07").resolve("07-07")), "recorded folders are not checked");
+        assertTrue(Files.isDirectory(workspace.resolve("00")), "folders no longer in the scheme are kept");
+        assertEquals(0, FileSystemFunctionsLib.createDirectoryStructure(scheme, workspace.toString()));
+    }
+}
@@ -0,0 +1,114 @@
+package com.alphaindiamike.miiv.units;
+
+import org.junit.jupiter.api.Test;
+
+import com.alphaindiamike.miiv.model.filesystem.ContentRoutine;
+import com.alphaindiamike.miiv.model.filesystem.RepositoryScheme;
+import com.alphaindiamike.miiv.services.ingest.KeywordAutomaton;
+import com.alphaindiamike.miiv.services.ingest.RoutingTable;
+import com.alphaindiamike.miiv.services.ingest.SchemeRouter;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutingTableUT {
+
+    private static RepositoryScheme node(String name, List<String> fileTypes, RepositoryScheme... children) {
+        RepositoryScheme node = new RepositoryScheme();
+        node.setName(name);
+        node.setPreferredFileTypes(fileTypes);
+        node.setChildren(children.length == 0 ? null : List.of(children));
+        return node;
+    }
+
+    private static RepositoryScheme scheme() {
+        RepositoryScheme root = new RepositoryScheme();
+        root.setChildren(List.of(
+                node("01 Documents", null,
+                        node("01 ID Card", List.of("jpg", "PDF")),
+                        node("02 CVs", List.of("docx", ".pdf"))),
+                node("02 Pictures", List.of("png", "jpg")),
+                node("99 Archive", List.of("other"))));
+        return root;
+    }
+
+    @Test
+    void testFirstNodeInSchemeOrderWinsAnAmbiguousFileType() {
+        RoutingTable table = RoutingTable.compile(scheme());
+
+        assertEquals(Paths.get("01 Documents", "01 ID Card"), table.folder(table.routeFileType("pdf")).path());
+        assertEquals(Paths.get("01 Documents", "01 ID Card"), table.folder(table.routeFileType("jpg")).path());
+        assertEquals(Paths.get("02 Pictures"), table.folder(table.routeFileType("png")).path());
+        assertEquals(List.of(1, 2), table.ambiguousFileTypes().get("pdf"));
+        assertEquals(List.of(1, 3), table.ambiguousFileTypes().get("jpg"));
+        assertFalse(table.ambiguousFileTypes().containsKey("png"));
+    }
+
+    @Test
+    void testUnknownTypesGoToOtherAndWithoutOtherNowhere() {
+        RoutingTable table = RoutingTable.compile(scheme());
+        assertEquals(Paths.get("99 Archive"), table.folder(table.route(Paths.get("notes.txt"))).path());
+        assertEquals(Paths.get("99 Archive"), table.folder(table.route(Paths.get("Makefile"))).path());
+
+        RepositoryScheme withoutOther = new RepositoryScheme();
+        withoutOther.setChildren(List.of(node("02 Pictures", List.of("png"))));
+        assertEquals(RoutingTable.NO_FOLDER, RoutingTable.compile(withoutOther).route(Paths.get("notes.txt")));
+    }
+
+    @Test
+    void testRouterResolvesTheTableAgainstTheWorkspace() {
+        Path workspace = Paths.get("/workspace");
+        SchemeRouter router = new SchemeRouter(RoutingTable.compile(scheme()), workspace);
+
+        assertEquals(workspace.resolve("01 Documents").resolve("02 CVs"), router.route(Paths.get("/src/cv.DOCX")));
+        assertEquals(List.of(workspace.resolve("01 Documents").resolve("01 ID Card"), workspace.resolve("02 Pictures")),
+                router.foldersAccepting(Set.of("jpg")));
+        assertThrows(IllegalStateException.class, () -> RoutingTable.compile(null));
+    }
+
+    private static RepositoryScheme templated(String name, ContentRoutine content, List<String> fileTypes, String... types) {
+        RepositoryScheme node = node(name, fileTypes);
+        node.setContent(content);
+        RepositoryScheme.Template template = new RepositoryScheme.Template();
+        template.setType(List.of(types));
+        node.setTemplate(template);
+        return node;
+    }
+
+    @Test
+    void testAutomatonFindsOverlappingKeywordsAsWholeWordsInOnePass() {
+        KeywordAutomaton automaton = new KeywordAutomaton(List.of("rental contract", "contract", "she", "he", "hers", ""));
+        List<String> matches = new ArrayList<>();
+        String text = "Rental_Contract-2023 ushers: she, HE; hers.pdf";
+        automaton.scan(text, (keyword, start, end) -> matches.add(keyword + "=" + text.substring(start, end)));
+
+        assertEquals(List.of("0=Rental_Contract", "1=Contract", "2=she", "3=HE", "4=hers"), matches);
+    }
+
+    @Test
+    void testTemplateKeywordsRouteBeforeTheFileType() {
+        RepositoryScheme root = new RepositoryScheme();
+        root.setChildren(List.of(
+                node("01 ID Card", List.of("pdf", "jpg")),
+                templated("02 Properties", ContentRoutine.VERSION_CONTROLLED_BY_DATE_AND_TYPE, null, "vehicle", "equipment"),
+                templated("03 Rental", ContentRoutine.VERSION_CONTROLLED_BY_DATE_AND_TYPE, null, "contract", "rental contract"),
+                templated("04 Software", ContentRoutine.VERSION_CONTROLLED_BY_DATE_AND_TITLE, List.of("zip"), "equipment manager"),
+                templated("05 Dated", ContentRoutine.VERSION_CONTROLLED_BY_DATE, null, "vehicle")));
+        RoutingTable table = RoutingTable.compile(root);
+
+        assertEquals(List.of("vehicle", "equipment"), table.folder(1).keywords());
+        assertTrue(table.folder(4).keywords().isEmpty(), "only nodes versioned by type or title match keywords");
+        assertEquals(2, table.route(Paths.get("Rental Contract 2023.pdf")), "the longest keyword wins");
+        assertEquals(1, table.route(Paths.get("vehicle-insurance.jpg")));
+        assertEquals(3, table.route(Paths.get("Equipment Manager 2.1.zip")));
+        assertEquals(1, table.route(Paths.get("equipment manager manual.pdf")), "a node not accepting the type is skipped");
+        assertEquals(0, table.route(Paths.get("vehicles.pdf")));
+        assertEquals("rental contract", table.matchKeywords("signed rental contract, page 1", null).keyword());
+        assertNull(table.matchKeywords("nothing to see", null));
+    }
+}
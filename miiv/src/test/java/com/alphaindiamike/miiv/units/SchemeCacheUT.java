@@ -0,0 +1,119 @@
+package com.alphaindiamike.miiv.units;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.alphaindiamike.miiv.privatelib.exceptions.SchemeException;
+import com.alphaindiamike.miiv.services.ConfigurationLoaderService;
+import com.alphaindiamike.miiv.services.ingest.RoutingTable;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemeCacheUT {
+    private static final String SCHEME = "{\"name\": \"root\", \"children\": ["
+            + "{\"name\": \"01 Documents\", \"preferredFileTypes\": [\"pdf\"], \"children\": ["
+            + "{\"name\": \"01 Bills\", \"content\": \"version_controlled_by_date_and_type\","
+            + " \"template\": {\"type\": [\"internet\"]}}]},"
+            + "{\"name\": \"99 Other\", \"purpose\": \"Anything else\", \"preferredFileTypes\": [\"other\"]}]}";
+
+    private Path testDirectory;
+    private Path schemeFile;
+    private Path cacheFile;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        testDirectory = Files.createTempDirectory("scheme_cache_test");
+        schemeFile = Files.writeString(testDirectory.resolve("structure.json"), SCHEME);
+        cacheFile = testDirectory.resolve("global").resolve("scheme.bin");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.walk(testDirectory)
+             .sorted((o1, o2) -> -o1.compareTo(o2)) // Sort in reverse order
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    private static void assertRoutes(RoutingTable table) {
+        assertEquals(Paths.get("01 Documents"), table.folder(table.route(Paths.get("scan.pdf"))).path());
+        assertEquals(Paths.get("01 Documents", "01 Bills"), table.folder(table.route(Paths.get("internet.pdf"))).path());
+        assertEquals(Paths.get("99 Other"), table.folder(table.route(Paths.get("notes.txt"))).path());
+    }
+
+    @Test
+    void testCompiledSchemeIsReusedWhileTheJsonIsUnchanged() throws Exception {
+        ConfigurationLoaderService parsed = new ConfigurationLoaderService(schemeFile, cacheFile);
+        assertFalse(parsed.isLoadedFromCache());
+        assertTrue(Files.exists(cacheFile));
+
+        ConfigurationLoaderService cached = new ConfigurationLoaderService(schemeFile, cacheFile);
+        assertTrue(cached.isLoadedFromCache());
+        assertRoutes(cached.getRoutingTable());
+        assertEquals("Anything else", cached.getRepositoryScheme().getChildren().get(1).getPurpose());
+        assertEquals(List.of("internet"),
+                cached.getRepositoryScheme().getChildren().get(0).getChildren().get(0).getTemplate().getType());
+
+        Files.writeString(schemeFile, SCHEME.replace("99 Other", "98 Other"));
+        ConfigurationLoaderService edited = new ConfigurationLoaderService(schemeFile, cacheFile);
+        assertFalse(edited.isLoadedFromCache(), "a cache of another JSON is not used");
+        assertEquals(Paths.get("98 Other"), edited.getRoutingTable().folder(2).path());
+
+        byte[] damaged = Files.readAllBytes(cacheFile);
+        damaged[damaged.length / 2] ^= 1;
+        Files.write(cacheFile, damaged);
+        ConfigurationLoaderService recovered = new ConfigurationLoaderService(schemeFile, cacheFile);
+        assertFalse(recovered.isLoadedFromCache(), "a damaged cache is not used");
+        assertEquals(Paths.get("98 Other"), recovered.getRoutingTable().folder(2).path());
+    }
+
+    @Test
+    void testMissingOrInvalidSchemesFailLoudly() throws Exception {
+        assertThrows(SchemeException.class,
+                () -> new ConfigurationLoaderService(testDirectory.resolve("missing.json"), cacheFile));
+
+        Files.writeString(schemeFile, "{\"name\": \"root\", \"children\": [");
+        assertThrows(SchemeException.class, () -> new ConfigurationLoaderService(schemeFile, cacheFile));
+
+        Files.writeString(schemeFile, "{\"name\": \"root\", \"children\": [{\"name\": \"01 Bills\"}, {\"name\": \"01 bills\"},"
+                + " {\"name\": \"../escape\"}, {\"name\": \"02 Scans\", \"preferredFileTypes\": [\" \"]}]}");
+        SchemeException invalid = assertThrows(SchemeException.class,
+                () -> new ConfigurationLoaderService(schemeFile, cacheFile));
+        assertTrue(invalid.getMessage().contains("'01 bills' is listed twice"), invalid.getMessage());
+        assertTrue(invalid.getMessage().contains("'../escape' is not a valid folder name"), invalid.getMessage());
+        assertTrue(invalid.getMessage().contains("'02 Scans' lists a blank file type"), invalid.getMessage());
+        assertFalse(Files.exists(cacheFile), "invalid schemes are not cached");
+    }
+
+    @Test
+    void testWatchedSchemeIsSwappedOnEditAndKeptOnInvalidEdit() throws Exception {
+        ConfigurationLoaderService loader = new ConfigurationLoaderService(schemeFile, cacheFile);
+        RoutingTable original = loader.getRoutingTable();
+        loader.startWatching();
+        try {
+            Files.writeString(schemeFile, "{\"name\": \"root\", \"children\": [{\"name\": \"01 Bills\"}, {\"name\": \"01 bills\"}]}");
+            Thread.sleep(500);
+            assertSame(original, loader.getRoutingTable(), "an invalid edit keeps the previous table");
+
+            Files.writeString(schemeFile, SCHEME.replace("\"pdf\"", "\"pdf\", \"txt\""));
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (loader.getRoutingTable() == original && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            RoutingTable reloaded = loader.getRoutingTable();
+            assertNotSame(original, reloaded);
+            assertEquals(Paths.get("01 Documents"), reloaded.folder(reloaded.route(Paths.get("notes.txt"))).path());
+            assertEquals(Paths.get("99 Other"), original.folder(original.route(Paths.get("notes.txt"))).path(),
+                    "tables handed out before the reload are unchanged");
+        } finally {
+            loader.stopWatching();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.alphaindiamike.miiv.units;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.alphaindiamike.miiv.privatelib.functions.PerceptualHashFunctionsLib;
+import com.alphaindiamike.miiv.privatelib.functions.PerceptualHashFunctionsLib.ImageHashes;
+import com.alphaindiamike.miiv.services.dupes.DuplicateGroup;
+import com.alphaindiamike.miiv.services.dupes.ImageHashCache;
+import com.alphaindiamike.miiv.services.dupes.MultiIndexHashTable;
+import com.alphaindiamike.miiv.services.dupes.SimilarImageFinder;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimilarImagesUT {
+    private Path testDirectory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        testDirectory = Files.createTempDirectory("similar_images_test");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.walk(testDirectory)
+             .sorted((o1, o2) -> -o1.compareTo(o2)) // Sort in reverse order
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    /**
+     * A picture with a gradient and a few shapes placed by the seed.
+     */
+    static BufferedImage picture(int width, int height, long seed) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        Random random = new Random(seed);
+        for (int x = 0; x < width; x++) {
+            int level = 255 * x / width;
+            graphics.setColor(new Color(level, 255 - level, 128));
+            graphics.drawLine(x, 0, x, height);
+        }
+        for (int i = 0; i < 6; i++) {
+            graphics.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+            graphics.fillOval(random.nextInt(width), random.nextInt(height), width / 3, height / 3);
+        }
+        graphics.dispose();
+        return image;
+    }
+
+    static BufferedImage resized(BufferedImage image, int width, int height) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return scaled;
+    }
+
+    @Test
+    void testMultiIndexFindsExactlyTheHashesWithinTheRadius() {
+        Random random = new Random(42);
+        long[] hashes = new long[3000];
+        for (int i = 0; i < hashes.length; i++) {
+            // Every third hash is a near copy of an earlier one
+            hashes[i] = i % 3 == 2 ? hashes[i - 1] ^ (1L << random.nextInt(64)) : random.nextLong();
+        }
+        MultiIndexHashTable index = new MultiIndexHashTable(hashes);
+
+        for (int radius : new int[]{0, 1, 4, 7, 12}) {
+            for (int query = 0; query < hashes.length; query += 97) {
+                Set<Integer> expected = new TreeSet<>();
+                for (int i = 0; i < hashes.length; i++) {
+                    if (PerceptualHashFunctionsLib.distance(hashes[query], hashes[i]) <= radius) {
+                        expected.add(i);
+                    }
+                }
+                List<Integer> found = new ArrayList<>();
+                index.search(hashes[query], radius, found::add);
+                assertEquals(expected, new TreeSet<>(found), "radius " + radius + ", query " + query);
+                assertEquals(expected.size(), found.size(), "Every match is reported once");
+            }
+        }
+    }
+
+    @Test
+    void testResizedAndReencodedImageStaysClose() throws Exception {
+        BufferedImage original = picture(640, 480, 1);
+        Path png = testDirectory.resolve("original.png");
+        Path jpg = testDirectory.resolve("smaller.jpg");
+        Path other = testDirectory.resolve("other.png");
+        ImageIO.write(original, "png", png.toFile());
+        ImageIO.write(resized(original, 320, 240), "jpg", jpg.toFile());
+        ImageIO.write(picture(640, 480, 2), "png", other.toFile());
+
+        ImageHashes first = PerceptualHashFunctionsLib.hashImage(png);
+        ImageHashes second = PerceptualHashFunctionsLib.hashImage(jpg);
+        ImageHashes third = PerceptualHashFunctionsLib.hashImage(other);
+
+        assertTrue(PerceptualHashFunctionsLib.distance(first.pHash(), second.pHash()) <= 4);
+        assertTrue(PerceptualHashFunctionsLib.distance(first.dHash(), second.dHash()) <= 4);
+        assertTrue(PerceptualHashFunctionsLib.distance(first.pHash(), third.pHash()) > 8);
+    }
+
+    @Test
+    void testFinderGroupsSimilarImagesAndReusesCachedHashes() throws Exception {
+        Path workspace = Files.createDirectories(testDirectory.resolve("workspace"));
+        Path photos = Files.createDirectories(workspace.resolve("photos").resolve("2024"));
+        BufferedImage original = picture(400, 300, 7);
+        ImageIO.write(original, "png", photos.resolve("a.png").toFile());
+        ImageIO.write(resized(original, 200, 150), "jpg", photos.resolve("b.jpg").toFile());
+        ImageIO.write(picture(400, 300, 8), "png", photos.resolve("c.png").toFile());
+        Files.writeString(photos.resolve("broken.jpg"), "not an image");
+        List<Path> folders = new ArrayList<>(List.of(workspace.resolve("photos"), photos));
+
+        try (ImageHashCache cache = ImageHashCache.open(workspace)) {
+            SimilarImageFinder finder = new SimilarImageFinder(cache, 2);
+            List<DuplicateGroup> groups = finder.find(folders, 8);
+
+            assertEquals(List.of(new DuplicateGroup(List.of(photos.resolve("a.png"), photos.resolve("b.jpg")))), groups);
+            assertEquals(4, finder.scanned(), "Nested folders are listed once");
+            assertEquals(1, finder.failed());
+        }
+
+        try (ImageHashCache cache = ImageHashCache.open(workspace)) {
+            SimilarImageFinder finder = new SimilarImageFinder(cache, 2);
+            assertEquals(1, finder.find(folders, 8).size());
+            assertEquals(1, finder.decoded(), "Only the broken image is decoded again");
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.alphaindiamike.miiv.units;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.alphaindiamike.miiv.services.dupes.CollectingDuplicateSink;
+import com.alphaindiamike.miiv.services.dupes.DuplicateGroup;
+import com.alphaindiamike.miiv.services.dupes.ExternalSorter;
+import com.alphaindiamike.miiv.services.dupes.StreamingDuplicateFinder;
+import com.alphaindiamike.miiv.services.ingest.ContentHasher;
+import com.alphaindiamike.miiv.services.ingest.DuplicateDetector;
+import com.alphaindiamike.miiv.services.ingest.FileIdentity;
+import com.alphaindiamike.miiv.services.ingest.HashCache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingDupesUT {
+    private static final ExternalSorter.Codec<Long> LONGS = new ExternalSorter.Codec<>() {
+        @Override
+        public void write(DataOutputStream out, Long value) throws IOException {
+            out.writeLong(value);
+        }
+
+        @Override
+        public Long read(DataInputStream in) throws IOException {
+            return in.readLong();
+        }
+    };
+
+    private Path testDirectory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        testDirectory = Files.createTempDirectory("streaming_dupes_test");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.walk(testDirectory)
+             .sorted((o1, o2) -> -o1.compareTo(o2)) // Sort in reverse order
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    @Test
+    void testSorterMergesSpilledRunsInSeveralPasses() throws Exception {
+        Random random = new Random(17);
+        List<Long> expected = new ArrayList<>();
+        Path spills = testDirectory.resolve("spills");
+        try (ExternalSorter<Long> sorter = new ExternalSorter<>(Comparator.naturalOrder(), LONGS, 7, spills)) {
+            for (int i = 0; i < 5000; i++) {
+                long value = random.nextInt(1000);
+                expected.add(value);
+                sorter.add(value);
+            }
+            List<Long> sorted = new ArrayList<>();
+            try (ExternalSorter.SortedRecords<Long> records = sorter.sorted()) {
+                for (Long value = records.next(); value != null; value = records.next()) {
+                    sorted.add(value);
+                }
+            }
+            expected.sort(Comparator.naturalOrder());
+            assertEquals(expected, sorted);
+            // 715 runs of at most 7 records need a second merge pass at a fan-in of 64
+            assertTrue(sorter.spills() > 715, "spills: " + sorter.spills());
+        }
+        try (var left = Files.list(spills)) {
+            assertEquals(0, left.count(), "run files are removed on close");
+        }
+    }
+
+    @Test
+    void testSorterWithoutSpillStaysInMemory() throws Exception {
+        Path spills = testDirectory.resolve("spills");
+        try (ExternalSorter<Long> sorter = new ExternalSorter<>(Comparator.naturalOrder(), LONGS, 100, spills)) {
+            sorter.add(3L);
+            sorter.add(1L);
+            sorter.add(2L);
+            try (ExternalSorter.SortedRecords<Long> records = sorter.sorted()) {
+                assertEquals(1L, records.next());
+                assertEquals(2L, records.next());
+                assertEquals(3L, records.next());
+                assertNull(records.next());
+            }
+            assertEquals(0, sorter.spills());
+        }
+        assertFalse(Files.exists(spills));
+    }
+
+    @Test
+    void testFinderGroupsEqualContentWithASpillingBuffer() throws Exception {
+        Path root = Files.createDirectories(testDirectory.resolve("root"));
+        Random random = new Random(3);
+        byte[] large = new byte[300 * 1024];
+        random.nextBytes(large);
+        byte[] largeVariant = large.clone();
+        largeVariant[150 * 1024] ^= 1; // same size, head and tail: only the full digest tells them apart
+        Files.write(root.resolve("large-a.bin"), large);
+        Files.write(root.resolve("large-b.bin"), large);
+        Files.write(root.resolve("large-c.bin"), largeVariant);
+        for (int i = 0; i < 20; i++) {
+            Files.writeString(root.resolve("small-" + i + ".txt"), "content " + (i % 4));
+        }
+        Files.writeString(root.resolve("unique.txt"), "nothing alike");
+
+        try (HashCache cache = HashCache.open(root, testDirectory.resolve("global.db"));
+                ContentHasher hasher = new ContentHasher(2);
+                CollectingDuplicateSink sink = new CollectingDuplicateSink()) {
+            StreamingDuplicateFinder finder = new StreamingDuplicateFinder(cache, hasher, 3,
+                    testDirectory.resolve("spills"));
+            finder.find(root, Set.of(root.resolve(".miiv")), sink);
+
+            List<DuplicateGroup> groups = sink.groups();
+            assertEquals(5, groups.size(), groups.toString());
+            assertEquals(List.of(root.resolve("large-a.bin"), root.resolve("large-b.bin")), groups.get(0).files());
+            for (DuplicateGroup group : groups.subList(1, 5)) {
+                assertEquals(5, group.files().size(), group.toString());
+            }
+            assertEquals(24, finder.scanned());
+            assertEquals(22, finder.groupedFiles());
+            assertEquals(0, finder.failed());
+            assertTrue(finder.spills() > 0, "a buffer of 3 records spills");
+        }
+    }
+
+    @Test
+    void testSmallFilesWithEqualPartialDigestsAreNotGroupedOnThem() throws Exception {
+        Path root = Files.createDirectories(testDirectory.resolve("root"));
+        Path globalDatabase = testDirectory.resolve("global.db");
+        Path one = Files.writeString(root.resolve("one.txt"), "content a");
+        Path other = Files.writeString(root.resolve("other.txt"), "content b");
+        try (HashCache cache = HashCache.open(root, globalDatabase)) {
+            // A head/tail collision: the partial digest covers both files whole, yet their content differs
+            byte[] collision = new byte[16];
+            for (Path file : List.of(one, other)) {
+                cache.store(new HashCache.CachedDigests(FileIdentity.of(file,
+                        Files.readAttributes(file, BasicFileAttributes.class)), DuplicateDetector.PARTIAL_KIND,
+                        collision, null));
+            }
+        }
+
+        try (HashCache cache = HashCache.open(root, globalDatabase);
+                ContentHasher hasher = new ContentHasher(2);
+                CollectingDuplicateSink sink = new CollectingDuplicateSink()) {
+            StreamingDuplicateFinder finder = new StreamingDuplicateFinder(cache, hasher, 3,
+                    testDirectory.resolve("spills"));
+            finder.find(root, Set.of(root.resolve(".miiv")), sink);
+
+            assertTrue(sink.groups().isEmpty(), sink.groups().toString());
+        }
+    }
+}
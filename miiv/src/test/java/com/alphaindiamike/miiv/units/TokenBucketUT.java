@@ -0,0 +1,55 @@
+package com.alphaindiamike.miiv.units;
+
+import org.junit.jupiter.api.Test;
+
+import com.alphaindiamike.miiv.services.ingest.TokenBucket;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketUT {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void testUnlimitedBucketNeverWaits() {
+        TokenBucket bucket = new TokenBucket(0);
+
+        assertEquals(0, bucket.reserve(Long.MAX_VALUE / 2, System.nanoTime()));
+    }
+
+    @Test
+    void testDebtIsPaidOffAtTheConfiguredRate() {
+        TokenBucket bucket = new TokenBucket(100);
+        long now = System.nanoTime();
+
+        // An empty bucket: 50 tokens at 100/s cost half a second, the next 50 another half
+        long first = bucket.reserve(50, now);
+        long second = bucket.reserve(50, now);
+
+        assertEquals(SECOND / 2, first, SECOND / 100);
+        assertEquals(SECOND, second, SECOND / 100);
+    }
+
+    @Test
+    void testIdleTimeIsKeptAsBurstOfAtMostOneSecond() {
+        TokenBucket bucket = new TokenBucket(100);
+        long later = System.nanoTime() + 10 * SECOND;
+
+        // Ten idle seconds only earn one second worth of tokens
+        assertEquals(0, bucket.reserve(100, later));
+        assertTrue(bucket.reserve(1, later) > 0);
+    }
+
+    @Test
+    void testLiftingTheLimitDropsTheDebt() {
+        TokenBucket bucket = new TokenBucket(10);
+        long now = System.nanoTime();
+        bucket.reserve(1000, now);
+
+        bucket.setRate(0);
+
+        assertEquals(0, bucket.reserve(1, now));
+        assertThrows(IllegalArgumentException.class, () -> bucket.setRate(-1));
+    }
+}
@@ -0,0 +1,165 @@
+package com.alphaindiamike.miiv.units;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.alphaindiamike.miiv.privatelib.functions.DatabaseFunctionsLib;
+import com.alphaindiamike.miiv.services.ingest.BloomFilter;
+import com.alphaindiamike.miiv.services.ingest.ContentIndexSummary;
+import com.alphaindiamike.miiv.services.ingest.DuplicateDetector;
+import com.alphaindiamike.miiv.services.ingest.FileIdentity;
+import com.alphaindiamike.miiv.services.ingest.WorkspaceContentIndex;
+import com.alphaindiamike.miiv.services.ingest.WorkspaceContentScanner;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkspaceContentIndexUT {
+    private Path testDirectory;
+    private Path workspace;
+    private Path source;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        testDirectory = Files.createTempDirectory("content_index_test");
+        workspace = Files.createDirectories(testDirectory.resolve("workspace"));
+        source = Files.createDirectories(testDirectory.resolve("source"));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.walk(testDirectory)
+             .sorted((o1, o2) -> -o1.compareTo(o2)) // Sort in reverse order
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    private static FileIdentity identityOf(Path file) throws Exception {
+        return FileIdentity.of(file, Files.readAttributes(file, BasicFileAttributes.class));
+    }
+
+    @Test
+    void testBloomFilterHasNoFalseNegativesAndKeepsItsRate() throws Exception {
+        BloomFilter filter = new BloomFilter(100_000, 0.01);
+        Random random = new Random(7);
+        long[] keys = random.longs(100_000).toArray();
+        for (long key : keys) {
+            filter.put(key);
+        }
+        for (long key : keys) {
+            assertTrue(filter.mightContain(key));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(random.nextLong())) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 2_000, "False positives: " + falsePositives);
+
+        Path file = testDirectory.resolve("filter.bloom");
+        filter.writeTo(file);
+        BloomFilter read = BloomFilter.readFrom(file);
+        assertEquals(filter.keys(), read.keys());
+        for (long key : keys) {
+            assertTrue(read.mightContain(key));
+        }
+    }
+
+    @Test
+    void testFileAlreadyInWorkspaceIsFoundAfterReopening() throws Exception {
+        byte[] content = new byte[300_000];
+        new Random(3).nextBytes(content);
+        Path placed = Files.write(workspace.resolve("placed.bin"), content);
+        Path incoming = Files.write(source.resolve("incoming.bin"), content);
+        content[150_000] ^= 1;
+        Path changed = Files.write(source.resolve("changed.bin"), content);
+
+        try (WorkspaceContentIndex index = WorkspaceContentIndex.open(workspace, 0.01)) {
+            DuplicateDetector detector = new DuplicateDetector(null, index);
+            FileIdentity identity = identityOf(placed);
+            index.add(new WorkspaceContentIndex.Entry(placed, identity.size(), identity.modified(),
+                    detector.partialDigestOf(placed), null));
+        }
+
+        try (WorkspaceContentIndex index = WorkspaceContentIndex.open(workspace, 0.01)) {
+            DuplicateDetector detector = new DuplicateDetector(null, index);
+
+            assertNull(detector.register(identityOf(changed)), "Equal head and tail alone must not match");
+            assertEquals(placed, detector.register(identityOf(incoming)));
+            assertEquals(1, detector.knownInWorkspace());
+        }
+    }
+
+    private static WorkspaceContentIndex.Entry entry(Path file, int size) {
+        byte[] partial = new byte[16];
+        new Random(size).nextBytes(partial);
+        return new WorkspaceContentIndex.Entry(file, size, 1000, partial, null);
+    }
+
+    @Test
+    void testFilterBehindTheTableIsRebuilt() throws Exception {
+        WorkspaceContentIndex.Entry first = entry(workspace.resolve("first.bin"), 100);
+        WorkspaceContentIndex.Entry second = entry(workspace.resolve("second.bin"), 200);
+        WorkspaceContentIndex.Entry third = entry(workspace.resolve("third.bin"), 300);
+        Path filterFile = DatabaseFunctionsLib.workspaceMetadataDirectory(workspace)
+                .resolve(WorkspaceContentIndex.FILTER_FILE);
+
+        // Two runs at once: the filter of the one closing last lacks the other's file
+        try (WorkspaceContentIndex other = WorkspaceContentIndex.open(workspace, 0.01)) {
+            try (WorkspaceContentIndex one = WorkspaceContentIndex.open(workspace, 0.01)) {
+                other.add(second);
+                one.add(first);
+            }
+        }
+        try (WorkspaceContentIndex index = WorkspaceContentIndex.open(workspace, 0.01)) {
+            assertTrue(index.mightContain(second.size(), second.partial()));
+        }
+        // A run killed after its rows were committed but before its filter was written
+        Path saved = Files.copy(filterFile, testDirectory.resolve("saved.bloom"));
+        try (WorkspaceContentIndex killed = WorkspaceContentIndex.open(workspace, 0.01)) {
+            killed.add(third);
+        }
+        Files.copy(saved, filterFile, StandardCopyOption.REPLACE_EXISTING);
+
+        try (WorkspaceContentIndex index = WorkspaceContentIndex.open(workspace, 0.01)) {
+            for (WorkspaceContentIndex.Entry entry : new WorkspaceContentIndex.Entry[]{first, second, third}) {
+                assertTrue(index.mightContain(entry.size(), entry.partial()), entry.path().toString());
+            }
+        }
+    }
+
+    @Test
+    void testScanIndexesOnlyNewAndChangedFilesAndDropsRemovedOnes() throws Exception {
+        Path one = Files.writeString(workspace.resolve("one.txt"), "one");
+        Path two = Files.writeString(Files.createDirectories(workspace.resolve("a")).resolve("two.txt"), "two");
+        Files.writeString(Files.createDirectories(DatabaseFunctionsLib.workspaceMetadataDirectory(workspace))
+                .resolve("skip.txt"), "skip");
+
+        try (WorkspaceContentIndex index = WorkspaceContentIndex.open(workspace, 0.01)) {
+            ContentIndexSummary first = new WorkspaceContentScanner(index, 2).scan(workspace);
+            assertEquals(2, first.files());
+            assertEquals(2, first.hashed());
+        }
+
+        Files.delete(one);
+        Files.writeString(two, "two, longer");
+        Path copy = Files.writeString(source.resolve("copy.txt"), "two, longer");
+        try (WorkspaceContentIndex index = WorkspaceContentIndex.open(workspace, 0.05)) {
+            ContentIndexSummary second = new WorkspaceContentScanner(index, 2).scan(workspace);
+            assertEquals(1, second.files());
+            assertEquals(1, second.hashed());
+            assertEquals(1, second.removed());
+            assertEquals(0.05, index.getFilter().falsePositiveRate());
+
+            assertEquals(two, new DuplicateDetector(null, index).register(identityOf(copy)));
+        }
+    }
+}